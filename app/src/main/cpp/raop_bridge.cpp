@@ -1,6 +1,14 @@
 #include <jni.h>
 #include <android/log.h>
+#include <algorithm>
+#include <chrono>
+#include <condition_variable>
+#include <cstdint>
+#include <cstring>
+#include <ctime>
+#include <mutex>
 #include <string>
+#include <thread>
 
 #define LOG_TAG "RaopBridge-Native"
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
@@ -17,11 +25,223 @@
  * 1. Add RAOP library source files to this directory
  * 2. Update CMakeLists.txt to include RAOP library
  * 3. Implement the protocol handling in nativeStart
- * 4. Call Java callback onPcmFrame when audio data is received
+ * 4. Decode PCM straight into the shared direct buffer and hand each frame to
+ *    deliverPcmFrame below, which publishes frames to Java in batches; a flusher
+ *    thread delivers a batch whose window has passed when no further frame arrives
  * 
- * The native handle returned represents the RAOP server instance.
+ * The native handle returned is the BridgeContext the RAOP server delivers to.
  */
 
+/**
+ * Everything the audio thread needs to call back into Java, looked up once in
+ * nativeStart so the per-frame path makes no class or method lookups.
+ */
+struct BridgeContext {
+    JavaVM* vm;
+    jobject bridge;          // global ref to the RaopBridge
+    jclass bridgeClass;      // global ref, keeps the method IDs valid
+    jmethodID onPcmBatch;    // (II)I
+    jmethodID onVolumeChanged; // (F)V
+
+    // Shared PCM ring owned by AudioEngine; the cursor is the ring's write offset,
+    // handed back by Java after every upcall
+    uint8_t* region;
+    size_t capacity;
+    size_t frameSize;
+    size_t cursor;
+    size_t writable;
+    size_t dropped;
+
+    // Lengths of the frames decoded since the last upcall, then one slot for the
+    // write offset
+    int32_t* lengths;
+    int maxFrames;
+    int pending;
+    int64_t batchWindowNanos;
+    int64_t batchStartNanos;
+
+    // Batch state is shared between the audio thread and the flusher
+    std::mutex lock;
+    std::condition_variable batchStarted;
+    std::thread flusher;
+    bool stopping;
+};
+
+static int64_t monotonicNanos() {
+    timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (int64_t)ts.tv_sec * 1000000000LL + ts.tv_nsec;
+}
+
+static void runFlusher(BridgeContext* ctx);
+
+static BridgeContext* createContext(JNIEnv* env, jobject thiz, jint frameSize,
+                                    jobject pcmBuffer, jint writeOffset,
+                                    jobject batchLengths, jint batchWindowMs) {
+    auto* ctx = new BridgeContext();
+    env->GetJavaVM(&ctx->vm);
+
+    jclass cls = env->GetObjectClass(thiz);
+    ctx->bridgeClass = (jclass)env->NewGlobalRef(cls);
+    env->DeleteLocalRef(cls);
+    ctx->bridge = env->NewGlobalRef(thiz);
+    ctx->onPcmBatch = env->GetMethodID(ctx->bridgeClass, "onPcmBatch", "(II)I");
+    ctx->onVolumeChanged = env->GetMethodID(ctx->bridgeClass, "onVolumeChanged", "(F)V");
+
+    ctx->region = (uint8_t*)env->GetDirectBufferAddress(pcmBuffer);
+    ctx->capacity = (size_t)env->GetDirectBufferCapacity(pcmBuffer);
+    ctx->frameSize = (size_t)std::max<jint>(1, frameSize);
+    ctx->cursor = ctx->capacity > 0 ? (size_t)writeOffset % ctx->capacity : 0;
+    ctx->writable = ctx->capacity;
+    ctx->lengths = (int32_t*)env->GetDirectBufferAddress(batchLengths);
+    ctx->maxFrames = (int)(env->GetDirectBufferCapacity(batchLengths) / sizeof(int32_t)) - 1;
+    ctx->batchWindowNanos = (int64_t)batchWindowMs * 1000000LL;
+
+    if (ctx->onPcmBatch == nullptr || ctx->region == nullptr || ctx->lengths == nullptr
+            || ctx->maxFrames < 1) {
+        LOGE("RaopBridge callback or shared buffers unavailable");
+        env->ExceptionClear();
+        env->DeleteGlobalRef(ctx->bridge);
+        env->DeleteGlobalRef(ctx->bridgeClass);
+        delete ctx;
+        return nullptr;
+    }
+    LOGI("Shared PCM buffer: %p (%zu bytes, writing at %zu), batches of up to %d frames / %d ms",
+         ctx->region, ctx->capacity, ctx->cursor, ctx->maxFrames, (int)batchWindowMs);
+    ctx->flusher = std::thread(runFlusher, ctx);
+    return ctx;
+}
+
+static void destroyContext(JNIEnv* env, BridgeContext* ctx) {
+    if (ctx->flusher.joinable()) {
+        {
+            std::lock_guard<std::mutex> guard(ctx->lock);
+            ctx->stopping = true;
+        }
+        ctx->batchStarted.notify_all();
+        ctx->flusher.join();
+    }
+    env->DeleteGlobalRef(ctx->bridge);
+    env->DeleteGlobalRef(ctx->bridgeClass);
+    delete ctx;
+}
+
+/**
+ * JNIEnv for the calling thread, attaching the RAOP library's audio thread to the
+ * VM the first time it calls back.
+ */
+static JNIEnv* threadEnv(BridgeContext* ctx) {
+    JNIEnv* env = nullptr;
+    if (ctx->vm->GetEnv((void**)&env, JNI_VERSION_1_6) == JNI_EDETACHED) {
+        ctx->vm->AttachCurrentThread(&env, nullptr);
+    }
+    return env;
+}
+
+/**
+ * Hands the pending frames to Java in one upcall: they already lie one after another
+ * in the shared region, and their lengths in the length table. Java answers with how
+ * many bytes may be written before the next upcall and leaves the ring's write offset
+ * after the lengths, so the cursor follows whatever the ring actually published.
+ * Called with the context lock held.
+ */
+static void flushPcmBatch(BridgeContext* ctx) {
+    if (ctx->pending == 0 && ctx->dropped == 0) {
+        return;
+    }
+    JNIEnv* env = threadEnv(ctx);
+    jint writable = env->CallIntMethod(ctx->bridge, ctx->onPcmBatch,
+                                       (jint)ctx->pending, (jint)ctx->dropped);
+    if (env->ExceptionCheck()) {
+        env->ExceptionClear();
+        writable = 0;
+    }
+    int32_t writeOffset = ctx->lengths[ctx->maxFrames];
+    if (writeOffset >= 0 && (size_t)writeOffset < ctx->capacity) {
+        ctx->cursor = (size_t)writeOffset;
+    }
+    ctx->writable = (size_t)std::max<jint>(0, writable);
+    ctx->pending = 0;
+    ctx->dropped = 0;
+}
+
+/**
+ * Delivers a batch once its window has passed even if no further frame arrives to
+ * notice, so the tail of a stream or a pause does not sit in the region unpublished.
+ */
+static void runFlusher(BridgeContext* ctx) {
+    std::unique_lock<std::mutex> guard(ctx->lock);
+    while (!ctx->stopping) {
+        if (ctx->pending == 0) {
+            ctx->batchStarted.wait(guard);
+            continue;
+        }
+        int64_t wait = ctx->batchStartNanos + ctx->batchWindowNanos - monotonicNanos();
+        if (wait > 0) {
+            ctx->batchStarted.wait_for(guard, std::chrono::nanoseconds(wait));
+            continue;
+        }
+        flushPcmBatch(ctx);
+    }
+    guard.unlock();
+    JNIEnv* env = nullptr;
+    if (ctx->vm->GetEnv((void**)&env, JNI_VERSION_1_6) == JNI_OK) {
+        ctx->vm->DetachCurrentThread();
+    }
+}
+
+/**
+ * Called by the RAOP library for every decoded frame. Copies (or, better, decodes in
+ * place) into the shared region at the producer cursor, wrapping at its end, and
+ * delivers the batch once the window has passed or the length table is full. Frames
+ * that don't fit are dropped and reported with the next batch, as is any trailing
+ * partial PCM frame, which the ring would not publish.
+ */
+void deliverPcmFrame(BridgeContext* ctx, const uint8_t* pcmData, size_t length) {
+    std::lock_guard<std::mutex> guard(ctx->lock);
+    size_t partial = length % ctx->frameSize;
+    ctx->dropped += partial;
+    length -= partial;
+    if (length == 0) {
+        return;
+    }
+
+    // Room for a frame is only known after Java answers, so a full ring ends the batch
+    if (length > ctx->writable && ctx->pending > 0) {
+        flushPcmBatch(ctx);
+    }
+    if (length <= ctx->writable) {
+        size_t first = std::min(length, ctx->capacity - ctx->cursor);
+        memcpy(ctx->region + ctx->cursor, pcmData, first);
+        memcpy(ctx->region, pcmData + first, length - first);
+        ctx->cursor = (ctx->cursor + length) % ctx->capacity;
+        ctx->writable -= length;
+        if (ctx->pending == 0) {
+            ctx->batchStartNanos = monotonicNanos();
+            ctx->batchStarted.notify_one();
+        }
+        ctx->lengths[ctx->pending++] = (int32_t)length;
+    } else {
+        ctx->dropped += length;
+    }
+
+    if (ctx->pending >= ctx->maxFrames
+            || monotonicNanos() - ctx->batchStartNanos >= ctx->batchWindowNanos) {
+        flushPcmBatch(ctx);
+    }
+}
+
+/**
+ * Forwards SET_PARAMETER volume; Java applies the ramp on the playback thread.
+ */
+void deliverVolume(BridgeContext* ctx, float airplayVolume) {
+    JNIEnv* env = threadEnv(ctx);
+    env->CallVoidMethod(ctx->bridge, ctx->onVolumeChanged, (jfloat)airplayVolume);
+    if (env->ExceptionCheck()) {
+        env->ExceptionClear();
+    }
+}
+
 extern "C" JNIEXPORT jlong JNICALL
 Java_com_manoj077_musicstreamerapp_RaopBridge_nativeStart(
         JNIEnv* env,
@@ -29,19 +249,30 @@ Java_com_manoj077_musicstreamerapp_RaopBridge_nativeStart(
         jint port,
         jint sampleRate,
         jint channels,
-        jint bitDepth) {
+        jint bitDepth,
+        jobject pcmBuffer,
+        jint writeOffset,
+        jobject batchLengths,
+        jint batchWindowMs) {
     
     LOGI("nativeStart called: port=%d, sampleRate=%d, channels=%d, bitDepth=%d",
          port, sampleRate, channels, bitDepth);
+
+    // Class, method IDs and the bridge reference are cached here, once per session
+    BridgeContext* ctx = createContext(env, thiz, channels * (bitDepth / 8), pcmBuffer,
+                                       writeOffset, batchLengths, batchWindowMs);
+    if (ctx == nullptr) {
+        return 0;
+    }
     
-    // TODO: Initialize actual RAOP server here
-    // For now, return a dummy handle to indicate stub mode
-    // Return 0 to indicate failure (no actual implementation)
+    // TODO: Initialize actual RAOP server here with ctx as its audio sink and
+    // return (jlong)ctx as the handle
     
     LOGI("Native RAOP library is in stub mode - no actual implementation");
     LOGI("To enable AirPlay: integrate Shairport-sync or similar RAOP library");
     
     // Returning 0 to indicate stub mode / no implementation
+    destroyContext(env, ctx);
     return 0;
 }
 
@@ -53,30 +284,18 @@ Java_com_manoj077_musicstreamerapp_RaopBridge_nativeStop(
     
     LOGI("nativeStop called: handle=%ld", (long)handle);
     
-    // TODO: Stop and cleanup RAOP server here
-    
     if (handle == 0) {
         LOGI("Stub handle, nothing to stop");
         return;
     }
     
-    LOGI("Native RAOP stopped (stub mode)");
+    // TODO: Stop the RAOP server here, before its sink goes away
+    auto* ctx = (BridgeContext*)handle;
+    {
+        std::lock_guard<std::mutex> guard(ctx->lock);
+        flushPcmBatch(ctx);
+    }
+    destroyContext(env, ctx);
+    
+    LOGI("Native RAOP stopped");
 }
-
-/**
- * Example of how to call the Java callback when PCM data is received:
- * 
- * void sendPcmDataToJava(JNIEnv* env, jobject raopBridgeObj, 
- *                        const uint8_t* pcmData, size_t length) {
- *     jclass cls = env->GetObjectClass(raopBridgeObj);
- *     jmethodID mid = env->GetMethodID(cls, "onPcmFrame", "([BI)V");
- *     
- *     jbyteArray byteArray = env->NewByteArray(length);
- *     env->SetByteArrayRegion(byteArray, 0, length, (jbyte*)pcmData);
- *     
- *     env->CallVoidMethod(raopBridgeObj, mid, byteArray, (jint)length);
- *     
- *     env->DeleteLocalRef(byteArray);
- *     env->DeleteLocalRef(cls);
- * }
- */
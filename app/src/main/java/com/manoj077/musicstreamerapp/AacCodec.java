@@ -0,0 +1,335 @@
+package com.manoj077.musicstreamerapp;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AAC-LC and AAC-ELD ({@code mpeg4-generic}), decoded by the platform's
+ * {@link MediaCodec} in asynchronous mode. Both variants share the rtpmap encoding and
+ * are told apart by the fmtp {@code mode}.
+ *
+ * Payloads are copied straight into the codec's own input buffers, and decoded frames
+ * are handed to the {@link AudioDecoder.Output} in the codec's output buffers, which go
+ * back to the codec as soon as the output returns; no buffer is allocated per packet.
+ * Codec callbacks run on a handler thread per decoder.
+ *
+ * Each payload is queued with its RTP timestamp in microseconds as the presentation
+ * time, and its RTP fields wait in a queue until the output with that presentation
+ * time comes back. Outputs arrive in input order, so payloads passed over on the way
+ * produced no audio, as a decoder's priming frames do.
+ */
+public class AacCodec extends AudioCodec {
+    private static final String TAG = "AacCodec";
+
+    public static final int TXT_CODE_AAC = 2;
+    public static final int TXT_CODE_AAC_ELD = 3;
+
+    private final String mode;
+    // AudioSpecificConfig for 44.1 kHz stereo when the fmtp carries none
+    private final String defaultConfig;
+
+    private AacCodec(int txtCode, String name, String mode, String defaultConfig) {
+        super(txtCode, name, "mpeg4-generic");
+        this.mode = mode;
+        this.defaultConfig = defaultConfig;
+    }
+
+    public static AacCodec lowComplexity() {
+        return new AacCodec(TXT_CODE_AAC, "AAC", "AAC-hbr", "1210");
+    }
+
+    public static AacCodec enhancedLowDelay() {
+        return new AacCodec(TXT_CODE_AAC_ELD, "AAC-ELD", "AAC-eld", "F8E85000");
+    }
+
+    @Override
+    public boolean accepts(String rtpmap, String fmtp) {
+        if (!super.accepts(rtpmap, fmtp)) {
+            return false;
+        }
+        String announced = parameter(fmtp, "mode");
+        // Plain AAC unless the sender says otherwise
+        return announced != null ? mode.equalsIgnoreCase(announced)
+                : getTxtCode() == TXT_CODE_AAC;
+    }
+
+    @Override
+    public String getDefaultFmtp() {
+        return "96 mode=" + mode + "; config=" + defaultConfig;
+    }
+
+    @Override
+    public AudioDecoder newDecoder(String rtpmap, String fmtp, int sampleRate, int channels) {
+        checkFormat(getName(), rateOf(rtpmap, sampleRate), channelsOf(rtpmap, channels),
+                sampleRate, channels);
+        String config = parameter(fmtp, "config");
+        byte[] audioSpecificConfig = parseHex(config != null ? config : defaultConfig);
+        try {
+            return new Decoder(this, audioSpecificConfig, sampleRate, channels);
+        } catch (IOException | IllegalStateException e) {
+            throw new IllegalArgumentException("No " + getName() + " decoder available", e);
+        }
+    }
+
+    /**
+     * Value of {@code key} in a {@code "96 key=value; key=value"} fmtp, null if absent.
+     */
+    static String parameter(String fmtp, String key) {
+        if (fmtp == null) {
+            return null;
+        }
+        for (String part : fmtp.split(";")) {
+            String pair = part.trim();
+            int space = pair.indexOf(' ');
+            int equals = pair.indexOf('=');
+            if (space >= 0 && space < equals) {
+                // The first pair follows the payload type
+                pair = pair.substring(space + 1).trim();
+                equals = pair.indexOf('=');
+            }
+            if (equals > 0 && pair.substring(0, equals).trim().equalsIgnoreCase(key)) {
+                return pair.substring(equals + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private static byte[] parseHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("Malformed AAC config: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static final class Decoder extends MediaCodec.Callback implements AudioDecoder {
+        // More than any codec keeps in flight; a power of two
+        private static final int SLOTS = 64;
+
+        private final AacCodec codec;
+        private final HandlerThread thread;
+        private final MediaCodec mediaCodec;
+        private final int sampleRate;
+        private final int channels;
+
+        // Input buffers the codec has made available, codec thread to decode thread
+        private final int[] freeInputs = new int[SLOTS];
+        private volatile long freeWritten;
+        private volatile long freeRead;
+
+        // RTP fields of the payloads queued to the codec, oldest first, decode thread
+        // to codec thread
+        private final long[] pendingPts = new long[SLOTS];
+        private final int[] pendingSeq = new int[SLOTS];
+        private final long[] pendingTimestamp = new long[SLOTS];
+        private final long[] pendingArrival = new long[SLOTS];
+        private volatile long pendingWritten;
+        private volatile long pendingRead;
+
+        // Decode thread only: the RTP timestamp extended past its 32-bit wrap
+        private boolean haveTimestamp;
+        private long lastTimestamp;
+        private long extendedTimestamp;
+
+        private final AtomicLong errors = new AtomicLong();
+        private volatile Output output;
+
+        Decoder(AacCodec codec, byte[] audioSpecificConfig, int sampleRate, int channels)
+                throws IOException {
+            this.codec = codec;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            thread = new HandlerThread(codec.getName() + "Decoder",
+                    Process.THREAD_PRIORITY_AUDIO);
+            thread.start();
+            MediaCodec created = null;
+            try {
+                created = MediaCodec.createDecoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+                MediaFormat format = MediaFormat.createAudioFormat(
+                        MediaFormat.MIMETYPE_AUDIO_AAC, sampleRate, channels);
+                format.setByteBuffer("csd-0", ByteBuffer.wrap(audioSpecificConfig));
+                format.setInteger(MediaFormat.KEY_IS_ADTS, 0);
+                // Async mode needs the callback before configure
+                created.setCallback(this, new Handler(thread.getLooper()));
+                created.configure(format, null, null, 0);
+                created.start();
+            } catch (IOException | RuntimeException e) {
+                if (created != null) {
+                    created.release();
+                }
+                thread.quitSafely();
+                throw e;
+            }
+            mediaCodec = created;
+            Log.d(TAG, codec.getName() + " decoder " + mediaCodec.getName() + " ready");
+        }
+
+        @Override
+        public AudioCodec getCodec() {
+            return codec;
+        }
+
+        @Override
+        public void setOutput(Output output) {
+            this.output = output;
+        }
+
+        @Override
+        public void decode(int seq, long rtpTimestamp, byte[] in, int offset, int length,
+                           long arrivalNanos) {
+            long read = freeRead;
+            long written = pendingWritten;
+            if (read == freeWritten || written - pendingRead == SLOTS) {
+                // The codec is still busy with every buffer it has; losing this packet
+                // beats blocking the receive thread
+                fail(seq);
+                return;
+            }
+            int index = freeInputs[(int) (read & (SLOTS - 1))];
+            freeRead = read + 1;
+            try {
+                ByteBuffer input = mediaCodec.getInputBuffer(index);
+                if (input == null || input.capacity() < length) {
+                    fail(seq);
+                    return;
+                }
+                input.clear();
+                input.put(in, offset, length);
+                long pts = presentationTimeUs(rtpTimestamp);
+                int slot = (int) (written & (SLOTS - 1));
+                pendingPts[slot] = pts;
+                pendingSeq[slot] = seq;
+                pendingTimestamp[slot] = rtpTimestamp;
+                pendingArrival[slot] = arrivalNanos;
+                // Published first: the output may come back before queueing returns
+                pendingWritten = written + 1;
+                mediaCodec.queueInputBuffer(index, 0, length, pts, 0);
+            } catch (IllegalStateException e) {
+                fail(seq);
+            }
+        }
+
+        @Override
+        public void onInputBufferAvailable(MediaCodec codec, int index) {
+            long written = freeWritten;
+            freeInputs[(int) (written & (SLOTS - 1))] = index;
+            freeWritten = written + 1;
+        }
+
+        @Override
+        public void onOutputBufferAvailable(MediaCodec codec, int index,
+                                            MediaCodec.BufferInfo info) {
+            Output out = output;
+            if (out != null && info.size > 0
+                    && (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                ByteBuffer pcm = codec.getOutputBuffer(index);
+                long pending = findPending(info.presentationTimeUs);
+                if (pending < 0) {
+                    // Not a time we queued; there is no telling which packet it is
+                    errors.incrementAndGet();
+                } else if (pcm != null) {
+                    int slot = (int) (pending & (SLOTS - 1));
+                    int seq = pendingSeq[slot];
+                    long rtpTimestamp = pendingTimestamp[slot];
+                    long arrivalNanos = pendingArrival[slot];
+                    pendingRead = pending + 1;
+                    pcm.limit(info.offset + info.size).position(info.offset);
+                    out.onFrame(seq, rtpTimestamp, pcm, arrivalNanos);
+                }
+            }
+            codec.releaseOutputBuffer(index, false);
+        }
+
+        /**
+         * Position in the pending queue of the payload queued at {@code ptsUs}, -1 if
+         * none is waiting.
+         */
+        private long findPending(long ptsUs) {
+            long written = pendingWritten;
+            for (long i = pendingRead; i < written; i++) {
+                if (pendingPts[(int) (i & (SLOTS - 1))] == ptsUs) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Sender time of an RTP timestamp in microseconds, counted from an arbitrary
+         * origin; one sample is over 20 us, so every timestamp gets its own.
+         */
+        private long presentationTimeUs(long rtpTimestamp) {
+            if (!haveTimestamp) {
+                haveTimestamp = true;
+                extendedTimestamp = rtpTimestamp;
+            } else {
+                extendedTimestamp += (int) (rtpTimestamp - lastTimestamp);
+            }
+            lastTimestamp = rtpTimestamp;
+            return extendedTimestamp * 1_000_000L / sampleRate;
+        }
+
+        @Override
+        public void onError(MediaCodec codec, MediaCodec.CodecException e) {
+            errors.incrementAndGet();
+            Log.e(TAG, this.codec.getName() + " decoder error: " + e.getDiagnosticInfo(), e);
+        }
+
+        @Override
+        public void onOutputFormatChanged(MediaCodec codec, MediaFormat format) {
+            int rate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int outChannels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            if (rate != sampleRate || outChannels != channels) {
+                Log.w(TAG, this.codec.getName() + " decodes to " + rate + " Hz, "
+                        + outChannels + " channels; expected " + sampleRate + " Hz, "
+                        + channels);
+            }
+        }
+
+        @Override
+        public void reset() {
+            mediaCodec.flush();
+            // Flushing takes back every input buffer; start hands out fresh ones
+            freeRead = freeWritten;
+            pendingWritten = pendingRead;
+            haveTimestamp = false;
+            mediaCodec.start();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.get();
+        }
+
+        @Override
+        public void release() {
+            output = null;
+            try {
+                mediaCodec.stop();
+            } catch (IllegalStateException e) {
+                Log.w(TAG, "Stopping " + codec.getName() + " decoder failed", e);
+            }
+            mediaCodec.release();
+            thread.quitSafely();
+        }
+
+        private void fail(int seq) {
+            errors.incrementAndGet();
+            Output out = output;
+            if (out != null) {
+                out.onError(seq);
+            }
+        }
+    }
+}
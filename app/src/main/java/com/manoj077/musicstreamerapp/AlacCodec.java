@@ -0,0 +1,96 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Apple Lossless, what AirPlay senders use by default. Decodes on the caller's thread
+ * with {@link AlacDecoder}; mono streams are played on both channels.
+ */
+public class AlacCodec extends AudioCodec {
+    public static final int TXT_CODE = 1;
+
+    public AlacCodec() {
+        super(TXT_CODE, "ALAC", "AppleLossless");
+    }
+
+    @Override
+    public String getDefaultFmtp() {
+        return AlacDecoder.DEFAULT_FMTP;
+    }
+
+    @Override
+    public AudioDecoder newDecoder(String rtpmap, String fmtp, int sampleRate, int channels) {
+        String[] fields = (fmtp != null ? fmtp : AlacDecoder.DEFAULT_FMTP).trim().split("\\s+");
+        if (fields.length < 12) {
+            throw new IllegalArgumentException("Malformed ALAC fmtp: " + fmtp);
+        }
+        // A malformed number throws NumberFormatException, an IllegalArgumentException
+        int streamChannels = Integer.parseInt(fields[7]);
+        // Mono is duplicated onto every output channel
+        checkFormat(getName(), Integer.parseInt(fields[11]),
+                streamChannels == 1 ? channels : streamChannels, sampleRate, channels);
+        return new Decoder(this, new AlacDecoder(
+                Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[3]),
+                Integer.parseInt(fields[4]),
+                Integer.parseInt(fields[5]),
+                Integer.parseInt(fields[6]),
+                channels));
+    }
+
+    private static final class Decoder implements AudioDecoder {
+        private final AlacCodec codec;
+        private final AlacDecoder alac;
+        private final byte[] pcm;
+        private final ByteBuffer frame;
+        private volatile Output output;
+
+        Decoder(AlacCodec codec, AlacDecoder alac) {
+            this.codec = codec;
+            this.alac = alac;
+            this.pcm = new byte[alac.getMaxOutputBytes()];
+            this.frame = ByteBuffer.wrap(pcm);
+        }
+
+        @Override
+        public AudioCodec getCodec() {
+            return codec;
+        }
+
+        @Override
+        public void setOutput(Output output) {
+            this.output = output;
+        }
+
+        @Override
+        public void decode(int seq, long rtpTimestamp, byte[] in, int offset, int length,
+                           long arrivalNanos) {
+            Output out = output;
+            int pcmLength = alac.decode(in, offset, length, pcm, 0);
+            if (out == null) {
+                return;
+            }
+            if (pcmLength > 0) {
+                frame.clear().limit(pcmLength);
+                out.onFrame(seq, rtpTimestamp, frame, arrivalNanos);
+            } else {
+                out.onError(seq);
+            }
+        }
+
+        @Override
+        public void reset() {
+            // Every ALAC frame decodes on its own
+        }
+
+        @Override
+        public long getErrors() {
+            return alac.getErrors();
+        }
+
+        @Override
+        public void release() {
+            output = null;
+        }
+    }
+}
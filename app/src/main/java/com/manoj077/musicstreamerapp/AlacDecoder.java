@@ -0,0 +1,424 @@
+package com.manoj077.musicstreamerapp;
+
+/**
+ * Apple Lossless (ALAC) frame decoder for the 16-bit streams AirPlay senders use.
+ *
+ * Follows the reference decoder: adaptive Golomb-Rice entropy decoding, an adaptive FIR
+ * predictor per channel and mid/side un-mixing. All working buffers (residuals,
+ * predictor output and coefficient tables) are allocated once for the configured frame
+ * length and reused, so decoding a packet allocates nothing. Not thread-safe; use one
+ * instance per stream.
+ */
+public class AlacDecoder {
+    /** Parameters AirPlay senders use unless ANNOUNCE says otherwise */
+    public static final String DEFAULT_FMTP = "96 352 0 16 40 10 14 2 255 0 0 44100";
+
+    private static final int RICE_THRESHOLD = 8;
+    private static final int MAX_COEFS = 32;
+    private static final int ELEMENT_MONO = 0;
+    private static final int ELEMENT_STEREO = 1;
+
+    private final int frameLength;
+    private final int sampleSize;
+    private final int riceHistoryMult;
+    private final int riceInitialHistory;
+    private final int riceKModifier;
+    private final int outputChannels;
+
+    private final int[] errorA;
+    private final int[] errorB;
+    private final int[] outputA;
+    private final int[] outputB;
+    private final short[] coefsA = new short[MAX_COEFS];
+    private final short[] coefsB = new short[MAX_COEFS];
+
+    // Bit reader over the current packet
+    private byte[] input;
+    private int inputPos;
+    private int inputEnd;
+    private int bitAccumulator;
+
+    private long decodedFrames;
+    private long errors;
+
+    /**
+     * @param frameLength         samples per channel in a full frame (352 for AirPlay)
+     * @param sampleSize          bits per sample; only 16 is supported
+     * @param riceHistoryMult     rice history multiplier ("pb" in the ALAC magic cookie)
+     * @param riceInitialHistory  initial rice history ("mb")
+     * @param riceKModifier       rice parameter limit ("kb")
+     * @param outputChannels      channels written per output frame (mono is duplicated)
+     */
+    public AlacDecoder(int frameLength, int sampleSize, int riceHistoryMult,
+                       int riceInitialHistory, int riceKModifier, int outputChannels) {
+        if (sampleSize != 16) {
+            throw new IllegalArgumentException("Unsupported ALAC sample size: " + sampleSize);
+        }
+        this.frameLength = frameLength;
+        this.sampleSize = sampleSize;
+        this.riceHistoryMult = riceHistoryMult;
+        this.riceInitialHistory = riceInitialHistory;
+        this.riceKModifier = riceKModifier;
+        this.outputChannels = outputChannels;
+        this.errorA = new int[frameLength];
+        this.errorB = new int[frameLength];
+        this.outputA = new int[frameLength];
+        this.outputB = new int[frameLength];
+    }
+
+    /**
+     * Creates a decoder from the SDP {@code a=fmtp} parameters sent in ANNOUNCE, e.g.
+     * {@code "96 352 0 16 40 10 14 2 255 0 0 44100"}.
+     */
+    public static AlacDecoder fromFmtp(String fmtp) {
+        String[] fields = fmtp.trim().split("\\s+");
+        if (fields.length < 8) {
+            throw new IllegalArgumentException("Malformed ALAC fmtp: " + fmtp);
+        }
+        return new AlacDecoder(
+                Integer.parseInt(fields[1]),
+                Integer.parseInt(fields[3]),
+                Integer.parseInt(fields[4]),
+                Integer.parseInt(fields[5]),
+                Integer.parseInt(fields[6]),
+                Integer.parseInt(fields[7]));
+    }
+
+    /**
+     * Largest number of PCM bytes one frame can decode to.
+     */
+    public int getMaxOutputBytes() {
+        return frameLength * outputChannels * 2;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    public long getDecodedFrames() {
+        return decodedFrames;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Decodes one ALAC frame into little-endian interleaved 16-bit PCM.
+     *
+     * @return bytes written to {@code out}, or -1 if the frame could not be decoded
+     */
+    public int decode(byte[] in, int inOffset, int inLength, byte[] out, int outOffset) {
+        input = in;
+        inputPos = inOffset;
+        inputEnd = inOffset + inLength;
+        bitAccumulator = 0;
+
+        int samples;
+        try {
+            samples = decodeElement(out, outOffset);
+        } finally {
+            input = null;
+        }
+        if (samples < 0) {
+            errors++;
+            return -1;
+        }
+        decodedFrames++;
+        return samples * outputChannels * 2;
+    }
+
+    private int decodeElement(byte[] out, int outOffset) {
+        int element = readBits(3);
+        if (element != ELEMENT_MONO && element != ELEMENT_STEREO) {
+            return -1;
+        }
+        int channels = element + 1;
+
+        readBits(4); // element instance tag
+        readBits(12); // unused header bits
+        boolean hasSize = readBits(1) != 0;
+        int wastedBytes = readBits(2);
+        boolean uncompressed = readBits(1) != 0;
+
+        int samples = frameLength;
+        if (hasSize) {
+            samples = readBits(32);
+        }
+        if (samples <= 0 || samples > frameLength || wastedBytes != 0) {
+            return -1;
+        }
+
+        // Stereo side channel carries one extra bit
+        int readSampleSize = sampleSize + channels - 1;
+        int interlacingShift = 0;
+        int interlacingLeftWeight = 0;
+
+        if (!uncompressed) {
+            interlacingShift = readBits(8);
+            interlacingLeftWeight = readBits(8);
+
+            int predictionTypeA = readBits(4);
+            int quantizationA = readBits(4);
+            int riceModifierA = readBits(3);
+            int coefCountA = readCoefs(coefsA);
+
+            int predictionTypeB = 0;
+            int quantizationB = 0;
+            int riceModifierB = 0;
+            int coefCountB = 0;
+            if (channels == 2) {
+                predictionTypeB = readBits(4);
+                quantizationB = readBits(4);
+                riceModifierB = readBits(3);
+                coefCountB = readCoefs(coefsB);
+            }
+
+            if (predictionTypeA != 0 || predictionTypeB != 0) {
+                return -1; // Only adaptive FIR prediction exists in the wild
+            }
+
+            riceDecompress(errorA, samples, readSampleSize,
+                    riceModifierA * riceHistoryMult / 4);
+            predictFir(errorA, outputA, samples, readSampleSize, coefsA, coefCountA,
+                    quantizationA);
+
+            if (channels == 2) {
+                riceDecompress(errorB, samples, readSampleSize,
+                        riceModifierB * riceHistoryMult / 4);
+                predictFir(errorB, outputB, samples, readSampleSize, coefsB, coefCountB,
+                        quantizationB);
+            }
+        } else {
+            for (int i = 0; i < samples; i++) {
+                outputA[i] = signExtend(readBits(sampleSize), sampleSize);
+                if (channels == 2) {
+                    outputB[i] = signExtend(readBits(sampleSize), sampleSize);
+                }
+            }
+        }
+
+        if (inputPos > inputEnd) {
+            return -1; // Ran past the end of the packet
+        }
+
+        if (channels == 2) {
+            unmix(out, outOffset, samples, interlacingShift, interlacingLeftWeight);
+        } else {
+            for (int i = 0; i < samples; i++) {
+                for (int c = 0; c < outputChannels; c++) {
+                    putSample(out, outOffset + (i * outputChannels + c) * 2, outputA[i]);
+                }
+            }
+        }
+        return samples;
+    }
+
+    private int readCoefs(short[] coefs) {
+        int count = readBits(5);
+        for (int i = 0; i < count; i++) {
+            coefs[i] = (short) readBits(16);
+        }
+        return count;
+    }
+
+    private void riceDecompress(int[] output, int samples, int readSampleSize,
+                                int historyMult) {
+        int history = riceInitialHistory;
+        int signModifier = 0;
+        int kModifierMask = (1 << riceKModifier) - 1;
+
+        for (int i = 0; i < samples; i++) {
+            int k = 31 - Integer.numberOfLeadingZeros((history >>> 9) + 3);
+            k = Math.min(k, riceKModifier);
+            int x = readRice(k, ((1 << k) - 1) & kModifierMask, readSampleSize);
+
+            int xModified = signModifier + x;
+            int value = (xModified + 1) >>> 1;
+            if ((xModified & 1) != 0) {
+                value = -value;
+            }
+            output[i] = value;
+            signModifier = 0;
+
+            history += xModified * historyMult - ((history * historyMult) >> 9);
+            if (xModified > 0xffff) {
+                history = 0xffff;
+            }
+
+            // Runs of zeros are coded as a block length
+            if (history < 128 && i + 1 < samples) {
+                k = Integer.numberOfLeadingZeros(history) + ((history + 16) >> 6) - 24;
+                int blockSize = readRice(k, ((1 << k) - 1) & kModifierMask, 16);
+                // A maximal run does not imply a nonzero sample after it
+                signModifier = blockSize < 0xffff ? 1 : 0;
+
+                if (blockSize > 0) {
+                    blockSize = Math.min(blockSize, samples - i - 1);
+                    for (int j = 1; j <= blockSize; j++) {
+                        output[i + j] = 0;
+                    }
+                    i += blockSize;
+                }
+                history = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads one adaptive Rice code: a unary prefix {@code q}, then {@code k} bits {@code v}
+     * for {@code q * m + v - 1}, where a {@code v} below 2 was written in {@code k - 1}
+     * bits and stands for {@code q * m}. Nine or more ones escape to a verbatim value.
+     */
+    private int readRice(int k, int m, int escapeBits) {
+        int x = readUnary();
+        if (x > RICE_THRESHOLD) {
+            x = readBits(escapeBits);
+            if (escapeBits != 32) {
+                x &= 0xffffffff >>> (32 - escapeBits);
+            }
+            return x;
+        }
+        if (k == 1) {
+            return x;
+        }
+        int extraBits = readBits(k);
+        x *= m;
+        if (extraBits > 1) {
+            x += extraBits - 1;
+        } else {
+            unreadBit();
+        }
+        return x;
+    }
+
+    private static void predictFir(int[] error, int[] out, int samples, int readSampleSize,
+                                   short[] coefs, int coefCount, int quantization) {
+        out[0] = error[0];
+
+        if (coefCount == 0) {
+            System.arraycopy(error, 1, out, 1, samples - 1);
+            return;
+        }
+
+        if (coefCount == 31) {
+            // Pure first-order delta coding
+            for (int i = 0; i < samples - 1; i++) {
+                out[i + 1] = signExtend(out[i] + error[i + 1], readSampleSize);
+            }
+            return;
+        }
+
+        // Warm-up samples
+        for (int i = 0; i < coefCount && i + 1 < samples; i++) {
+            out[i + 1] = signExtend(out[i] + error[i + 1], readSampleSize);
+        }
+
+        int base = 0;
+        for (int i = coefCount + 1; i < samples; i++) {
+            int errorValue = error[i];
+            int origin = out[base];
+
+            int sum = 0;
+            for (int j = 0; j < coefCount; j++) {
+                sum += (out[base + coefCount - j] - origin) * coefs[j];
+            }
+
+            int value = ((1 << (quantization - 1)) + sum) >> quantization;
+            value = signExtend(value + origin + errorValue, readSampleSize);
+            out[base + coefCount + 1] = value;
+
+            // Sign-sign LMS adaptation of the coefficients
+            if (errorValue > 0) {
+                for (int p = coefCount - 1; p >= 0 && errorValue > 0; p--) {
+                    int diff = origin - out[base + coefCount - p];
+                    int sign = Integer.signum(diff);
+                    coefs[p] -= sign;
+                    diff *= sign;
+                    errorValue -= (diff >> quantization) * (coefCount - p);
+                }
+            } else if (errorValue < 0) {
+                for (int p = 0; p < coefCount && errorValue < 0; p++) {
+                    int diff = origin - out[base + coefCount - p];
+                    int sign = -Integer.signum(diff);
+                    coefs[p] -= sign;
+                    diff *= sign;
+                    errorValue -= (diff >> quantization) * (coefCount - p);
+                }
+            }
+            base++;
+        }
+    }
+
+    private void unmix(byte[] out, int outOffset, int samples, int shift, int leftWeight) {
+        for (int i = 0; i < samples; i++) {
+            int left;
+            int right;
+            if (leftWeight != 0) {
+                int mid = outputA[i];
+                int difference = outputB[i];
+                right = mid - ((difference * leftWeight) >> shift);
+                left = right + difference;
+            } else {
+                left = outputA[i];
+                right = outputB[i];
+            }
+            int pos = outOffset + i * outputChannels * 2;
+            putSample(out, pos, left);
+            if (outputChannels > 1) {
+                putSample(out, pos + 2, right);
+            }
+        }
+    }
+
+    private static void putSample(byte[] out, int pos, int sample) {
+        out[pos] = (byte) sample;
+        out[pos + 1] = (byte) (sample >> 8);
+    }
+
+    private static int signExtend(int value, int bits) {
+        int shift = 32 - bits;
+        return (value << shift) >> shift;
+    }
+
+    private int readUnary() {
+        int x = 0;
+        while (x <= RICE_THRESHOLD && readBits(1) != 0) {
+            x++;
+        }
+        return x;
+    }
+
+    private int readBits(int bits) {
+        if (bits > 16) {
+            int high = readBits16(16);
+            bits -= 16;
+            return (high << bits) | readBits16(bits);
+        }
+        return readBits16(bits);
+    }
+
+    private int readBits16(int bits) {
+        if (bits == 0) {
+            return 0;
+        }
+        int word = (byteAt(inputPos) << 16) | (byteAt(inputPos + 1) << 8) | byteAt(inputPos + 2);
+        word = (word << bitAccumulator) & 0x00ffffff;
+        int result = word >>> (24 - bits);
+
+        int accumulator = bitAccumulator + bits;
+        inputPos += accumulator >> 3;
+        bitAccumulator = accumulator & 7;
+        return result;
+    }
+
+    private void unreadBit() {
+        int accumulator = bitAccumulator - 1;
+        inputPos += accumulator >> 3;
+        bitAccumulator = accumulator & 7;
+    }
+
+    private int byteAt(int pos) {
+        return pos < inputEnd ? input[pos] & 0xff : 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.manoj077.musicstreamerapp;
+
+/**
+ * One audio format the receiver can play: how it is advertised in the {@code cn} TXT
+ * record, how it is recognised in the ANNOUNCE SDP, and how to make a decoder for it.
+ * Decoders always produce the engine's output format; a stream whose rate or channel
+ * count differs is refused at creation rather than played at the wrong speed.
+ */
+public abstract class AudioCodec {
+    private final int txtCode;
+    private final String name;
+    private final String encoding;
+
+    /**
+     * @param txtCode  number in the AirPlay {@code cn} TXT record
+     * @param name     for logs
+     * @param encoding encoding name in {@code a=rtpmap}, compared ignoring case
+     */
+    protected AudioCodec(int txtCode, String name, String encoding) {
+        this.txtCode = txtCode;
+        this.name = name;
+        this.encoding = encoding;
+    }
+
+    public int getTxtCode() {
+        return txtCode;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether a stream announced with these SDP attributes is in this format.
+     *
+     * @param rtpmap {@code a=rtpmap} value, e.g. {@code "96 AppleLossless"}
+     * @param fmtp   {@code a=fmtp} value, null if absent
+     */
+    public boolean accepts(String rtpmap, String fmtp) {
+        return encoding.equalsIgnoreCase(encodingOf(rtpmap));
+    }
+
+    /**
+     * fmtp used when ANNOUNCE has none, null if the format needs none.
+     */
+    public abstract String getDefaultFmtp();
+
+    /**
+     * Creates a decoder producing {@code channels} channels of 16-bit PCM at
+     * {@code sampleRate}.
+     *
+     * @throws IllegalArgumentException if the parameters are malformed or describe a
+     *                                  stream in another rate or channel layout
+     */
+    public abstract AudioDecoder newDecoder(String rtpmap, String fmtp, int sampleRate,
+                                            int channels);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Encoding name of an rtpmap value: {@code "96 L16/44100/2"} gives {@code "L16"}.
+     */
+    static String encodingOf(String rtpmap) {
+        if (rtpmap == null) {
+            return null;
+        }
+        String value = rtpmap.trim();
+        int space = value.indexOf(' ');
+        if (space >= 0) {
+            value = value.substring(space + 1).trim();
+        }
+        int slash = value.indexOf('/');
+        return slash >= 0 ? value.substring(0, slash) : value;
+    }
+
+    /**
+     * Clock rate of an rtpmap value, or {@code fallback} if it gives none.
+     */
+    static int rateOf(String rtpmap, int fallback) {
+        return rtpmapField(rtpmap, 1, fallback);
+    }
+
+    /**
+     * Channel count of an rtpmap value, or {@code fallback} if it gives none.
+     */
+    static int channelsOf(String rtpmap, int fallback) {
+        return rtpmapField(rtpmap, 2, fallback);
+    }
+
+    static void checkFormat(String codec, int rate, int channels, int sampleRate,
+                            int outputChannels) {
+        if (rate != sampleRate) {
+            throw new IllegalArgumentException(codec + " at " + rate + " Hz, output is "
+                    + sampleRate + " Hz");
+        }
+        if (channels != outputChannels) {
+            throw new IllegalArgumentException(codec + " with " + channels
+                    + " channels, output has " + outputChannels);
+        }
+    }
+
+    private static int rtpmapField(String rtpmap, int index, int fallback) {
+        if (rtpmap == null) {
+            return fallback;
+        }
+        String[] fields = rtpmap.trim().split("/");
+        if (fields.length <= index) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(fields[index].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed rtpmap: " + rtpmap);
+        }
+    }
+}
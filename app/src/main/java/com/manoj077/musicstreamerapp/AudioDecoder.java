@@ -0,0 +1,59 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes one stream's RTP payloads into little-endian interleaved 16-bit PCM in the
+ * format it was created for. A decoder may deliver frames as it is fed or later from a
+ * thread of its own; either way they reach {@link Output#onFrame} in order, from a
+ * single thread, so the output can feed a single-producer {@link JitterBuffer} directly.
+ * Created by an {@link AudioCodec}, normally leased from a {@link DecoderPool}.
+ */
+public interface AudioDecoder {
+
+    /**
+     * Receives decoded frames.
+     */
+    interface Output {
+        /**
+         * @param pcm decoded frame between its position and limit; only valid during
+         *            the call, as the decoder recycles the buffer afterwards
+         */
+        void onFrame(int seq, long rtpTimestamp, ByteBuffer pcm, long arrivalNanos);
+
+        /**
+         * The payload with this sequence number produced no audio. May come from the
+         * thread calling {@link AudioDecoder#decode} instead.
+         */
+        void onError(int seq);
+    }
+
+    AudioCodec getCodec();
+
+    /**
+     * Where frames go from now on; null discards them.
+     */
+    void setOutput(Output output);
+
+    /**
+     * Queues one RTP payload. {@code in} may be reused as soon as this returns.
+     */
+    void decode(int seq, long rtpTimestamp, byte[] in, int offset, int length,
+                long arrivalNanos);
+
+    /**
+     * Drops any decoder state and pending frames so the next payload starts a new
+     * stream. Must not run concurrently with {@link #decode}.
+     */
+    void reset();
+
+    /**
+     * Payloads that failed to decode over this decoder's lifetime.
+     */
+    long getErrors();
+
+    /**
+     * Frees the decoder; it cannot be used afterwards.
+     */
+    void release();
+}
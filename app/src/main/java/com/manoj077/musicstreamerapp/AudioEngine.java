@@ -3,12 +3,15 @@ package com.manoj077.musicstreamerapp;
 import android.media.AudioAttributes;
 import android.media.AudioFormat;
 import android.media.AudioManager;
+import android.media.AudioTimestamp;
 import android.media.AudioTrack;
-import android.os.Build;
 import android.util.Log;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class AudioEngine {
     private static final String TAG = "AudioEngine";
@@ -16,14 +19,164 @@ public class AudioEngine {
     private static final int SAMPLE_RATE = 44100;
     private static final int CHANNEL_CONFIG = AudioFormat.CHANNEL_OUT_STEREO;
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
+    private static final int FRAME_SIZE = 4; // 16-bit stereo
+
+    private static final int BUFFER_MS = 250; // Raw PCM ring depth
+    // Largest AudioTrack write; each profile writes its own amount
+    private static final int MAX_CHUNK_BYTES = chunkBytes(PlaybackProfile.MAX_WRITE_MS);
+    private static final long BLOCK_TIMEOUT_MS = 20;
+    private static final long READ_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final double MAX_DRIFT_PPM = 1000;
+    private static final double FILL_GAIN_PPM = 2000; // ppm per second of fill error
+    private static final int CROSSFADE_FRAMES = 32;
+    private static final long DRIFT_UPDATE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int GAIN_RAMP_MS = 20;
+    private static final int TAP_MS = 250; // Analysis may lag playback by half of this
+    // Scheduled playout: beyond this, pad with silence or skip audio; within it, slew
+    private static final long SYNC_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+    private static final double SYNC_GAIN_PPM = 100; // ppm per ms of sync error
+    public static final long DEFAULT_TRACK_IDLE_MS = 60_000;
+    // What an AirPort Express reports, until a measured or persisted value replaces it
+    private static final long DEFAULT_LATENCY_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
     
     private AudioTrack audioTrack;
-    private BlockingQueue<byte[]> audioQueue;
-    private Thread playbackThread;
+    private final PcmRingBuffer ringBuffer;
+    private final JitterBuffer jitterBuffer;
+    private final ClockDriftEstimator driftEstimator;
+    private final PlayoutScheduler scheduler = new PlayoutScheduler(SAMPLE_RATE, FRAME_SIZE,
+            SYNC_TOLERANCE_NANOS);
+    private final DriftResampler resampler;
+    private final GainStage gainStage;
+    private final AudioMixer mixer;
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+    private final LatencyCalibrator latency = new LatencyCalibrator(SAMPLE_RATE,
+            DEFAULT_LATENCY_NANOS);
+    private final AudioTap tap = new AudioTap(2, SAMPLE_RATE * TAP_MS / 1000);
+    private final SpectrumAnalyzer analyzer = new SpectrumAnalyzer(tap, SAMPLE_RATE,
+            SpectrumAnalyzer.DEFAULT_FFT_SIZE, SpectrumAnalyzer.DEFAULT_BANDS);
+    private final ByteBuffer silence = ByteBuffer.allocateDirect(MAX_CHUNK_BYTES);
+    private volatile PacketCapture capture;
+    private volatile Thread playbackThread;
     private volatile boolean isRunning = false;
+    // Standby: the playback thread parks with the track paused, or released once idle
+    private volatile boolean standby;
+    private volatile long trackIdleNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TRACK_IDLE_MS);
+    // When the pending session start was requested, 0 if none; cleared by its first sample
+    private volatile long sessionStartNanos;
+    private volatile boolean sessionWarm;
+    // The next SETUP starts a session worth timing
+    private volatile boolean sessionPending;
+    // Playback thread only, published for telemetry
+    private volatile long queuedFrames;
+
+    private volatile PlaybackProfile profile = PlaybackProfile.BALANCED;
+    // Profile the current track was built with; playback thread only
+    private PlaybackProfile trackProfile;
+    private final EnumMap<PlaybackProfile, ProfileUsage> profileUsage =
+            new EnumMap<>(PlaybackProfile.class);
+
+    /**
+     * Totals behind a {@link PlaybackProfile.Measurement}; written by the playback
+     * thread.
+     */
+    private static final class ProfileUsage {
+        final AtomicLong playingNanos = new AtomicLong();
+        final AtomicLong wakeups = new AtomicLong();
+        final AtomicLong latencySamples = new AtomicLong();
+        final AtomicLong latencyTotalNanos = new AtomicLong();
+        volatile int bufferFrames;
+        // Latest calibrated latency, from this run or persisted; 0 if unknown
+        volatile long latencyNanos;
+    }
 
     public AudioEngine() {
-        audioQueue = new LinkedBlockingQueue<>(10); // Small jitter buffer
+        this(PcmRingBuffer.OverflowPolicy.DROP_OLDEST);
+    }
+
+    public AudioEngine(PcmRingBuffer.OverflowPolicy overflowPolicy) {
+        ringBuffer = PcmRingBuffer.forDuration(BUFFER_MS, SAMPLE_RATE, FRAME_SIZE,
+                overflowPolicy, BLOCK_TIMEOUT_MS);
+        jitterBuffer = newJitterBuffer();
+        driftEstimator = new ClockDriftEstimator(SAMPLE_RATE, MAX_DRIFT_PPM, FILL_GAIN_PPM);
+        resampler = new DriftResampler(getChannels(), CROSSFADE_FRAMES);
+        gainStage = newGainStage();
+        mixer = new AudioMixer(getChannels(), MAX_CHUNK_BYTES);
+        for (PlaybackProfile each : PlaybackProfile.values()) {
+            profileUsage.put(each, new ProfileUsage());
+        }
+    }
+
+    /**
+     * Jitter buffer configured like the engine's own, for a session feeding the mixer.
+     */
+    public JitterBuffer newJitterBuffer() {
+        return JitterBuffer.forAirplay(FRAME_SIZE, SAMPLE_RATE, profile.getJitterTargetMs());
+    }
+
+    /**
+     * Switches the latency/power trade-off. Jitter buffers follow at once; while
+     * playing, the AudioTrack is rebuilt with the new mode and buffer size before the
+     * next write.
+     */
+    public void setProfile(PlaybackProfile profile) {
+        if (profile == this.profile) {
+            return;
+        }
+        Log.d(TAG, "Playback profile " + this.profile + " -> " + profile);
+        this.profile = profile;
+        jitterBuffer.setBaseDepthMs(profile.getJitterTargetMs());
+        for (AudioMixer.Input input : mixer.getInputs()) {
+            if (input.getSource() instanceof JitterBuffer) {
+                ((JitterBuffer) input.getSource()).setBaseDepthMs(profile.getJitterTargetMs());
+            }
+        }
+        LockSupport.unpark(playbackThread);
+    }
+
+    public PlaybackProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Pipeline latency measured on this device in an earlier run with {@code profile};
+     * calibration for that profile starts from it instead of a generic default.
+     */
+    public void setLatencySeed(PlaybackProfile profile, long nanos) {
+        profileUsage.get(profile).latencyNanos = nanos;
+    }
+
+    /**
+     * Latest calibrated pipeline latency with {@code profile}, or the seed if it has
+     * not been calibrated in this run; 0 if neither is known.
+     */
+    public long getLatencyNanos(PlaybackProfile profile) {
+        return profileUsage.get(profile).latencyNanos;
+    }
+
+    /**
+     * Running estimate of this receiver's own latency, for the RTSP
+     * {@code Audio-Latency} header and for persisting.
+     */
+    public LatencyCalibrator getLatencyCalibrator() {
+        return latency;
+    }
+
+    /**
+     * Output latency and write wake-ups measured while {@code profile} was in use,
+     * since this engine was created.
+     */
+    public PlaybackProfile.Measurement getMeasurement(PlaybackProfile profile) {
+        ProfileUsage usage = profileUsage.get(profile);
+        long nanos = usage.playingNanos.get();
+        long samples = usage.latencySamples.get();
+        return new PlaybackProfile.Measurement(profile, nanos / 1e9,
+                samples == 0 ? 0 : usage.latencyTotalNanos.get() / 1e6 / samples,
+                nanos == 0 ? 0 : usage.wakeups.get() * 1e9 / nanos,
+                usage.bufferFrames);
+    }
+
+    public GainStage newGainStage() {
+        return new GainStage(getChannels(), SAMPLE_RATE * GAIN_RAMP_MS / 1000);
     }
 
     public void start() {
@@ -32,57 +185,132 @@ public class AudioEngine {
             return;
         }
 
-        Log.d(TAG, "Starting AudioEngine");
+        Log.d(TAG, "Starting AudioEngine (" + profile + ")");
+        audioTrack = createTrack(profile);
+        audioTrack.play();
+        standby = false;
+        sessionWarm = false;
+        sessionPending = true;
+        isRunning = true;
+
+        // Start playback thread
+        playbackThread = new Thread(this::playbackLoop);
+        playbackThread.start();
+        analyzer.start();
         
-        // Calculate buffer size
+        Log.d(TAG, "AudioEngine started");
+    }
+
+    /**
+     * Builds a track for {@code profile}. Its capacity leaves room above the
+     * requested buffer size, which is then set on its own so the platform reports what
+     * it actually granted.
+     */
+    private AudioTrack createTrack(PlaybackProfile profile) {
         int minBufferSize = AudioTrack.getMinBufferSize(
                 SAMPLE_RATE,
                 CHANNEL_CONFIG,
                 AUDIO_FORMAT
         );
-        
-        int bufferSize = minBufferSize * 2; // Use 2x min buffer for stability
-
-        // Create AudioTrack with low-latency mode
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                    .setUsage(AudioAttributes.USAGE_MEDIA)
-                    .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
-                    .setFlags(AudioAttributes.FLAG_LOW_LATENCY)
-                    .build();
-
-            AudioFormat audioFormat = new AudioFormat.Builder()
-                    .setSampleRate(SAMPLE_RATE)
-                    .setChannelMask(CHANNEL_CONFIG)
-                    .setEncoding(AUDIO_FORMAT)
-                    .build();
-
-            audioTrack = new AudioTrack(
-                    audioAttributes,
-                    audioFormat,
-                    bufferSize,
-                    AudioTrack.MODE_STREAM,
-                    AudioManager.AUDIO_SESSION_ID_GENERATE
-            );
-        } else {
-            audioTrack = new AudioTrack(
-                    AudioManager.STREAM_MUSIC,
-                    SAMPLE_RATE,
-                    CHANNEL_CONFIG,
-                    AUDIO_FORMAT,
-                    bufferSize,
-                    AudioTrack.MODE_STREAM
-            );
+        int requestedFrames = SAMPLE_RATE * profile.getTrackBufferMs() / 1000;
+        int capacity = Math.max(minBufferSize, requestedFrames * FRAME_SIZE * 2);
+
+        AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                .setUsage(AudioAttributes.USAGE_MEDIA)
+                .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                .build();
+
+        AudioFormat audioFormat = new AudioFormat.Builder()
+                .setSampleRate(SAMPLE_RATE)
+                .setChannelMask(CHANNEL_CONFIG)
+                .setEncoding(AUDIO_FORMAT)
+                .build();
+
+        AudioTrack track = new AudioTrack.Builder()
+                .setAudioAttributes(audioAttributes)
+                .setAudioFormat(audioFormat)
+                .setBufferSizeInBytes(capacity)
+                .setTransferMode(AudioTrack.MODE_STREAM)
+                .setPerformanceMode(profile.getPerformanceMode())
+                .setSessionId(AudioManager.AUDIO_SESSION_ID_GENERATE)
+                .build();
+        // Never below what the track needs to play without underrunning
+        int granted = track.setBufferSizeInFrames(Math.max(requestedFrames,
+                minBufferSize / FRAME_SIZE));
+        ProfileUsage usage = profileUsage.get(profile);
+        if (granted > 0) {
+            usage.bufferFrames = granted;
+        }
+        if (profile != trackProfile) {
+            // A different output path; start from what this profile measured before
+            long seed = usage.latencyNanos;
+            latency.reset(seed > 0 ? seed : DEFAULT_LATENCY_NANOS);
         }
+        trackProfile = profile;
+        Log.d(TAG, "AudioTrack for " + profile + ": " + granted + " of "
+                + track.getBufferCapacityInFrames() + " frames, performance mode "
+                + track.getPerformanceMode());
+        return track;
+    }
 
-        audioTrack.play();
-        isRunning = true;
+    /**
+     * Goes quiet without tearing down: the playback thread pauses the AudioTrack,
+     * primes it with silence and parks, and buffered audio is discarded. After the
+     * track idle timeout the track itself is released as well. {@link #resume} undoes
+     * this; so does audio arriving for a new session.
+     */
+    public void standby() {
+        if (!isRunning || standby) {
+            return;
+        }
+        Log.d(TAG, "Entering standby");
+        sessionStartNanos = 0;
+        sessionWarm = true;
+        sessionPending = true;
+        standby = true;
+        LockSupport.unpark(playbackThread);
+    }
 
-        // Start playback thread
-        playbackThread = new Thread(this::playbackLoop);
-        playbackThread.start();
-        
-        Log.d(TAG, "AudioEngine started");
+    /**
+     * Leaves standby. The warm session is timed from its SETUP, see
+     * {@link #markSessionSetup}.
+     *
+     * @return false if the engine was not in standby
+     */
+    public boolean resume() {
+        if (!isRunning || !standby) {
+            return false;
+        }
+        standby = false;
+        LockSupport.unpark(playbackThread);
+        return true;
+    }
+
+    public boolean isStandby() {
+        return standby;
+    }
+
+    /**
+     * How long a paused track is kept in standby before it is released; 0 releases it
+     * straight away.
+     */
+    public void setTrackIdleTimeoutMs(long millis) {
+        trackIdleNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        LockSupport.unpark(playbackThread);
+    }
+
+    /**
+     * A sender's SETUP: leaves standby if needed. The first session after {@link #start}
+     * (cold) or after {@link #standby} (warm) is timed from here until its first sample
+     * reaches the AudioTrack, so both are measured over the same span; senders joining
+     * a session already playing are not timed.
+     */
+    public void markSessionSetup() {
+        if (sessionPending) {
+            sessionPending = false;
+            sessionStartNanos = System.nanoTime();
+        }
+        resume();
     }
 
     public void stop() {
@@ -93,6 +321,7 @@ public class AudioEngine {
 
         Log.d(TAG, "Stopping AudioEngine");
         isRunning = false;
+        standby = false;
 
         if (playbackThread != null) {
             playbackThread.interrupt();
@@ -103,6 +332,7 @@ public class AudioEngine {
             }
             playbackThread = null;
         }
+        analyzer.stop();
 
         if (audioTrack != null) {
             audioTrack.stop();
@@ -110,41 +340,290 @@ public class AudioEngine {
             audioTrack = null;
         }
 
-        audioQueue.clear();
-        Log.d(TAG, "AudioEngine stopped");
+        ringBuffer.clear();
+        jitterBuffer.flush();
+        Log.d(TAG, "AudioEngine stopped (dropped oldest=" + ringBuffer.getDroppedOldestBytes()
+                + " newest=" + ringBuffer.getDroppedNewestBytes()
+                + " timed out=" + ringBuffer.getTimedOutBytes() + " bytes; late="
+                + jitterBuffer.getLateDrops() + " concealed=" + jitterBuffer.getConcealedFrames()
+                + " underruns=" + jitterBuffer.getUnderruns() + " frames)");
     }
 
     public void writePcmData(byte[] data) {
-        if (!isRunning || data == null || data.length == 0) {
+        if (data != null) {
+            writePcmData(data, 0, data.length);
+        }
+    }
+
+    public void writePcmData(byte[] data, int offset, int length) {
+        if (!isRunning || data == null || length <= 0) {
             return;
         }
+        if (standby) {
+            resume();
+        }
 
-        try {
-            // Non-blocking add, drops if queue is full
-            if (!audioQueue.offer(data)) {
-                Log.w(TAG, "Audio queue full, dropping frame");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error writing PCM data", e);
+        PacketCapture log = capture;
+        if (log != null) {
+            log.record(PacketCapture.KIND_PCM, 0, System.nanoTime(), data, offset, length);
+        }
+        // Overflow is handled by the ring's policy and counted there
+        metrics.recordFramesIn(length / FRAME_SIZE);
+        ringBuffer.write(data, offset, length);
+    }
+
+    /**
+     * Queues one decoded RTP frame; it is reordered by sequence number and played
+     * from the jitter buffer instead of the raw PCM ring.
+     */
+    public void writeRtpFrame(int seq, long rtpTimestamp, byte[] data, int offset, int length) {
+        if (!isRunning || data == null || length <= 0) {
+            return;
+        }
+        if (standby) {
+            resume();
+        }
+
+        metrics.recordFramesIn(length / FRAME_SIZE);
+        jitterBuffer.put(seq, rtpTimestamp, data, offset, length, System.nanoTime());
+    }
+
+    /**
+     * Queues one decoded RTP frame held between {@code pcm}'s position and limit.
+     */
+    public void writeRtpFrame(int seq, long rtpTimestamp, ByteBuffer pcm) {
+        if (!isRunning || pcm == null || !pcm.hasRemaining()) {
+            return;
+        }
+        if (standby) {
+            resume();
+        }
+
+        metrics.recordFramesIn(pcm.remaining() / FRAME_SIZE);
+        jitterBuffer.put(seq, rtpTimestamp, pcm, System.nanoTime());
+    }
+
+    /**
+     * Discards buffered RTP frames, e.g. on RTSP FLUSH.
+     */
+    public void flush() {
+        jitterBuffer.flush();
+    }
+
+    /**
+     * Direct region the native producer decodes PCM into.
+     */
+    public ByteBuffer getPcmBuffer() {
+        return ringBuffer.getStorage();
+    }
+
+    /**
+     * Offset in {@link #getPcmBuffer()} where the native producer's next byte goes.
+     */
+    public int getPcmWriteOffset() {
+        return ringBuffer.getWriteOffset();
+    }
+
+    /**
+     * Publishes {@code written} bytes a producer stored in place at the ring's write
+     * offset and returns how many bytes it may write next.
+     */
+    public int commitPcmData(int written, int dropped) {
+        if (standby && written > 0) {
+            resume();
         }
+        metrics.recordFramesIn((written + dropped) / FRAME_SIZE);
+        return ringBuffer.commitWrite(written, dropped);
     }
 
     private void playbackLoop() {
         Log.d(TAG, "Playback loop started");
+
+        PcmSource lastSource = null;
+        JitterBuffer lastClock = null;
+        long nextDriftUpdate = 0;
+        int lastHead = 0;
+        long dacFrames = 0;
+        long framesWritten = 0;
+        long trackDelayNanos = 0;
+        AudioTimestamp timestamp = new AudioTimestamp();
+        boolean hasTimestamp = false;
+        long syncErrorNanos = 0;
+        long accountedNanos = System.nanoTime();
+        driftEstimator.reset();
+        resampler.reset();
         
         while (isRunning) {
             try {
-                byte[] data = audioQueue.take(); // Blocking wait for data
+                boolean rebuild = audioTrack != null && profile != trackProfile;
+                if (standby || rebuild) {
+                    queuedFrames = 0;
+                    if (standby) {
+                        idle();
+                    } else {
+                        rebuildTrack();
+                    }
+                    // Start over as after a source switch; the track's counters restarted
+                    lastSource = null;
+                    lastHead = 0;
+                    dacFrames = 0;
+                    framesWritten = 0;
+                    hasTimestamp = false;
+                    nextDriftUpdate = 0;
+                    accountedNanos = System.nanoTime();
+                    continue;
+                }
+                PlaybackProfile current = trackProfile;
+                ProfileUsage usage = profileUsage.get(current);
+                int chunkBytes = chunkBytes(current.getWriteMs());
+
+                // Mixed sessions come first; sequenced RTP frames take over from the
+                // raw ring once they arrive
+                PcmSource source = mixer.getInputCount() > 0 ? mixer
+                        : jitterBuffer.isStarted() ? jitterBuffer : ringBuffer;
+                // Sender clock to follow; several mixed senders have no common one
+                JitterBuffer clock = source == jitterBuffer ? jitterBuffer
+                        : source == mixer ? soleJitterBuffer() : null;
+                if (source != lastSource || clock != lastClock) {
+                    driftEstimator.reset();
+                    resampler.reset();
+                    lastSource = source;
+                    lastClock = clock;
+                    syncErrorNanos = 0;
+                }
+                SenderClock senderClock = clock != null ? clock.getPlayoutClock() : null;
+                boolean scheduled = senderClock != null && senderClock.isLocked();
+
+                long now = System.nanoTime();
+                if (audioTrack != null && now >= nextDriftUpdate) {
+                    // Playback head is an unsigned 32-bit frame counter
+                    int head = audioTrack.getPlaybackHeadPosition();
+                    dacFrames += (head - lastHead) & 0xffffffffL;
+                    lastHead = head;
+                    // Pairs a frame position with the time it left the DAC
+                    hasTimestamp = audioTrack.getTimestamp(timestamp);
+                    if (hasTimestamp) {
+                        latency.addSample(now, framesWritten, timestamp.framePosition,
+                                timestamp.nanoTime, scheduled ? clock.getTargetDelayNanos() : 0);
+                        if (latency.isCalibrated()) {
+                            usage.latencyNanos = latency.getLatencyNanos();
+                        }
+                    }
+                    if (hasTimestamp && framesWritten > timestamp.framePosition) {
+                        // When the last frame written will be heard, from now
+                        usage.latencyTotalNanos.addAndGet(timestamp.nanoTime - now
+                                + (framesWritten - timestamp.framePosition)
+                                * 1_000_000_000L / SAMPLE_RATE);
+                        usage.latencySamples.incrementAndGet();
+                    }
+                    if (audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
+                        usage.playingNanos.addAndGet(now - accountedNanos);
+                    }
+                    accountedNanos = now;
+
+                    double ppm = driftEstimator.update(now,
+                            source.available() / FRAME_SIZE,
+                            source.targetAvailable() / FRAME_SIZE,
+                            dacFrames,
+                            clock != null ? clock.getNewestTimestamp() : -1,
+                            clock != null ? clock.getNewestArrivalNanos() : 0);
+                    // Each mixed sender's jitter buffer absorbs its own drift
+                    boolean corrected = source != mixer || clock != null;
+                    if (scheduled) {
+                        // The sender's schedule replaces the fill target
+                        ppm = driftEstimator.getRatePpm() + SYNC_GAIN_PPM * syncErrorNanos / 1e6;
+                        ppm = Math.max(-MAX_DRIFT_PPM, Math.min(MAX_DRIFT_PPM, ppm));
+                    }
+                    resampler.setCorrectionPpm(corrected ? ppm : 0);
+                    nextDriftUpdate = now + DRIFT_UPDATE_NANOS;
+
+                    // Audio written but not yet played sits in the track's own buffer
+                    trackDelayNanos = Math.max(0, framesWritten - dacFrames)
+                            * 1_000_000_000L / SAMPLE_RATE;
+                    syncMetrics();
+                }
+
+                boolean skip = false;
+                long next = scheduled ? clock.peekPlayoutTimestamp() : -1;
+                long due = next >= 0 ? senderClock.localTimeOf(next) : Long.MIN_VALUE;
+                if (due != Long.MIN_VALUE && audioTrack != null) {
+                    // When the next frame written will be heard, from the DAC's own
+                    // timestamp if it has one, else from what is still queued
+                    long pendingFrames = hasTimestamp ? framesWritten - timestamp.framePosition
+                            : Math.max(0, framesWritten - dacFrames);
+                    PlayoutScheduler.Action action = scheduler.schedule(due,
+                            hasTimestamp ? timestamp.nanoTime : now, pendingFrames, chunkBytes);
+                    syncErrorNanos = scheduler.getSyncErrorNanos();
+                    metrics.recordSyncError(syncErrorNanos);
+
+                    if (action == PlayoutScheduler.Action.PAD) {
+                        // Too early: hold the audio back with silence
+                        int padding = scheduler.getPaddingBytes();
+                        silence.clear().limit(padding);
+                        usage.wakeups.incrementAndGet();
+                        int written = audioTrack.write(silence, padding, AudioTrack.WRITE_BLOCKING);
+                        if (written > 0) {
+                            framesWritten += written / FRAME_SIZE;
+                        }
+                        continue;
+                    }
+                    // Too late: skip audio that is already past due
+                    skip = action == PlayoutScheduler.Action.SKIP;
+                }
+
+                // Slice of the shared buffer, handed to AudioTrack without copying
+                ByteBuffer chunk = source.acquireRead(chunkBytes, READ_TIMEOUT_NANOS);
+                if (chunk == null) {
+                    continue;
+                }
+                int length = chunk.remaining();
+                if (skip) {
+                    metrics.recordDrop(PlaybackMetrics.DropCause.SYNC_SKIP, length / FRAME_SIZE);
+                    source.releaseRead(length);
+                    continue;
+                }
+                long depthFrames = source.available() / FRAME_SIZE;
+                queuedFrames = depthFrames;
+                metrics.recordQueueDepth(depthFrames * 1000 / SAMPLE_RATE);
+                if (clock != null && clock.getPlayingArrivalNanos() != 0) {
+                    metrics.recordLatency(System.nanoTime() - clock.getPlayingArrivalNanos()
+                            + trackDelayNanos, length / FRAME_SIZE);
+                }
+
+                // Drift correction works in place and may drop or add one frame
+                int start = chunk.position();
+                int playLength = resampler.process(chunk, start, length);
+                chunk.limit(start + playLength);
+                gainStage.process(chunk, start, playLength);
+                tap.write(chunk, start, playLength);
                 
                 if (audioTrack != null && audioTrack.getPlayState() == AudioTrack.PLAYSTATE_PLAYING) {
-                    int written = audioTrack.write(data, 0, data.length);
+                    long writeStart = System.nanoTime();
+                    usage.wakeups.incrementAndGet();
+                    int written = audioTrack.write(chunk, playLength, AudioTrack.WRITE_BLOCKING);
+                    if (written >= 0 && resampler.hasInsertedFrame()) {
+                        ByteBuffer frame = resampler.getInsertedFrame();
+                        gainStage.process(frame, 0, resampler.getFrameSize());
+                        int extra = audioTrack.write(frame, resampler.getFrameSize(),
+                                AudioTrack.WRITE_BLOCKING);
+                        written = extra < 0 ? extra : written + extra;
+                    }
+                    metrics.recordWrite(System.nanoTime() - writeStart);
                     if (written < 0) {
+                        metrics.recordDrop(PlaybackMetrics.DropCause.TRACK_WRITE_ERROR, 1);
                         Log.e(TAG, "Error writing to AudioTrack: " + written);
+                    } else {
+                        framesWritten += written / FRAME_SIZE;
+                        metrics.recordFramesOut(written / FRAME_SIZE);
+                        long sessionStart = sessionStartNanos;
+                        if (sessionStart != 0 && written > 0) {
+                            sessionStartNanos = 0;
+                            metrics.recordSessionStart(System.nanoTime() - sessionStart,
+                                    sessionWarm);
+                        }
                     }
                 }
-            } catch (InterruptedException e) {
-                Log.d(TAG, "Playback loop interrupted");
-                break;
+                source.releaseRead(length);
             } catch (Exception e) {
                 Log.e(TAG, "Error in playback loop", e);
             }
@@ -153,6 +632,111 @@ public class AudioEngine {
         Log.d(TAG, "Playback loop ended");
     }
 
+    /**
+     * Standby on the playback thread, which alone writes to the track: pause and
+     * prime it, park until resumed, and release it if that takes longer than the idle
+     * timeout. On return the engine is playing again, or stopping.
+     */
+    private void idle() {
+        AudioTrack track = audioTrack;
+        if (track != null) {
+            track.pause();
+            track.flush();
+            // Queued while paused, so the track starts from a full buffer on play
+            int primeBytes = chunkBytes(trackProfile.getWriteMs());
+            silence.clear().limit(primeBytes);
+            track.write(silence, primeBytes, AudioTrack.WRITE_NON_BLOCKING);
+        }
+        ringBuffer.clear();
+        jitterBuffer.flush();
+
+        long idleSince = System.nanoTime();
+        while (standby && isRunning) {
+            long idleFor = System.nanoTime() - idleSince;
+            if (audioTrack != null && idleFor >= trackIdleNanos) {
+                Log.d(TAG, "Releasing idle AudioTrack");
+                audioTrack.release();
+                audioTrack = null;
+            }
+            if (audioTrack != null) {
+                LockSupport.parkNanos(trackIdleNanos - idleFor);
+            } else {
+                LockSupport.park();
+            }
+            if (Thread.interrupted()) {
+                break;
+            }
+        }
+        if (!isRunning) {
+            return;
+        }
+
+        if (audioTrack == null) {
+            audioTrack = createTrack(profile);
+        }
+        driftEstimator.reset();
+        resampler.reset();
+        audioTrack.play();
+        Log.d(TAG, "Resumed from standby");
+    }
+
+    /**
+     * Replaces the playing track with one built for the current profile; on the
+     * playback thread, which alone writes to the track.
+     */
+    private void rebuildTrack() {
+        AudioTrack old = audioTrack;
+        old.stop();
+        old.release();
+        audioTrack = createTrack(profile);
+        driftEstimator.reset();
+        resampler.reset();
+        audioTrack.play();
+    }
+
+    /**
+     * Copies the totals the ring, jitter buffer and AudioTrack keep themselves into the
+     * metrics, so the audio path does not count them twice.
+     */
+    private void syncMetrics() {
+        long overflowBytes = ringBuffer.getDroppedOldestBytes() + ringBuffer.getDroppedNewestBytes();
+        metrics.setDropTotal(PlaybackMetrics.DropCause.RING_OVERFLOW, overflowBytes / FRAME_SIZE);
+        metrics.setDropTotal(PlaybackMetrics.DropCause.RING_TIMEOUT,
+                ringBuffer.getTimedOutBytes() / FRAME_SIZE);
+
+        // Totals over the engine's own jitter buffer and every mixed session's
+        long late = jitterBuffer.getLateDrops();
+        long overflow = jitterBuffer.getOverflowDrops();
+        long duplicates = jitterBuffer.getDuplicates();
+        long concealed = jitterBuffer.getConcealedFrames();
+        long underruns = jitterBuffer.getUnderruns();
+        for (AudioMixer.Input input : mixer.getInputs()) {
+            if (input.getSource() instanceof JitterBuffer) {
+                JitterBuffer session = (JitterBuffer) input.getSource();
+                late += session.getLateDrops();
+                overflow += session.getOverflowDrops();
+                duplicates += session.getDuplicates();
+                concealed += session.getConcealedFrames();
+                underruns += session.getUnderruns();
+            }
+        }
+        metrics.setDropTotal(PlaybackMetrics.DropCause.LATE_PACKET, late);
+        metrics.setDropTotal(PlaybackMetrics.DropCause.JITTER_OVERFLOW, overflow);
+        metrics.setDropTotal(PlaybackMetrics.DropCause.DUPLICATE_PACKET, duplicates);
+        metrics.setConcealedFrames(concealed);
+        AudioTrack track = audioTrack;
+        metrics.setUnderruns(track != null ? track.getUnderrunCount() : 0, underruns);
+    }
+
+    private JitterBuffer soleJitterBuffer() {
+        PcmSource sole = mixer.getSoleSource();
+        return sole instanceof JitterBuffer ? (JitterBuffer) sole : null;
+    }
+
+    private static int chunkBytes(int millis) {
+        return SAMPLE_RATE * millis / 1000 * FRAME_SIZE;
+    }
+
     public int getSampleRate() {
         return SAMPLE_RATE;
     }
@@ -164,4 +748,76 @@ public class AudioEngine {
     public int getBitDepth() {
         return 16;
     }
+
+    public PcmRingBuffer getRingBuffer() {
+        return ringBuffer;
+    }
+
+    public JitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+
+    /**
+     * Mixer for concurrent sessions; while it has inputs it is played instead of the
+     * engine's own buffers.
+     */
+    public AudioMixer getMixer() {
+        return mixer;
+    }
+
+    /**
+     * Starts recording what reaches the engine and its sessions into {@code capture},
+     * or stops with null. The caller closes the capture.
+     */
+    public void setCapture(PacketCapture capture) {
+        this.capture = capture;
+    }
+
+    public PacketCapture getCapture() {
+        return capture;
+    }
+
+    public PlaybackMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Audio waiting ahead of the AudioTrack at the last chunk played.
+     */
+    public double getQueuedMillis() {
+        return queuedFrames * 1000.0 / SAMPLE_RATE;
+    }
+
+    /**
+     * Levels and spectrum of the output after gain, as sent to the AudioTrack.
+     */
+    public SpectrumAnalyzer getAnalyzer() {
+        return analyzer;
+    }
+
+    public double getDriftCorrectionPpm() {
+        return driftEstimator.getCorrectionPpm();
+    }
+
+    /**
+     * Sets the playback gain in dB; safe to call from any thread.
+     */
+    public void setVolumeDb(double db) {
+        gainStage.setGainDb(db);
+    }
+
+    /**
+     * Applies an AirPlay volume (-30..0, -144 for mute); safe to call from any thread.
+     */
+    public void setAirplayVolume(double volume) {
+        gainStage.setAirplayVolume(volume);
+    }
+
+    public void setMuted(boolean muted) {
+        gainStage.setMuted(muted);
+    }
+
+    public double getVolumeDb() {
+        return gainStage.getGainDb();
+    }
 }
@@ -0,0 +1,264 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Real-time mixer for several senders playing at once, drained by the playback thread
+ * like any other {@link PcmSource}.
+ *
+ * Each chunk pulls the same number of frames from every input without waiting, applies
+ * the input's own {@link GainStage} in place and sums into a 32-bit accumulator, so
+ * the sum has headroom for any number of streams. The sum is scaled by the master
+ * headroom; a chunk that still fits in 16 bits is written out untouched, so a single
+ * sender at unity plays bit-exact, and only a chunk whose sum overflows is
+ * soft-limited back into range. An input that cannot fill the whole
+ * chunk contributes silence for the rest, so one stalled sender never holds up the
+ * others.
+ *
+ * Inputs are swapped in copy-on-write, so adding or removing one from another thread
+ * never blocks the playback thread.
+ */
+public class AudioMixer implements PcmSource {
+    private static final int UNITY = GainStage.UNITY;
+    private static final int KNEE = 26000;
+    private static final int CEILING = Short.MAX_VALUE;
+    private static final long IDLE_PARK_NANOS = 5_000_000L;
+
+    /**
+     * One stream feeding the mix, with the time spent mixing it.
+     */
+    public static final class Input {
+        private final PcmSource source;
+        private final GainStage gain;
+        private final AtomicLong mixNanos = new AtomicLong();
+        private final AtomicLong mixedFrames = new AtomicLong();
+        private final AtomicLong starvedFrames = new AtomicLong();
+
+        Input(PcmSource source, GainStage gain) {
+            this.source = source;
+            this.gain = gain;
+        }
+
+        public PcmSource getSource() {
+            return source;
+        }
+
+        public GainStage getGain() {
+            return gain;
+        }
+
+        /**
+         * Playback-thread time spent pulling, scaling and summing this input.
+         */
+        public long getMixNanos() {
+            return mixNanos.get();
+        }
+
+        public long getMixedFrames() {
+            return mixedFrames.get();
+        }
+
+        /**
+         * Frames filled with silence because the input had nothing ready.
+         */
+        public long getStarvedFrames() {
+            return starvedFrames.get();
+        }
+    }
+
+    private final int frameSize;
+    private final ByteBuffer output;
+    private final int[] mix;
+
+    private volatile Input[] inputs = new Input[0];
+    private volatile int headroomGain = UNITY;
+    private final AtomicLong limitedSamples = new AtomicLong();
+
+    /**
+     * @param maxChunkBytes largest chunk the playback thread asks for
+     */
+    public AudioMixer(int channels, int maxChunkBytes) {
+        this.frameSize = channels * 2;
+        int capacity = maxChunkBytes - maxChunkBytes % frameSize;
+        this.output = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        this.mix = new int[capacity / 2];
+    }
+
+    public synchronized Input addInput(PcmSource source, GainStage gain) {
+        Input input = new Input(source, gain);
+        Input[] current = inputs;
+        Input[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = input;
+        inputs = next;
+        return input;
+    }
+
+    public synchronized void removeInput(Input input) {
+        Input[] current = inputs;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == input) {
+                Input[] next = new Input[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, next.length - i);
+                inputs = next;
+                return;
+            }
+        }
+    }
+
+    public int getInputCount() {
+        return inputs.length;
+    }
+
+    public Input[] getInputs() {
+        return inputs.clone();
+    }
+
+    /**
+     * The only input's source, or null unless exactly one input is mixed; a single
+     * sender can still be drift-corrected against its own clock.
+     */
+    public PcmSource getSoleSource() {
+        Input[] current = inputs;
+        return current.length == 1 ? current[0].source : null;
+    }
+
+    /**
+     * Attenuation applied to the sum before the limiter, for rooms where several
+     * senders play loud material at once.
+     */
+    public void setHeadroomDb(double db) {
+        headroomGain = (int) Math.round(UNITY * Math.pow(10, Math.min(0, db) / 20));
+    }
+
+    public long getLimitedSamples() {
+        return limitedSamples.get();
+    }
+
+    @Override
+    public ByteBuffer acquireRead(int maxLength, long timeoutNanos) {
+        Input[] current = inputs;
+        int length = Math.min(maxLength, output.capacity());
+        length -= length % frameSize;
+        int samples = length / 2;
+        Arrays.fill(mix, 0, samples, 0);
+
+        boolean any = false;
+        for (Input input : current) {
+            any |= mixInput(input, length);
+        }
+        if (!any) {
+            if (timeoutNanos > 0) {
+                LockSupport.parkNanos(this, Math.min(timeoutNanos, IDLE_PARK_NANOS));
+            }
+            return null;
+        }
+
+        int master = headroomGain;
+        int peak = 0;
+        for (int i = 0; i < samples; i++) {
+            int sample = mix[i];
+            if (master != UNITY) {
+                sample = (int) (((long) sample * master) >> 15);
+                mix[i] = sample;
+            }
+            peak = Math.max(peak, sample < 0 ? -sample - 1 : sample);
+        }
+
+        if (peak <= CEILING) {
+            for (int i = 0; i < samples; i++) {
+                output.putShort(i * 2, (short) mix[i]);
+            }
+        } else {
+            int limited = 0;
+            for (int i = 0; i < samples; i++) {
+                int sample = mix[i];
+                if (sample > KNEE || sample < -KNEE) {
+                    sample = softLimit(sample);
+                    limited++;
+                }
+                output.putShort(i * 2, (short) sample);
+            }
+            limitedSamples.addAndGet(limited);
+        }
+        output.limit(length).position(0);
+        return output;
+    }
+
+    @Override
+    public boolean releaseRead(int length) {
+        // Inputs were released as they were mixed
+        return true;
+    }
+
+    /**
+     * Deepest input's backlog, so depth metrics reflect the sender furthest behind.
+     */
+    @Override
+    public int available() {
+        int deepest = 0;
+        for (Input input : inputs) {
+            deepest = Math.max(deepest, input.source.available());
+        }
+        return deepest;
+    }
+
+    @Override
+    public int targetAvailable() {
+        int deepest = 0;
+        for (Input input : inputs) {
+            deepest = Math.max(deepest, input.source.targetAvailable());
+        }
+        return deepest;
+    }
+
+    /**
+     * Adds up to {@code length} bytes of one input into the accumulator.
+     *
+     * @return false if the input had nothing ready at all
+     */
+    private boolean mixInput(Input input, int length) {
+        long start = System.nanoTime();
+        PcmSource source = input.source;
+        int filled = 0;
+        while (filled < length) {
+            ByteBuffer view = source.acquireRead(length - filled, 0);
+            if (view == null || !view.hasRemaining()) {
+                break;
+            }
+            int pos = view.position();
+            int bytes = view.remaining();
+            input.gain.process(view, pos, bytes);
+            int base = filled / 2;
+            for (int i = 0, n = bytes / 2; i < n; i++) {
+                mix[base + i] += view.getShort(pos + i * 2);
+            }
+            source.releaseRead(bytes);
+            filled += bytes;
+        }
+
+        if (filled > 0) {
+            input.mixedFrames.addAndGet(filled / frameSize);
+            if (filled < length) {
+                input.starvedFrames.addAndGet((length - filled) / frameSize);
+            }
+        }
+        input.mixNanos.addAndGet(System.nanoTime() - start);
+        return filled > 0;
+    }
+
+    /**
+     * Rational soft clip for overflowing chunks: linear up to the knee, then
+     * approaches full scale without ever reaching it.
+     */
+    private static int softLimit(int sample) {
+        long over = Math.abs((long) sample) - KNEE;
+        long range = CEILING - KNEE;
+        int limited = (int) (KNEE + range * over / (over + range));
+        return sample < 0 ? -limited : limited;
+    }
+}
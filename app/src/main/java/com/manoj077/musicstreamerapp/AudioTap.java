@@ -0,0 +1,89 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copy of what the playback thread plays, for analysis on another thread. A lock-free
+ * single-producer ring of 16-bit interleaved samples that overwrites the oldest: the
+ * writer never waits, and a reader that falls behind loses audio rather than holding
+ * up playback.
+ *
+ * A reader only takes frames within half the ring of the write position, so the
+ * region it copies is never the one being written; a read that was lapped anyway is
+ * reported so the caller can drop it.
+ */
+public class AudioTap {
+    private final int channels;
+    private final int frameMask;
+    private final short[] ring;
+    private final AtomicLong written = new AtomicLong();
+    // Writer only
+    private long writeFrames;
+
+    /**
+     * @param capacityFrames rounded up to a power of two
+     */
+    public AudioTap(int channels, int capacityFrames) {
+        int capacity = Integer.highestOneBit(Math.max(2, capacityFrames) - 1) << 1;
+        this.channels = channels;
+        this.frameMask = capacity - 1;
+        this.ring = new short[capacity * channels];
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Most frames one {@link #read} can return.
+     */
+    public int getMaxReadFrames() {
+        return (frameMask + 1) / 2;
+    }
+
+    /**
+     * Appends {@code length} bytes of PCM at {@code offset}; playback thread only.
+     * Allocates nothing and never blocks.
+     */
+    public void write(ByteBuffer buffer, int offset, int length) {
+        int frames = length / (channels * 2);
+        int pos = (int) (writeFrames & frameMask) * channels;
+        int end = offset + frames * channels * 2;
+        for (int i = offset; i < end; i += 2) {
+            ring[pos++] = buffer.getShort(i);
+            if (pos == ring.length) {
+                pos = 0;
+            }
+        }
+        writeFrames += frames;
+        written.lazySet(writeFrames);
+    }
+
+    /**
+     * Total frames written so far; the newest is at this count minus one.
+     */
+    public long getWrittenFrames() {
+        return written.get();
+    }
+
+    /**
+     * Copies frames {@code [fromFrame, fromFrame + frames)} into {@code dest}.
+     *
+     * @return false if they were no longer, or not yet, all in the ring
+     */
+    public boolean read(long fromFrame, short[] dest, int frames) {
+        long before = written.get();
+        if (frames > getMaxReadFrames() || fromFrame + frames > before
+                || before - fromFrame > getMaxReadFrames()) {
+            return false;
+        }
+        int pos = (int) (fromFrame & frameMask) * channels;
+        int samples = frames * channels;
+        int first = Math.min(samples, ring.length - pos);
+        System.arraycopy(ring, pos, dest, 0, first);
+        System.arraycopy(ring, 0, dest, first, samples - first);
+        // Lapped while copying
+        return written.get() - fromFrame <= getMaxReadFrames();
+    }
+}
@@ -0,0 +1,39 @@
+package com.manoj077.musicstreamerapp;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.Locale;
+
+/**
+ * Decoded bitmaps bounded by the memory they hold rather than by count, least recently
+ * used first out. Evicted bitmaps are not recycled: the UI or the notification may
+ * still show one, and the GC frees it once nothing does.
+ */
+public class BitmapLruCache extends LruCache<String, Bitmap> {
+
+    public BitmapLruCache(int maxBytes) {
+        super(Math.max(1, maxBytes));
+    }
+
+    @Override
+    protected int sizeOf(String key, Bitmap bitmap) {
+        return bitmap.getAllocationByteCount();
+    }
+
+    /**
+     * Changes the memory ceiling, evicting at once if the cache is over the new one.
+     */
+    public void setMaxBytes(int maxBytes) {
+        resize(Math.max(1, maxBytes));
+    }
+
+    /**
+     * Usage against the ceiling and hit statistics, for the logs.
+     */
+    public String toDisplayString() {
+        return String.format(Locale.US,
+                "art cache %d / %d KB, %d hits, %d misses, %d evictions",
+                size() / 1024, maxSize() / 1024, hitCount(), missCount(), evictionCount());
+    }
+}
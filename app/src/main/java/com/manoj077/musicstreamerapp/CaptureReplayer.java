@@ -0,0 +1,308 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Feeds a {@link PacketCapture} back through the receive pipeline: per-sender decode
+ * and jitter buffer, then the {@link AudioMixer}, with a {@link PcmSink} in place of
+ * the AudioTrack. Runs on a plain JVM.
+ *
+ * Audio records hold RTP packets as they reached the decoder, already decrypted, with
+ * resent packets unwrapped. Each sender's packets are decoded with the codec its
+ * format record names, looked up in a {@link CodecRegistry}; a sender with no format
+ * record gets the registry's default. Playout runs on the capture's own clock: every
+ * record is applied at its recorded receive time and a chunk is pulled every 10 ms of
+ * capture time, so a replay is deterministic whatever the speed. Speed only sets how fast that clock is walked
+ * through in real time: 1 at the original pace, higher to accelerate, or
+ * {@link #FLAT_OUT} for as fast as possible.
+ */
+public class CaptureReplayer {
+    public static final double FLAT_OUT = 0;
+
+    private static final int CHUNK_MS = 10;
+    private static final int MAX_STREAMS = 256;
+    private static final int MAX_DATAGRAM_BYTES = 2048;
+
+    private final PcmSink sink;
+    private final CodecRegistry codecs;
+    private final int sampleRate;
+    private final int frameSize;
+    private final long chunkNanos;
+    private final int chunkBytes;
+    private double speed = 1;
+
+    /**
+     * Decode state for one captured sender.
+     */
+    private final class Stream implements AudioDecoder.Output {
+        final JitterBuffer jitterBuffer = JitterBuffer.forAirplay(frameSize, sampleRate);
+        final Counts counts;
+        // Null while the stream's format cannot be decoded
+        AudioDecoder decoder;
+
+        Stream(Counts counts) {
+            this.counts = counts;
+            setFormat(null, codecs.getDefault().getDefaultFmtp());
+        }
+
+        void setFormat(String rtpmap, String fmtp) {
+            release();
+            AudioCodec codec = codecs.find(rtpmap, fmtp);
+            if (codec == null) {
+                return;
+            }
+            try {
+                decoder = codec.newDecoder(rtpmap, fmtp, sampleRate, frameSize / 2);
+                decoder.setOutput(this);
+            } catch (IllegalArgumentException e) {
+                decoder = null;
+            }
+        }
+
+        void decode(RtpPacket packet, long nanos) {
+            if (decoder == null) {
+                counts.decodeErrors++;
+                return;
+            }
+            decoder.decode(packet.sequence, packet.timestamp, packet.buffer,
+                    packet.payloadOffset, packet.payloadLength, nanos);
+        }
+
+        @Override
+        public void onFrame(int seq, long rtpTimestamp, ByteBuffer pcm, long arrivalNanos) {
+            counts.audioPackets++;
+            jitterBuffer.put(seq, rtpTimestamp, pcm, arrivalNanos);
+        }
+
+        @Override
+        public void onError(int seq) {
+            counts.decodeErrors++;
+        }
+
+        void release() {
+            if (decoder != null) {
+                decoder.release();
+                decoder = null;
+            }
+        }
+    }
+
+    /**
+     * Replays with the formats decoded in plain Java, {@link CodecRegistry#javaCodecs()}.
+     */
+    public CaptureReplayer(PcmSink sink, int sampleRate, int channels) {
+        this(sink, CodecRegistry.javaCodecs(), sampleRate, channels);
+    }
+
+    public CaptureReplayer(PcmSink sink, CodecRegistry codecs, int sampleRate, int channels) {
+        this.sink = sink;
+        this.codecs = codecs;
+        this.sampleRate = sampleRate;
+        this.frameSize = channels * 2;
+        this.chunkNanos = CHUNK_MS * 1_000_000L;
+        this.chunkBytes = sampleRate * CHUNK_MS / 1000 * frameSize;
+    }
+
+    /**
+     * @param speed 1 for the original timing, 4 for four times faster, or
+     *              {@link #FLAT_OUT}
+     */
+    public void setSpeed(double speed) {
+        this.speed = Math.max(0, speed);
+    }
+
+    /**
+     * Replays a whole capture, then drains what is still buffered.
+     */
+    public Result replay(PacketCapture.Reader reader) throws IOException {
+        int channels = frameSize / 2;
+        AudioMixer mixer = new AudioMixer(channels, chunkBytes);
+        Stream[] streams = new Stream[MAX_STREAMS];
+        byte[] datagram = new byte[MAX_DATAGRAM_BYTES];
+        RtpPacket packet = new RtpPacket();
+        packet.buffer = datagram;
+        CRC32 crc = new CRC32();
+        Counts counts = new Counts();
+
+        long wallStart = System.nanoTime();
+        long firstNanos = Long.MIN_VALUE;
+        long nextChunkNanos = 0;
+        long lastNanos = 0;
+        reader.rewind();
+        while (reader.next()) {
+            counts.records++;
+            long nanos = reader.nanos;
+            if (firstNanos == Long.MIN_VALUE) {
+                firstNanos = nanos;
+                nextChunkNanos = nanos;
+            }
+            lastNanos = nanos;
+            // Play out everything due before this record arrived
+            while (nextChunkNanos <= nanos) {
+                pace(wallStart, nextChunkNanos - firstNanos);
+                playChunk(mixer, crc, counts);
+                nextChunkNanos += chunkNanos;
+            }
+            pace(wallStart, nanos - firstNanos);
+
+            ByteBuffer payload = reader.payload;
+            switch (reader.kind) {
+                case PacketCapture.KIND_FORMAT: {
+                    byte[] ascii = new byte[payload.remaining()];
+                    payload.get(ascii);
+                    String format = new String(ascii, StandardCharsets.US_ASCII);
+                    Stream stream = stream(streams, mixer, reader.stream, counts);
+                    int newline = format.indexOf('\n');
+                    if (reader.version < 2 || newline < 0) {
+                        stream.setFormat(null, format);
+                    } else {
+                        stream.setFormat(emptyToNull(format.substring(0, newline)),
+                                emptyToNull(format.substring(newline + 1)));
+                    }
+                    break;
+                }
+                case PacketCapture.KIND_PCM:
+                    counts.pcmBytes += payload.remaining();
+                    crc.update(payload.duplicate());
+                    sink.write(payload);
+                    break;
+                case PacketCapture.KIND_AUDIO: {
+                    int length = Math.min(payload.remaining(), datagram.length);
+                    payload.get(datagram, 0, length);
+                    packet.offset = 0;
+                    packet.length = length;
+                    if (packet.parse()) {
+                        stream(streams, mixer, reader.stream, counts).decode(packet, nanos);
+                    } else {
+                        counts.decodeErrors++;
+                    }
+                    break;
+                }
+                default:
+                    // Sync and timing packets: playout here follows the capture clock
+                    break;
+            }
+        }
+
+        // Drain: keep pulling until the mixer has nothing left
+        while (firstNanos != Long.MIN_VALUE && playChunk(mixer, crc, counts)) {
+            nextChunkNanos += chunkNanos;
+            pace(wallStart, nextChunkNanos - firstNanos);
+        }
+
+        for (Stream stream : streams) {
+            if (stream != null) {
+                counts.concealedFrames += stream.jitterBuffer.getConcealedFrames();
+                counts.lateDrops += stream.jitterBuffer.getLateDrops();
+                counts.underruns += stream.jitterBuffer.getUnderruns();
+                stream.release();
+            }
+        }
+        long captured = firstNanos == Long.MIN_VALUE ? 0 : lastNanos - firstNanos;
+        return new Result(counts, frameSize, captured, System.nanoTime() - wallStart,
+                crc.getValue());
+    }
+
+    private Stream stream(Stream[] streams, AudioMixer mixer, int id, Counts counts) {
+        Stream stream = streams[id];
+        if (stream == null) {
+            stream = new Stream(counts);
+            streams[id] = stream;
+            mixer.addInput(stream.jitterBuffer, new GainStage(frameSize / 2, 0));
+        }
+        return stream;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private boolean playChunk(AudioMixer mixer, CRC32 crc, Counts counts) throws IOException {
+        ByteBuffer chunk = mixer.acquireRead(chunkBytes, 0);
+        if (chunk == null) {
+            return false;
+        }
+        int length = chunk.remaining();
+        crc.update(chunk.duplicate());
+        sink.write(chunk);
+        mixer.releaseRead(length);
+        counts.pcmBytes += length;
+        return true;
+    }
+
+    /**
+     * Waits until {@code offsetNanos} of capture time have passed in real time, scaled
+     * by the speed.
+     */
+    private void pace(long wallStart, long offsetNanos) {
+        if (speed <= 0) {
+            return;
+        }
+        long due = wallStart + (long) (offsetNanos / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    private static final class Counts {
+        long records;
+        long audioPackets;
+        long decodeErrors;
+        long pcmBytes;
+        long concealedFrames;
+        long lateDrops;
+        long underruns;
+    }
+
+    /**
+     * What one replay produced. The checksum covers every byte handed to the sink, so
+     * two replays of the same capture can be compared for regressions.
+     */
+    public static final class Result {
+        public final long records;
+        public final long audioPackets;
+        public final long decodeErrors;
+        public final long framesOut;
+        public final long concealedFrames;
+        public final long lateDrops;
+        public final long underruns;
+        public final long capturedNanos;
+        public final long elapsedNanos;
+        public final long checksum;
+
+        Result(Counts counts, int frameSize, long capturedNanos, long elapsedNanos, long checksum) {
+            this.records = counts.records;
+            this.audioPackets = counts.audioPackets;
+            this.decodeErrors = counts.decodeErrors;
+            this.framesOut = counts.pcmBytes / frameSize;
+            this.concealedFrames = counts.concealedFrames;
+            this.lateDrops = counts.lateDrops;
+            this.underruns = counts.underruns;
+            this.capturedNanos = capturedNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Capture time replayed per second of real time.
+         */
+        public double getSpeedup() {
+            return elapsedNanos == 0 ? 0 : (double) capturedNanos / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d records, %d packets, %d frames out (%d concealed, %d late, %d"
+                            + " underruns, %d decode errors), %.1fx real time, crc %08x",
+                    records, audioPackets, framesOut, concealedFrames, lateDrops, underruns,
+                    decodeErrors, getSpeedup(), checksum);
+        }
+    }
+}
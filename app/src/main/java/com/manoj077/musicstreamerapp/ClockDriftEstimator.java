@@ -0,0 +1,119 @@
+package com.manoj077.musicstreamerapp;
+
+/**
+ * Estimates how far the sender's clock runs from the local DAC clock and turns that
+ * into a ppm correction for {@link DriftResampler}.
+ *
+ * Two terms are combined: a feed-forward rate estimate comparing how fast sender RTP
+ * timestamps arrive with how fast the DAC consumes frames, both against the local
+ * monotonic clock, and a slow proportional servo that pulls the buffer fill back to its
+ * target so any residual error cannot accumulate. All timestamps are passed in, so the
+ * estimator can be driven by a simulated clock.
+ */
+public class ClockDriftEstimator {
+    private static final long MIN_RATE_WINDOW_NANOS = 5_000_000_000L;
+    private static final long MAX_RATE_WINDOW_NANOS = 60_000_000_000L;
+    private static final double RATE_SMOOTHING = 0.2;
+    private static final double FILL_SMOOTHING = 0.02;
+
+    private final int sampleRate;
+    private final double maxPpm;
+    private final double fillGainPpm;
+
+    // Rate anchors: sender timestamp and DAC position at the start of the window
+    private boolean anchored;
+    private long anchorSenderTimestamp;
+    private long anchorSenderNanos;
+    private long anchorDacFrames;
+    private long anchorDacNanos;
+
+    private double ratePpm;
+    private boolean hasRate;
+    private double filteredFillError;
+    private volatile double correctionPpm;
+
+    /**
+     * @param maxPpm       largest correction ever requested
+     * @param fillGainPpm  correction applied per second of fill error
+     */
+    public ClockDriftEstimator(int sampleRate, double maxPpm, double fillGainPpm) {
+        this.sampleRate = sampleRate;
+        this.maxPpm = maxPpm;
+        this.fillGainPpm = fillGainPpm;
+    }
+
+    /**
+     * Feeds one observation and returns the updated correction.
+     *
+     * @param nowNanos            local monotonic time of this observation
+     * @param fillFrames          frames currently buffered ahead of the DAC
+     * @param targetFrames        frames the buffer should hold
+     * @param dacFrames           frames the DAC has played (extended, never wraps)
+     * @param senderTimestamp     newest RTP timestamp received (extended), or -1 if unknown
+     * @param senderArrivalNanos  local time that timestamp arrived
+     */
+    public double update(long nowNanos, int fillFrames, int targetFrames, long dacFrames,
+                         long senderTimestamp, long senderArrivalNanos) {
+        if (senderTimestamp >= 0) {
+            updateRate(nowNanos, dacFrames, senderTimestamp, senderArrivalNanos);
+        }
+
+        double fillError = (double) (fillFrames - targetFrames) / sampleRate;
+        filteredFillError += (fillError - filteredFillError) * FILL_SMOOTHING;
+
+        double ppm = (hasRate ? ratePpm : 0) + filteredFillError * fillGainPpm;
+        ppm = Math.max(-maxPpm, Math.min(maxPpm, ppm));
+        correctionPpm = ppm;
+        return ppm;
+    }
+
+    public double getCorrectionPpm() {
+        return correctionPpm;
+    }
+
+    /**
+     * Measured sender-vs-DAC rate difference, without the fill servo.
+     */
+    public double getRatePpm() {
+        return ratePpm;
+    }
+
+    public void reset() {
+        anchored = false;
+        hasRate = false;
+        ratePpm = 0;
+        filteredFillError = 0;
+        correctionPpm = 0;
+    }
+
+    private void updateRate(long nowNanos, long dacFrames, long senderTimestamp,
+                            long senderArrivalNanos) {
+        if (!anchored) {
+            anchorSenderTimestamp = senderTimestamp;
+            anchorSenderNanos = senderArrivalNanos;
+            anchorDacFrames = dacFrames;
+            anchorDacNanos = nowNanos;
+            anchored = true;
+            return;
+        }
+
+        long senderSpan = senderArrivalNanos - anchorSenderNanos;
+        long dacSpan = nowNanos - anchorDacNanos;
+        if (senderSpan < MIN_RATE_WINDOW_NANOS || dacSpan < MIN_RATE_WINDOW_NANOS) {
+            return;
+        }
+
+        double senderRate = (senderTimestamp - anchorSenderTimestamp) * 1e9 / senderSpan;
+        double dacRate = (dacFrames - anchorDacFrames) * 1e9 / dacSpan;
+        if (senderRate > 0 && dacRate > 0) {
+            double ppm = (senderRate / dacRate - 1.0) * 1_000_000.0;
+            ratePpm = hasRate ? ratePpm + (ppm - ratePpm) * RATE_SMOOTHING : ppm;
+            hasRate = true;
+        }
+
+        // Slide the window so old pauses or flushes stop weighing on the estimate
+        if (dacSpan > MAX_RATE_WINDOW_NANOS) {
+            anchored = false;
+        }
+    }
+}
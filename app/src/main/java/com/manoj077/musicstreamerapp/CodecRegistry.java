@@ -0,0 +1,77 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * The formats this receiver plays. The advertised {@code cn} TXT record is generated
+ * from it, and ANNOUNCE picks the stream's codec from it, so a format is either both
+ * advertised and playable or neither. Immutable.
+ */
+public class CodecRegistry {
+    private final AudioCodec defaultCodec;
+    private final List<AudioCodec> codecs;
+
+    /**
+     * @param defaultCodec assumed when ANNOUNCE names no format; also registered
+     * @param others       further formats, tried in order after the default
+     */
+    public CodecRegistry(AudioCodec defaultCodec, AudioCodec... others) {
+        List<AudioCodec> all = new ArrayList<>();
+        all.add(defaultCodec);
+        Collections.addAll(all, others);
+        this.defaultCodec = defaultCodec;
+        this.codecs = Collections.unmodifiableList(all);
+    }
+
+    /**
+     * The formats decoded in plain Java, available on any JVM: ALAC and PCM.
+     */
+    public static CodecRegistry javaCodecs() {
+        return new CodecRegistry(new AlacCodec(), new PcmCodec());
+    }
+
+    public AudioCodec getDefault() {
+        return defaultCodec;
+    }
+
+    public List<AudioCodec> getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Codec for a stream announced with these SDP attributes: the default if there is
+     * no rtpmap, null if no registered codec accepts it.
+     */
+    public AudioCodec find(String rtpmap, String fmtp) {
+        if (rtpmap == null) {
+            return defaultCodec;
+        }
+        for (AudioCodec codec : codecs) {
+            if (codec.accepts(rtpmap, fmtp)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Value of the {@code cn} TXT record, e.g. {@code "0,1,2,3"}.
+     */
+    public String getTxtCodes() {
+        TreeSet<Integer> txtCodes = new TreeSet<>();
+        for (AudioCodec codec : codecs) {
+            txtCodes.add(codec.getTxtCode());
+        }
+        StringBuilder value = new StringBuilder();
+        for (int code : txtCodes) {
+            if (value.length() > 0) {
+                value.append(',');
+            }
+            value.append(code);
+        }
+        return value.toString();
+    }
+}
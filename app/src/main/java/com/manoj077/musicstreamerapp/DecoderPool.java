@@ -0,0 +1,125 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps decoders of sessions that have ended so the next session in the same format
+ * reuses one instead of paying for codec setup (a {@code MediaCodec} instance takes
+ * tens of milliseconds to allocate and configure) on every connect. Decoders are keyed
+ * by codec and stream parameters and reset before reuse. Thread-safe; decoders are
+ * created and released outside the lock.
+ */
+public class DecoderPool {
+    public static final int DEFAULT_MAX_IDLE = 2;
+
+    private final int maxIdle;
+    private final Map<String, ArrayDeque<AudioDecoder>> idle = new HashMap<>();
+    private final Map<AudioDecoder, String> leased = new IdentityHashMap<>();
+    private long created;
+    private long reused;
+
+    /**
+     * @param maxIdle decoders kept per format once returned
+     */
+    public DecoderPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * An idle decoder for this format, or a new one.
+     *
+     * @throws IllegalArgumentException if the codec cannot decode the format
+     */
+    public AudioDecoder acquire(AudioCodec codec, String rtpmap, String fmtp, int sampleRate,
+                                int channels) {
+        String key = codec.getName() + '|' + rtpmap + '|' + fmtp + '|' + sampleRate + '|'
+                + channels;
+        synchronized (this) {
+            ArrayDeque<AudioDecoder> free = idle.get(key);
+            AudioDecoder decoder = free != null ? free.pollFirst() : null;
+            if (decoder != null) {
+                reused++;
+                leased.put(decoder, key);
+                return decoder;
+            }
+        }
+        AudioDecoder decoder = codec.newDecoder(rtpmap, fmtp, sampleRate, channels);
+        synchronized (this) {
+            created++;
+            leased.put(decoder, key);
+        }
+        return decoder;
+    }
+
+    /**
+     * Returns a decoder from {@link #acquire} once its session no longer feeds it. It
+     * is reset and kept, or released if enough of its format are idle already.
+     */
+    public void release(AudioDecoder decoder) {
+        decoder.setOutput(null);
+        String key;
+        synchronized (this) {
+            key = leased.remove(decoder);
+        }
+        if (key != null) {
+            try {
+                decoder.reset();
+            } catch (RuntimeException e) {
+                // A decoder that cannot reset is not worth keeping
+                key = null;
+            }
+        }
+        if (key != null) {
+            synchronized (this) {
+                ArrayDeque<AudioDecoder> free = idle.get(key);
+                if (free == null) {
+                    free = new ArrayDeque<>();
+                    idle.put(key, free);
+                }
+                if (free.size() < maxIdle) {
+                    free.addFirst(decoder);
+                    return;
+                }
+            }
+        }
+        decoder.release();
+    }
+
+    /**
+     * Releases every idle decoder; leased ones are released when returned.
+     */
+    public void clear() {
+        List<AudioDecoder> released = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<AudioDecoder> free : idle.values()) {
+                released.addAll(free);
+            }
+            idle.clear();
+            leased.clear();
+        }
+        for (AudioDecoder decoder : released) {
+            decoder.release();
+        }
+    }
+
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (ArrayDeque<AudioDecoder> free : idle.values()) {
+            count += free.size();
+        }
+        return count;
+    }
+
+    public synchronized long getCreatedCount() {
+        return created;
+    }
+
+    public synchronized long getReusedCount() {
+        return reused;
+    }
+}
@@ -0,0 +1,154 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming stuff/drop resampler for 16-bit interleaved PCM.
+ *
+ * Corrects small clock differences (a few hundred ppm) by occasionally dropping or
+ * inserting a single frame at the end of a chunk, with a short linear crossfade so the
+ * splice is inaudible. Works in place on the caller's buffer; an inserted frame is
+ * exposed through {@link #getInsertedFrame()} and must be written right after the
+ * chunk. Nothing is allocated after construction.
+ */
+public class DriftResampler {
+    private static final int Q15 = 1 << 15;
+
+    private final int channels;
+    private final int frameSize;
+    private final int crossfadeFrames;
+    private final ByteBuffer insertedFrame;
+
+    private double correctionPpm;
+    private double pendingFrames;
+    private boolean inserted;
+
+    private long droppedFrames;
+    private long insertedFrames;
+
+    public DriftResampler(int channels, int crossfadeFrames) {
+        this.channels = channels;
+        this.frameSize = channels * 2;
+        this.crossfadeFrames = Math.max(1, crossfadeFrames);
+        this.insertedFrame = ByteBuffer.allocateDirect(frameSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Positive values consume the source faster than real time (drop frames), negative
+     * values slower (insert frames).
+     */
+    public void setCorrectionPpm(double ppm) {
+        correctionPpm = ppm;
+    }
+
+    public double getCorrectionPpm() {
+        return correctionPpm;
+    }
+
+    /**
+     * Processes {@code length} bytes at absolute {@code offset} of {@code buffer} in
+     * place. The buffer must be little-endian.
+     *
+     * @return number of bytes to play from {@code offset}, one frame less than
+     *         {@code length} if a frame was dropped
+     */
+    public int process(ByteBuffer buffer, int offset, int length) {
+        inserted = false;
+        int frames = length / frameSize;
+        if (frames < 2 || correctionPpm == 0) {
+            return length;
+        }
+
+        pendingFrames += frames * correctionPpm / 1_000_000.0;
+        if (pendingFrames >= 1.0) {
+            pendingFrames -= 1.0;
+            dropLastFrame(buffer, offset, frames);
+            droppedFrames++;
+            return length - frameSize;
+        }
+        if (pendingFrames <= -1.0) {
+            pendingFrames += 1.0;
+            insertFrame(buffer, offset, frames);
+            insertedFrames++;
+            inserted = true;
+        }
+        return length;
+    }
+
+    /**
+     * True if the last {@link #process} call produced an extra frame.
+     */
+    public boolean hasInsertedFrame() {
+        return inserted;
+    }
+
+    /**
+     * The extra frame from the last {@link #process} call, positioned for writing.
+     */
+    public ByteBuffer getInsertedFrame() {
+        insertedFrame.clear();
+        return insertedFrame;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    public long getInsertedFrames() {
+        return insertedFrames;
+    }
+
+    public void reset() {
+        pendingFrames = 0;
+        inserted = false;
+    }
+
+    /**
+     * Shortens the chunk by one frame: the tail glides from each frame towards its
+     * successor, so the chunk ends on the original last frame's neighbourhood.
+     */
+    private void dropLastFrame(ByteBuffer buffer, int offset, int frames) {
+        int window = Math.min(crossfadeFrames, frames - 1);
+        int first = frames - 1 - window;
+        for (int k = 0; k < window; k++) {
+            int frame = first + k;
+            int t = ((k + 1) * Q15) / (window + 1);
+            for (int c = 0; c < channels; c++) {
+                int pos = offset + (frame * channels + c) * 2;
+                int a = buffer.getShort(pos);
+                int b = buffer.getShort(pos + frameSize);
+                buffer.putShort(pos, (short) ((a * (Q15 - t) + b * t) >> 15));
+            }
+        }
+    }
+
+    /**
+     * Lengthens the chunk by one frame: the tail glides from each frame towards its
+     * predecessor and the original last frame becomes the inserted one.
+     */
+    private void insertFrame(ByteBuffer buffer, int offset, int frames) {
+        int lastPos = offset + (frames - 1) * frameSize;
+        for (int c = 0; c < channels; c++) {
+            insertedFrame.putShort(c * 2, buffer.getShort(lastPos + c * 2));
+        }
+
+        int window = Math.min(crossfadeFrames, frames - 1);
+        int first = frames - window;
+        // Walk backwards so each predecessor is still the original sample
+        for (int k = window - 1; k >= 0; k--) {
+            int frame = first + k;
+            int t = ((k + 1) * Q15) / (window + 1);
+            for (int c = 0; c < channels; c++) {
+                int pos = offset + (frame * channels + c) * 2;
+                int a = buffer.getShort(pos);
+                int b = buffer.getShort(pos - frameSize);
+                buffer.putShort(pos, (short) ((a * (Q15 - t) + b * t) >> 15));
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes played PCM to a WAV file, so a replayed capture can be listened to or
+ * compared with a reference.
+ */
+public class FilePcmSink implements PcmSink, Closeable {
+    private static final int WAV_HEADER_BYTES = 44;
+
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private long dataBytes;
+
+    public FilePcmSink(File file, int sampleRate, int channels) throws IOException {
+        this.channel = new FileOutputStream(file).getChannel();
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        // Sizes are filled in on close
+        channel.write(header(0));
+    }
+
+    @Override
+    public int write(ByteBuffer data) throws IOException {
+        int written = 0;
+        while (data.hasRemaining()) {
+            written += channel.write(data);
+        }
+        dataBytes += written;
+        return written;
+    }
+
+    public long getDataBytes() {
+        return dataBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.write(header(dataBytes), 0);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private ByteBuffer header(long dataBytes) {
+        int data = (int) Math.min(dataBytes, Integer.MAX_VALUE - WAV_HEADER_BYTES);
+        int blockAlign = channels * 2;
+        ByteBuffer header = ByteBuffer.allocate(WAV_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt(WAV_HEADER_BYTES - 8 + data)
+                .put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '}).putInt(16)
+                .putShort((short) 1).putShort((short) channels).putInt(sampleRate)
+                .putInt(sampleRate * blockAlign).putShort((short) blockAlign)
+                .putShort((short) 16)
+                .put(new byte[] {'d', 'a', 't', 'a'}).putInt(data);
+        header.flip();
+        return header;
+    }
+}
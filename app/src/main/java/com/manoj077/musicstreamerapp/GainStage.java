@@ -0,0 +1,182 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * In-place volume stage for 16-bit interleaved PCM.
+ *
+ * Gain is fixed point (Q15, unity = 32768, at most +6 dB so a sample times the gain
+ * always fits in an int). Changes are ramped linearly per frame to avoid zipper noise.
+ * Above unity, samples pushed past the limiter knee are soft-clipped instead of
+ * wrapping; at or below unity the signal is never touched by the limiter. The
+ * target is a volatile field read once per chunk, so setters can be called from any
+ * thread while the playback thread processes without locking or allocating.
+ */
+public class GainStage {
+    public static final int UNITY = 1 << 15;
+    public static final double MAX_GAIN_DB = 6.0;
+    public static final double AIRPLAY_MUTE = -144.0;
+
+    // AirPlay sends -30..0, or -144 for mute
+    private static final double AIRPLAY_MIN_VOLUME = -30.0;
+    private static final double AIRPLAY_RANGE_DB = 60.0;
+
+    private static final int MAX_GAIN = 2 * UNITY;
+    private static final int FULL_SCALE = 32767;
+    private static final int LIMITER_KNEE = 26000; // about -2 dBFS
+    private static final int LIMITER_HEADROOM = FULL_SCALE - LIMITER_KNEE;
+
+    private final int channels;
+    private final int frameSize;
+    private final int rampFrames;
+
+    private volatile int targetGain = UNITY;
+    private volatile boolean muted;
+
+    // Playback thread only
+    private int currentGain = UNITY;
+    private int rampTarget = UNITY;
+    private int rampStep;
+    private long limitedSamples;
+
+    /**
+     * @param rampFrames frames over which a gain change is spread
+     */
+    public GainStage(int channels, int rampFrames) {
+        this.channels = channels;
+        this.frameSize = channels * 2;
+        this.rampFrames = Math.max(1, rampFrames);
+    }
+
+    /**
+     * Sets the gain in dB; {@link Double#NEGATIVE_INFINITY} is silence. Values are
+     * clamped to {@link #MAX_GAIN_DB}.
+     */
+    public void setGainDb(double db) {
+        targetGain = dbToGain(db);
+    }
+
+    /**
+     * Applies an AirPlay {@code volume} parameter: -144 mutes, -30..0 is spread
+     * linearly over the bottom 60 dB of attenuation.
+     */
+    public void setAirplayVolume(double volume) {
+        setGainDb(airplayVolumeToDb(volume));
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    public double getGainDb() {
+        int gain = targetGain;
+        return gain == 0 ? Double.NEGATIVE_INFINITY : 20 * Math.log10((double) gain / UNITY);
+    }
+
+    /**
+     * Samples the soft limiter had to bend since construction.
+     */
+    public long getLimitedSamples() {
+        return limitedSamples;
+    }
+
+    /**
+     * Processes {@code length} bytes at absolute {@code offset} of a little-endian
+     * buffer in place.
+     */
+    public void process(ByteBuffer buffer, int offset, int length) {
+        int target = muted ? 0 : targetGain;
+        if (target != rampTarget) {
+            rampTarget = target;
+            rampStep = Math.max(1, Math.abs(target - currentGain) / rampFrames);
+        }
+
+        int frames = length / frameSize;
+        int gain = currentGain;
+        if (gain == target) {
+            if (gain != UNITY) {
+                applyConstant(buffer, offset, frames * channels, gain);
+            }
+            return;
+        }
+
+        int pos = offset;
+        for (int frame = 0; frame < frames; frame++) {
+            if (gain < target) {
+                gain = Math.min(target, gain + rampStep);
+            } else if (gain > target) {
+                gain = Math.max(target, gain - rampStep);
+            }
+            for (int c = 0; c < channels; c++) {
+                buffer.putShort(pos, scale(buffer.getShort(pos), gain));
+                pos += 2;
+            }
+        }
+        currentGain = gain;
+    }
+
+    /**
+     * Converts an AirPlay volume to dB of gain.
+     */
+    public static double airplayVolumeToDb(double volume) {
+        if (volume <= AIRPLAY_MUTE || Double.isNaN(volume)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double clamped = Math.max(AIRPLAY_MIN_VOLUME, Math.min(0, volume));
+        return clamped * (AIRPLAY_RANGE_DB / -AIRPLAY_MIN_VOLUME);
+    }
+
+    private static int dbToGain(double db) {
+        if (Double.isNaN(db) || db == Double.NEGATIVE_INFINITY) {
+            return 0;
+        }
+        double linear = Math.pow(10, Math.min(MAX_GAIN_DB, db) / 20);
+        return (int) Math.min(MAX_GAIN, Math.round(linear * UNITY));
+    }
+
+    private void applyConstant(ByteBuffer buffer, int offset, int samples, int gain) {
+        int end = offset + samples * 2;
+        if (gain == 0) {
+            for (int pos = offset; pos < end; pos += 2) {
+                buffer.putShort(pos, (short) 0);
+            }
+        } else if (gain < UNITY) {
+            // Attenuation can never clip
+            for (int pos = offset; pos < end; pos += 2) {
+                buffer.putShort(pos, (short) ((buffer.getShort(pos) * gain) >> 15));
+            }
+        } else {
+            for (int pos = offset; pos < end; pos += 2) {
+                buffer.putShort(pos, scale(buffer.getShort(pos), gain));
+            }
+        }
+    }
+
+    private short scale(int sample, int gain) {
+        int value = (sample * gain) >> 15;
+        if (gain <= UNITY) {
+            return (short) value;
+        }
+        if (value > LIMITER_KNEE) {
+            limitedSamples++;
+            return (short) (LIMITER_KNEE + soften(value - LIMITER_KNEE));
+        }
+        if (value < -LIMITER_KNEE) {
+            limitedSamples++;
+            return (short) -(LIMITER_KNEE + soften(-LIMITER_KNEE - value));
+        }
+        return (short) value;
+    }
+
+    /**
+     * Maps any excess above the knee onto the remaining headroom; approaches full
+     * scale asymptotically so loud peaks are rounded off rather than clipped.
+     */
+    private static int soften(int excess) {
+        return (int) ((long) excess * LIMITER_HEADROOM / (excess + LIMITER_HEADROOM));
+    }
+}
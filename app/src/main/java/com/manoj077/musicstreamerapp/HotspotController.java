@@ -11,6 +11,8 @@ public class HotspotController {
     private Context context;
     private WifiManager wifiManager;
     private WifiManager.LocalOnlyHotspotReservation hotspotReservation;
+    // Bumped by stop, so a reservation granted after it is closed instead of kept
+    private int generation;
 
     public interface HotspotCallback {
         void onStarted(String ssid, String password);
@@ -24,14 +26,25 @@ public class HotspotController {
     }
 
     public void start(HotspotCallback callback) {
+        final int startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             try {
                 wifiManager.startLocalOnlyHotspot(new WifiManager.LocalOnlyHotspotCallback() {
                     @Override
                     public void onStarted(WifiManager.LocalOnlyHotspotReservation reservation) {
                         super.onStarted(reservation);
+                        synchronized (HotspotController.this) {
+                            if (startGeneration != generation) {
+                                Log.d(TAG, "LocalOnlyHotspot started after stop; closing");
+                                reservation.close();
+                                return;
+                            }
+                            hotspotReservation = reservation;
+                        }
                         Log.d(TAG, "LocalOnlyHotspot started");
-                        hotspotReservation = reservation;
                         
                         String ssid = reservation.getWifiConfiguration().SSID;
                         String password = reservation.getWifiConfiguration().preSharedKey;
@@ -76,7 +89,8 @@ public class HotspotController {
         }
     }
 
-    public void stop() {
+    public synchronized void stop() {
+        generation++;
         if (hotspotReservation != null) {
             try {
                 hotspotReservation.close();
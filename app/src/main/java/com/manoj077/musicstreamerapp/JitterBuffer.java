@@ -0,0 +1,578 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reordering jitter buffer for RTP audio frames.
+ *
+ * Decoded frames are stored by RTP sequence number in preallocated slots of one
+ * direct region, so late and out-of-order packets land in their proper place. Playout
+ * (re)starts once the buffered span reaches a target depth that follows the measured
+ * inter-arrival jitter (RFC 3550 estimator). A missing frame is concealed with a faded
+ * repeat of the last frame played once enough later frames have arrived that waiting
+ * any longer would starve the output.
+ *
+ * One producer (the receive thread) calls {@link #put}; one consumer (the playback
+ * thread) drains it through {@link PcmSource}.
+ */
+public class JitterBuffer implements PcmSource {
+    private static final int EMPTY = -1;
+    private static final int MAX_CONCEALED_IN_ROW = 4; // after that, play silence
+    private static final int JITTER_DEPTH_FACTOR = 4; // target covers 4x measured jitter
+    private static final int UNITY_GAIN = 1 << 15;
+
+    // Sizing for AirPlay streams
+    private static final int AIRPLAY_SLOTS = 512; // ~4s of 352-sample RTP frames
+    private static final int AIRPLAY_MAX_FRAME_BYTES = 4096;
+    private static final int AIRPLAY_MIN_FRAMES = 4;
+    private static final int AIRPLAY_MAX_FRAMES = 256;
+    private static final int AIRPLAY_BASE_MS = 100;
+
+    private final int slotCount;
+    private final int mask;
+    private final int slotBytes;
+    private final int frameSize;
+    private final int sampleRate;
+    private final int minDepth;
+    private final int maxDepth;
+    private volatile long baseDepthSamples;
+
+    private final ByteBuffer storage;
+    private final ByteBuffer producerView;
+    private final ByteBuffer consumerView;
+    private final int concealOffset;
+
+    // Sequence number held by each slot; written last so it publishes the slot
+    private final AtomicIntegerArray slotSeq;
+    private final int[] slotLength;
+    private final long[] slotTimestamp;
+    private final long[] slotArrival;
+
+    private final AtomicInteger playoutSeq = new AtomicInteger();
+    private volatile int highestSeq;
+    private volatile boolean started;
+    private volatile boolean flushRequested;
+    private volatile int epoch;
+    private volatile int targetDepth;
+    private volatile int lastFrameLength;
+    private volatile double jitterSamples;
+    private volatile long lastPlayedTimestamp;
+    private volatile long newestTimestamp = -1;
+    private volatile long newestArrivalNanos;
+
+    // Producer-only state
+    private long baseArrivalNanos;
+    private int lastTransit;
+    private boolean hasTransit;
+
+    // Consumer-only state
+    private int seenEpoch;
+    private boolean playing;
+    private int currentSeq;
+    private int currentBase;
+    private int currentLength;
+    private int currentOffset;
+    private boolean currentConcealed;
+    private long currentArrival;
+    private long currentTimestamp;
+    private int lastPlayedIdx = EMPTY;
+    private int concealedInRow;
+
+    private volatile Thread waitingConsumer;
+    private volatile SenderClock playoutClock;
+
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong playedFrames = new AtomicLong();
+    private final AtomicLong lateDrops = new AtomicLong();
+    private final AtomicLong overflowDrops = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong concealedFrames = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+
+    /**
+     * @param slotCount      number of frames the window can hold, rounded up to a power of two
+     * @param maxFrameBytes  largest decoded frame accepted
+     * @param frameSize      bytes per audio frame (all channels)
+     * @param sampleRate     RTP clock rate
+     * @param minDepth       lowest target depth in frames
+     * @param maxDepth       highest target depth in frames
+     * @param baseDepthMs    depth kept on top of the jitter allowance
+     */
+    public JitterBuffer(int slotCount, int maxFrameBytes, int frameSize, int sampleRate,
+                        int minDepth, int maxDepth, int baseDepthMs) {
+        int slots = Integer.highestOneBit(Math.max(4, slotCount - 1)) << 1;
+        if (slots > 0x4000) {
+            throw new IllegalArgumentException("Too many slots: " + slotCount);
+        }
+        this.slotCount = slots;
+        this.mask = slots - 1;
+        this.frameSize = frameSize;
+        this.slotBytes = maxFrameBytes - (maxFrameBytes % frameSize);
+        this.sampleRate = sampleRate;
+        this.minDepth = Math.max(1, minDepth);
+        this.maxDepth = Math.min(Math.max(this.minDepth, maxDepth), slots - 2);
+        this.baseDepthSamples = (long) sampleRate * baseDepthMs / 1000;
+        this.targetDepth = this.minDepth;
+
+        // One extra slot at the end holds the concealment frame
+        this.concealOffset = slots * slotBytes;
+        this.storage = ByteBuffer.allocateDirect(concealOffset + slotBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.producerView = storage.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.consumerView = storage.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        this.slotSeq = new AtomicIntegerArray(slots);
+        for (int i = 0; i < slots; i++) {
+            slotSeq.set(i, EMPTY);
+        }
+        this.slotLength = new int[slots];
+        this.slotTimestamp = new long[slots];
+        this.slotArrival = new long[slots];
+    }
+
+    /**
+     * Jitter buffer sized for AirPlay streams, as the engine and each session use.
+     */
+    public static JitterBuffer forAirplay(int frameSize, int sampleRate) {
+        return forAirplay(frameSize, sampleRate, AIRPLAY_BASE_MS);
+    }
+
+    public static JitterBuffer forAirplay(int frameSize, int sampleRate, int baseDepthMs) {
+        return new JitterBuffer(AIRPLAY_SLOTS, AIRPLAY_MAX_FRAME_BYTES, frameSize, sampleRate,
+                AIRPLAY_MIN_FRAMES, AIRPLAY_MAX_FRAMES, baseDepthMs);
+    }
+
+    /**
+     * Changes the depth kept on top of the jitter allowance; the target follows at the
+     * next frame. Safe to call from any thread.
+     */
+    public void setBaseDepthMs(int baseDepthMs) {
+        baseDepthSamples = (long) sampleRate * baseDepthMs / 1000;
+    }
+
+    /**
+     * Producer side. Stores one decoded frame under its RTP sequence number.
+     *
+     * @return false if the frame was late, a duplicate or too far ahead of playout
+     */
+    public boolean put(int seq, long rtpTimestamp, byte[] data, int offset, int length,
+                       long arrivalNanos) {
+        length = Math.min(length - length % frameSize, slotBytes);
+        int idx = reserve(seq, length, arrivalNanos);
+        if (idx < 0) {
+            return false;
+        }
+        int base = idx * slotBytes;
+        producerView.limit(base + length).position(base);
+        producerView.put(data, offset, length);
+        publish(idx, seq, rtpTimestamp, length, arrivalNanos);
+        return true;
+    }
+
+    /**
+     * Producer side. Stores the frame between {@code pcm}'s position and limit, for
+     * decoders that deliver into buffers of their own; the position is left advanced
+     * past what was stored.
+     *
+     * @return false if the frame was late, a duplicate or too far ahead of playout
+     */
+    public boolean put(int seq, long rtpTimestamp, ByteBuffer pcm, long arrivalNanos) {
+        int length = pcm.remaining();
+        length = Math.min(length - length % frameSize, slotBytes);
+        int idx = reserve(seq, length, arrivalNanos);
+        if (idx < 0) {
+            return false;
+        }
+        int base = idx * slotBytes;
+        int limit = pcm.limit();
+        pcm.limit(pcm.position() + length);
+        producerView.limit(base + length).position(base);
+        producerView.put(pcm);
+        pcm.limit(limit);
+        publish(idx, seq, rtpTimestamp, length, arrivalNanos);
+        return true;
+    }
+
+    /**
+     * Finds the slot a frame of {@code length} bytes goes in, restarting the sequence
+     * first if needed.
+     *
+     * @return the slot, or -1 if the frame is not stored
+     */
+    private int reserve(int seq, int length, long arrivalNanos) {
+        seq &= 0xffff;
+        if (length <= 0) {
+            return -1;
+        }
+
+        if (!started || flushRequested) {
+            restart(seq, arrivalNanos);
+        }
+
+        int ahead = seqDiff(seq, playoutSeq.get());
+        if (ahead < 0) {
+            lateDrops.incrementAndGet();
+            return -1;
+        }
+        // The slot just behind playout still holds the frame concealment repeats
+        if (ahead >= slotCount - 1) {
+            overflowDrops.incrementAndGet();
+            return -1;
+        }
+
+        int idx = seq & mask;
+        if (slotSeq.get(idx) == seq) {
+            duplicates.incrementAndGet();
+            return -1;
+        }
+        return idx;
+    }
+
+    /**
+     * Makes a slot filled after {@link #reserve} visible to the consumer.
+     */
+    private void publish(int idx, int seq, long rtpTimestamp, int length, long arrivalNanos) {
+        seq &= 0xffff;
+        slotLength[idx] = length;
+        slotTimestamp[idx] = rtpTimestamp;
+        slotArrival[idx] = arrivalNanos;
+        slotSeq.set(idx, seq);
+
+        receivedFrames.incrementAndGet();
+        lastFrameLength = length;
+        if (seqDiff(seq, highestSeq) > 0) {
+            updateJitter(rtpTimestamp, arrivalNanos, length / frameSize);
+            highestSeq = seq;
+        }
+        if (newestTimestamp < 0 || (int) (rtpTimestamp - newestTimestamp) > 0) {
+            // Extend the 32-bit RTP clock so it never wraps for the drift estimator
+            long extended = newestTimestamp < 0 ? (rtpTimestamp & 0xffffffffL)
+                    : newestTimestamp + (int) (rtpTimestamp - newestTimestamp);
+            newestArrivalNanos = arrivalNanos;
+            newestTimestamp = extended;
+        }
+
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Drops everything buffered; the next frame put restarts the sequence (RTSP FLUSH
+     * or a sender restart). Safe to call from any thread.
+     */
+    public void flush() {
+        flushRequested = true;
+    }
+
+    @Override
+    public ByteBuffer acquireRead(int maxLength, long timeoutNanos) {
+        if (currentLength > 0 && seenEpoch == epoch && !flushRequested) {
+            return slice(maxLength);
+        }
+
+        ByteBuffer view = tryAcquire(maxLength);
+        if (view != null || timeoutNanos <= 0) {
+            return view;
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        waitingConsumer = Thread.currentThread();
+        try {
+            while ((view = tryAcquire(maxLength)) == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        return view;
+    }
+
+    @Override
+    public boolean releaseRead(int length) {
+        currentOffset += length;
+        if (currentOffset < currentLength) {
+            return true;
+        }
+
+        boolean intact = true;
+        int idx = currentSeq & mask;
+        if (currentConcealed) {
+            concealedInRow++;
+            concealedFrames.incrementAndGet();
+        } else {
+            intact = slotSeq.compareAndSet(idx, currentSeq, EMPTY);
+            lastPlayedIdx = idx;
+            lastPlayedTimestamp = slotTimestamp[idx];
+            concealedInRow = 0;
+            playedFrames.incrementAndGet();
+        }
+        currentLength = 0;
+
+        // Fails only if a flush restarted the sequence underneath us
+        playoutSeq.compareAndSet(currentSeq, (currentSeq + 1) & 0xffff);
+        return intact;
+    }
+
+    /**
+     * Buffered span in bytes, counting holes still waiting for their packet.
+     */
+    @Override
+    public int available() {
+        return getDepth() * lastFrameLength;
+    }
+
+    @Override
+    public int targetAvailable() {
+        return targetDepth * lastFrameLength;
+    }
+
+    /**
+     * True once frames are flowing and no flush is pending.
+     */
+    public boolean isStarted() {
+        return started && !flushRequested;
+    }
+
+    /**
+     * Buffered span in frames, from the next frame to play up to the newest received.
+     */
+    public int getDepth() {
+        if (!started) {
+            return 0;
+        }
+        return Math.max(0, seqDiff(highestSeq, playoutSeq.get()) + 1);
+    }
+
+    public int getTargetDepth() {
+        return targetDepth;
+    }
+
+    /**
+     * Target depth as time: roughly how long a frame waits between arrival and playout.
+     */
+    public long getTargetDelayNanos() {
+        long samples = (long) targetDepth * (lastFrameLength / frameSize);
+        return samples * 1_000_000_000L / sampleRate;
+    }
+
+    public double getJitterMs() {
+        return jitterSamples * 1000.0 / sampleRate;
+    }
+
+    public long getLastPlayedTimestamp() {
+        return lastPlayedTimestamp;
+    }
+
+    /**
+     * Newest RTP timestamp received, extended past 32 bits, or -1 before the first frame.
+     */
+    public long getNewestTimestamp() {
+        return newestTimestamp;
+    }
+
+    /**
+     * Consumer side. Arrival time of the frame the last acquired view belongs to, or 0
+     * if it was concealed.
+     */
+    public long getPlayingArrivalNanos() {
+        return currentArrival;
+    }
+
+    /**
+     * Consumer side. RTP timestamp of the next frame {@link #acquireRead} would hand
+     * out, or -1 if that frame is missing or playout has not started.
+     */
+    public long peekPlayoutTimestamp() {
+        if (!started || flushRequested || seenEpoch != epoch) {
+            return -1;
+        }
+        if (currentLength > 0) {
+            return currentTimestamp < 0 ? -1
+                    : (currentTimestamp + currentOffset / frameSize) & 0xffffffffL;
+        }
+        int seq = playoutSeq.get();
+        int idx = seq & mask;
+        return slotSeq.get(idx) == seq ? slotTimestamp[idx] & 0xffffffffL : -1;
+    }
+
+    /**
+     * Sender clock that says when each timestamp is due, if the session has one.
+     */
+    public void setPlayoutClock(SenderClock clock) {
+        playoutClock = clock;
+    }
+
+    public SenderClock getPlayoutClock() {
+        return playoutClock;
+    }
+
+    public long getNewestArrivalNanos() {
+        return newestArrivalNanos;
+    }
+
+    public long getReceivedFrames() {
+        return receivedFrames.get();
+    }
+
+    public long getPlayedFrames() {
+        return playedFrames.get();
+    }
+
+    public long getLateDrops() {
+        return lateDrops.get();
+    }
+
+    public long getOverflowDrops() {
+        return overflowDrops.get();
+    }
+
+    public long getDuplicates() {
+        return duplicates.get();
+    }
+
+    public long getConcealedFrames() {
+        return concealedFrames.get();
+    }
+
+    public long getUnderruns() {
+        return underruns.get();
+    }
+
+    private void restart(int seq, long arrivalNanos) {
+        for (int i = 0; i < slotCount; i++) {
+            slotSeq.set(i, EMPTY);
+        }
+        baseArrivalNanos = arrivalNanos;
+        hasTransit = false;
+        newestTimestamp = -1;
+        highestSeq = seq;
+        playoutSeq.set(seq);
+        // Epoch first: a consumer that sees the flush cleared must also see the new epoch
+        epoch++;
+        flushRequested = false;
+        started = true;
+    }
+
+    private void updateJitter(long rtpTimestamp, long arrivalNanos, int samplesPerFrame) {
+        long arrivalSamples = (arrivalNanos - baseArrivalNanos) * sampleRate / 1_000_000_000L;
+        int transit = (int) (arrivalSamples - rtpTimestamp);
+        if (hasTransit) {
+            int d = Math.abs(transit - lastTransit);
+            double jitter = jitterSamples + (d - jitterSamples) / 16.0;
+            jitterSamples = jitter;
+
+            long wanted = baseDepthSamples + (long) (JITTER_DEPTH_FACTOR * jitter);
+            int depth = (int) ((wanted + samplesPerFrame - 1) / Math.max(1, samplesPerFrame));
+            targetDepth = Math.max(minDepth, Math.min(maxDepth, depth));
+        }
+        lastTransit = transit;
+        hasTransit = true;
+    }
+
+    private ByteBuffer tryAcquire(int maxLength) {
+        if (!started || flushRequested) {
+            return null;
+        }
+        if (seenEpoch != epoch) {
+            seenEpoch = epoch;
+            playing = false;
+            currentLength = 0;
+            lastPlayedIdx = EMPTY;
+            concealedInRow = 0;
+        }
+
+        int seq = playoutSeq.get();
+        int buffered = seqDiff(highestSeq, seq) + 1;
+        if (!playing) {
+            if (buffered < targetDepth) {
+                return null;
+            }
+            playing = true;
+        }
+
+        int idx = seq & mask;
+        if (slotSeq.get(idx) == seq) {
+            currentBase = idx * slotBytes;
+            currentLength = slotLength[idx];
+            currentArrival = slotArrival[idx];
+            currentTimestamp = slotTimestamp[idx];
+            currentConcealed = false;
+        } else {
+            if (buffered <= 1) {
+                // Nothing newer has arrived either: a real underrun, re-prime
+                underruns.incrementAndGet();
+                playing = false;
+                return null;
+            }
+            if (buffered - 1 < Math.max(1, targetDepth / 2)) {
+                // Give a reordered packet a chance before concealing it
+                return null;
+            }
+            currentBase = concealOffset;
+            currentLength = conceal();
+            currentArrival = 0;
+            currentTimestamp = -1;
+            currentConcealed = true;
+        }
+        currentSeq = seq;
+        currentOffset = 0;
+        return slice(maxLength);
+    }
+
+    private ByteBuffer slice(int maxLength) {
+        int length = Math.min(maxLength, currentLength - currentOffset);
+        length -= length % frameSize;
+        int start = currentBase + currentOffset;
+        consumerView.limit(start + length).position(start);
+        return consumerView;
+    }
+
+    /**
+     * Fills the concealment slot with the last frame, faded by half per missing frame
+     * in a row, or with silence once the run is too long to sound like the original.
+     */
+    private int conceal() {
+        int length = lastPlayedIdx != EMPTY ? slotLength[lastPlayedIdx] : lastFrameLength;
+        length = Math.min(length, slotBytes);
+        int samples = length / 2;
+        consumerView.clear();
+
+        if (lastPlayedIdx == EMPTY || concealedInRow >= MAX_CONCEALED_IN_ROW) {
+            for (int i = 0; i < samples; i++) {
+                consumerView.putShort(concealOffset + i * 2, (short) 0);
+            }
+            return length;
+        }
+
+        // First repeat reads the original frame, later ones fade the previous repeat
+        int source = concealedInRow == 0 ? lastPlayedIdx * slotBytes : concealOffset;
+        int channels = frameSize / 2;
+        int frames = samples / channels;
+        int startGain = concealedInRow == 0 ? UNITY_GAIN : UNITY_GAIN >> 1;
+        int endGain = UNITY_GAIN >> 1;
+        for (int f = 0; f < frames; f++) {
+            int gain = startGain + (endGain - startGain) * f / frames;
+            for (int c = 0; c < channels; c++) {
+                int pos = (f * channels + c) * 2;
+                int sample = consumerView.getShort(source + pos);
+                consumerView.putShort(concealOffset + pos, (short) ((sample * gain) >> 15));
+            }
+        }
+        return length;
+    }
+
+    private static int seqDiff(int a, int b) {
+        return (short) (a - b);
+    }
+}
@@ -0,0 +1,123 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the receiver's own latency, the delay it adds on top of the sender's
+ * schedule, so it can be reported to senders in the RTSP {@code Audio-Latency} header.
+ *
+ * Each sample is the track's output latency, derived from an
+ * {@code AudioTrack.getTimestamp} pair and the frames written so far; that covers the
+ * track buffer and the device's mixer and DAC delay, which differ from phone to phone.
+ * Audio queued ahead of the track is not counted: while playout follows the sender's
+ * clock, that queue is the sender's own lead and only the jitter buffer's target adds
+ * to it, which the caller passes in. The estimate is the median of the latest samples,
+ * so a stalled timestamp does not move it. Until enough samples have arrived it reports the seeded value, normally the
+ * estimate persisted from an earlier run on the same device. All timestamps are passed
+ * in; samples come from the playback thread, reads from any thread.
+ */
+public class LatencyCalibrator {
+    /** Samples the median covers; at the engine's 10 Hz that is 3 seconds */
+    public static final int WINDOW = 31;
+    /** Samples needed before the estimate replaces the seed */
+    public static final int MIN_SAMPLES = 10;
+
+    // Beyond this a sample is a glitch, not a latency
+    private static final long MAX_SAMPLE_NANOS = 2_000_000_000L;
+
+    private final int sampleRate;
+    // Playback thread only
+    private final long[] window = new long[WINDOW];
+    private final long[] sorted = new long[WINDOW];
+    private int next;
+    private volatile int filled;
+
+    private volatile long seedNanos;
+    private volatile long estimateNanos;
+    private volatile long samples;
+    private volatile long rejected;
+
+    public LatencyCalibrator(int sampleRate, long seedNanos) {
+        this.sampleRate = sampleRate;
+        this.seedNanos = seedNanos;
+        this.estimateNanos = seedNanos;
+    }
+
+    /**
+     * One measurement at {@code nowNanos}.
+     *
+     * @param framesWritten  frames written to the track since it started
+     * @param presentedFrame frame position of the track's latest timestamp
+     * @param presentedNanos time that frame left the DAC
+     * @param bufferNanos    playout delay added ahead of the track: the jitter buffer's
+     *                       target while the sender's clock is followed, else 0
+     */
+    public void addSample(long nowNanos, long framesWritten, long presentedFrame,
+                          long presentedNanos, long bufferNanos) {
+        if (framesWritten <= presentedFrame) {
+            // Nothing written is still in flight; the track has run dry
+            rejected++;
+            return;
+        }
+        long outputNanos = presentedNanos - nowNanos
+                + (framesWritten - presentedFrame) * 1_000_000_000L / sampleRate;
+        long latency = outputNanos + bufferNanos;
+        if (outputNanos <= 0 || latency > MAX_SAMPLE_NANOS) {
+            rejected++;
+            return;
+        }
+        window[next] = latency;
+        next = (next + 1) % WINDOW;
+        filled = Math.min(WINDOW, filled + 1);
+        samples++;
+        if (filled >= MIN_SAMPLES) {
+            System.arraycopy(window, 0, sorted, 0, filled);
+            Arrays.sort(sorted, 0, filled);
+            estimateNanos = sorted[filled / 2];
+        }
+    }
+
+    /**
+     * Starts over from {@code seedNanos}, e.g. after the output path changed. On the
+     * thread adding samples, or while none are added.
+     */
+    public void reset(long seedNanos) {
+        next = 0;
+        filled = 0;
+        this.seedNanos = seedNanos;
+        estimateNanos = seedNanos;
+    }
+
+    /**
+     * Whether the estimate comes from this run's measurements rather than the seed.
+     */
+    public boolean isCalibrated() {
+        return filled >= MIN_SAMPLES;
+    }
+
+    public long getLatencyNanos() {
+        return estimateNanos;
+    }
+
+    /**
+     * The estimate in frames, as the {@code Audio-Latency} header carries it.
+     */
+    public int getLatencyFrames() {
+        return (int) (estimateNanos * sampleRate / 1_000_000_000L);
+    }
+
+    public long getSeedNanos() {
+        return seedNanos;
+    }
+
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Samples discarded as implausible.
+     */
+    public long getRejectedSamples() {
+        return rejected;
+    }
+}
@@ -0,0 +1,91 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.Arrays;
+
+/**
+ * Peak and RMS level of 16-bit interleaved PCM per channel, in dBFS. The peak falls
+ * back at a fixed rate after a transient, like a meter's needle, so a reader sampling
+ * less often than blocks arrive still sees it. The RMS covers the latest block.
+ * Not thread-safe; the {@link SpectrumAnalyzer} feeds it on its own thread.
+ */
+public class LevelMeter {
+    public static final double SILENCE_DB = -96.0;
+
+    private static final double FULL_SCALE = 32768.0;
+    private static final double PEAK_FALL_DB_PER_SECOND = 24;
+
+    private final int channels;
+    private final double fallDbPerFrame;
+    private final double[] peakDb;
+    private final double[] rmsDb;
+    private final int[] blockPeaks;
+    private final double[] blockSquares;
+
+    public LevelMeter(int channels, int sampleRate) {
+        this.channels = channels;
+        this.fallDbPerFrame = PEAK_FALL_DB_PER_SECOND / sampleRate;
+        this.peakDb = new double[channels];
+        this.rmsDb = new double[channels];
+        this.blockPeaks = new int[channels];
+        this.blockSquares = new double[channels];
+        Arrays.fill(peakDb, SILENCE_DB);
+        Arrays.fill(rmsDb, SILENCE_DB);
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Measures {@code frames} frames starting at sample {@code offset}.
+     */
+    public void process(short[] samples, int offset, int frames) {
+        if (frames <= 0) {
+            return;
+        }
+        for (int c = 0; c < channels; c++) {
+            blockPeaks[c] = 0;
+            blockSquares[c] = 0;
+        }
+        int end = offset + frames * channels;
+        for (int i = offset; i < end; ) {
+            for (int c = 0; c < channels; c++, i++) {
+                int sample = samples[i];
+                int magnitude = Math.abs(sample);
+                if (magnitude > blockPeaks[c]) {
+                    blockPeaks[c] = magnitude;
+                }
+                blockSquares[c] += sample * sample;
+            }
+        }
+        double fall = fallDbPerFrame * frames;
+        for (int c = 0; c < channels; c++) {
+            peakDb[c] = Math.max(toDb(blockPeaks[c]), Math.max(SILENCE_DB, peakDb[c] - fall));
+            rmsDb[c] = toDb(Math.sqrt(blockSquares[c] / frames));
+        }
+    }
+
+    /**
+     * Accounts for {@code frames} frames of silence without needing the samples.
+     */
+    public void silence(int frames) {
+        double fall = fallDbPerFrame * frames;
+        for (int c = 0; c < channels; c++) {
+            peakDb[c] = Math.max(SILENCE_DB, peakDb[c] - fall);
+            rmsDb[c] = SILENCE_DB;
+        }
+    }
+
+    public double getPeakDb(int channel) {
+        return peakDb[channel];
+    }
+
+    public double getRmsDb(int channel) {
+        return rmsDb[channel];
+    }
+
+    static double toDb(double level) {
+        return level <= 0 ? SILENCE_DB
+                : Math.max(SILENCE_DB, 20 * Math.log10(level / FULL_SCALE));
+    }
+}
@@ -2,14 +2,20 @@ package com.manoj077.musicstreamerapp;
 
 import android.Manifest;
 import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.view.View;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -17,8 +23,14 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
+import java.util.Locale;
+
 public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_PERMISSIONS = 100;
+    private static final int TELEMETRY_FPS = 15;
+    private static final long METRICS_REFRESH_NANOS = 1_000_000_000L;
+    // Below this on every channel the output counts as silence
+    private static final double SILENCE_THRESHOLD_DB = -60;
 
     private Button startButton;
     private Button stopButton;
@@ -26,7 +38,21 @@ public class MainActivity extends AppCompatActivity {
     private TextView hotspotInfoText;
     private TextView passwordInfoText;
     private TextView airplayNameText;
+    private TextView metricsText;
+    private TextView telemetryText;
+    private TextView levelText;
+    private SpectrumView spectrumView;
+    private TextView nowPlayingText;
+    private ImageView coverArtImage;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TelemetryChannel.Subscription telemetrySubscription;
+    private MetadataPipeline metadata;
+    private final MetadataPipeline.Listener nowPlayingListener = this::updateNowPlaying;
+    private MetadataPipeline.NowPlaying nowPlaying;
+    private long lastMetricsNanos;
 
+    // Lifecycle changes only; live status comes over the telemetry channel
     private BroadcastReceiver statusReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -34,6 +60,22 @@ public class MainActivity extends AppCompatActivity {
         }
     };
 
+    private final ServiceConnection telemetryConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            ReceiverService.TelemetryBinder binder = (ReceiverService.TelemetryBinder) service;
+            telemetrySubscription = binder.getTelemetry().subscribe(
+                    MainActivity.this::updateTelemetry, mainHandler::post, TELEMETRY_FPS);
+            metadata = binder.getMetadata();
+            metadata.addListener(nowPlayingListener);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            cancelTelemetry();
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -45,6 +87,12 @@ public class MainActivity extends AppCompatActivity {
         hotspotInfoText = findViewById(R.id.hotspotInfoText);
         passwordInfoText = findViewById(R.id.passwordInfoText);
         airplayNameText = findViewById(R.id.airplayNameText);
+        metricsText = findViewById(R.id.metricsText);
+        telemetryText = findViewById(R.id.telemetryText);
+        levelText = findViewById(R.id.levelText);
+        spectrumView = findViewById(R.id.spectrumView);
+        nowPlayingText = findViewById(R.id.nowPlayingText);
+        coverArtImage = findViewById(R.id.coverArtImage);
 
         startButton.setOnClickListener(v -> {
             if (checkPermissions()) {
@@ -57,6 +105,20 @@ public class MainActivity extends AppCompatActivity {
         stopButton.setOnClickListener(v -> stopReceiverService());
     }
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Without BIND_AUTO_CREATE: connects whenever the service runs, never starts it
+        bindService(new Intent(this, ReceiverService.class), telemetryConnection, 0);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        cancelTelemetry();
+        unbindService(telemetryConnection);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
@@ -163,6 +225,10 @@ public class MainActivity extends AppCompatActivity {
             statusText.setText("Status: " + status);
             
             if (status.equals("Running")) {
+                long startupMs = intent.getLongExtra(ReceiverService.EXTRA_STARTUP_MS, -1);
+                if (startupMs >= 0) {
+                    statusText.setText(getString(R.string.status_running_startup, startupMs));
+                }
                 startButton.setEnabled(false);
                 stopButton.setEnabled(true);
                 
@@ -178,13 +244,116 @@ public class MainActivity extends AppCompatActivity {
                     airplayNameText.setText(getString(R.string.airplay_name, airplayName));
                     airplayNameText.setVisibility(View.VISIBLE);
                 }
+            } else if (status.equals("Standby")) {
+                // Start resumes at once; Stop shuts down for good
+                statusText.setText(R.string.status_standby);
+                startButton.setEnabled(true);
+                stopButton.setEnabled(true);
+                metricsText.setVisibility(View.GONE);
+                levelText.setVisibility(View.GONE);
+                spectrumView.setVisibility(View.GONE);
+                lastMetricsNanos = 0;
             } else {
                 startButton.setEnabled(true);
                 stopButton.setEnabled(false);
                 hotspotInfoText.setVisibility(View.GONE);
                 passwordInfoText.setVisibility(View.GONE);
                 airplayNameText.setVisibility(View.GONE);
+                metricsText.setVisibility(View.GONE);
+                telemetryText.setVisibility(View.GONE);
+                levelText.setVisibility(View.GONE);
+                spectrumView.setVisibility(View.GONE);
+                lastMetricsNanos = 0;
             }
         }
     }
+
+    private void updateTelemetry(TelemetrySnapshot snapshot) {
+        if (!"RUNNING".equals(snapshot.state) && !"STANDBY".equals(snapshot.state)) {
+            return;
+        }
+        telemetryText.setText(getString(R.string.telemetry_info, snapshot.toDisplayString()));
+        telemetryText.setVisibility(View.VISIBLE);
+        if ("RUNNING".equals(snapshot.state)) {
+            updateLevels(snapshot.analysis);
+        }
+        // The full counters change slowly and are costly to lay out; refresh them at 1 Hz
+        if (!"RUNNING".equals(snapshot.state)
+                || snapshot.timeNanos - lastMetricsNanos < METRICS_REFRESH_NANOS) {
+            return;
+        }
+        lastMetricsNanos = snapshot.timeNanos;
+        renderNowPlaying(snapshot.timeNanos);
+        metricsText.setText(getString(R.string.metrics_info, snapshot.metrics.toDisplayString()));
+        metricsText.setVisibility(View.VISIBLE);
+    }
+
+    private void updateLevels(SpectrumAnalyzer.Snapshot analysis) {
+        // "Running" alone does not say whether anything is audible
+        if (analysis.isSilent(SILENCE_THRESHOLD_DB)) {
+            levelText.setText(R.string.level_silent);
+        } else {
+            int right = analysis.getChannels() - 1;
+            levelText.setText(getString(R.string.level_info,
+                    analysis.getPeakDb(0), analysis.getRmsDb(0),
+                    analysis.getPeakDb(right), analysis.getRmsDb(right)));
+        }
+        levelText.setVisibility(View.VISIBLE);
+        spectrumView.setSpectrum(analysis);
+        spectrumView.setVisibility(View.VISIBLE);
+    }
+
+    private void updateNowPlaying(MetadataPipeline.NowPlaying nowPlaying) {
+        this.nowPlaying = nowPlaying;
+        if (nowPlaying.isEmpty()) {
+            nowPlayingText.setVisibility(View.GONE);
+            coverArtImage.setImageBitmap(null);
+            coverArtImage.setVisibility(View.GONE);
+            return;
+        }
+        renderNowPlaying(System.nanoTime());
+        // Already decoded and scaled off the main thread
+        coverArtImage.setImageBitmap(nowPlaying.artwork);
+        coverArtImage.setVisibility(nowPlaying.artwork != null ? View.VISIBLE : View.GONE);
+    }
+
+    /**
+     * Track text with the position advanced from the sender's last progress update.
+     */
+    private void renderNowPlaying(long nowNanos) {
+        MetadataPipeline.NowPlaying playing = nowPlaying;
+        if (playing == null || playing.isEmpty()) {
+            return;
+        }
+        TrackMetadata track = playing.track;
+        String title = track != null && track.title != null ? track.title
+                : getString(R.string.not_available);
+        String subtitle = track != null && track.getSubtitle() != null ? track.getSubtitle() : "";
+        String progress = "";
+        if (playing.durationMs > 0 && playing.progressNanos != 0) {
+            long position = playing.positionMs + (nowNanos - playing.progressNanos) / 1_000_000;
+            progress = formatTime(Math.min(position, playing.durationMs)) + " / "
+                    + formatTime(playing.durationMs);
+        } else if (playing.durationMs > 0) {
+            progress = formatTime(playing.durationMs);
+        }
+        nowPlayingText.setText(getString(R.string.now_playing, title, subtitle, progress));
+        nowPlayingText.setVisibility(View.VISIBLE);
+    }
+
+    private static String formatTime(long ms) {
+        long seconds = ms / 1000;
+        return String.format(Locale.US, "%d:%02d", seconds / 60, seconds % 60);
+    }
+
+    private void cancelTelemetry() {
+        if (telemetrySubscription != null) {
+            telemetrySubscription.cancel();
+            telemetrySubscription = null;
+        }
+        if (metadata != null) {
+            metadata.removeListener(nowPlayingListener);
+            metadata = null;
+        }
+    }
 }
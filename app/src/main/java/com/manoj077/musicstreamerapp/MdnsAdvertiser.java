@@ -11,6 +11,11 @@ import java.util.HashMap;
 import javax.jmdns.JmDNS;
 import javax.jmdns.ServiceInfo;
 
+/**
+ * Advertises the receiver over mDNS. Every method blocks and they are serialized on
+ * this object, so a stop can never interleave with a start; the caller decides which
+ * thread pays for that, normally the {@link ReceiverLifecycle} thread.
+ */
 public class MdnsAdvertiser {
     private static final String TAG = "MdnsAdvertiser";
     private static final String SERVICE_TYPE = "_airplay._tcp.local.";
@@ -23,81 +28,115 @@ public class MdnsAdvertiser {
         this.context = context;
     }
 
-    public void start(String deviceName, int port) {
-        new Thread(() -> {
-            try {
-                // Acquire multicast lock
-                WifiManager wifiManager = (WifiManager) context.getApplicationContext()
-                        .getSystemService(Context.WIFI_SERVICE);
-                if (wifiManager != null) {
-                    multicastLock = wifiManager.createMulticastLock("AirPlayLock");
-                    multicastLock.setReferenceCounted(true);
-                    multicastLock.acquire();
-                }
-
-                // Get local IP address
-                InetAddress localAddress = getLocalInetAddress();
-                if (localAddress == null) {
-                    Log.e(TAG, "Could not determine local IP address");
-                    return;
-                }
-
-                // Create JmDNS instance
-                jmdns = JmDNS.create(localAddress, deviceName);
-                
-                // Prepare service info with AirPlay TXT records
-                HashMap<String, String> txtRecords = new HashMap<>();
-                txtRecords.put("txtvers", "1");
-                txtRecords.put("ch", "2");  // 2 channels (stereo)
-                txtRecords.put("cn", "0,1");  // Codec: PCM
-                txtRecords.put("et", "0,1");  // Encryption types
-                txtRecords.put("md", "0,1,2");  // Metadata support
-                txtRecords.put("pw", "false");  // No password required
-                txtRecords.put("sr", "44100");  // Sample rate
-                txtRecords.put("ss", "16");  // Sample size
-                txtRecords.put("tp", "UDP");  // Transport protocol
-                txtRecords.put("vn", "3");  // Version
-                txtRecords.put("vs", "220.68");  // Server version
-                txtRecords.put("am", "MusicStreamerApp");  // Model
-                txtRecords.put("sf", "0x4");  // Features
-
-                ServiceInfo serviceInfo = ServiceInfo.create(
-                        SERVICE_TYPE,
-                        deviceName,
-                        port,
-                        0,
-                        0,
-                        txtRecords
-                );
-
-                // Register service
-                jmdns.registerService(serviceInfo);
-                Log.d(TAG, "mDNS service registered: " + deviceName + " on port " + port);
-                
-            } catch (IOException e) {
-                Log.e(TAG, "Error starting mDNS", e);
+    /**
+     * Takes the multicast lock and creates the JmDNS instance on the local address,
+     * replacing any left from an earlier start. Needs the network up but not the RTSP
+     * port.
+     *
+     * @return false if the local address is unknown
+     */
+    public synchronized boolean prepare(String deviceName) throws IOException {
+        closeJmdns();
+
+        // Acquire multicast lock; not reference counted, so a repeat cannot leak one
+        WifiManager wifiManager = (WifiManager) context.getApplicationContext()
+                .getSystemService(Context.WIFI_SERVICE);
+        if (wifiManager != null) {
+            if (multicastLock == null) {
+                multicastLock = wifiManager.createMulticastLock("AirPlayLock");
+                multicastLock.setReferenceCounted(false);
             }
-        }).start();
+            if (!multicastLock.isHeld()) {
+                multicastLock.acquire();
+            }
+        }
+
+        // Get local IP address
+        InetAddress localAddress = getLocalInetAddress();
+        if (localAddress == null) {
+            Log.e(TAG, "Could not determine local IP address");
+            return false;
+        }
+
+        // Create JmDNS instance
+        jmdns = JmDNS.create(localAddress, deviceName);
+        return true;
     }
 
-    public void stop() {
-        new Thread(() -> {
-            if (jmdns != null) {
-                try {
-                    jmdns.unregisterAllServices();
-                    jmdns.close();
-                    jmdns = null;
-                    Log.d(TAG, "mDNS service stopped");
-                } catch (IOException e) {
-                    Log.e(TAG, "Error stopping mDNS", e);
-                }
-            }
+    /**
+     * Service description with the AirPlay TXT records; needs nothing running. The
+     * codec and PCM format records describe what {@code codecs} decode to the engine's
+     * output format.
+     */
+    public ServiceInfo buildServiceInfo(String deviceName, int port, CodecRegistry codecs,
+                                        int sampleRate, int sampleSize, int channels) {
+        HashMap<String, String> txtRecords = new HashMap<>();
+        txtRecords.put("txtvers", "1");
+        txtRecords.put("ch", Integer.toString(channels));  // Channels
+        txtRecords.put("cn", codecs.getTxtCodes());  // Codecs
+        txtRecords.put("et", "0");  // Encryption types: none, no RSA key to unwrap AES keys
+        txtRecords.put("md", "0,1,2");  // Metadata support
+        txtRecords.put("pw", "false");  // No password required
+        txtRecords.put("sr", Integer.toString(sampleRate));  // Sample rate
+        txtRecords.put("ss", Integer.toString(sampleSize));  // Sample size
+        txtRecords.put("tp", "UDP");  // Transport protocol
+        txtRecords.put("vn", "3");  // Version
+        txtRecords.put("vs", "220.68");  // Server version
+        txtRecords.put("am", "MusicStreamerApp");  // Model
+        txtRecords.put("sf", "0x4");  // Features
 
-            if (multicastLock != null && multicastLock.isHeld()) {
-                multicastLock.release();
-                multicastLock = null;
-            }
-        }).start();
+        return ServiceInfo.create(
+                SERVICE_TYPE,
+                deviceName,
+                port,
+                0,
+                0,
+                txtRecords
+        );
+    }
+
+    /**
+     * Announces the service; from here on senders can discover the receiver.
+     */
+    public synchronized void register(ServiceInfo serviceInfo) throws IOException {
+        if (jmdns == null) {
+            throw new IOException("mDNS not prepared");
+        }
+        jmdns.registerService(serviceInfo);
+        Log.d(TAG, "mDNS service registered: " + serviceInfo.getName() + " on port "
+                + serviceInfo.getPort());
+    }
+
+    /**
+     * Unregisters, closes JmDNS and releases the multicast lock. Safe to call when
+     * nothing was started.
+     */
+    public synchronized void stop() {
+        closeJmdns();
+
+        if (multicastLock != null && multicastLock.isHeld()) {
+            multicastLock.release();
+        }
+        multicastLock = null;
+    }
+
+    public synchronized boolean isMulticastLockHeld() {
+        return multicastLock != null && multicastLock.isHeld();
+    }
+
+    private void closeJmdns() {
+        if (jmdns == null) {
+            return;
+        }
+        try {
+            jmdns.unregisterAllServices();
+            jmdns.close();
+            Log.d(TAG, "mDNS service stopped");
+        } catch (IOException e) {
+            Log.e(TAG, "Error stopping mDNS", e);
+        } finally {
+            jmdns = null;
+        }
     }
 
     private InetAddress getLocalInetAddress() {
@@ -0,0 +1,281 @@
+package com.manoj077.musicstreamerapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * What the senders say is playing: DMAP track info, cover art and progress from their
+ * SET_PARAMETER requests, for the UI and the notification. The RTSP thread only hands
+ * the bodies over; parsing and decoding run on one background thread, and listeners
+ * are called on the main thread. Nothing here runs on or waits for the audio path.
+ *
+ * Cover art is down-sampled with {@code inSampleSize} so its longer side is at most
+ * twice the requested size, and kept in a {@link BitmapLruCache} keyed by content: the
+ * same cover, resent on every reconnect or repeat, is decoded once.
+ */
+public class MetadataPipeline {
+    private static final String TAG = "MetadataPipeline";
+
+    public static final int DEFAULT_CACHE_BYTES = 4 * 1024 * 1024;
+    /** Longer side cover art is decoded down to, but not below */
+    public static final int DEFAULT_ART_PX = 512;
+
+    public interface Listener {
+        void onNowPlaying(NowPlaying nowPlaying);
+    }
+
+    /**
+     * One consistent view of the current track; immutable.
+     */
+    public static final class NowPlaying {
+        static final NowPlaying NOTHING = new NowPlaying(null, null, 0, 0, 0);
+
+        /** Null until the sender describes the track */
+        public final TrackMetadata track;
+        /** Null if the sender sent none or it could not be decoded */
+        public final Bitmap artwork;
+        /** Playback position at {@link #progressNanos}, 0 if unknown */
+        public final long positionMs;
+        /** From the progress updates, else the DMAP track length; 0 if unknown */
+        public final long durationMs;
+        /** {@link System#nanoTime()} of the latest progress update */
+        public final long progressNanos;
+
+        NowPlaying(TrackMetadata track, Bitmap artwork, long positionMs, long durationMs,
+                   long progressNanos) {
+            this.track = track;
+            this.artwork = artwork;
+            this.positionMs = positionMs;
+            this.durationMs = durationMs;
+            this.progressNanos = progressNanos;
+        }
+
+        public boolean isEmpty() {
+            return (track == null || track.isEmpty()) && artwork == null;
+        }
+
+        NowPlaying withTrack(TrackMetadata track) {
+            long duration = durationMs > 0 ? durationMs : track.durationMs;
+            return new NowPlaying(track, artwork, positionMs, duration, progressNanos);
+        }
+
+        NowPlaying withArtwork(Bitmap artwork) {
+            return new NowPlaying(track, artwork, positionMs, durationMs, progressNanos);
+        }
+
+        NowPlaying withProgress(long positionMs, long durationMs, long nowNanos) {
+            return new NowPlaying(track, artwork, positionMs, durationMs, nowNanos);
+        }
+    }
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable ->
+            new Thread(() -> {
+                // Display only; playback and network threads come first
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final BitmapLruCache artCache;
+    private final int artPx;
+    private final CRC32 crc = new CRC32();
+    private final AtomicLong artDecoded = new AtomicLong();
+    private final AtomicLong artFailed = new AtomicLong();
+
+    // Worker thread only: the sender whose track is shown
+    private Object source;
+    private volatile NowPlaying current = NowPlaying.NOTHING;
+
+    public MetadataPipeline(int cacheBytes, int artPx) {
+        this.artCache = new BitmapLruCache(cacheBytes);
+        this.artPx = artPx;
+    }
+
+    /**
+     * @param listener called on the main thread, first with the current state
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        NowPlaying state = current;
+        mainHandler.post(() -> {
+            if (listeners.contains(listener)) {
+                listener.onNowPlaying(state);
+            }
+        });
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public NowPlaying getNowPlaying() {
+        return current;
+    }
+
+    /**
+     * A SET_PARAMETER body from {@code source}: DMAP track info, or cover art with an
+     * {@code image/*} type, where {@code image/none} clears it. Any thread; returns at
+     * once.
+     */
+    public void onMetadata(Object source, String contentType, byte[] content) {
+        submit(() -> {
+            NowPlaying state = takeOver(source);
+            if (contentType.startsWith("application/x-dmap-tagged")) {
+                TrackMetadata track = TrackMetadata.parseDmap(content, 0, content.length);
+                Log.d(TAG, "Now playing " + track);
+                publish(state.withTrack(track));
+            } else if (contentType.startsWith("image/")) {
+                Bitmap artwork = content.length > 0 && !contentType.equals("image/none")
+                        ? decodeArtwork(content) : null;
+                publish(state.withArtwork(artwork));
+            }
+        });
+    }
+
+    /**
+     * Playback progress from {@code source}. Any thread; returns at once.
+     */
+    public void onProgress(Object source, long positionMs, long durationMs) {
+        long now = System.nanoTime();
+        submit(() -> publish(takeOver(source).withProgress(positionMs, durationMs, now)));
+    }
+
+    /**
+     * The sender is gone; what it was playing is cleared unless another has taken over.
+     */
+    public void sessionEnded(Object source) {
+        submit(() -> {
+            if (this.source == source) {
+                this.source = null;
+                publish(NowPlaying.NOTHING);
+            }
+        });
+    }
+
+    /**
+     * Clears the current track, e.g. when the receiver stops. Decoded art stays cached.
+     */
+    public void clear() {
+        submit(() -> {
+            source = null;
+            publish(NowPlaying.NOTHING);
+        });
+    }
+
+    /**
+     * Memory ceiling for decoded cover art; takes effect at once.
+     */
+    public void setCacheMaxBytes(int maxBytes) {
+        artCache.setMaxBytes(maxBytes);
+    }
+
+    public BitmapLruCache getArtCache() {
+        return artCache;
+    }
+
+    public long getArtDecoded() {
+        return artDecoded.get();
+    }
+
+    /**
+     * Cover art that was not an image BitmapFactory could read.
+     */
+    public long getArtFailed() {
+        return artFailed.get();
+    }
+
+    /**
+     * Stops the worker; later updates are dropped.
+     */
+    public void shutdown() {
+        worker.shutdown();
+        listeners.clear();
+    }
+
+    /**
+     * Largest power of two that keeps the longer side at or above {@code targetPx}.
+     */
+    static int sampleSize(int width, int height, int targetPx) {
+        int longer = Math.max(width, height);
+        int size = 1;
+        while (longer / (size * 2) >= targetPx) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    private void submit(Runnable update) {
+        try {
+            worker.execute(update);
+        } catch (RejectedExecutionException e) {
+            // Shut down; nobody is listening any more
+        }
+    }
+
+    /**
+     * The state {@code source}'s update applies to; a different sender starts afresh.
+     */
+    private NowPlaying takeOver(Object source) {
+        if (this.source != source) {
+            this.source = source;
+            current = NowPlaying.NOTHING;
+        }
+        return current;
+    }
+
+    private void publish(NowPlaying state) {
+        current = state;
+        mainHandler.post(() -> {
+            for (Listener listener : listeners) {
+                listener.onNowPlaying(state);
+            }
+        });
+    }
+
+    private Bitmap decodeArtwork(byte[] data) {
+        crc.reset();
+        crc.update(data, 0, data.length);
+        String key = Long.toHexString(crc.getValue()) + ":" + data.length;
+        Bitmap cached = artCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            artFailed.incrementAndGet();
+            Log.w(TAG, "Unreadable cover art, " + data.length + " bytes");
+            return null;
+        }
+        int width = options.outWidth;
+        int height = options.outHeight;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(width, height, artPx);
+        // Covers are opaque; half the memory of ARGB_8888
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (bitmap == null) {
+            artFailed.incrementAndGet();
+            return null;
+        }
+        artDecoded.incrementAndGet();
+        artCache.put(key, bitmap);
+        Log.d(TAG, "Cover art " + width + "x" + height + " decoded at 1/"
+                + options.inSampleSize + ", " + artCache.toDisplayString());
+        return bitmap;
+    }
+}
@@ -0,0 +1,222 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only log of what the receiver was sent and when, for replaying field
+ * problems with {@link CaptureReplayer}.
+ *
+ * Records go into a file mapped up front, so recording is a bounded copy with no
+ * system call or allocation. Once the file is full further records are counted and
+ * dropped. Each record is a 16-byte little-endian header (length, kind, stream,
+ * receive time in ns since the capture started) followed by the raw bytes.
+ */
+public class PacketCapture implements Closeable {
+    public static final int MAGIC = 0x50414352; // "RCAP"
+    public static final int VERSION = 2;
+    public static final int FILE_HEADER_BYTES = 16;
+    public static final int RECORD_HEADER_BYTES = 16;
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    /** RTP audio datagram as it reached the decoder: decrypted, resends unwrapped */
+    public static final int KIND_AUDIO = 1;
+    /** Datagram from the control port: sync packets and resent audio */
+    public static final int KIND_CONTROL = 2;
+    /** Datagram from the timing port */
+    public static final int KIND_TIMING = 3;
+    /** Raw PCM written straight to the engine */
+    public static final int KIND_PCM = 4;
+    /**
+     * Stream format from ANNOUNCE: the rtpmap and fmtp values as ASCII on two lines,
+     * either one empty if absent. Version 1 captures hold an ALAC fmtp alone.
+     */
+    public static final int KIND_FORMAT = 5;
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer map;
+    private final long startNanos;
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private boolean closed;
+
+    /**
+     * Creates (or truncates) {@code file} and maps {@code maxBytes} of it.
+     */
+    public PacketCapture(File file, long maxBytes) throws IOException {
+        if (maxBytes < FILE_HEADER_BYTES || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Capture size out of range: " + maxBytes);
+        }
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, maxBytes);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        startNanos = System.nanoTime();
+        map.putInt(MAGIC).putInt(VERSION).putLong(0);
+    }
+
+    public PacketCapture(File file) throws IOException {
+        this(file, DEFAULT_MAX_BYTES);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends one record. Safe to call from any thread; sessions share one capture.
+     *
+     * @param stream       which sender the record belongs to
+     * @param nowNanos     {@link System#nanoTime()} the data was received at
+     * @return false if the capture is closed or full
+     */
+    public boolean record(int kind, int stream, long nowNanos, byte[] data, int offset,
+                          int length) {
+        synchronized (this) {
+            if (closed || map.remaining() < RECORD_HEADER_BYTES + length) {
+                droppedRecords.incrementAndGet();
+                return false;
+            }
+            map.putInt(length).put((byte) kind).put((byte) stream).putShort((short) 0)
+                    .putLong(nowNanos - startNanos).put(data, offset, length);
+        }
+        records.incrementAndGet();
+        return true;
+    }
+
+    public boolean record(int kind, int stream, long nowNanos, ByteBuffer data) {
+        synchronized (this) {
+            int length = data.remaining();
+            if (closed || map.remaining() < RECORD_HEADER_BYTES + length) {
+                droppedRecords.incrementAndGet();
+                return false;
+            }
+            map.putInt(length).put((byte) kind).put((byte) stream).putShort((short) 0)
+                    .putLong(nowNanos - startNanos).put(data.duplicate());
+        }
+        records.incrementAndGet();
+        return true;
+    }
+
+    public boolean recordFormat(int stream, String rtpmap, String fmtp) {
+        String format = (rtpmap != null ? rtpmap : "") + "\n" + (fmtp != null ? fmtp : "");
+        byte[] ascii = format.getBytes(StandardCharsets.US_ASCII);
+        return record(KIND_FORMAT, stream, System.nanoTime(), ascii, 0, ascii.length);
+    }
+
+    public long getRecordCount() {
+        return records.get();
+    }
+
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public synchronized long getBytesWritten() {
+        return map.position();
+    }
+
+    /**
+     * Flushes the mapping and trims the file to what was written.
+     */
+    @Override
+    public void close() throws IOException {
+        long length;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            length = map.position();
+            map.force();
+        }
+        raf.setLength(length);
+        raf.close();
+    }
+
+    /**
+     * Reads a capture back record by record, in the order it was written.
+     */
+    public static final class Reader implements Closeable {
+        private final RandomAccessFile raf;
+        private final ByteBuffer data;
+
+        /** Format version the capture was written with */
+        public final int version;
+        public int kind;
+        public int stream;
+        /** Receive time in ns since the capture started */
+        public long nanos;
+        /** View of the record's bytes; valid until the next call to {@link #next} */
+        public final ByteBuffer payload;
+
+        public Reader(File file) throws IOException {
+            raf = new RandomAccessFile(file, "r");
+            try {
+                data = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+                        .order(ByteOrder.LITTLE_ENDIAN);
+            } catch (IOException e) {
+                raf.close();
+                throw e;
+            }
+            version = data.remaining() < FILE_HEADER_BYTES || data.getInt() != MAGIC
+                    ? 0 : data.getInt();
+            if (version < 1 || version > VERSION) {
+                raf.close();
+                throw new IOException("Not a packet capture: " + file);
+            }
+            data.getLong();
+            payload = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * Moves to the next record.
+         *
+         * @return false at the end of the capture, or at a truncated record
+         */
+        public boolean next() {
+            if (data.remaining() < RECORD_HEADER_BYTES) {
+                return false;
+            }
+            int length = data.getInt();
+            kind = data.get();
+            stream = data.get() & 0xff;
+            data.getShort();
+            nanos = data.getLong();
+            if (length < 0 || length > data.remaining()) {
+                data.position(data.limit());
+                return false;
+            }
+            payload.limit(data.position() + length).position(data.position());
+            data.position(data.position() + length);
+            return true;
+        }
+
+        /**
+         * Rewinds to the first record.
+         */
+        public void rewind() {
+            data.position(FILE_HEADER_BYTES);
+        }
+
+        @Override
+        public void close() throws IOException {
+            raf.close();
+        }
+    }
+}
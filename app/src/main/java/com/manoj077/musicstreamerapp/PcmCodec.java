@@ -0,0 +1,92 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Uncompressed 16-bit PCM ({@code L16}), big-endian on the wire as RFC 3551 defines
+ * it. Decoding is a byte swap on the caller's thread.
+ */
+public class PcmCodec extends AudioCodec {
+    public static final int TXT_CODE = 0;
+
+    // Largest payload a sender fits in one RTP packet, rounded up
+    private static final int MAX_PAYLOAD_BYTES = 2048;
+
+    public PcmCodec() {
+        super(TXT_CODE, "PCM", "L16");
+    }
+
+    @Override
+    public String getDefaultFmtp() {
+        return null;
+    }
+
+    @Override
+    public AudioDecoder newDecoder(String rtpmap, String fmtp, int sampleRate, int channels) {
+        checkFormat(getName(), rateOf(rtpmap, sampleRate), channelsOf(rtpmap, channels),
+                sampleRate, channels);
+        return new Decoder(this, channels * 2);
+    }
+
+    private static final class Decoder implements AudioDecoder {
+        private final PcmCodec codec;
+        private final int frameSize;
+        private final byte[] pcm = new byte[MAX_PAYLOAD_BYTES];
+        private final ByteBuffer frame = ByteBuffer.wrap(pcm);
+        private volatile Output output;
+        private long errors;
+
+        Decoder(PcmCodec codec, int frameSize) {
+            this.codec = codec;
+            this.frameSize = frameSize;
+        }
+
+        @Override
+        public AudioCodec getCodec() {
+            return codec;
+        }
+
+        @Override
+        public void setOutput(Output output) {
+            this.output = output;
+        }
+
+        @Override
+        public void decode(int seq, long rtpTimestamp, byte[] in, int offset, int length,
+                           long arrivalNanos) {
+            Output out = output;
+            length -= length % frameSize;
+            if (length <= 0 || length > pcm.length) {
+                errors++;
+                if (out != null) {
+                    out.onError(seq);
+                }
+                return;
+            }
+            if (out == null) {
+                return;
+            }
+            for (int i = 0; i < length; i += 2) {
+                pcm[i] = in[offset + i + 1];
+                pcm[i + 1] = in[offset + i];
+            }
+            frame.clear().limit(length);
+            out.onFrame(seq, rtpTimestamp, frame, arrivalNanos);
+        }
+
+        @Override
+        public void reset() {
+            // Stateless
+        }
+
+        @Override
+        public long getErrors() {
+            return errors;
+        }
+
+        @Override
+        public void release() {
+            output = null;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-capacity single-producer/single-consumer ring of interleaved PCM bytes.
+ *
+ * The backing region is a single direct {@link ByteBuffer} allocated up front, so
+ * neither side allocates per frame. Besides the copying {@link #write}/{@link #read}
+ * calls, the region can be shared without copies: a producer (e.g. the native RAOP
+ * library) writes straight into {@link #getStorage()} at {@link #getWriteOffset()} and
+ * publishes with {@link #commitWrite}, and the consumer hands the slice returned by
+ * {@link #acquireRead} directly to its sink before calling {@link #releaseRead}.
+ * Reads and writes are always whole audio frames so a dropped region never splits
+ * a stereo sample pair. A slice handed out by {@link #acquireRead} is never dropped
+ * or overwritten before it is released, whatever the overflow policy.
+ */
+public class PcmRingBuffer implements PcmSource {
+
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest queued audio to make room for the new data. While the
+         * consumer holds an acquired slice, which is the oldest audio, the new data is
+         * discarded instead.
+         */
+        DROP_OLDEST,
+        /** Keep the queued audio and discard whatever does not fit. */
+        DROP_NEWEST,
+        /** Wait for the consumer to make room, then drop the newest data on timeout. */
+        BLOCK
+    }
+
+    private final ByteBuffer storage;
+    private final ByteBuffer writeView;
+    private final ByteBuffer readView;
+    private final int capacity;
+    private final int frameSize;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+
+    // Set in readIndex while the consumer holds a slice from acquireRead; the
+    // producer may not move readIndex then, so it cannot drop what is being played
+    private static final long HELD = 1L << 62;
+
+    // Monotonic byte positions; only the producer advances writeIndex, both sides
+    // may advance readIndex (the producer only when dropping the oldest data).
+    private final AtomicLong writeIndex = new AtomicLong();
+    private final AtomicLong readIndex = new AtomicLong();
+
+    // Consumer-owned start of the slice handed out by acquireRead
+    private long acquiredIndex;
+    // Where clear() asked the held slice's release to skip to, 0 if it did not
+    private final AtomicLong clearedIndex = new AtomicLong();
+
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    private final AtomicLong droppedOldestBytes = new AtomicLong();
+    private final AtomicLong droppedNewestBytes = new AtomicLong();
+    private final AtomicLong timedOutBytes = new AtomicLong();
+    private final AtomicLong blockedWrites = new AtomicLong();
+
+    public PcmRingBuffer(int capacityBytes, int frameSize, OverflowPolicy overflowPolicy,
+                         long blockTimeoutMs) {
+        if (frameSize <= 0 || capacityBytes < frameSize) {
+            throw new IllegalArgumentException("Invalid ring size: " + capacityBytes
+                    + " bytes for frame size " + frameSize);
+        }
+        this.capacity = capacityBytes - (capacityBytes % frameSize);
+        this.frameSize = frameSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+        this.storage = ByteBuffer.allocateDirect(capacity).order(ByteOrder.LITTLE_ENDIAN);
+        // Each side owns its own cursor view so positions never race
+        this.writeView = storage.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.readView = storage.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a ring holding {@code millis} of audio at the given format.
+     */
+    public static PcmRingBuffer forDuration(int millis, int sampleRate, int frameSize,
+                                            OverflowPolicy overflowPolicy, long blockTimeoutMs) {
+        long frames = (long) sampleRate * millis / 1000;
+        return new PcmRingBuffer((int) (frames * frameSize), frameSize, overflowPolicy,
+                blockTimeoutMs);
+    }
+
+    /**
+     * Producer side. Copies whole frames from {@code src} into the ring, applying
+     * the overflow policy when there is not enough free space.
+     *
+     * @return number of bytes accepted
+     */
+    public int write(byte[] src, int offset, int length) {
+        length -= length % frameSize;
+        if (length <= 0) {
+            return 0;
+        }
+
+        if (length > capacity) {
+            int excess = length - capacity;
+            if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                // Only the newest audio can survive anyway
+                offset += excess;
+                droppedOldestBytes.addAndGet(excess);
+            } else {
+                droppedNewestBytes.addAndGet(excess);
+            }
+            length = capacity;
+        }
+
+        int writable = reserveWrite(length);
+        if (writable < length) {
+            recordShortfall(length - writable);
+            length = writable;
+        }
+
+        if (length > 0) {
+            long w = writeIndex.get();
+            copyIn(w, src, offset, length);
+            publish(w + length);
+        }
+        return length;
+    }
+
+    /**
+     * Producer side, in-place variant. Makes room for {@code length} bytes according
+     * to the overflow policy (dropping the oldest audio or waiting for the consumer)
+     * and returns how many bytes may now be written at {@link #getWriteOffset()}.
+     * The result may be split across the end of the region.
+     */
+    public int reserveWrite(int length) {
+        length -= length % frameSize;
+        length = Math.min(length, capacity);
+
+        long w = writeIndex.get();
+        int free = capacity - (int) (w - readPosition());
+        if (free >= length) {
+            return free;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                makeRoom(w, length);
+                return capacity - (int) (w - readPosition());
+            case BLOCK:
+                return awaitFree(w, length);
+            default:
+                return free;
+        }
+    }
+
+    /**
+     * Producer side, in-place variant. Publishes {@code written} bytes the producer
+     * stored at {@link #getWriteOffset()}, records {@code dropped} bytes it had to
+     * discard for lack of space, and reserves room for the next write of the same
+     * size.
+     *
+     * @return bytes the producer may write before its next commit
+     */
+    public int commitWrite(int written, int dropped) {
+        if (dropped > 0) {
+            recordShortfall(dropped);
+        }
+        written -= written % frameSize;
+        if (written > 0) {
+            publish(writeIndex.get() + written);
+        }
+        return reserveWrite(Math.max(written, dropped));
+    }
+
+    /**
+     * Returns the direct region shared with in-place producers.
+     */
+    public ByteBuffer getStorage() {
+        return storage;
+    }
+
+    /**
+     * Byte offset inside {@link #getStorage()} where the next write lands.
+     */
+    public int getWriteOffset() {
+        return (int) (writeIndex.get() % capacity);
+    }
+
+    /**
+     * Consumer side, zero-copy variant. Returns a view positioned at the oldest queued
+     * bytes and limited to at most {@code maxLength} contiguous bytes, parking up to
+     * {@code timeoutNanos} for data. The view is reused between calls and is only
+     * valid until {@link #releaseRead}. Returns {@code null} if nothing arrived.
+     */
+    @Override
+    public ByteBuffer acquireRead(int maxLength, long timeoutNanos) {
+        int available = available();
+        if (available < frameSize && timeoutNanos > 0) {
+            available = awaitData(timeoutNanos);
+        }
+        if (available < frameSize) {
+            return null;
+        }
+
+        long r;
+        do {
+            // A failed claim means the producer just dropped the oldest audio
+            r = readIndex.get();
+        } while (!readIndex.compareAndSet(r, r | HELD));
+        available = (int) (writeIndex.get() - r);
+        int pos = (int) (r % capacity);
+        int length = Math.min(Math.min(maxLength, available), capacity - pos);
+        length -= length % frameSize;
+        if (length <= 0) {
+            readIndex.set(r);
+            return null;
+        }
+        acquiredIndex = r;
+        readView.limit(pos + length).position(pos);
+        return readView;
+    }
+
+    /**
+     * Consumer side, zero-copy variant. Frees the {@code length} bytes handed out by
+     * {@link #acquireRead}.
+     *
+     * @return always true; the producer cannot drop a held slice
+     */
+    @Override
+    public boolean releaseRead(int length) {
+        long next = Math.max(acquiredIndex + length, clearedIndex.getAndSet(0));
+        // Only the consumer moves readIndex while it is held
+        readIndex.set(next);
+        wakeProducer();
+        return true;
+    }
+
+    /**
+     * Consumer side. Copies up to {@code length} bytes (whole frames) into {@code dst}
+     * without waiting.
+     *
+     * @return number of bytes read, 0 if the ring is empty
+     */
+    public int read(byte[] dst, int offset, int length) {
+        length -= length % frameSize;
+        if (length <= 0) {
+            return 0;
+        }
+
+        for (;;) {
+            long r = readIndex.get();
+            int available = (int) (writeIndex.get() - r);
+            if (available <= 0) {
+                return 0;
+            }
+
+            int n = Math.min(length, available);
+            copyOut(r, dst, offset, n);
+
+            // A failed CAS means the producer dropped the region we just copied
+            if (readIndex.compareAndSet(r, r + n)) {
+                wakeProducer();
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Consumer side. Like {@link #read(byte[], int, int)} but parks up to
+     * {@code timeoutNanos} for at least one frame to arrive.
+     */
+    public int read(byte[] dst, int offset, int length, long timeoutNanos) {
+        int n = read(dst, offset, length);
+        if (n > 0 || timeoutNanos <= 0) {
+            return n;
+        }
+
+        if (awaitData(timeoutNanos) > 0) {
+            n = read(dst, offset, length);
+        }
+        return n;
+    }
+
+    /**
+     * Consumer side. Discards everything queued so far while the producer may keep
+     * committing. A slice held from {@link #acquireRead} stays valid; the skip then
+     * takes effect when it is released.
+     */
+    public void clear() {
+        for (;;) {
+            long r = readIndex.get();
+            long w = writeIndex.get();
+            if ((r & HELD) != 0) {
+                clearedIndex.set(w);
+                return;
+            }
+            // A failed CAS means the producer just dropped the oldest audio
+            if (readIndex.compareAndSet(r, w)) {
+                wakeProducer();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public int available() {
+        return (int) (writeIndex.get() - readPosition());
+    }
+
+    /**
+     * The ring keeps itself half full so it can absorb bursts in both directions.
+     */
+    @Override
+    public int targetAvailable() {
+        int half = capacity / 2;
+        return half - (half % frameSize);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public long getDroppedOldestBytes() {
+        return droppedOldestBytes.get();
+    }
+
+    public long getDroppedNewestBytes() {
+        return droppedNewestBytes.get();
+    }
+
+    public long getTimedOutBytes() {
+        return timedOutBytes.get();
+    }
+
+    public long getBlockedWrites() {
+        return blockedWrites.get();
+    }
+
+    private void publish(long newWriteIndex) {
+        writeIndex.lazySet(newWriteIndex);
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void wakeProducer() {
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+    }
+
+    private void recordShortfall(int bytes) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            timedOutBytes.addAndGet(bytes);
+        } else {
+            droppedNewestBytes.addAndGet(bytes);
+        }
+    }
+
+    private int awaitData(long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        int available;
+        waitingConsumer = Thread.currentThread();
+        try {
+            while ((available = available()) < frameSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        return available;
+    }
+
+    private void makeRoom(long w, int length) {
+        for (;;) {
+            long r = readIndex.get();
+            if ((r & HELD) != 0) {
+                // The oldest audio is being played; the caller drops the newest instead
+                return;
+            }
+            int free = capacity - (int) (w - r);
+            if (free >= length) {
+                return;
+            }
+            int drop = length - free;
+            if (readIndex.compareAndSet(r, r + drop)) {
+                droppedOldestBytes.addAndGet(drop);
+                return;
+            }
+        }
+    }
+
+    private int awaitFree(long w, int length) {
+        blockedWrites.incrementAndGet();
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        int free;
+        waitingProducer = Thread.currentThread();
+        try {
+            while ((free = capacity - (int) (w - readPosition())) < length) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            waitingProducer = null;
+        }
+        return free;
+    }
+
+    private long readPosition() {
+        return readIndex.get() & ~HELD;
+    }
+
+    private void copyIn(long index, byte[] src, int offset, int length) {
+        int pos = (int) (index % capacity);
+        int first = Math.min(length, capacity - pos);
+        writeView.limit(capacity).position(pos);
+        writeView.put(src, offset, first);
+        if (first < length) {
+            writeView.position(0);
+            writeView.put(src, offset + first, length - first);
+        }
+    }
+
+    private void copyOut(long index, byte[] dst, int offset, int length) {
+        int pos = (int) (index % capacity);
+        int first = Math.min(length, capacity - pos);
+        readView.limit(capacity).position(pos);
+        readView.get(dst, offset, first);
+        if (first < length) {
+            readView.position(0);
+            readView.get(dst, offset + first, length - first);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Where played PCM ends up when it does not go to an {@code AudioTrack}, e.g. in
+ * {@link CaptureReplayer} on a plain JVM.
+ */
+public interface PcmSink {
+    /** Accepts and discards everything, for throughput runs. */
+    PcmSink NULL = data -> data.remaining();
+
+    /**
+     * Consumes the remaining bytes of {@code data}, which are only valid during the
+     * call.
+     *
+     * @return bytes consumed
+     */
+    int write(ByteBuffer data) throws IOException;
+}
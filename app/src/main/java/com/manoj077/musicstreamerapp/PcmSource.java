@@ -0,0 +1,33 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Consumer side of a buffer the playback thread drains without copying.
+ */
+public interface PcmSource {
+
+    /**
+     * Returns a view positioned at the next bytes to play and limited to at most
+     * {@code maxLength} bytes, parking up to {@code timeoutNanos} if nothing is ready.
+     * The view stays valid until {@link #releaseRead}. Returns {@code null} on timeout.
+     */
+    ByteBuffer acquireRead(int maxLength, long timeoutNanos);
+
+    /**
+     * Marks {@code length} bytes of the last acquired view as played.
+     *
+     * @return false if the region was overwritten while it was in use
+     */
+    boolean releaseRead(int length);
+
+    /**
+     * Bytes currently buffered and waiting to be played.
+     */
+    int available();
+
+    /**
+     * Bytes the source aims to keep buffered; drift correction steers towards it.
+     */
+    int targetAvailable();
+}
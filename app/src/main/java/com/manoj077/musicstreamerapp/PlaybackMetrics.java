@@ -0,0 +1,458 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free playback health counters shared by the receive and playback threads.
+ *
+ * Recording is a handful of atomic adds on preallocated counters, cheap enough for
+ * the audio path. Readers take an immutable {@link Snapshot} at any time from any
+ * thread; counters are read individually, so a snapshot is consistent per field but
+ * not across fields.
+ */
+public class PlaybackMetrics {
+
+    /**
+     * Why audio was thrown away. Ring causes count audio frames, packet causes count
+     * RTP packets, {@link #TRACK_WRITE_ERROR} counts failed writes.
+     */
+    public enum DropCause {
+        RING_OVERFLOW,
+        RING_TIMEOUT,
+        LATE_PACKET,
+        JITTER_OVERFLOW,
+        DUPLICATE_PACKET,
+        DECRYPT_ERROR,
+        DECODE_ERROR,
+        TRACK_WRITE_ERROR,
+        SYNC_SKIP
+    }
+
+    /**
+     * Histogram buckets in ms: bucket 0 holds [0, 1), bucket i holds [2^(i-1), 2^i),
+     * the last one everything from 2^(BUCKETS-2) up.
+     */
+    public static final int BUCKETS = 12;
+
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong framesOut = new AtomicLong();
+    private final AtomicLong concealedFrames = new AtomicLong();
+    private final AtomicLongArray drops = new AtomicLongArray(DropCause.values().length);
+    private final AtomicLong trackUnderruns = new AtomicLong();
+    private final AtomicLong bufferUnderruns = new AtomicLong();
+    private final AtomicLong resendRequested = new AtomicLong();
+    private final AtomicLong resendRecovered = new AtomicLong();
+    private final AtomicLong resendTooLate = new AtomicLong();
+
+    private final AtomicLongArray depthHistogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong latencySamples = new AtomicLong();
+    private final AtomicLong latencyTotalNanos = new AtomicLong();
+    private final AtomicLongArray syncErrorHistogram = new AtomicLongArray(BUCKETS);
+    private final AtomicLong syncSamples = new AtomicLong();
+    private final AtomicLong syncErrorTotalNanos = new AtomicLong();
+    private volatile long lastSyncErrorNanos;
+    private volatile long startupMillis = -1;
+    private volatile long hotspotMillis = -1;
+    private volatile long mdnsMillis = -1;
+    private final AtomicLong coldStarts = new AtomicLong();
+    private final AtomicLong coldStartTotalNanos = new AtomicLong();
+    private final AtomicLong warmStarts = new AtomicLong();
+    private final AtomicLong warmStartTotalNanos = new AtomicLong();
+
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong writeBlockedNanos = new AtomicLong();
+    private final AtomicLong maxWriteBlockedNanos = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+
+    public void recordFramesIn(int frames) {
+        framesIn.addAndGet(frames);
+    }
+
+    /**
+     * Audio payload bytes as received from the sender, before decoding.
+     */
+    public void recordBytesIn(int bytes) {
+        bytesIn.addAndGet(bytes);
+    }
+
+    public void recordFramesOut(int frames) {
+        framesOut.addAndGet(frames);
+    }
+
+    public void recordDrop(DropCause cause, long count) {
+        drops.addAndGet(cause.ordinal(), count);
+    }
+
+    /**
+     * Mirrors a total that another component already counts (ring and jitter buffer
+     * drops), so the hot path is not charged twice for it.
+     */
+    public void setDropTotal(DropCause cause, long total) {
+        drops.lazySet(cause.ordinal(), total);
+    }
+
+    public void setConcealedFrames(long total) {
+        concealedFrames.lazySet(total);
+    }
+
+    /**
+     * @param trackUnderruns  {@code AudioTrack.getUnderrunCount()}
+     * @param bufferUnderruns times the jitter buffer ran dry and had to re-prime
+     */
+    public void setUnderruns(long trackUnderruns, long bufferUnderruns) {
+        this.trackUnderruns.lazySet(trackUnderruns);
+        this.bufferUnderruns.lazySet(bufferUnderruns);
+    }
+
+    /**
+     * Adds retransmit outcomes: lost packets asked for, those that arrived in time,
+     * and those given up on. Each session reports its own increments.
+     */
+    public void recordResends(long requested, long recovered, long tooLate) {
+        resendRequested.addAndGet(requested);
+        resendRecovered.addAndGet(recovered);
+        resendTooLate.addAndGet(tooLate);
+    }
+
+    public void recordQueueDepth(long depthMs) {
+        depthHistogram.incrementAndGet(bucket(depthMs));
+    }
+
+    /**
+     * Time from a frame's arrival on the socket until it reaches the DAC, for
+     * {@code frames} audio frames played with that latency. Weighting by frames keeps
+     * the distribution one of played audio, whatever size the writes happen to be.
+     */
+    public void recordLatency(long nanos, int frames) {
+        if (frames <= 0) {
+            return;
+        }
+        latencyHistogram.addAndGet(bucket(nanos / 1_000_000), frames);
+        latencySamples.addAndGet(frames);
+        latencyTotalNanos.addAndGet(nanos * frames);
+    }
+
+    /**
+     * How far from its scheduled time a chunk reaches the DAC; positive when late.
+     * The histogram and mean are of the magnitude.
+     */
+    public void recordSyncError(long nanos) {
+        long magnitude = Math.abs(nanos);
+        syncErrorHistogram.incrementAndGet(bucket(magnitude / 1_000_000));
+        syncSamples.incrementAndGet();
+        syncErrorTotalNanos.addAndGet(magnitude);
+        lastSyncErrorNanos = nanos;
+    }
+
+    /**
+     * Time from Start until the receiver was discoverable, and how long bringing up the
+     * hotspot and the mDNS responder took within it; -1 for a step that did not run.
+     */
+    public void setStartupMillis(long discoverableMillis, long hotspotMillis, long mdnsMillis) {
+        this.hotspotMillis = hotspotMillis;
+        this.mdnsMillis = mdnsMillis;
+        startupMillis = discoverableMillis;
+    }
+
+    /**
+     * Time from the start of a session until its first sample reached the AudioTrack.
+     *
+     * @param warm whether the receiver resumed from standby rather than starting cold
+     */
+    public void recordSessionStart(long nanos, boolean warm) {
+        (warm ? warmStarts : coldStarts).incrementAndGet();
+        (warm ? warmStartTotalNanos : coldStartTotalNanos).addAndGet(nanos);
+    }
+
+    /**
+     * Time one {@code AudioTrack.write} call spent blocked.
+     */
+    public void recordWrite(long blockedNanos) {
+        writes.incrementAndGet();
+        writeBlockedNanos.addAndGet(blockedNanos);
+        long max;
+        while (blockedNanos > (max = maxWriteBlockedNanos.get())) {
+            if (maxWriteBlockedNanos.compareAndSet(max, blockedNanos)) {
+                break;
+            }
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] dropCounts = new long[drops.length()];
+        for (int i = 0; i < dropCounts.length; i++) {
+            dropCounts[i] = drops.get(i);
+        }
+        return new Snapshot(System.currentTimeMillis(),
+                (System.nanoTime() - startNanos) / 1_000_000,
+                framesIn.get(), framesOut.get(), bytesIn.get(), concealedFrames.get(),
+                dropCounts, trackUnderruns.get(), bufferUnderruns.get(),
+                resendRequested.get(), resendRecovered.get(), resendTooLate.get(),
+                copy(depthHistogram), copy(latencyHistogram),
+                latencySamples.get(), latencyTotalNanos.get(),
+                copy(syncErrorHistogram), syncSamples.get(), syncErrorTotalNanos.get(),
+                lastSyncErrorNanos, startupMillis, hotspotMillis, mdnsMillis,
+                coldStarts.get(), coldStartTotalNanos.get(),
+                warmStarts.get(), warmStartTotalNanos.get(),
+                writes.get(), writeBlockedNanos.get(), maxWriteBlockedNanos.get());
+    }
+
+    private static int bucket(long ms) {
+        if (ms <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+    }
+
+    private static long[] copy(AtomicLongArray array) {
+        long[] values = new long[array.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = array.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * Immutable view of the counters at one point in time.
+     */
+    public static final class Snapshot {
+        public final long wallTimeMillis;
+        public final long uptimeMillis;
+        public final long framesIn;
+        public final long framesOut;
+        public final long bytesIn;
+        public final long concealedFrames;
+        public final long trackUnderruns;
+        public final long bufferUnderruns;
+        public final long resendRequested;
+        public final long resendRecovered;
+        public final long resendTooLate;
+        public final long writes;
+        public final long writeBlockedNanos;
+        public final long maxWriteBlockedNanos;
+        public final long latencySamples;
+        public final long syncSamples;
+        public final long lastSyncErrorNanos;
+        /** Start until discoverable, -1 if startup has not finished */
+        public final long startupMillis;
+        /** Hotspot bring-up during startup, -1 if unknown */
+        public final long hotspotMillis;
+        /** mDNS responder bring-up and registration during startup, -1 if unknown */
+        public final long mdnsMillis;
+        public final long coldStarts;
+        public final long warmStarts;
+        private final long coldStartTotalNanos;
+        private final long warmStartTotalNanos;
+        private final long latencyTotalNanos;
+        private final long syncErrorTotalNanos;
+        private final long[] drops;
+        private final long[] depthHistogram;
+        private final long[] latencyHistogram;
+        private final long[] syncErrorHistogram;
+
+        Snapshot(long wallTimeMillis, long uptimeMillis, long framesIn, long framesOut,
+                 long bytesIn, long concealedFrames, long[] drops, long trackUnderruns, long bufferUnderruns,
+                 long resendRequested, long resendRecovered, long resendTooLate,
+                 long[] depthHistogram, long[] latencyHistogram, long latencySamples,
+                 long latencyTotalNanos, long[] syncErrorHistogram, long syncSamples,
+                 long syncErrorTotalNanos, long lastSyncErrorNanos, long startupMillis,
+                 long hotspotMillis, long mdnsMillis, long coldStarts, long coldStartTotalNanos, long warmStarts,
+                 long warmStartTotalNanos, long writes, long writeBlockedNanos,
+                 long maxWriteBlockedNanos) {
+            this.wallTimeMillis = wallTimeMillis;
+            this.uptimeMillis = uptimeMillis;
+            this.framesIn = framesIn;
+            this.framesOut = framesOut;
+            this.bytesIn = bytesIn;
+            this.concealedFrames = concealedFrames;
+            this.drops = drops;
+            this.trackUnderruns = trackUnderruns;
+            this.bufferUnderruns = bufferUnderruns;
+            this.resendRequested = resendRequested;
+            this.resendRecovered = resendRecovered;
+            this.resendTooLate = resendTooLate;
+            this.depthHistogram = depthHistogram;
+            this.latencyHistogram = latencyHistogram;
+            this.latencySamples = latencySamples;
+            this.latencyTotalNanos = latencyTotalNanos;
+            this.syncErrorHistogram = syncErrorHistogram;
+            this.syncSamples = syncSamples;
+            this.syncErrorTotalNanos = syncErrorTotalNanos;
+            this.lastSyncErrorNanos = lastSyncErrorNanos;
+            this.startupMillis = startupMillis;
+            this.hotspotMillis = hotspotMillis;
+            this.mdnsMillis = mdnsMillis;
+            this.coldStarts = coldStarts;
+            this.coldStartTotalNanos = coldStartTotalNanos;
+            this.warmStarts = warmStarts;
+            this.warmStartTotalNanos = warmStartTotalNanos;
+            this.writes = writes;
+            this.writeBlockedNanos = writeBlockedNanos;
+            this.maxWriteBlockedNanos = maxWriteBlockedNanos;
+        }
+
+        public long getDrops(DropCause cause) {
+            return drops[cause.ordinal()];
+        }
+
+        public long getDepthBucket(int bucket) {
+            return depthHistogram[bucket];
+        }
+
+        public long getLatencyBucket(int bucket) {
+            return latencyHistogram[bucket];
+        }
+
+        public double getMeanLatencyMs() {
+            return latencySamples == 0 ? 0 : latencyTotalNanos / 1e6 / latencySamples;
+        }
+
+        /**
+         * Upper bound in ms of the bucket holding the given latency percentile.
+         */
+        public long getLatencyPercentileMs(double percentile) {
+            return percentileMs(latencyHistogram, percentile);
+        }
+
+        public long getDepthPercentileMs(double percentile) {
+            return percentileMs(depthHistogram, percentile);
+        }
+
+        public double getMeanSyncErrorMs() {
+            return syncSamples == 0 ? 0 : syncErrorTotalNanos / 1e6 / syncSamples;
+        }
+
+        public long getSyncErrorPercentileMs(double percentile) {
+            return percentileMs(syncErrorHistogram, percentile);
+        }
+
+        /**
+         * Mean time from session start to first sample after a cold start.
+         */
+        public double getMeanColdStartMs() {
+            return coldStarts == 0 ? 0 : coldStartTotalNanos / 1e6 / coldStarts;
+        }
+
+        /**
+         * Mean time from session start to first sample after resuming from standby.
+         */
+        public double getMeanWarmStartMs() {
+            return warmStarts == 0 ? 0 : warmStartTotalNanos / 1e6 / warmStarts;
+        }
+
+        /**
+         * Short multi-line summary for on-screen display.
+         */
+        public String toDisplayString() {
+            long dropped = 0;
+            for (long count : drops) {
+                dropped += count;
+            }
+            return String.format(Locale.US,
+                    "Frames in/out: %d / %d\n"
+                            + "Underruns: %d track, %d buffer; concealed: %d\n"
+                            + "Drops: %d (late %d, overflow %d, decode %d)\n"
+                            + "Resends: %d asked, %d recovered, %d too late\n"
+                            + "Depth p50/p99: %d / %d ms\n"
+                            + "Latency mean %.1f ms, p99 %d ms\n"
+                            + "Sync error mean %.1f ms, p99 %d ms\n"
+                            + "Write blocked max: %.1f ms\n"
+                            + "Discoverable after: %d ms (hotspot %d, mDNS %d)\n"
+                            + "First sample cold/warm: %.0f / %.0f ms",
+                    framesIn, framesOut,
+                    trackUnderruns, bufferUnderruns, concealedFrames,
+                    dropped, getDrops(DropCause.LATE_PACKET),
+                    getDrops(DropCause.RING_OVERFLOW) + getDrops(DropCause.JITTER_OVERFLOW),
+                    getDrops(DropCause.DECODE_ERROR),
+                    resendRequested, resendRecovered, resendTooLate,
+                    getDepthPercentileMs(0.5), getDepthPercentileMs(0.99),
+                    getMeanLatencyMs(), getLatencyPercentileMs(0.99),
+                    getMeanSyncErrorMs(), getSyncErrorPercentileMs(0.99),
+                    maxWriteBlockedNanos / 1e6, startupMillis, hotspotMillis, mdnsMillis,
+                    getMeanColdStartMs(), getMeanWarmStartMs());
+        }
+
+        /**
+         * One JSON object, suitable for appending to a JSON-lines dump.
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(512);
+            json.append("{\"wallTimeMillis\":").append(wallTimeMillis)
+                    .append(",\"uptimeMillis\":").append(uptimeMillis)
+                    .append(",\"framesIn\":").append(framesIn)
+                    .append(",\"framesOut\":").append(framesOut)
+                    .append(",\"bytesIn\":").append(bytesIn)
+                    .append(",\"concealedFrames\":").append(concealedFrames)
+                    .append(",\"trackUnderruns\":").append(trackUnderruns)
+                    .append(",\"bufferUnderruns\":").append(bufferUnderruns)
+                    .append(",\"resendRequested\":").append(resendRequested)
+                    .append(",\"resendRecovered\":").append(resendRecovered)
+                    .append(",\"resendTooLate\":").append(resendTooLate)
+                    .append(",\"writes\":").append(writes)
+                    .append(",\"writeBlockedNanos\":").append(writeBlockedNanos)
+                    .append(",\"maxWriteBlockedNanos\":").append(maxWriteBlockedNanos)
+                    .append(",\"latencySamples\":").append(latencySamples)
+                    .append(",\"latencyTotalNanos\":").append(latencyTotalNanos)
+                    .append(",\"syncSamples\":").append(syncSamples)
+                    .append(",\"syncErrorTotalNanos\":").append(syncErrorTotalNanos)
+                    .append(",\"lastSyncErrorNanos\":").append(lastSyncErrorNanos)
+                    .append(",\"startupMillis\":").append(startupMillis)
+                    .append(",\"hotspotMillis\":").append(hotspotMillis)
+                    .append(",\"mdnsMillis\":").append(mdnsMillis)
+                    .append(",\"coldStarts\":").append(coldStarts)
+                    .append(",\"coldStartTotalNanos\":").append(coldStartTotalNanos)
+                    .append(",\"warmStarts\":").append(warmStarts)
+                    .append(",\"warmStartTotalNanos\":").append(warmStartTotalNanos)
+                    .append(",\"drops\":{");
+            DropCause[] causes = DropCause.values();
+            for (int i = 0; i < causes.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('"').append(causes[i].name()).append("\":").append(drops[i]);
+            }
+            json.append("},\"depthHistogramMs\":");
+            appendArray(json, depthHistogram);
+            json.append(",\"latencyHistogramMs\":");
+            appendArray(json, latencyHistogram);
+            json.append(",\"syncErrorHistogramMs\":");
+            appendArray(json, syncErrorHistogram);
+            return json.append('}').toString();
+        }
+
+        private static long percentileMs(long[] histogram, double percentile) {
+            long total = 0;
+            for (long count : histogram) {
+                total += count;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= rank) {
+                    return 1L << i;
+                }
+            }
+            return 1L << (histogram.length - 1);
+        }
+
+        private static void appendArray(StringBuilder json, long[] values) {
+            json.append('[');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append(values[i]);
+            }
+            json.append(']');
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.manoj077.musicstreamerapp;
+
+import android.media.AudioTrack;
+
+import java.util.Locale;
+
+/**
+ * Trade-off between output latency and power. A profile sets the AudioTrack
+ * performance mode, how much audio the track buffers, how much the playback thread
+ * writes per wake-up and the jitter buffer's base depth. Deeper buffers and bigger
+ * writes let the CPU sleep longer between wake-ups at the cost of latency.
+ */
+public enum PlaybackProfile {
+    /** Shortest path to the speaker; wakes every 5 ms */
+    LOW_LATENCY(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY, 20, 5, 60),
+    /** The default, close to the engine's fixed settings before profiles */
+    BALANCED(AudioTrack.PERFORMANCE_MODE_NONE, 80, 10, 100),
+    /** For always-on receivers where a quarter-second delay does not matter */
+    POWER_SAVE(AudioTrack.PERFORMANCE_MODE_POWER_SAVING, 400, 40, 250);
+
+    /** Largest write of any profile, for sizing buffers shared by all of them */
+    public static final int MAX_WRITE_MS = 40;
+
+    private final int performanceMode;
+    private final int trackBufferMs;
+    private final int writeMs;
+    private final int jitterTargetMs;
+
+    PlaybackProfile(int performanceMode, int trackBufferMs, int writeMs, int jitterTargetMs) {
+        this.performanceMode = performanceMode;
+        this.trackBufferMs = trackBufferMs;
+        this.writeMs = writeMs;
+        this.jitterTargetMs = jitterTargetMs;
+    }
+
+    /**
+     * {@code AudioTrack.PERFORMANCE_MODE_*} the track is built with.
+     */
+    public int getPerformanceMode() {
+        return performanceMode;
+    }
+
+    /**
+     * Audio the track is asked to buffer via {@code setBufferSizeInFrames}; the
+     * platform may round it up.
+     */
+    public int getTrackBufferMs() {
+        return trackBufferMs;
+    }
+
+    /**
+     * Audio handed to the track per playback thread wake-up.
+     */
+    public int getWriteMs() {
+        return writeMs;
+    }
+
+    /**
+     * Jitter buffer depth kept on top of the measured jitter allowance.
+     */
+    public int getJitterTargetMs() {
+        return jitterTargetMs;
+    }
+
+    /**
+     * Profile named {@code name} ignoring case, or {@code fallback}.
+     */
+    public static PlaybackProfile fromName(String name, PlaybackProfile fallback) {
+        if (name != null) {
+            for (PlaybackProfile profile : values()) {
+                if (profile.name().equalsIgnoreCase(name)) {
+                    return profile;
+                }
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * What a profile was measured to do while it was in use.
+     */
+    public static final class Measurement {
+        public final PlaybackProfile profile;
+        /** Time the profile was in use with the track playing */
+        public final double seconds;
+        /** Mean time from writing a frame to the track until it leaves the DAC */
+        public final double outputLatencyMs;
+        public final double wakeupsPerSecond;
+        /** Track buffer the platform granted, in frames; 0 if never built */
+        public final int bufferFrames;
+
+        Measurement(PlaybackProfile profile, double seconds, double outputLatencyMs,
+                    double wakeupsPerSecond, int bufferFrames) {
+            this.profile = profile;
+            this.seconds = seconds;
+            this.outputLatencyMs = outputLatencyMs;
+            this.wakeupsPerSecond = wakeupsPerSecond;
+            this.bufferFrames = bufferFrames;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s: output latency %.1f ms, %.1f wake-ups/s, %d-frame buffer over %.0f s",
+                    profile, outputLatencyMs, wakeupsPerSecond, bufferFrames, seconds);
+        }
+    }
+}
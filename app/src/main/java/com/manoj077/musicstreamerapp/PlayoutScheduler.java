@@ -0,0 +1,67 @@
+package com.manoj077.musicstreamerapp;
+
+/**
+ * Decides, before each chunk is written, whether the next frame would reach the DAC at
+ * the local time its sender scheduled it for.
+ *
+ * The time it would be heard comes from the output path alone: the frames written but
+ * not yet played, counted from a DAC timestamp when there is one. Early audio is held
+ * back with silence and late audio is skipped; anything within the tolerance plays and
+ * is left to the rate correction. All times are passed in, so the scheduler can be
+ * driven by a simulated clock.
+ */
+public class PlayoutScheduler {
+    public enum Action {
+        PLAY,
+        /** Write {@link #getPaddingBytes()} of silence first. */
+        PAD,
+        /** Drop the next chunk; it is already past due. */
+        SKIP
+    }
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    private final int sampleRate;
+    private final int frameSize;
+    private final long toleranceNanos;
+    private long syncErrorNanos;
+    private int paddingBytes;
+
+    public PlayoutScheduler(int sampleRate, int frameSize, long toleranceNanos) {
+        this.sampleRate = sampleRate;
+        this.frameSize = frameSize;
+        this.toleranceNanos = toleranceNanos;
+    }
+
+    /**
+     * @param dueNanos      local time the next frame is due at the DAC
+     * @param anchorNanos   local time {@code pendingFrames} was measured at
+     * @param pendingFrames frames written but not yet heard at {@code anchorNanos}
+     * @param maxPadBytes   most silence to write in one go
+     */
+    public Action schedule(long dueNanos, long anchorNanos, long pendingFrames,
+                           int maxPadBytes) {
+        long presented = anchorNanos + pendingFrames * NANOS_PER_SECOND / sampleRate;
+        syncErrorNanos = presented - dueNanos;
+        paddingBytes = 0;
+        if (syncErrorNanos < -toleranceNanos) {
+            long errorFrames = Math.min(-syncErrorNanos, NANOS_PER_SECOND)
+                    * sampleRate / NANOS_PER_SECOND;
+            paddingBytes = (int) Math.min(maxPadBytes - maxPadBytes % frameSize,
+                    errorFrames * frameSize);
+            return Action.PAD;
+        }
+        return syncErrorNanos > toleranceNanos ? Action.SKIP : Action.PLAY;
+    }
+
+    /**
+     * How late the next frame would be heard, negative if early, as of the last call.
+     */
+    public long getSyncErrorNanos() {
+        return syncErrorNanos;
+    }
+
+    public int getPaddingBytes() {
+        return paddingBytes;
+    }
+}
@@ -2,16 +2,83 @@ package com.manoj077.musicstreamerapp;
 
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class RaopBridge {
     private static final String TAG = "RaopBridge";
-    
+
+    /**
+     * Which implementation serves the RAOP session.
+     */
+    public enum Backend {
+        /** RAOP library behind JNI, decoding into the shared PCM buffer */
+        NATIVE,
+        /** {@link RtspServer} and the Java decode stages, no JNI involved */
+        JAVA
+    }
+
+    private static boolean nativeLoaded;
+
+    // Room for a burst of 32 full-size audio packets per cipher call
+    static final int DECRYPT_SCRATCH_BYTES = 32 * 2048;
+    // Frames the native side may deliver in one upcall
+    public static final int MAX_BATCH_FRAMES = 64;
+    public static final int DEFAULT_BATCH_WINDOW_MS = 10;
+
     private AudioEngine audioEngine;
     private long nativeHandle = 0;
     private boolean isStarted = false;
+    private Backend backend = nativeLoaded ? Backend.NATIVE : Backend.JAVA;
+    private Backend activeBackend;
+    private RtspServer rtspServer;
+    private SessionManager sessionManager;
+    private int batchWindowMs = DEFAULT_BATCH_WINDOW_MS;
+    private PacketCapture capture;
+    private volatile MetadataPipeline metadata;
+
+    // Formats advertised and played, and decoders kept between sessions
+    private final CodecRegistry codecs = new CodecRegistry(new AlacCodec(), new PcmCodec(),
+            AacCodec.lowComplexity(), AacCodec.enhancedLowDelay());
+    private final DecoderPool decoderPool = new DecoderPool(DecoderPool.DEFAULT_MAX_IDLE);
+
+    // Byte length of each frame in the current batch, written by native code, then the
+    // ring's write offset, written back after each batch so the native cursor follows it
+    private final ByteBuffer batchLengths = ByteBuffer.allocateDirect((MAX_BATCH_FRAMES + 1) * 4)
+            .order(ByteOrder.nativeOrder());
+    private final AtomicLong upcalls = new AtomicLong();
+    private final AtomicLong batchedFrames = new AtomicLong();
+    private long upcallStartNanos;
+
+    // Format of payloads handed to onAudioPacket, outside any Java session
+    private AudioCodec codec = codecs.getDefault();
+    private String rtpmap;
+    private String fmtp = codec.getDefaultFmtp();
+    private volatile AudioDecoder decoder;
+    private final AudioDecoder.Output engineOutput = new AudioDecoder.Output() {
+        @Override
+        public void onFrame(int seq, long rtpTimestamp, ByteBuffer pcm, long arrivalNanos) {
+            AudioEngine engine = audioEngine;
+            if (engine != null) {
+                engine.writeRtpFrame(seq, rtpTimestamp, pcm);
+            }
+        }
+
+        @Override
+        public void onError(int seq) {
+            recordDrop(PlaybackMetrics.DropCause.DECODE_ERROR, 1);
+        }
+    };
+    private volatile RaopPacketDecryptor decryptor;
 
     static {
         try {
             System.loadLibrary("raop");
+            nativeLoaded = true;
             Log.d(TAG, "Native RAOP library loaded successfully");
         } catch (UnsatisfiedLinkError e) {
             Log.e(TAG, "Native RAOP library not found - stub mode only", e);
@@ -19,7 +86,9 @@ public class RaopBridge {
     }
 
     // Native methods - to be implemented in native library
-    private native long nativeStart(int port, int sampleRate, int channels, int bitDepth);
+    private native long nativeStart(int port, int sampleRate, int channels, int bitDepth,
+                                    ByteBuffer pcmBuffer, int writeOffset,
+                                    ByteBuffer batchLengths, int batchWindowMs);
     private native void nativeStop(long handle);
 
     public void start(AudioEngine audioEngine, int port) {
@@ -29,26 +98,148 @@ public class RaopBridge {
         }
 
         this.audioEngine = audioEngine;
-        
+        decoder = acquireDecoder(codec, rtpmap, fmtp);
+
+        // A native stub that cannot serve the port falls back to the Java server
+        if (backend == Backend.NATIVE && startNative(port)) {
+            activeBackend = Backend.NATIVE;
+        } else if (startJava(port)) {
+            activeBackend = Backend.JAVA;
+        } else {
+            Log.e(TAG, "No RAOP backend could be started on port " + port);
+            activeBackend = null;
+        }
+
+        // Keep the service alive either way; it just won't receive audio
+        isStarted = true;
+    }
+
+    private boolean startNative(int port) {
         try {
             nativeHandle = nativeStart(
                     port,
                     audioEngine.getSampleRate(),
                     audioEngine.getChannels(),
-                    audioEngine.getBitDepth()
+                    audioEngine.getBitDepth(),
+                    audioEngine.getPcmBuffer(),
+                    audioEngine.getPcmWriteOffset(),
+                    batchLengths,
+                    batchWindowMs
             );
             
             if (nativeHandle != 0) {
-                isStarted = true;
-                Log.d(TAG, "RAOP bridge started on port " + port);
-            } else {
-                Log.w(TAG, "RAOP bridge failed to start (native library may not be available)");
+                upcalls.set(0);
+                batchedFrames.set(0);
+                upcallStartNanos = System.nanoTime();
+                Log.d(TAG, "RAOP bridge started on port " + port + " (native, "
+                        + batchWindowMs + " ms batches)");
+                return true;
             }
+            Log.w(TAG, "Native RAOP backend failed to start (stub library?)");
         } catch (UnsatisfiedLinkError e) {
-            Log.w(TAG, "RAOP native methods not available - running in stub mode", e);
-            // Continue in stub mode - service will still run but won't receive audio
-            isStarted = true;
+            Log.w(TAG, "RAOP native methods not available", e);
+        }
+        return false;
+    }
+
+    private boolean startJava(int port) {
+        // Every sender connection gets its own session, mixed by the engine
+        AudioEngine engine = audioEngine;
+        SessionManager manager = new SessionManager(engine.getMixer());
+        RtspServer server = new RtspServer(port,
+                client -> new ReceiverSession(client, engine, manager, codecs, decoderPool,
+                        metadata));
+        // Senders compensate for what this device measures, not a fixed guess
+        server.setAudioLatency(engine.getLatencyCalibrator()::getLatencyFrames);
+        try {
+            server.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Java RTSP server failed to bind port " + port, e);
+            return false;
+        }
+        rtspServer = server;
+        sessionManager = manager;
+        Log.d(TAG, "RAOP bridge started on port " + port + " (Java)");
+        return true;
+    }
+
+    /**
+     * Where Java sessions send track info, cover art and progress; applies to sessions
+     * created after the call. The native backend does not surface metadata.
+     */
+    public void setMetadataPipeline(MetadataPipeline metadata) {
+        this.metadata = metadata;
+    }
+
+    /**
+     * Selects the backend used by the next {@link #start}; ignored while running.
+     */
+    public void setBackend(Backend backend) {
+        if (isStarted) {
+            Log.w(TAG, "Backend can only be changed while stopped");
+            return;
         }
+        this.backend = backend;
+    }
+
+    /**
+     * How long the native side may hold decoded frames before delivering them in one
+     * upcall; 0 delivers every frame on its own. Applies from the next {@link #start}.
+     */
+    public void setBatchWindowMs(int batchWindowMs) {
+        this.batchWindowMs = Math.max(0, batchWindowMs);
+    }
+
+    public int getBatchWindowMs() {
+        return batchWindowMs;
+    }
+
+    /**
+     * PCM upcalls from native code since the native backend started.
+     */
+    public long getUpcallCount() {
+        return upcalls.get();
+    }
+
+    public long getBatchedFrameCount() {
+        return batchedFrames.get();
+    }
+
+    /**
+     * Mean PCM upcalls per second since the native backend started.
+     */
+    public double getUpcallsPerSecond() {
+        long elapsed = System.nanoTime() - upcallStartNanos;
+        return nativeHandle == 0 || elapsed <= 0 ? 0 : upcalls.get() * 1e9 / elapsed;
+    }
+
+    /**
+     * Backend actually serving the current session, null if none could start.
+     */
+    public Backend getActiveBackend() {
+        return activeBackend;
+    }
+
+    /**
+     * Formats this receiver advertises and plays.
+     */
+    public CodecRegistry getCodecs() {
+        return codecs;
+    }
+
+    public DecoderPool getDecoderPool() {
+        return decoderPool;
+    }
+
+    public RtspServer getRtspServer() {
+        return rtspServer;
+    }
+
+    /**
+     * Senders connected to the Java backend, null while it is not running.
+     */
+    public SessionManager getSessionManager() {
+        return sessionManager;
     }
 
     public void stop() {
@@ -62,30 +253,225 @@ public class RaopBridge {
                 nativeStop(nativeHandle);
                 nativeHandle = 0;
             }
-            Log.d(TAG, "RAOP bridge stopped");
         } catch (UnsatisfiedLinkError e) {
             Log.w(TAG, "Error stopping RAOP native (stub mode)", e);
         }
+        if (rtspServer != null) {
+            rtspServer.stop();
+            rtspServer = null;
+        }
+        if (sessionManager != null) {
+            sessionManager.closeAll();
+            sessionManager = null;
+        }
+        stopCapture();
+        AudioDecoder current = decoder;
+        decoder = null;
+        if (current != null) {
+            decoderPool.release(current);
+        }
+        // Sessions have returned theirs by now; codecs are not held while stopped
+        decoderPool.clear();
+        Log.d(TAG, "RAOP bridge stopped");
 
         isStarted = false;
+        activeBackend = null;
         audioEngine = null;
     }
 
     /**
-     * Called from native code when PCM audio frame is received.
-     * This is the callback that the native RAOP library will invoke.
+     * Records every packet the sessions receive, and raw PCM written to the engine,
+     * into {@code file} for replay with {@link CaptureReplayer}. Only while started.
      */
-    @SuppressWarnings("unused") // Called from native code
-    private void onPcmFrame(byte[] pcmData, int length) {
-        if (audioEngine != null && pcmData != null && length > 0) {
-            // If length is less than array size, copy only the valid portion
-            if (length < pcmData.length) {
-                byte[] validData = new byte[length];
-                System.arraycopy(pcmData, 0, validData, 0, length);
-                audioEngine.writePcmData(validData);
-            } else {
-                audioEngine.writePcmData(pcmData);
+    public boolean startCapture(File file) {
+        AudioEngine engine = audioEngine;
+        if (engine == null) {
+            Log.w(TAG, "Capture needs a running bridge");
+            return false;
+        }
+        stopCapture();
+        try {
+            capture = new PacketCapture(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open capture " + file, e);
+            return false;
+        }
+        engine.setCapture(capture);
+        Log.d(TAG, "Capturing to " + file);
+        return true;
+    }
+
+    public void stopCapture() {
+        PacketCapture current = capture;
+        if (current == null) {
+            return;
+        }
+        capture = null;
+        AudioEngine engine = audioEngine;
+        if (engine != null) {
+            engine.setCapture(null);
+        }
+        try {
+            current.close();
+            Log.d(TAG, "Capture " + current.getFile() + " closed: " + current.getRecordCount()
+                    + " records, " + current.getDroppedRecords() + " dropped");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close capture " + current.getFile(), e);
+        }
+    }
+
+    public PacketCapture getCapture() {
+        return capture;
+    }
+
+    /**
+     * Configures the decode stage from the SDP rtpmap and fmtp of the session; null
+     * values select the default ALAC stream.
+     *
+     * @return false if no codec plays the format, or it could not be configured
+     */
+    public synchronized boolean setFormat(String rtpmap, String fmtp) {
+        AudioCodec selected = codecs.find(rtpmap, fmtp);
+        if (selected == null) {
+            Log.w(TAG, "No codec for " + rtpmap);
+            return false;
+        }
+        if (fmtp == null) {
+            fmtp = selected.getDefaultFmtp();
+        }
+        if (audioEngine != null) {
+            AudioDecoder replacement = acquireDecoder(selected, rtpmap, fmtp);
+            if (replacement == null) {
+                return false;
+            }
+            AudioDecoder previous = decoder;
+            decoder = replacement;
+            if (previous != null) {
+                decoderPool.release(previous);
             }
         }
+        codec = selected;
+        this.rtpmap = rtpmap;
+        this.fmtp = fmtp;
+        Log.d(TAG, selected + " decoder configured: " + fmtp);
+        return true;
+    }
+
+    private AudioDecoder acquireDecoder(AudioCodec codec, String rtpmap, String fmtp) {
+        AudioEngine engine = audioEngine;
+        try {
+            AudioDecoder acquired = decoderPool.acquire(codec, rtpmap, fmtp,
+                    engine.getSampleRate(), engine.getChannels());
+            acquired.setOutput(engineOutput);
+            return acquired;
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Cannot decode " + codec + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Enables AES decryption of audio payloads with the session key and IV from
+     * ANNOUNCE. The key must already be unwrapped from its RSA envelope.
+     */
+    public boolean setEncryption(byte[] aesKey, byte[] aesIv) {
+        try {
+            decryptor = new RaopPacketDecryptor(aesKey, aesIv, DECRYPT_SCRATCH_BYTES);
+            Log.d(TAG, "AES decryption enabled");
+            return true;
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Invalid AES session parameters", e);
+            decryptor = null;
+            return false;
+        }
+    }
+
+    public void clearEncryption() {
+        decryptor = null;
+    }
+
+    /**
+     * Decrypts (if the session is encrypted) and decodes one RTP audio payload, then
+     * queues the PCM for playback. The payload is decrypted in place. Runs on the audio
+     * receive thread; steady-state processing allocates nothing.
+     */
+    void onAudioPacket(int seq, long rtpTimestamp, byte[] payload, int offset, int length) {
+        RaopPacketDecryptor aes = decryptor;
+        if (aes != null && !aes.decrypt(payload, offset, length)) {
+            recordDrop(PlaybackMetrics.DropCause.DECRYPT_ERROR, 1);
+            return;
+        }
+        decodePacket(seq, rtpTimestamp, payload, offset, length);
+    }
+
+    public long getDecryptErrors() {
+        RaopPacketDecryptor aes = decryptor;
+        return aes != null ? aes.getErrors() : 0;
+    }
+
+    private void decodePacket(int seq, long rtpTimestamp, byte[] payload, int offset, int length) {
+        AudioEngine engine = audioEngine;
+        AudioDecoder stage = decoder;
+        if (engine == null || stage == null) {
+            return;
+        }
+
+        engine.getMetrics().recordBytesIn(length);
+        stage.decode(seq, rtpTimestamp, payload, offset, length, System.nanoTime());
+    }
+
+    private void recordDrop(PlaybackMetrics.DropCause cause, int packets) {
+        AudioEngine engine = audioEngine;
+        if (engine != null) {
+            engine.getMetrics().recordDrop(cause, packets);
+        }
+    }
+
+    public long getDecodeErrors() {
+        AudioDecoder stage = decoder;
+        return stage != null ? stage.getErrors() : 0;
+    }
+
+    /**
+     * Forwards a {@code SET_PARAMETER volume} value from the sender.
+     */
+    public void setVolume(double airplayVolume) {
+        AudioEngine engine = audioEngine;
+        if (engine != null) {
+            engine.setAirplayVolume(airplayVolume);
+        }
+    }
+
+    @SuppressWarnings("unused") // Called from native code
+    private void onVolumeChanged(float airplayVolume) {
+        setVolume(airplayVolume);
+    }
+
+    /**
+     * Called from native code after it has decoded {@code count} frames of PCM in place
+     * into the shared buffer passed to {@code nativeStart}, one after another from its
+     * write cursor, with the byte length of each in the length table. {@code dropped}
+     * counts bytes it discarded because there was no room. Each frame is published to
+     * the engine where it lies; nothing is copied. The ring's write offset goes back
+     * after the lengths, so a frame the ring truncated to whole PCM frames cannot leave
+     * the native cursor out of step.
+     *
+     * @return bytes the native side may write before its next callback
+     */
+    @SuppressWarnings("unused") // Called from native code
+    private int onPcmBatch(int count, int dropped) {
+        upcalls.incrementAndGet();
+        AudioEngine engine = audioEngine;
+        if (engine == null) {
+            return 0;
+        }
+        count = Math.min(count, MAX_BATCH_FRAMES);
+        batchedFrames.addAndGet(count);
+        int writable = count == 0 ? engine.commitPcmData(0, dropped) : 0;
+        for (int i = 0; i < count; i++) {
+            writable = engine.commitPcmData(batchLengths.getInt(i * 4), i == 0 ? dropped : 0);
+        }
+        batchLengths.putInt(MAX_BATCH_FRAMES * 4, engine.getPcmWriteOffset());
+        return writable;
     }
 }
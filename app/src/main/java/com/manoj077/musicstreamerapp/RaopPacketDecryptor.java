@@ -0,0 +1,154 @@
+package com.manoj077.musicstreamerapp;
+
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Decrypts RAOP audio payloads (AES-128-CBC, IV reset to the session IV for every
+ * packet, trailing partial block sent in the clear).
+ *
+ * One AES block cipher is initialised per session and never re-initialised: CBC
+ * chaining is done here on top of a raw ECB transform, which lets a whole burst of
+ * packets go through a single cipher call. Payloads are decrypted in place via two
+ * pooled scratch regions, so steady-state decryption allocates nothing. Not
+ * thread-safe; use one instance per receive thread.
+ */
+public class RaopPacketDecryptor {
+    private static final int BLOCK_SIZE = 16;
+
+    private final Cipher cipher;
+    private final byte[] iv;
+    private final byte[] cipherText;
+    private final byte[] plainText;
+
+    private long decryptedPackets;
+    private long errors;
+
+    /**
+     * @param aesKey       16-byte session key (already RSA-unwrapped from ANNOUNCE)
+     * @param aesIv        16-byte session IV from ANNOUNCE
+     * @param scratchBytes size of the pooled burst buffers; larger bursts are split
+     */
+    public RaopPacketDecryptor(byte[] aesKey, byte[] aesIv, int scratchBytes)
+            throws GeneralSecurityException {
+        if (aesIv.length != BLOCK_SIZE) {
+            throw new IllegalArgumentException("AES IV must be 16 bytes");
+        }
+        cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(aesKey, "AES"));
+        iv = aesIv.clone();
+
+        int size = Math.max(BLOCK_SIZE, scratchBytes - (scratchBytes % BLOCK_SIZE));
+        cipherText = new byte[size];
+        plainText = new byte[size];
+    }
+
+    /**
+     * Decrypts one payload in place.
+     *
+     * @return false if the cipher failed; the payload is then left untouched
+     */
+    public boolean decrypt(byte[] data, int offset, int length) {
+        int aligned = length - (length % BLOCK_SIZE);
+        if (aligned == 0) {
+            decryptedPackets++;
+            return true;
+        }
+        if (aligned > cipherText.length) {
+            errors++;
+            return false;
+        }
+
+        System.arraycopy(data, offset, cipherText, 0, aligned);
+        if (!transform(aligned)) {
+            return false;
+        }
+        unchain(data, offset, aligned, 0);
+        decryptedPackets++;
+        return true;
+    }
+
+    /**
+     * Decrypts {@code count} queued payloads in place, batching as many as fit in the
+     * scratch buffers into each cipher call.
+     *
+     * @return number of payloads decrypted; stops at the first cipher failure or payload
+     *         too large for the scratch buffers
+     */
+    public int decrypt(byte[][] data, int[] offsets, int[] lengths, int count) {
+        int done = 0;
+        while (done < count) {
+            // Gather the encrypted part of as many packets as fit
+            int end = done;
+            int total = 0;
+            boolean tooLarge = false;
+            while (end < count) {
+                int aligned = lengths[end] - (lengths[end] % BLOCK_SIZE);
+                if (aligned > cipherText.length) {
+                    // Finish the packets gathered in front of it first
+                    errors++;
+                    tooLarge = true;
+                    break;
+                }
+                if (total + aligned > cipherText.length) {
+                    break;
+                }
+                System.arraycopy(data[end], offsets[end], cipherText, total, aligned);
+                total += aligned;
+                end++;
+            }
+
+            if (total > 0 && !transform(total)) {
+                return done;
+            }
+
+            // Scatter back, chaining each packet from the session IV
+            int position = 0;
+            for (int i = done; i < end; i++) {
+                int aligned = lengths[i] - (lengths[i] % BLOCK_SIZE);
+                unchain(data[i], offsets[i], aligned, position);
+                position += aligned;
+                decryptedPackets++;
+            }
+            done = end;
+            if (tooLarge) {
+                break;
+            }
+        }
+        return done;
+    }
+
+    public long getDecryptedPackets() {
+        return decryptedPackets;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    private boolean transform(int length) {
+        try {
+            cipher.update(cipherText, 0, length, plainText, 0);
+            return true;
+        } catch (GeneralSecurityException e) {
+            errors++;
+            return false;
+        }
+    }
+
+    /**
+     * Writes the CBC plaintext of one packet: each decrypted block XORed with the
+     * previous ciphertext block, or with the IV for the first block.
+     */
+    private void unchain(byte[] data, int offset, int aligned, int scratchOffset) {
+        for (int block = 0; block < aligned; block += BLOCK_SIZE) {
+            int src = scratchOffset + block;
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                int previous = block == 0 ? iv[i] : cipherText[src - BLOCK_SIZE + i];
+                data[offset + block + i] = (byte) (plainText[src + i] ^ previous);
+            }
+        }
+    }
+}
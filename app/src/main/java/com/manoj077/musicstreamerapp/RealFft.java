@@ -0,0 +1,122 @@
+package com.manoj077.musicstreamerapp;
+
+/**
+ * Power spectrum of a real signal whose length is a power of two. The signal is packed
+ * into a complex FFT of half the length, then split into the real spectrum, so each
+ * transform costs about half a complex one. Twiddle factors and the bit-reversal
+ * permutation are computed once; working arrays are reused, so a transform allocates
+ * nothing. Not thread-safe.
+ */
+public class RealFft {
+    private final int size;
+    private final int half;
+    private final int[] bitReverse;
+    // exp(-2 pi i j / half) for the complex FFT
+    private final float[] cos;
+    private final float[] sin;
+    // exp(-2 pi i k / size) for the split
+    private final float[] splitCos;
+    private final float[] splitSin;
+    private final float[] re;
+    private final float[] im;
+
+    public RealFft(int size) {
+        if (size < 4 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4: " + size);
+        }
+        this.size = size;
+        this.half = size / 2;
+        this.bitReverse = new int[half];
+        int bits = Integer.numberOfTrailingZeros(half);
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        this.cos = new float[half / 2];
+        this.sin = new float[half / 2];
+        for (int j = 0; j < half / 2; j++) {
+            double angle = -2 * Math.PI * j / half;
+            cos[j] = (float) Math.cos(angle);
+            sin[j] = (float) Math.sin(angle);
+        }
+        this.splitCos = new float[half];
+        this.splitSin = new float[half];
+        for (int k = 0; k < half; k++) {
+            double angle = 2 * Math.PI * k / size;
+            splitCos[k] = (float) Math.cos(angle);
+            splitSin[k] = (float) Math.sin(angle);
+        }
+        this.re = new float[half];
+        this.im = new float[half];
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Number of bins {@link #powerSpectrum} writes: DC through Nyquist.
+     */
+    public int getBinCount() {
+        return half + 1;
+    }
+
+    /**
+     * Writes {@code |X[k]|^2} of the first {@link #getSize()} samples of {@code input}
+     * to {@code power[0..size/2]}.
+     */
+    public void powerSpectrum(float[] input, float[] power) {
+        for (int m = 0; m < half; m++) {
+            int r = bitReverse[m];
+            re[r] = input[2 * m];
+            im[r] = input[2 * m + 1];
+        }
+        transform();
+
+        // Untangle the even and odd samples' spectra, then combine them
+        power[0] = square(re[0] + im[0]);
+        power[half] = square(re[0] - im[0]);
+        for (int k = 1; k < half; k++) {
+            float ar = re[k];
+            float ai = im[k];
+            float br = re[half - k];
+            float bi = im[half - k];
+            float evenRe = (ar + br) * 0.5f;
+            float evenIm = (ai - bi) * 0.5f;
+            float oddRe = (ai + bi) * 0.5f;
+            float oddIm = (br - ar) * 0.5f;
+            float c = splitCos[k];
+            float s = splitSin[k];
+            float xr = evenRe + c * oddRe + s * oddIm;
+            float xi = evenIm + c * oddIm - s * oddRe;
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+
+    /**
+     * In-place iterative radix-2 FFT of {@code re}/{@code im}, already bit-reversed.
+     */
+    private void transform() {
+        for (int length = 2; length <= half; length <<= 1) {
+            int span = length / 2;
+            int step = half / length;
+            for (int start = 0; start < half; start += length) {
+                for (int j = 0; j < span; j++) {
+                    float wr = cos[j * step];
+                    float wi = sin[j * step];
+                    int a = start + j;
+                    int b = a + span;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    private static float square(float value) {
+        return value * value;
+    }
+}
@@ -0,0 +1,273 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts and stops the receiver's components (hotspot, audio, RAOP, mDNS) as one
+ * state machine: STOPPED, STARTING, RUNNING, STOPPING.
+ *
+ * Every transition runs on a single lifecycle thread, so a start and a stop can never
+ * overlap. Requests only set the state wanted; the machine then moves towards it one
+ * transition at a time, so redundant requests coalesce and a start that arrives while
+ * stopping simply starts again afterwards. A stop during STARTING cancels the startup
+ * pipeline: steps not yet begun are skipped and teardown waits for the running ones.
+ */
+public class ReceiverLifecycle {
+
+    public enum State {
+        STOPPED,
+        STARTING,
+        RUNNING,
+        STOPPING
+    }
+
+    /**
+     * What the lifecycle starts and stops. Both methods run on the lifecycle thread.
+     */
+    public interface Components {
+        /**
+         * Adds the steps of one start to {@code pipeline}.
+         */
+        void addStartupSteps(StartupPipeline pipeline);
+
+        /**
+         * Stops everything a start brought up, including a partial or failed one.
+         */
+        void teardown();
+    }
+
+    /**
+     * Called on the lifecycle thread.
+     */
+    public interface Listener {
+        void onStateChanged(State state);
+
+        /**
+         * RUNNING was reached; {@code report} times each startup step.
+         */
+        void onStarted(StartupPipeline.Report report);
+
+        /**
+         * A startup step failed; the lifecycle stops on its own.
+         */
+        void onStartFailed(String step, Throwable error);
+    }
+
+    private final Components components;
+    private final Listener listener;
+    private final ExecutorService lifecycle;
+    private final ExecutorService steps;
+
+    // Lifecycle thread only, published for readers
+    private volatile State state = State.STOPPED;
+    private volatile boolean wantRunning;
+    private boolean shuttingDown;
+    private Runnable onShutdown;
+    private StartupPipeline pipeline;
+
+    private final AtomicLong transitions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cancelledStarts = new AtomicLong();
+
+    public ReceiverLifecycle(Components components, Listener listener) {
+        this.components = components;
+        this.listener = listener;
+        this.lifecycle = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "ReceiverLifecycle"));
+        AtomicInteger stepThreads = new AtomicInteger();
+        this.steps = Executors.newCachedThreadPool(
+                runnable -> new Thread(runnable, "ReceiverStartup-" + stepThreads.incrementAndGet()));
+    }
+
+    /**
+     * @return false once shut down
+     */
+    public boolean requestStart() {
+        return post(() -> {
+            if (wantRunning) {
+                coalesced.incrementAndGet();
+            }
+            wantRunning = !shuttingDown;
+            advance();
+        });
+    }
+
+    public boolean requestStop() {
+        return post(() -> {
+            if (!wantRunning) {
+                coalesced.incrementAndGet();
+            }
+            wantRunning = false;
+            advance();
+        });
+    }
+
+    /**
+     * Stops, then ends the lifecycle and step threads; {@code whenStopped} runs on the
+     * lifecycle thread once the components are down.
+     */
+    public void shutdown(Runnable whenStopped) {
+        boolean posted = post(() -> {
+            shuttingDown = true;
+            wantRunning = false;
+            onShutdown = whenStopped;
+            advance();
+        });
+        if (!posted && whenStopped != null) {
+            whenStopped.run();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return lifecycle.awaitTermination(timeout, unit)
+                && steps.awaitTermination(Math.max(0, deadline - System.nanoTime()),
+                TimeUnit.NANOSECONDS);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * Whether the last request was to run, whatever the current state.
+     */
+    public boolean isStartRequested() {
+        return wantRunning;
+    }
+
+    public long getTransitionCount() {
+        return transitions.get();
+    }
+
+    /**
+     * Requests that asked for the state already wanted.
+     */
+    public long getCoalescedRequests() {
+        return coalesced.get();
+    }
+
+    /**
+     * Starts abandoned before they reached RUNNING.
+     */
+    public long getCancelledStarts() {
+        return cancelledStarts.get();
+    }
+
+    private boolean post(Runnable transition) {
+        try {
+            lifecycle.execute(transition);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Takes the one transition that leads towards the wanted state, if any.
+     */
+    private void advance() {
+        switch (state) {
+            case STOPPED:
+                if (wantRunning) {
+                    beginStart();
+                } else if (shuttingDown) {
+                    finishShutdown();
+                }
+                break;
+            case STARTING:
+                if (!wantRunning) {
+                    cancelledStarts.incrementAndGet();
+                    beginStop();
+                }
+                break;
+            case RUNNING:
+                if (!wantRunning) {
+                    beginStop();
+                }
+                break;
+            case STOPPING:
+                // Reconsidered once the teardown is done
+                break;
+        }
+    }
+
+    private void beginStart() {
+        StartupPipeline current = new StartupPipeline(steps);
+        pipeline = current;
+        setState(State.STARTING);
+        try {
+            components.addStartupSteps(current);
+        } catch (RuntimeException e) {
+            listener.onStartFailed("setup", e);
+            wantRunning = false;
+            beginStop();
+            return;
+        }
+        current.start(new StartupPipeline.Listener() {
+            @Override
+            public void onFinished(StartupPipeline.Report report) {
+                post(() -> {
+                    if (pipeline == current && state == State.STARTING) {
+                        setState(State.RUNNING);
+                        listener.onStarted(report);
+                        advance();
+                    }
+                });
+            }
+
+            @Override
+            public void onFailed(String step, Throwable error) {
+                post(() -> {
+                    if (pipeline == current && state == State.STARTING) {
+                        listener.onStartFailed(step, error);
+                        wantRunning = false;
+                        beginStop();
+                    }
+                });
+            }
+        });
+    }
+
+    private void beginStop() {
+        StartupPipeline current = pipeline;
+        setState(State.STOPPING);
+        if (current != null) {
+            // Steps still running return first, so their work is torn down too
+            current.cancel(() -> post(this::finishStop));
+        } else {
+            finishStop();
+        }
+    }
+
+    private void finishStop() {
+        try {
+            components.teardown();
+        } finally {
+            pipeline = null;
+            setState(State.STOPPED);
+            advance();
+        }
+    }
+
+    private void finishShutdown() {
+        Runnable action = onShutdown;
+        onShutdown = null;
+        if (action != null) {
+            action.run();
+        }
+        steps.shutdown();
+        lifecycle.shutdown();
+    }
+
+    private void setState(State next) {
+        state = next;
+        transitions.incrementAndGet();
+        listener.onStateChanged(next);
+    }
+}
@@ -6,32 +6,158 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.core.app.NotificationCompat;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.jmdns.ServiceInfo;
+
 public class ReceiverService extends Service {
     private static final String TAG = "ReceiverService";
     private static final String CHANNEL_ID = "AirPlayReceiverChannel";
     private static final int NOTIFICATION_ID = 1;
+    private static final long TELEMETRY_INTERVAL_MS = 50;
+    private static final int DEFAULT_PROBE_UPDATES = 200;
+    private static final String METRICS_FILE = "playback-metrics.jsonl";
+    private static final String CAPTURE_FILE_PREFIX = "capture-";
+    private static final int RAOP_PORT = 5000;
+    private static final long DEFAULT_STANDBY_TIMEOUT_MS = 10 * 60 * 1000;
+    private static final long STANDBY_CHECK_MS = 1000;
+    private static final String PREFS = "receiver";
+    private static final String PREF_PROFILE = "playback_profile";
+    private static final String PREF_LATENCY_PREFIX = "latency_nanos_";
 
     public static final String ACTION_START = "com.manoj077.musicstreamerapp.ACTION_START";
     public static final String ACTION_STOP = "com.manoj077.musicstreamerapp.ACTION_STOP";
     public static final String ACTION_STATUS_UPDATE = "com.manoj077.musicstreamerapp.ACTION_STATUS_UPDATE";
+    public static final String ACTION_DUMP_METRICS = "com.manoj077.musicstreamerapp.ACTION_DUMP_METRICS";
+    public static final String ACTION_START_CAPTURE = "com.manoj077.musicstreamerapp.ACTION_START_CAPTURE";
+    public static final String ACTION_STOP_CAPTURE = "com.manoj077.musicstreamerapp.ACTION_STOP_CAPTURE";
+    public static final String ACTION_MEASURE_TELEMETRY = "com.manoj077.musicstreamerapp.ACTION_MEASURE_TELEMETRY";
+    public static final String ACTION_SET_PROFILE = "com.manoj077.musicstreamerapp.ACTION_SET_PROFILE";
 
     public static final String EXTRA_STATUS = "status";
     public static final String EXTRA_SSID = "ssid";
     public static final String EXTRA_PASSWORD = "password";
     public static final String EXTRA_AIRPLAY_NAME = "airplay_name";
+    /** Start until discoverable, in ms */
+    public static final String EXTRA_STARTUP_MS = "startup_ms";
+    /** Duration of each startup step, e.g. "audio 40 ms, rtsp 3 ms, ..." */
+    public static final String EXTRA_STARTUP_PHASES = "startup_phases";
+    /** On start: how long Stop keeps the receiver in standby before shutting down, 0 to never */
+    public static final String EXTRA_STANDBY_TIMEOUT_MS = "standby_timeout_ms";
+    /** On start: how long a standby keeps the paused AudioTrack before releasing it */
+    public static final String EXTRA_TRACK_IDLE_MS = "track_idle_ms";
+    /** On measure: how many updates each path sends */
+    public static final String EXTRA_PROBE_UPDATES = "probe_updates";
+    /** On set profile: a {@link PlaybackProfile} name, kept for later starts */
+    public static final String EXTRA_PLAYBACK_PROFILE = "playback_profile";
+    /** On start: memory ceiling for decoded cover art, in bytes */
+    public static final String EXTRA_ART_CACHE_BYTES = "art_cache_bytes";
+
+    /**
+     * Handed to clients in this process; live status is read from its channel rather
+     * than sent as broadcasts, which stay for lifecycle changes.
+     */
+    public class TelemetryBinder extends Binder {
+        public TelemetryChannel getTelemetry() {
+            return telemetry;
+        }
+
+        /**
+         * What the senders say is playing; listeners are called on the main thread.
+         */
+        public MetadataPipeline getMetadata() {
+            return metadata;
+        }
+    }
 
     private HotspotController hotspotController;
     private MdnsAdvertiser mdnsAdvertiser;
     private AudioEngine audioEngine;
     private RaopBridge raopBridge;
+    private MetadataPipeline metadata;
+
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService metricsWriter = Executors.newSingleThreadExecutor();
+    private final TelemetryChannel telemetry = new TelemetryChannel();
+    private final TelemetryBinder binder = new TelemetryBinder();
+    private final ReceiverLifecycle.Listener lifecycleListener = new ReceiverLifecycle.Listener() {
+        @Override
+        public void onStateChanged(ReceiverLifecycle.State state) {
+            Log.d(TAG, "Receiver " + state);
+            if (state == ReceiverLifecycle.State.STOPPED) {
+                metricsHandler.post(ReceiverService.this::onStopped);
+            }
+        }
 
-    private boolean isRunning = false;
+        @Override
+        public void onStarted(StartupPipeline.Report report) {
+            metricsHandler.post(() -> onStartupFinished(report));
+        }
+
+        @Override
+        public void onStartFailed(String step, Throwable error) {
+            Log.e(TAG, "Startup step " + step + " failed", error);
+        }
+    };
+    private final Runnable standbyExpired = () -> {
+        Log.d(TAG, "Standby timed out");
+        stopSpeakerMode();
+    };
+    // A sender connecting during standby wakes the engine on its own
+    private final Runnable watchStandby = new Runnable() {
+        @Override
+        public void run() {
+            if (!inStandby) {
+                return;
+            }
+            if (!audioEngine.isStandby()) {
+                Log.d(TAG, "Woken from standby by a sender");
+                leaveStandby(0);
+                return;
+            }
+            metricsHandler.postDelayed(this, STANDBY_CHECK_MS);
+        }
+    };
+    // Runs only while something subscribes and the receiver is up and out of standby
+    private final Runnable publishTelemetry = new Runnable() {
+        @Override
+        public void run() {
+            telemetry.publish(takeTelemetry());
+            if (wantTelemetry()) {
+                metricsHandler.postDelayed(this, TELEMETRY_INTERVAL_MS);
+            }
+        }
+    };
+
+    private ReceiverLifecycle lifecycle;
+    private boolean inStandby;
+    private long standbyTimeoutMs = DEFAULT_STANDBY_TIMEOUT_MS;
+    private volatile String deviceName;
+    private volatile String ssid;
+    private volatile String password;
+    private volatile ServiceInfo serviceInfo;
+    // Main thread only; shown in the notification
+    private MetadataPipeline.NowPlaying nowPlaying;
+    private String notificationText;
+    // Main thread only
+    private long telemetrySequence;
+    private long lastTelemetryNanos;
+    private long lastBytesIn;
 
     @Override
     public void onCreate() {
@@ -41,7 +167,31 @@ public class ReceiverService extends Service {
         hotspotController = new HotspotController(this);
         mdnsAdvertiser = new MdnsAdvertiser(this);
         audioEngine = new AudioEngine();
+        SharedPreferences prefs = getSharedPreferences(PREFS, MODE_PRIVATE);
+        audioEngine.setProfile(PlaybackProfile.fromName(
+                prefs.getString(PREF_PROFILE, null), PlaybackProfile.BALANCED));
+        // Start from what this device measured last time rather than a generic guess
+        for (PlaybackProfile profile : PlaybackProfile.values()) {
+            audioEngine.setLatencySeed(profile, prefs.getLong(latencyKey(profile), 0));
+        }
         raopBridge = new RaopBridge();
+        metadata = new MetadataPipeline(MetadataPipeline.DEFAULT_CACHE_BYTES,
+                MetadataPipeline.DEFAULT_ART_PX);
+        metadata.addListener(this::onNowPlaying);
+        raopBridge.setMetadataPipeline(metadata);
+        lifecycle = new ReceiverLifecycle(new ReceiverLifecycle.Components() {
+            @Override
+            public void addStartupSteps(StartupPipeline pipeline) {
+                ReceiverService.this.addStartupSteps(pipeline);
+            }
+
+            @Override
+            public void teardown() {
+                ReceiverService.this.teardown();
+            }
+        }, lifecycleListener);
+        telemetry.setDemandListener(subscribed ->
+                metricsHandler.post(this::scheduleTelemetry));
     }
 
     @Override
@@ -52,21 +202,53 @@ public class ReceiverService extends Service {
 
         String action = intent.getAction();
         if (ACTION_START.equals(action)) {
+            if (!lifecycle.isStartRequested()) {
+                standbyTimeoutMs = intent.getLongExtra(EXTRA_STANDBY_TIMEOUT_MS,
+                        DEFAULT_STANDBY_TIMEOUT_MS);
+                audioEngine.setTrackIdleTimeoutMs(intent.getLongExtra(EXTRA_TRACK_IDLE_MS,
+                        AudioEngine.DEFAULT_TRACK_IDLE_MS));
+                metadata.setCacheMaxBytes(intent.getIntExtra(EXTRA_ART_CACHE_BYTES,
+                        MetadataPipeline.DEFAULT_CACHE_BYTES));
+            }
             startSpeakerMode();
         } else if (ACTION_STOP.equals(action)) {
-            stopSpeakerMode();
+            // Stop goes to standby first; a second Stop, or the timeout, shuts down
+            if (lifecycle.getState() == ReceiverLifecycle.State.RUNNING && !inStandby
+                    && standbyTimeoutMs > 0) {
+                enterStandby();
+            } else {
+                stopSpeakerMode();
+            }
+        } else if (ACTION_DUMP_METRICS.equals(action)) {
+            dumpMetrics();
+        } else if (ACTION_START_CAPTURE.equals(action)) {
+            startCapture();
+        } else if (ACTION_STOP_CAPTURE.equals(action)) {
+            raopBridge.stopCapture();
+        } else if (ACTION_MEASURE_TELEMETRY.equals(action)) {
+            new TelemetryProbe(this, metricsHandler, audioEngine,
+                    intent.getIntExtra(EXTRA_PROBE_UPDATES, DEFAULT_PROBE_UPDATES)).run();
+        } else if (ACTION_SET_PROFILE.equals(action)) {
+            setProfile(intent.getStringExtra(EXTRA_PLAYBACK_PROFILE));
         }
 
         return START_STICKY;
     }
 
     private void startSpeakerMode() {
-        if (isRunning) {
+        if (inStandby) {
+            long resumeStart = System.nanoTime();
+            audioEngine.resume();
+            leaveStandby((System.nanoTime() - resumeStart) / 1_000_000);
+            return;
+        }
+        if (lifecycle.isStartRequested()) {
             Log.d(TAG, "Speaker mode already running");
             return;
         }
 
         Log.d(TAG, "Starting speaker mode");
+        deviceName = Build.MODEL.replaceAll("\\s+", "-");
         
         // Create notification channel for Android O and above
         createNotificationChannel();
@@ -76,42 +258,93 @@ public class ReceiverService extends Service {
         startForeground(NOTIFICATION_ID, notification);
         
         broadcastStatus("Starting");
+        lifecycle.requestStart();
+        scheduleTelemetry();
+    }
 
-        // Start hotspot
-        hotspotController.start(new HotspotController.HotspotCallback() {
+    private void addStartupSteps(StartupPipeline pipeline) {
+        String name = deviceName;
+        HotspotController.HotspotCallback hotspotCallback = new HotspotController.HotspotCallback() {
             @Override
             public void onStarted(String ssid, String password) {
                 Log.d(TAG, "Hotspot started: " + ssid);
-                onHotspotReady(ssid, password);
+                ReceiverService.this.ssid = ssid;
+                ReceiverService.this.password = password;
+                pipeline.complete("hotspot");
             }
 
             @Override
             public void onFailed(String error) {
                 Log.e(TAG, "Hotspot failed: " + error);
-                stopSpeakerMode();
+                pipeline.fail("hotspot", new IOException(error));
             }
-        });
+        };
+
+        // Everything that does not need the hotspot runs while it comes up; only
+        // JmDNS waits for the address, and the announcement waits for all of it
+        pipeline.external("hotspot", () -> hotspotController.start(hotspotCallback))
+                .step("audio", audioEngine::start)
+                .step("rtsp", () -> raopBridge.start(audioEngine, RAOP_PORT))
+                .step("txt", () -> serviceInfo = mdnsAdvertiser.buildServiceInfo(name, RAOP_PORT,
+                        raopBridge.getCodecs(), audioEngine.getSampleRate(),
+                        audioEngine.getBitDepth(), audioEngine.getChannels()))
+                .step("mdns", () -> {
+                    if (!mdnsAdvertiser.prepare(name)) {
+                        throw new IOException("No local address for mDNS");
+                    }
+                }, "hotspot")
+                .step("advertise", () -> mdnsAdvertiser.register(serviceInfo),
+                        "audio", "rtsp", "txt", "mdns");
     }
 
-    private void onHotspotReady(String ssid, String password) {
-        // Start audio engine
-        audioEngine.start();
+    private void teardown() {
+        dumpMetrics();
         
-        // Start RAOP bridge (JNI stub)
-        raopBridge.start(audioEngine, 5000); // Port 5000 for RAOP
+        // Stop RAOP
+        raopBridge.stop();
         
-        // Start mDNS advertising
-        String deviceName = Build.MODEL.replaceAll("\\s+", "-");
-        mdnsAdvertiser.start(deviceName, 5000);
+        // Stop mDNS
+        mdnsAdvertiser.stop();
         
-        isRunning = true;
+        // Stop audio engine
+        audioEngine.stop();
+
+        metadata.clear();
         
-        // Update notification
-        Notification notification = createNotification("AirPlay receiver running");
-        NotificationManager notificationManager = getSystemService(NotificationManager.class);
-        if (notificationManager != null) {
-            notificationManager.notify(NOTIFICATION_ID, notification);
+        // Stop hotspot
+        hotspotController.stop();
+    }
+
+    private void onStartupFinished(StartupPipeline.Report report) {
+        if (lifecycle.getState() != ReceiverLifecycle.State.RUNNING) {
+            return;
+        }
+        long discoverableMillis = report.getFinishMillis("advertise");
+        Log.d(TAG, "Discoverable after " + discoverableMillis + " ms: " + report);
+        long mdnsMillis = report.getDurationMillis("mdns");
+        if (mdnsMillis >= 0 && report.getDurationMillis("advertise") >= 0) {
+            mdnsMillis += report.getDurationMillis("advertise");
+        }
+        audioEngine.getMetrics().setStartupMillis(discoverableMillis,
+                report.getDurationMillis("hotspot"), mdnsMillis);
+        broadcastRunning(discoverableMillis, report.toString());
+    }
+
+    private void onStopped() {
+        // A start requested meanwhile is already on its way back up
+        if (lifecycle.getState() != ReceiverLifecycle.State.STOPPED
+                || lifecycle.isStartRequested()) {
+            return;
         }
+        broadcastStatus("Stopped");
+        
+        stopForeground(true);
+        stopSelf();
+    }
+
+    private void broadcastRunning(long startupMillis, String phases) {
+        // Update notification
+        updateNotification("AirPlay receiver running");
         
         // Broadcast status
         Intent statusIntent = new Intent(ACTION_STATUS_UPDATE);
@@ -119,36 +352,90 @@ public class ReceiverService extends Service {
         statusIntent.putExtra(EXTRA_SSID, ssid);
         statusIntent.putExtra(EXTRA_PASSWORD, password);
         statusIntent.putExtra(EXTRA_AIRPLAY_NAME, deviceName);
+        statusIntent.putExtra(EXTRA_STARTUP_MS, startupMillis);
+        statusIntent.putExtra(EXTRA_STARTUP_PHASES, phases);
         sendBroadcast(statusIntent);
     }
 
+    /**
+     * Goes quiet but stays ready: senders are disconnected and the engine pauses, while
+     * the hotspot, RTSP listener and mDNS registration stay up. RTP sockets are bound
+     * per sender at SETUP, so they close with their sessions and are not kept. Shuts
+     * down fully after the standby timeout.
+     */
+    private void enterStandby() {
+        Log.d(TAG, "Entering standby for up to " + standbyTimeoutMs + " ms");
+        inStandby = true;
+        dumpMetrics();
+        SessionManager sessions = raopBridge.getSessionManager();
+        if (sessions != null) {
+            sessions.closeAll();
+        }
+        audioEngine.standby();
+        // One last snapshot shows the standby; nothing changes until it ends
+        scheduleTelemetry();
+        metricsHandler.postDelayed(standbyExpired, standbyTimeoutMs);
+        metricsHandler.postDelayed(watchStandby, STANDBY_CHECK_MS);
+        updateNotification("AirPlay receiver in standby");
+        broadcastStatus("Standby");
+    }
+
+    private void leaveStandby(long resumeMillis) {
+        Log.d(TAG, "Leaving standby");
+        inStandby = false;
+        metricsHandler.removeCallbacks(standbyExpired);
+        metricsHandler.removeCallbacks(watchStandby);
+        scheduleTelemetry();
+        broadcastRunning(resumeMillis, "resume " + resumeMillis + " ms");
+    }
+
     private void stopSpeakerMode() {
-        if (!isRunning) {
+        inStandby = false;
+        metricsHandler.removeCallbacks(publishTelemetry);
+        metricsHandler.removeCallbacks(standbyExpired);
+        metricsHandler.removeCallbacks(watchStandby);
+        if (lifecycle.getState() == ReceiverLifecycle.State.STOPPED
+                && !lifecycle.isStartRequested()) {
             Log.d(TAG, "Speaker mode not running");
             stopSelf();
             return;
         }
 
         Log.d(TAG, "Stopping speaker mode");
-        
-        // Stop RAOP
-        raopBridge.stop();
-        
-        // Stop mDNS
-        mdnsAdvertiser.stop();
-        
-        // Stop audio engine
-        audioEngine.stop();
-        
-        // Stop hotspot
-        hotspotController.stop();
-        
-        isRunning = false;
-        
-        broadcastStatus("Stopped");
-        
-        stopForeground(true);
-        stopSelf();
+        lifecycle.requestStop();
+    }
+
+    private boolean wantTelemetry() {
+        return lifecycle.isStartRequested() && !inStandby && telemetry.getSubscriberCount() > 0;
+    }
+
+    /**
+     * Publishes a snapshot now and keeps publishing while {@link #wantTelemetry()}
+     * holds. Call on the main thread whenever one of its inputs changes.
+     */
+    private void scheduleTelemetry() {
+        metricsHandler.removeCallbacks(publishTelemetry);
+        if (lifecycle.isStartRequested() && telemetry.getSubscriberCount() > 0) {
+            metricsHandler.post(publishTelemetry);
+        }
+    }
+
+    /**
+     * Current live status; the bitrate covers the time since the previous call.
+     */
+    private TelemetrySnapshot takeTelemetry() {
+        long now = System.nanoTime();
+        PlaybackMetrics.Snapshot metrics = audioEngine.getMetrics().snapshot();
+        double bitrateKbps = lastTelemetryNanos == 0 ? 0
+                : (metrics.bytesIn - lastBytesIn) * 8e6 / (now - lastTelemetryNanos);
+        lastTelemetryNanos = now;
+        lastBytesIn = metrics.bytesIn;
+        SessionManager sessions = raopBridge.getSessionManager();
+        return new TelemetrySnapshot(now, ++telemetrySequence,
+                inStandby ? "STANDBY" : lifecycle.getState().name(),
+                sessions != null ? sessions.getSessionCount() : 0,
+                audioEngine.getQueuedMillis(), bitrateKbps, audioEngine.getAnalyzer().latest(),
+                metrics.lastSyncErrorNanos / 1e6, audioEngine.getDriftCorrectionPpm(), metrics);
     }
 
     private void broadcastStatus(String status) {
@@ -157,6 +444,86 @@ public class ReceiverService extends Service {
         sendBroadcast(statusIntent);
     }
 
+    /**
+     * Applies a profile now, even mid-session, and keeps it for this installation.
+     */
+    private void setProfile(String name) {
+        PlaybackProfile profile = PlaybackProfile.fromName(name, null);
+        if (profile == null) {
+            Log.w(TAG, "Unknown playback profile " + name);
+            return;
+        }
+        audioEngine.setProfile(profile);
+        getSharedPreferences(PREFS, MODE_PRIVATE).edit()
+                .putString(PREF_PROFILE, profile.name())
+                .apply();
+    }
+
+    /**
+     * Keeps each profile's calibrated latency for the next start, keyed by device model
+     * so a restored backup on another phone does not inherit it.
+     */
+    private void saveLatency() {
+        LatencyCalibrator calibrator = audioEngine.getLatencyCalibrator();
+        Log.d(TAG, "Output latency " + calibrator.getLatencyNanos() / 1_000_000 + " ms ("
+                + (calibrator.isCalibrated() ? "calibrated" : "seed") + ", "
+                + calibrator.getSamples() + " samples, "
+                + calibrator.getRejectedSamples() + " rejected)");
+        SharedPreferences.Editor editor = getSharedPreferences(PREFS, MODE_PRIVATE).edit();
+        for (PlaybackProfile profile : PlaybackProfile.values()) {
+            long nanos = audioEngine.getLatencyNanos(profile);
+            if (nanos > 0) {
+                editor.putLong(latencyKey(profile), nanos);
+            }
+        }
+        editor.apply();
+    }
+
+    private static String latencyKey(PlaybackProfile profile) {
+        return PREF_LATENCY_PREFIX + Build.MODEL + "_" + profile.name();
+    }
+
+    /**
+     * Appends the current metrics as one JSON line to the app's external files dir,
+     * where they can be collected for fleet analysis.
+     */
+    private void dumpMetrics() {
+        for (PlaybackProfile profile : PlaybackProfile.values()) {
+            PlaybackProfile.Measurement measured = audioEngine.getMeasurement(profile);
+            if (measured.seconds > 0) {
+                Log.d(TAG, measured.toString());
+            }
+        }
+        saveLatency();
+        Log.d(TAG, metadata.getArtCache().toDisplayString() + ", " + metadata.getArtDecoded()
+                + " decoded, " + metadata.getArtFailed() + " unreadable");
+        final String json = audioEngine.getMetrics().snapshot().toJson();
+        File dir = getExternalFilesDir(null);
+        final File file = new File(dir != null ? dir : getFilesDir(), METRICS_FILE);
+        metricsWriter.execute(() -> {
+            try (Writer writer = new FileWriter(file, true)) {
+                writer.write(json);
+                writer.write('\n');
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to dump metrics to " + file, e);
+            }
+        });
+    }
+
+    /**
+     * Records the incoming streams next to the metrics dump, for replaying a glitch
+     * off the device.
+     */
+    private void startCapture() {
+        if (lifecycle.getState() != ReceiverLifecycle.State.RUNNING) {
+            Log.w(TAG, "Capture requested while stopped");
+            return;
+        }
+        File dir = getExternalFilesDir(null);
+        raopBridge.startCapture(new File(dir != null ? dir : getFilesDir(),
+                CAPTURE_FILE_PREFIX + System.currentTimeMillis() + ".rcap"));
+    }
+
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
@@ -173,6 +540,21 @@ public class ReceiverService extends Service {
         }
     }
 
+    private void onNowPlaying(MetadataPipeline.NowPlaying nowPlaying) {
+        this.nowPlaying = nowPlaying;
+        if (notificationText != null && lifecycle.getState() == ReceiverLifecycle.State.RUNNING) {
+            updateNotification(notificationText);
+        }
+    }
+
+    private void updateNotification(String contentText) {
+        notificationText = contentText;
+        NotificationManager notificationManager = getSystemService(NotificationManager.class);
+        if (notificationManager != null) {
+            notificationManager.notify(NOTIFICATION_ID, createNotification(contentText));
+        }
+    }
+
     private Notification createNotification(String contentText) {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(
@@ -182,12 +564,24 @@ public class ReceiverService extends Service {
                 PendingIntent.FLAG_IMMUTABLE
         );
 
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setContentTitle("AirPlay Receiver")
-                .setContentText(contentText)
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setSmallIcon(android.R.drawable.ic_dialog_info)
                 .setContentIntent(pendingIntent)
-                .build();
+                .setOnlyAlertOnce(true);
+        MetadataPipeline.NowPlaying playing = nowPlaying;
+        if (playing != null && !playing.isEmpty()) {
+            // The track takes over the title; the receiver status moves to the subtext
+            TrackMetadata track = playing.track;
+            builder.setContentTitle(track != null && track.title != null
+                            ? track.title : "AirPlay Receiver")
+                    .setContentText(track != null ? track.getSubtitle() : null)
+                    .setSubText(contentText)
+                    .setLargeIcon(playing.artwork);
+        } else {
+            builder.setContentTitle("AirPlay Receiver")
+                    .setContentText(contentText);
+        }
+        return builder.build();
     }
 
     @Override
@@ -195,13 +589,16 @@ public class ReceiverService extends Service {
         super.onDestroy();
         Log.d(TAG, "Service destroyed");
         
-        if (isRunning) {
-            stopSpeakerMode();
-        }
+        metricsHandler.removeCallbacks(publishTelemetry);
+        metricsHandler.removeCallbacks(standbyExpired);
+        metricsHandler.removeCallbacks(watchStandby);
+        metadata.shutdown();
+        // Stops if needed; the last metrics dump is queued before the writer goes
+        lifecycle.shutdown(metricsWriter::shutdown);
     }
 
     @Override
     public IBinder onBind(Intent intent) {
-        return null;
+        return binder;
     }
 }
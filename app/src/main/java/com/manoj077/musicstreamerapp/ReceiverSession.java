@@ -0,0 +1,467 @@
+package com.manoj077.musicstreamerapp;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One sender on the Java backend: its RTSP session events, RTP transport, resend
+ * scheduling, timing exchange, decrypt and decode stages, and the jitter buffer and
+ * gain it feeds into the engine's {@link AudioMixer}.
+ *
+ * RTSP callbacks run on the server's selector thread, packet callbacks on this
+ * session's own {@link RtpReceiver} thread, so senders never share decode state. The
+ * codec is chosen at ANNOUNCE; its decoder is leased from the shared
+ * {@link DecoderPool} at SETUP and returned on close.
+ */
+public class ReceiverSession implements RtspServer.Listener, RtpReceiver.Handler,
+        AudioDecoder.Output {
+    private static final String TAG = "ReceiverSession";
+
+    // Load is only trusted once the session has run this long
+    private static final long MIN_MEASURE_NANOS = 1_000_000_000L;
+
+    private final InetSocketAddress client;
+    private final AudioEngine engine;
+    private final SessionManager manager;
+    private final CodecRegistry codecs;
+    private final DecoderPool decoders;
+    // Null when nothing shows what is playing
+    private final MetadataPipeline metadata;
+
+    // Chosen at ANNOUNCE
+    private volatile AudioCodec codec;
+    private volatile String rtpmap;
+    private volatile String fmtp;
+    private volatile RaopPacketDecryptor decryptor;
+
+    // Created at SETUP, once the session is admitted
+    private JitterBuffer jitterBuffer;
+    private GainStage gainStage;
+    private AudioDecoder decoder;
+    private AudioMixer.Input mixerInput;
+    private RtpReceiver receiver;
+    private RetransmitScheduler retransmits;
+    private SenderClock senderClock;
+    private volatile boolean active;
+    private long startNanos;
+    // Tells this session's records apart in a shared capture
+    private int captureStream;
+
+    // Receiver thread only
+    private byte[][] burstPayloads = new byte[RtpReceiver.MAX_BURST][];
+    private int[] burstOffsets = new int[RtpReceiver.MAX_BURST];
+    private int[] burstLengths = new int[RtpReceiver.MAX_BURST];
+    // Resent packets arrive wrapped in a 4-byte control header
+    private final RtpPacket resent = new RtpPacket();
+    private final RtpPacket[] resentBurst = {resent};
+    private final ByteBuffer timingOut = ByteBuffer.allocate(SenderClock.TIMING_PACKET_BYTES);
+    private long reportedRequested;
+    private long reportedRecovered;
+    private long reportedTooLate;
+
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public ReceiverSession(InetSocketAddress client, AudioEngine engine, SessionManager manager,
+                           CodecRegistry codecs, DecoderPool decoders,
+                           MetadataPipeline metadata) {
+        this.client = client;
+        this.engine = engine;
+        this.manager = manager;
+        this.codecs = codecs;
+        this.decoders = decoders;
+        this.metadata = metadata;
+        this.codec = codecs.getDefault();
+        this.fmtp = codec.getDefaultFmtp();
+    }
+
+    public InetSocketAddress getClient() {
+        return client;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Selects the stream format from the ANNOUNCE SDP attributes; applies from the next
+     * SETUP.
+     *
+     * @return false if no registered codec plays it
+     */
+    public boolean setFormat(String rtpmap, String fmtp) {
+        AudioCodec selected = codecs.find(rtpmap, fmtp);
+        if (selected == null) {
+            Log.w(TAG, "No codec for " + rtpmap + " from " + client);
+            return false;
+        }
+        if (active) {
+            // The decoder feeds a live jitter buffer; a new format needs a new session
+            Log.w(TAG, "Format change to " + selected + " ignored during playback");
+            return true;
+        }
+        codec = selected;
+        this.rtpmap = rtpmap;
+        this.fmtp = fmtp != null ? fmtp : selected.getDefaultFmtp();
+        Log.d(TAG, "Session from " + client + " uses " + selected);
+        return true;
+    }
+
+    public AudioCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Enables AES decryption with the session key and IV from ANNOUNCE, already
+     * unwrapped from its RSA envelope.
+     */
+    public boolean setEncryption(byte[] aesKey, byte[] aesIv) {
+        try {
+            decryptor = new RaopPacketDecryptor(aesKey, aesIv,
+                    RaopBridge.DECRYPT_SCRATCH_BYTES);
+            return true;
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Invalid AES session parameters from " + client, e);
+            decryptor = null;
+            return false;
+        }
+    }
+
+    public void clearEncryption() {
+        decryptor = null;
+    }
+
+    /**
+     * Sender volume, applied to this session only.
+     */
+    public void setVolume(double airplayVolume) {
+        GainStage gain = gainStage;
+        if (gain != null) {
+            gain.setAirplayVolume(airplayVolume);
+        }
+    }
+
+    public JitterBuffer getJitterBuffer() {
+        return jitterBuffer;
+    }
+
+    public RtpReceiver getRtpReceiver() {
+        return receiver;
+    }
+
+    public RetransmitScheduler getRetransmitScheduler() {
+        return retransmits;
+    }
+
+    public SenderClock getSenderClock() {
+        return senderClock;
+    }
+
+    /**
+     * Cores this session has used since SETUP: its receive work plus its share of the
+     * mixer, or -1 while it is too young to tell.
+     */
+    public double getCpuLoad(long nowNanos) {
+        AudioMixer.Input input = mixerInput;
+        long elapsed = nowNanos - startNanos;
+        if (!active || input == null || elapsed < MIN_MEASURE_NANOS) {
+            return -1;
+        }
+        return (double) (busyNanos.get() + input.getMixNanos()) / elapsed;
+    }
+
+    /**
+     * Stops receiving and leaves the mix without blocking, so it is safe on the RTSP
+     * selector thread; the decoder goes back to the pool once the receiver thread is
+     * done with it. Safe to call more than once.
+     */
+    public synchronized void close() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        AudioDecoder leased = decoder;
+        receiver.stop(() -> decoders.release(leased));
+        manager.getMixer().removeInput(mixerInput);
+        manager.remove(this);
+        Log.d(TAG, "Session from " + client + " closed (" + manager.getSessionCount()
+                + " left)");
+    }
+
+    @Override
+    public boolean onAnnounce(RtspServer.Announcement announcement) {
+        if (announcement.rsaAesKey != null) {
+            // Unwrapping needs the AirPort private key, which we do not ship; playing
+            // the stream anyway would only feed ciphertext to the decoder
+            Log.w(TAG, "Refusing RSA/AES encrypted stream from " + client);
+            return false;
+        }
+        if (!setFormat(announcement.rtpmap, announcement.fmtp)) {
+            return false;
+        }
+        clearEncryption();
+        return true;
+    }
+
+    @Override
+    public synchronized RtspServer.Ports onSetup(InetSocketAddress client, int clientControlPort,
+                                                 int clientTimingPort) {
+        if (active) {
+            return new RtspServer.Ports(receiver.getAudioPort(), receiver.getControlPort(),
+                    receiver.getTimingPort());
+        }
+        if (!manager.admit(this)) {
+            Log.w(TAG, "Session from " + client + " refused: " + manager.getSessionCount()
+                    + " sessions at " + manager.getMeasuredLoad() + " cores");
+            return null;
+        }
+
+        AudioCodec selected = codec;
+        AudioDecoder leased;
+        try {
+            leased = decoders.acquire(selected, rtpmap, fmtp, engine.getSampleRate(),
+                    engine.getChannels());
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Cannot decode " + selected + " from " + client + ": " + e.getMessage());
+            manager.remove(this);
+            return null;
+        }
+
+        // A sender arriving during standby brings playback back before its first packet
+        engine.markSessionSetup();
+
+        captureStream = (int) (manager.getAdmittedSessions() & 0xff);
+        PacketCapture capture = engine.getCapture();
+        if (capture != null) {
+            capture.recordFormat(captureStream, rtpmap, fmtp);
+        }
+
+        // Everything the receiver thread touches exists before it starts
+        RtpReceiver rtp = new RtpReceiver(this);
+        retransmits = new RetransmitScheduler(engine.getSampleRate(), rtp::sendControl);
+        senderClock = new SenderClock(engine.getSampleRate());
+        jitterBuffer = engine.newJitterBuffer();
+        jitterBuffer.setPlayoutClock(senderClock);
+        gainStage = engine.newGainStage();
+        decoder = leased;
+        leased.setOutput(this);
+        if (clientControlPort > 0) {
+            rtp.setControlPeer(new InetSocketAddress(client.getAddress(), clientControlPort));
+        }
+        if (clientTimingPort > 0) {
+            rtp.setTimingPeer(new InetSocketAddress(client.getAddress(), clientTimingPort));
+        }
+        receiver = rtp;
+        try {
+            rtp.start();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open RTP sockets for " + client, e);
+            decoders.release(leased);
+            manager.remove(this);
+            return null;
+        }
+        startNanos = System.nanoTime();
+        mixerInput = manager.getMixer().addInput(jitterBuffer, gainStage);
+        active = true;
+
+        Log.d(TAG, "Session from " + client + ": RTP audio on port " + rtp.getAudioPort()
+                + ", control on " + rtp.getControlPort() + ", timing on " + rtp.getTimingPort()
+                + ", " + selected + " (" + manager.getSessionCount() + " active)");
+        return new RtspServer.Ports(rtp.getAudioPort(), rtp.getControlPort(),
+                rtp.getTimingPort());
+    }
+
+    @Override
+    public void onRecord(int seq, long rtpTime) {
+        Log.d(TAG, "RECORD from " + client + " seq=" + seq + " rtptime=" + rtpTime);
+    }
+
+    @Override
+    public void onFlush(int seq, long rtpTime) {
+        if (active) {
+            jitterBuffer.flush();
+            retransmits.reset();
+        }
+    }
+
+    @Override
+    public void onVolume(double volume) {
+        setVolume(volume);
+    }
+
+    @Override
+    public void onTeardown() {
+        close();
+        clearEncryption();
+        if (metadata != null) {
+            metadata.sessionEnded(this);
+        }
+    }
+
+    @Override
+    public void onMetadata(String contentType, byte[] content) {
+        if (metadata != null) {
+            metadata.onMetadata(this, contentType, content);
+        }
+    }
+
+    @Override
+    public void onProgress(long start, long current, long end) {
+        if (metadata != null) {
+            // RTP timestamps wrap at 32 bits
+            long rate = engine.getSampleRate();
+            metadata.onProgress(this, ((current - start) & 0xffffffffL) * 1000 / rate,
+                    ((end - start) & 0xffffffffL) * 1000 / rate);
+        }
+    }
+
+    @Override
+    public void onAudioPackets(RtpPacket[] packets, int count) {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            retransmits.onPacket(packets[i].sequence, packets[i].timestamp,
+                    packets[i].receivedNanos);
+        }
+        decodePackets(packets, count);
+        busyNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    @Override
+    public void onControlPacket(RtpPacket packet) {
+        if (packet.payloadType == SenderClock.SYNC_TYPE) {
+            record(PacketCapture.KIND_CONTROL, packet);
+            senderClock.onSync(packet.buffer, packet.offset, packet.length);
+            return;
+        }
+        if (packet.payloadType != RetransmitScheduler.RESEND_REPLY_TYPE) {
+            return;
+        }
+        long start = System.nanoTime();
+        resent.buffer = packet.buffer;
+        resent.offset = packet.offset + 4;
+        resent.length = packet.length - 4;
+        resent.receivedNanos = packet.receivedNanos;
+        if (resent.parse()) {
+            retransmits.onPacket(resent.sequence, resent.timestamp, resent.receivedNanos);
+            decodePackets(resentBurst, 1);
+        }
+        busyNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    @Override
+    public void onTimingPacket(RtpPacket packet) {
+        record(PacketCapture.KIND_TIMING, packet);
+        if (senderClock.onTimingPacket(packet.buffer, packet.offset, packet.length,
+                packet.receivedNanos, timingOut)) {
+            sendTiming(packet.source);
+        }
+    }
+
+    @Override
+    public void onHandlerError(RuntimeException error) {
+        Log.e(TAG, "Dropped packets from " + client + " after a handler failure", error);
+    }
+
+    @Override
+    public void onReceiveFailed(IOException error) {
+        Log.e(TAG, "RTP receive from " + client + " stopped", error);
+    }
+
+    @Override
+    public void onTick(long nowNanos) {
+        if (senderClock.isRequestDue(nowNanos)) {
+            senderClock.writeRequest(timingOut, System.nanoTime());
+            sendTiming(null);
+        }
+
+        retransmits.setPlayoutDelayNanos(jitterBuffer.getTargetDelayNanos());
+        retransmits.poll(nowNanos);
+
+        long requested = retransmits.getRequestedPackets();
+        long recovered = retransmits.getRecoveredPackets();
+        long tooLate = retransmits.getTooLatePackets();
+        if (requested != reportedRequested || recovered != reportedRecovered
+                || tooLate != reportedTooLate) {
+            engine.getMetrics().recordResends(requested - reportedRequested,
+                    recovered - reportedRecovered, tooLate - reportedTooLate);
+            reportedRequested = requested;
+            reportedRecovered = recovered;
+            reportedTooLate = tooLate;
+        }
+    }
+
+    private void record(int kind, RtpPacket packet) {
+        PacketCapture capture = engine.getCapture();
+        if (capture != null) {
+            capture.record(kind, captureStream, packet.receivedNanos, packet.buffer,
+                    packet.offset, packet.length);
+        }
+    }
+
+    private void sendTiming(SocketAddress peer) {
+        try {
+            receiver.sendTiming(timingOut, peer);
+        } catch (IOException e) {
+            Log.w(TAG, "Timing packet to " + client + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decrypts a burst with one cipher pass, then decodes each packet into the jitter
+     * buffer.
+     */
+    private void decodePackets(RtpPacket[] packets, int count) {
+        PlaybackMetrics metrics = engine.getMetrics();
+        RaopPacketDecryptor aes = decryptor;
+        if (aes != null) {
+            if (burstPayloads.length < count) {
+                burstPayloads = new byte[count][];
+                burstOffsets = new int[count];
+                burstLengths = new int[count];
+            }
+            for (int i = 0; i < count; i++) {
+                burstPayloads[i] = packets[i].buffer;
+                burstOffsets[i] = packets[i].payloadOffset;
+                burstLengths[i] = packets[i].payloadLength;
+            }
+            int decrypted = aes.decrypt(burstPayloads, burstOffsets, burstLengths, count);
+            if (decrypted < count) {
+                metrics.recordDrop(PlaybackMetrics.DropCause.DECRYPT_ERROR, count - decrypted);
+            }
+            count = decrypted;
+        }
+
+        // Captured decrypted, so a replay needs no session key
+        PacketCapture capture = engine.getCapture();
+        if (capture != null) {
+            for (int i = 0; i < count; i++) {
+                capture.record(PacketCapture.KIND_AUDIO, captureStream, packets[i].receivedNanos,
+                        packets[i].buffer, packets[i].offset, packets[i].length);
+            }
+        }
+
+        AudioDecoder stage = decoder;
+        for (int i = 0; i < count; i++) {
+            RtpPacket packet = packets[i];
+            metrics.recordBytesIn(packet.payloadLength);
+            stage.decode(packet.sequence, packet.timestamp, packet.buffer,
+                    packet.payloadOffset, packet.payloadLength, packet.receivedNanos);
+        }
+    }
+
+    @Override
+    public void onFrame(int seq, long rtpTimestamp, ByteBuffer pcm, long arrivalNanos) {
+        engine.getMetrics().recordFramesIn(pcm.remaining() / (engine.getChannels() * 2));
+        jitterBuffer.put(seq, rtpTimestamp, pcm, arrivalNanos);
+    }
+
+    @Override
+    public void onError(int seq) {
+        engine.getMetrics().recordDrop(PlaybackMetrics.DropCause.DECODE_ERROR, 1);
+    }
+}
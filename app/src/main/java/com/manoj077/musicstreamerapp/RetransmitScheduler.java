@@ -0,0 +1,278 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detects lost RTP audio packets and asks the sender to resend them.
+ *
+ * Gaps in the sequence stream are tracked per packet with the time it is due at the
+ * DAC. {@link #poll} coalesces everything that needs (re)requesting into contiguous
+ * ranges, one RAOP resend request per range, with a per-poll cap so a long outage
+ * does not flood the control channel. A packet is retried while its answer can still
+ * arrive before its playout deadline, and given up once it cannot.
+ *
+ * Not thread-safe: packets and polls come from the receive thread; {@link #reset} may
+ * be called from anywhere.
+ */
+public class RetransmitScheduler {
+
+    /**
+     * Sends one datagram to the sender's control port.
+     */
+    public interface Transport {
+        boolean send(ByteBuffer datagram) throws IOException;
+    }
+
+    public static final int RESEND_REQUEST_TYPE = 0x55;
+    public static final int RESEND_REPLY_TYPE = 0x56;
+
+    private static final int WINDOW = 512; // missing packets tracked, power of two
+    private static final int MAX_GAP = WINDOW / 2; // bigger jumps are a sender restart
+    private static final int MAX_ATTEMPTS = 3;
+    private static final int MAX_REQUESTS_PER_POLL = 8;
+    private static final int DEFAULT_FRAME_SAMPLES = 352;
+    private static final long DEFAULT_RTT_NANOS = 20_000_000L;
+    private static final long MIN_RETRY_NANOS = 10_000_000L;
+    private static final int EMPTY = -1;
+
+    private final Transport transport;
+    private final int sampleRate;
+    private final ByteBuffer request = ByteBuffer.allocate(8);
+
+    // Missing packets, indexed by sequence number
+    private final int[] missingSeq = new int[WINDOW];
+    private final long[] deadline = new long[WINDOW];
+    private final long[] lastRequest = new long[WINDOW];
+    private final int[] attempts = new int[WINDOW];
+    private int missingCount;
+    private int scanFrom;
+
+    private boolean started;
+    private int highestSeq;
+    private long highestTimestamp;
+    private long frameNanos;
+    private long rttNanos = DEFAULT_RTT_NANOS;
+    private int requestSeq;
+    private volatile long playoutDelayNanos;
+    private volatile boolean resetRequested;
+
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong recovered = new AtomicLong();
+    private final AtomicLong tooLate = new AtomicLong();
+    private final AtomicLong sendErrors = new AtomicLong();
+
+    public RetransmitScheduler(int sampleRate, Transport transport) {
+        this.sampleRate = sampleRate;
+        this.transport = transport;
+        this.frameNanos = DEFAULT_FRAME_SAMPLES * 1_000_000_000L / sampleRate;
+        clear();
+    }
+
+    /**
+     * How long a packet waits in the jitter buffer between its expected arrival and
+     * playout; the time a lost packet has left to be recovered.
+     */
+    public void setPlayoutDelayNanos(long nanos) {
+        playoutDelayNanos = nanos;
+    }
+
+    /**
+     * Forgets all gaps; the next packet starts a new sequence (RTSP FLUSH, TEARDOWN).
+     */
+    public void reset() {
+        resetRequested = true;
+    }
+
+    /**
+     * Records a received audio packet, original or resent.
+     */
+    public void onPacket(int seq, long rtpTimestamp, long nowNanos) {
+        seq &= 0xffff;
+        if (resetRequested) {
+            resetRequested = false;
+            clear();
+            started = false;
+        }
+        if (!started) {
+            started = true;
+            highestSeq = seq;
+            highestTimestamp = rtpTimestamp;
+            return;
+        }
+
+        int ahead = seqDiff(seq, highestSeq);
+        if (ahead <= 0) {
+            int idx = seq & (WINDOW - 1);
+            if (missingSeq[idx] == seq) {
+                if (attempts[idx] > 0) {
+                    recovered.incrementAndGet();
+                    long sample = nowNanos - lastRequest[idx];
+                    rttNanos += (sample - rttNanos) / 8;
+                }
+                remove(idx);
+            }
+            return;
+        }
+
+        int samples = (int) (rtpTimestamp - highestTimestamp) / ahead;
+        if (samples > 0) {
+            frameNanos = samples * 1_000_000_000L / sampleRate;
+        }
+        if (ahead > MAX_GAP) {
+            // Not a loss burst we could ever fill; start over from here
+            clear();
+        } else {
+            long delay = playoutDelayNanos;
+            for (int missed = 1; missed < ahead; missed++) {
+                int lost = (highestSeq + missed) & 0xffff;
+                // When the missing packet should have arrived, plus its buffering time
+                long due = nowNanos - (ahead - missed) * frameNanos + delay;
+                track(lost, due);
+            }
+        }
+        highestSeq = seq;
+        highestTimestamp = rtpTimestamp;
+    }
+
+    /**
+     * Sends resend requests for every gap that is due, and gives up on packets that
+     * can no longer make their deadline.
+     */
+    public void poll(long nowNanos) {
+        if (resetRequested || missingCount == 0) {
+            return;
+        }
+
+        long retryNanos = Math.max(MIN_RETRY_NANOS, 2 * rttNanos);
+        int budget = MAX_REQUESTS_PER_POLL;
+        int rangeStart = EMPTY;
+        int rangeCount = 0;
+        int firstMissing = EMPTY;
+        int span = seqDiff(highestSeq, scanFrom);
+        for (int i = 0; i <= span; i++) {
+            int seq = (scanFrom + i) & 0xffff;
+            int idx = seq & (WINDOW - 1);
+            boolean due = false;
+            if (missingSeq[idx] == seq) {
+                if (nowNanos + rttNanos > deadline[idx]) {
+                    tooLate.incrementAndGet();
+                    remove(idx);
+                } else {
+                    if (firstMissing == EMPTY) {
+                        firstMissing = seq;
+                    }
+                    due = attempts[idx] == 0 || (attempts[idx] < MAX_ATTEMPTS
+                            && nowNanos - lastRequest[idx] >= retryNanos);
+                }
+            }
+
+            if (due && rangeCount > 0 && seq == ((rangeStart + rangeCount) & 0xffff)) {
+                rangeCount++;
+                continue;
+            }
+            if (rangeCount > 0 && budget > 0) {
+                budget--;
+                sendRequest(rangeStart, rangeCount, nowNanos);
+            }
+            rangeCount = 0;
+            if (due) {
+                rangeStart = seq;
+                rangeCount = 1;
+            }
+        }
+        if (rangeCount > 0 && budget > 0) {
+            sendRequest(rangeStart, rangeCount, nowNanos);
+        }
+        scanFrom = firstMissing != EMPTY ? firstMissing : (highestSeq + 1) & 0xffff;
+    }
+
+    public int getPendingPackets() {
+        return missingCount;
+    }
+
+    /**
+     * Distinct packets asked for at least once; retries are not counted again.
+     */
+    public long getRequestedPackets() {
+        return requested.get();
+    }
+
+    public long getRecoveredPackets() {
+        return recovered.get();
+    }
+
+    public long getTooLatePackets() {
+        return tooLate.get();
+    }
+
+    public long getSendErrors() {
+        return sendErrors.get();
+    }
+
+    public double getRoundTripMs() {
+        return rttNanos / 1e6;
+    }
+
+    private void track(int seq, long due) {
+        int idx = seq & (WINDOW - 1);
+        if (missingSeq[idx] != EMPTY) {
+            // Still unresolved a whole window later; its deadline is long gone
+            tooLate.incrementAndGet();
+            remove(idx);
+        }
+        if (missingCount == 0) {
+            scanFrom = seq;
+        }
+        missingSeq[idx] = seq;
+        deadline[idx] = due;
+        attempts[idx] = 0;
+        missingCount++;
+    }
+
+    private void remove(int idx) {
+        missingSeq[idx] = EMPTY;
+        missingCount--;
+    }
+
+    private void clear() {
+        for (int i = 0; i < WINDOW; i++) {
+            missingSeq[i] = EMPTY;
+        }
+        missingCount = 0;
+    }
+
+    /**
+     * RAOP resend request: RTP-style header with marker and type 0x55, then the first
+     * missing sequence number and the count.
+     */
+    private void sendRequest(int firstSeq, int count, long nowNanos) {
+        request.clear();
+        request.put((byte) 0x80).put((byte) (0x80 | RESEND_REQUEST_TYPE))
+                .putShort((short) requestSeq++)
+                .putShort((short) firstSeq)
+                .putShort((short) count);
+        request.flip();
+        try {
+            if (!transport.send(request)) {
+                sendErrors.incrementAndGet();
+                return;
+            }
+        } catch (IOException e) {
+            sendErrors.incrementAndGet();
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int idx = (firstSeq + i) & (WINDOW - 1);
+            if (attempts[idx]++ == 0) {
+                requested.incrementAndGet();
+            }
+            lastRequest[idx] = nowNanos;
+        }
+    }
+
+    private static int seqDiff(int a, int b) {
+        return (short) (a - b);
+    }
+}
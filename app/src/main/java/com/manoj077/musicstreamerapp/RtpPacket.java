@@ -0,0 +1,71 @@
+package com.manoj077.musicstreamerapp;
+
+import java.net.SocketAddress;
+
+/**
+ * Reusable descriptor of one received datagram, pointing into the receiver's packet
+ * pool. Only valid until the handler it was passed to returns.
+ */
+public final class RtpPacket {
+    private static final int HEADER_BYTES = 12;
+
+    /** Backing pool; the datagram starts at {@link #offset}. */
+    public byte[] buffer;
+    public int offset;
+    public int length;
+
+    public int payloadType;
+    public boolean marker;
+    public int sequence;
+    public long timestamp;
+    public long ssrc;
+    public int payloadOffset;
+    public int payloadLength;
+    public long receivedNanos;
+    /** Sender address; only set for control and timing datagrams. */
+    public SocketAddress source;
+
+    /**
+     * Parses the RTP header of the datagram in place.
+     *
+     * @return false if it is not a valid RTP packet
+     */
+    public boolean parse() {
+        if (length < HEADER_BYTES) {
+            return false;
+        }
+        byte[] b = buffer;
+        int p = offset;
+        int first = b[p] & 0xff;
+        if ((first >>> 6) != 2) {
+            return false;
+        }
+        marker = (b[p + 1] & 0x80) != 0;
+        payloadType = b[p + 1] & 0x7f;
+        sequence = ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+        timestamp = readUnsignedInt(b, p + 4);
+        ssrc = readUnsignedInt(b, p + 8);
+
+        int header = HEADER_BYTES + 4 * (first & 0x0f);
+        if ((first & 0x10) != 0) {
+            // Header extension: 16-bit profile, 16-bit length in words
+            if (length < header + 4) {
+                return false;
+            }
+            int words = ((b[p + header + 2] & 0xff) << 8) | (b[p + header + 3] & 0xff);
+            header += 4 + 4 * words;
+        }
+        int padding = (first & 0x20) != 0 && length > header ? b[p + length - 1] & 0xff : 0;
+        if (header + padding > length) {
+            return false;
+        }
+        payloadOffset = p + header;
+        payloadLength = length - header - padding;
+        return true;
+    }
+
+    static long readUnsignedInt(byte[] b, int p) {
+        return ((long) (b[p] & 0xff) << 24) | ((b[p + 1] & 0xff) << 16)
+                | ((b[p + 2] & 0xff) << 8) | (b[p + 3] & 0xff);
+    }
+}
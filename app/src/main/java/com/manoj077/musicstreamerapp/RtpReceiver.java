@@ -0,0 +1,415 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RAOP audio transport: receives RTP audio, control and timing datagrams on
+ * non-blocking channels from one selector thread.
+ *
+ * Each wakeup drains every datagram already queued on the audio socket into a
+ * preallocated packet pool, parses the RTP headers in place and hands the whole burst
+ * to the {@link Handler} at once, so a late burst after a Wi-Fi stall costs one
+ * wakeup instead of dozens. Nothing is allocated per packet: the pool, the buffer
+ * views over it and the {@link RtpPacket} descriptors are all reused.
+ */
+public class RtpReceiver {
+    public static final int MAX_PACKET_BYTES = 2048;
+    public static final int MAX_BURST = 64;
+
+    private static final int RECEIVE_BUFFER_BYTES = 512 * 1024;
+    private static final long TICK_MS = 5;
+
+    /**
+     * Consumes received packets on the receiver thread. Descriptors and their bytes
+     * are reused after the call returns.
+     */
+    public interface Handler {
+        void onAudioPackets(RtpPacket[] packets, int count);
+
+        /**
+         * A datagram from the control port (sync, retransmitted audio). Only the
+         * payload type is parsed; the payload spans the whole datagram.
+         */
+        void onControlPacket(RtpPacket packet);
+
+        /**
+         * A datagram from the timing port, parsed like a control packet.
+         */
+        void onTimingPacket(RtpPacket packet);
+
+        /**
+         * Called after every wakeup, and at least every few ms while the sockets are
+         * quiet, for time-driven work such as resend requests.
+         */
+        void onTick(long nowNanos);
+
+        /**
+         * One of the callbacks above threw. Whatever it was handling is dropped and
+         * receiving carries on.
+         */
+        void onHandlerError(RuntimeException error);
+
+        /**
+         * The sockets failed and receiving has stopped for good; the last call made on
+         * the receiver thread.
+         */
+        void onReceiveFailed(IOException error);
+    }
+
+    private final Handler handler;
+    private final byte[] pool = new byte[(MAX_BURST + 1) * MAX_PACKET_BYTES];
+    private final ByteBuffer[] views = new ByteBuffer[MAX_BURST + 1];
+    private final RtpPacket[] packets = new RtpPacket[MAX_BURST + 1];
+
+    private Selector selector;
+    private DatagramChannel audioChannel;
+    private DatagramChannel controlChannel;
+    private DatagramChannel timingChannel;
+    private Thread thread;
+    private volatile boolean running;
+    // Guarded by this
+    private boolean exited;
+    private Runnable onStopped;
+    private volatile SocketAddress controlPeer;
+    private volatile SocketAddress timingPeer;
+
+    private final AtomicLong receivedPackets = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong invalidPackets = new AtomicLong();
+    private final AtomicLong bursts = new AtomicLong();
+    private final AtomicLong handlerErrors = new AtomicLong();
+    private volatile IOException failure;
+    private volatile int largestBurst;
+
+    public RtpReceiver(Handler handler) {
+        this.handler = handler;
+        for (int i = 0; i < packets.length; i++) {
+            views[i] = ByteBuffer.wrap(pool, i * MAX_PACKET_BYTES, MAX_PACKET_BYTES).slice();
+            packets[i] = new RtpPacket();
+            packets[i].buffer = pool;
+            packets[i].offset = i * MAX_PACKET_BYTES;
+        }
+    }
+
+    /**
+     * Binds the audio and control sockets to ephemeral ports and starts receiving.
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        try {
+            audioChannel = openChannel();
+            controlChannel = openChannel();
+            timingChannel = openChannel();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+
+        running = true;
+        exited = false;
+        thread = new Thread(this::receiveLoop, "RtpReceiver");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Stops without waiting for the receiver thread, for callers that must not block;
+     * {@code whenStopped} runs on that thread once it has closed the sockets and will
+     * not call the {@link Handler} again, or right away if it is already gone.
+     */
+    public void stop(Runnable whenStopped) {
+        synchronized (this) {
+            if (thread != null && !exited) {
+                onStopped = whenStopped;
+                running = false;
+                selector.wakeup();
+                thread = null;
+                return;
+            }
+        }
+        whenStopped.run();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getAudioPort() {
+        return localPort(audioChannel);
+    }
+
+    public int getControlPort() {
+        return localPort(controlChannel);
+    }
+
+    public int getTimingPort() {
+        return localPort(timingChannel);
+    }
+
+    /**
+     * Sender's control endpoint from SETUP, where resend requests go.
+     */
+    public void setControlPeer(SocketAddress peer) {
+        controlPeer = peer;
+    }
+
+    public SocketAddress getControlPeer() {
+        return controlPeer;
+    }
+
+    /**
+     * Sends one datagram from the control socket to the sender's control port.
+     * Safe to call from the receiver thread only.
+     */
+    public boolean sendControl(ByteBuffer datagram) throws IOException {
+        return send(controlChannel, controlPeer, datagram);
+    }
+
+    /**
+     * Sender's timing endpoint from SETUP, where timing requests go.
+     */
+    public void setTimingPeer(SocketAddress peer) {
+        timingPeer = peer;
+    }
+
+    /**
+     * Sends one datagram from the timing socket to the sender's timing port, or to
+     * {@code peer} if given. Safe to call from the receiver thread only.
+     */
+    public boolean sendTiming(ByteBuffer datagram, SocketAddress peer) throws IOException {
+        return send(timingChannel, peer != null ? peer : timingPeer, datagram);
+    }
+
+    public long getReceivedPackets() {
+        return receivedPackets.get();
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    public long getInvalidPackets() {
+        return invalidPackets.get();
+    }
+
+    public long getBursts() {
+        return bursts.get();
+    }
+
+    public int getLargestBurst() {
+        return largestBurst;
+    }
+
+    /**
+     * Why receiving stopped on its own, or null if it did not.
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Handler callbacks that threw; see {@link Handler#onHandlerError}.
+     */
+    public long getHandlerErrors() {
+        return handlerErrors.get();
+    }
+
+    private DatagramChannel openChannel() throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+        channel.bind(new InetSocketAddress(0));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        return channel;
+    }
+
+    private void receiveLoop() {
+        try {
+            while (running) {
+                try {
+                    poll();
+                } catch (RuntimeException e) {
+                    // A bad packet in the handler must not end the session's audio
+                    handlerErrors.incrementAndGet();
+                    try {
+                        handler.onHandlerError(e);
+                    } catch (RuntimeException ignored) {
+                        // Already counted; reporting it must not end the loop either
+                    }
+                }
+            }
+        } catch (IOException e) {
+            running = false;
+            failure = e;
+        } finally {
+            close();
+            Runnable then;
+            synchronized (this) {
+                exited = true;
+                then = onStopped;
+                onStopped = null;
+            }
+            if (then != null) {
+                then.run();
+            }
+            IOException error = failure;
+            if (error != null) {
+                try {
+                    handler.onReceiveFailed(error);
+                } catch (RuntimeException ignored) {
+                    // The thread ends here anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * One wakeup: drains whichever sockets are readable, then ticks the handler.
+     */
+    private void poll() throws IOException {
+        selector.select(TICK_MS);
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid() || !key.isReadable()) {
+                continue;
+            }
+            if (key.channel() == audioChannel) {
+                drainAudio();
+            } else {
+                drainSide((DatagramChannel) key.channel());
+            }
+        }
+        handler.onTick(System.nanoTime());
+    }
+
+    /**
+     * Pulls every queued audio datagram, in pool-sized bursts.
+     */
+    private void drainAudio() throws IOException {
+        int count;
+        do {
+            count = 0;
+            long now = System.nanoTime();
+            while (count < MAX_BURST) {
+                ByteBuffer view = views[count];
+                view.clear();
+                if (audioChannel.receive(view) == null) {
+                    break;
+                }
+                RtpPacket packet = packets[count];
+                packet.length = view.position();
+                packet.receivedNanos = now;
+                receivedBytes.addAndGet(packet.length);
+                if (packet.parse()) {
+                    count++;
+                } else {
+                    invalidPackets.incrementAndGet();
+                }
+            }
+
+            if (count > 0) {
+                receivedPackets.addAndGet(count);
+                bursts.incrementAndGet();
+                if (count > largestBurst) {
+                    largestBurst = count;
+                }
+                handler.onAudioPackets(packets, count);
+            }
+        } while (count == MAX_BURST);
+    }
+
+    /**
+     * Drains the control or timing socket one datagram at a time.
+     */
+    private void drainSide(DatagramChannel channel) throws IOException {
+        // The last pool slot is reserved for control and timing traffic
+        ByteBuffer view = views[MAX_BURST];
+        RtpPacket packet = packets[MAX_BURST];
+        for (;;) {
+            view.clear();
+            SocketAddress from = channel.receive(view);
+            if (from == null) {
+                return;
+            }
+            packet.length = view.position();
+            if (packet.length < 4) {
+                invalidPackets.incrementAndGet();
+                continue;
+            }
+            packet.receivedNanos = System.nanoTime();
+            packet.marker = (pool[packet.offset + 1] & 0x80) != 0;
+            packet.payloadType = pool[packet.offset + 1] & 0x7f;
+            packet.payloadOffset = packet.offset;
+            packet.payloadLength = packet.length;
+            packet.source = from;
+            if (channel == timingChannel) {
+                handler.onTimingPacket(packet);
+            } else {
+                handler.onControlPacket(packet);
+            }
+        }
+    }
+
+    private static boolean send(DatagramChannel channel, SocketAddress peer, ByteBuffer datagram)
+            throws IOException {
+        if (peer == null || channel == null) {
+            return false;
+        }
+        return channel.send(datagram, peer) > 0;
+    }
+
+    private void close() {
+        closeQuietly(audioChannel);
+        closeQuietly(controlChannel);
+        closeQuietly(timingChannel);
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+    }
+
+    private static void closeQuietly(DatagramChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Shutting down anyway
+            }
+        }
+    }
+
+    private static int localPort(DatagramChannel channel) {
+        return channel != null ? channel.socket().getLocalPort() : -1;
+    }
+}
@@ -0,0 +1,780 @@
+package com.manoj077.musicstreamerapp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * RAOP control plane (RTSP over TCP) served from one NIO selector thread.
+ *
+ * Every connection owns a read and a write buffer that are reused for all of its
+ * requests; requests are parsed incrementally as bytes arrive, so a slow or chatty
+ * sender never holds up another one and no thread is spent per connection. Session
+ * events are handed to a {@link Listener} on the selector thread. Plain Java, so it
+ * runs unchanged on a desktop JVM against a scripted client.
+ */
+public class RtspServer {
+    private static final int INITIAL_BUFFER_BYTES = 2048;
+    private static final int MAX_REQUEST_BYTES = 64 * 1024;
+    // Cover art arrives as one SET_PARAMETER body, often a few hundred KB
+    private static final int MAX_CONTENT_BYTES = 1024 * 1024;
+    private static final String SERVER = "AirTunes/105.1";
+    private static final String PUBLIC_METHODS = "ANNOUNCE, SETUP, RECORD, PAUSE, FLUSH, "
+            + "TEARDOWN, OPTIONS, GET_PARAMETER, SET_PARAMETER";
+    private static final int DEFAULT_AUDIO_LATENCY = 11025; // frames, what AirPort Express reports
+
+    /**
+     * Session events; all callbacks run on the selector thread and must not block.
+     */
+    public interface Listener {
+        /**
+         * @return false if the announced stream format or encryption cannot be played
+         */
+        boolean onAnnounce(Announcement announcement);
+
+        /**
+         * Allocates the UDP endpoints for a session.
+         *
+         * @return the local ports, or null if the session cannot be admitted or audio
+         *         transport is unavailable
+         */
+        Ports onSetup(InetSocketAddress client, int clientControlPort, int clientTimingPort);
+
+        /**
+         * @param seq     first RTP sequence number, -1 if not given
+         * @param rtpTime first RTP timestamp, -1 if not given
+         */
+        void onRecord(int seq, long rtpTime);
+
+        void onFlush(int seq, long rtpTime);
+
+        /**
+         * @param volume AirPlay volume, -30..0 or -144 for mute
+         */
+        void onVolume(double volume);
+
+        /**
+         * End of the session: TEARDOWN, or the connection closing without one.
+         */
+        void onTeardown();
+
+        /**
+         * Track info ({@code application/x-dmap-tagged}) or cover art ({@code image/*},
+         * {@code image/none} for none) from SET_PARAMETER.
+         *
+         * @param content a copy of the body, the listener's to keep
+         */
+        void onMetadata(String contentType, byte[] content);
+
+        /**
+         * Playback progress from SET_PARAMETER, as RTP timestamps of the track's start,
+         * the current position and the track's end.
+         */
+        void onProgress(long start, long current, long end);
+    }
+
+    /**
+     * Creates the listener for each new connection, so every sender gets its own
+     * session state.
+     */
+    public interface SessionFactory {
+        Listener newSession(InetSocketAddress client);
+    }
+
+    /**
+     * Stream description from ANNOUNCE.
+     */
+    public static final class Announcement {
+        public final String rtpmap;
+        public final String fmtp;
+        public final byte[] rsaAesKey;
+        public final byte[] aesIv;
+
+        Announcement(String rtpmap, String fmtp, byte[] rsaAesKey, byte[] aesIv) {
+            this.rtpmap = rtpmap;
+            this.fmtp = fmtp;
+            this.rsaAesKey = rsaAesKey;
+            this.aesIv = aesIv;
+        }
+
+        /**
+         * Parses the SDP attributes RAOP senders use; unknown lines are ignored.
+         */
+        static Announcement parse(String sdp) {
+            String rtpmap = null;
+            String fmtp = null;
+            byte[] key = null;
+            byte[] iv = null;
+            for (String line : sdp.split("\r?\n")) {
+                if (line.startsWith("a=rtpmap:")) {
+                    rtpmap = line.substring(9).trim();
+                } else if (line.startsWith("a=fmtp:")) {
+                    fmtp = line.substring(7).trim();
+                } else if (line.startsWith("a=rsaaeskey:")) {
+                    key = decodeBase64(line.substring(12));
+                } else if (line.startsWith("a=aesiv:")) {
+                    iv = decodeBase64(line.substring(8));
+                }
+            }
+            return new Announcement(rtpmap, fmtp, key, iv);
+        }
+
+        private static byte[] decodeBase64(String value) {
+            // Senders strip the padding
+            String trimmed = value.trim();
+            while (trimmed.length() % 4 != 0) {
+                trimmed += "=";
+            }
+            try {
+                return Base64.getDecoder().decode(trimmed);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Local UDP ports of a session, reported in the SETUP response.
+     */
+    public static final class Ports {
+        public final int server;
+        public final int control;
+        public final int timing;
+
+        public Ports(int server, int control, int timing) {
+            this.server = server;
+            this.control = control;
+            this.timing = timing;
+        }
+    }
+
+    private final int port;
+    private final SessionFactory sessionFactory;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+    private volatile IntSupplier audioLatency = () -> DEFAULT_AUDIO_LATENCY;
+
+    private final AtomicLong acceptedConnections = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong totalHandshakeNanos = new AtomicLong();
+    private final AtomicLong failedConnections = new AtomicLong();
+    private long nextSessionId = 1; // selector thread only
+    private volatile long lastHandshakeNanos;
+    private volatile int activeConnections;
+    private volatile long connectionBufferBytes;
+
+    /**
+     * @param port TCP port to listen on, 0 for an ephemeral one
+     */
+    public RtspServer(int port, Listener listener) {
+        this(port, client -> listener);
+    }
+
+    /**
+     * @param port           TCP port to listen on, 0 for an ephemeral one
+     * @param sessionFactory called once per accepted connection
+     */
+    public RtspServer(int port, SessionFactory sessionFactory) {
+        this.port = port;
+        this.sessionFactory = sessionFactory;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            serverChannel.close();
+            selector.close();
+            throw e;
+        }
+
+        running = true;
+        thread = new Thread(this::selectLoop, "RtspServer");
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Port actually bound, useful when started on port 0.
+     */
+    public int getLocalPort() {
+        ServerSocketChannel channel = serverChannel;
+        return channel != null ? channel.socket().getLocalPort() : -1;
+    }
+
+    /**
+     * Output latency in frames announced to senders in the RECORD response.
+     */
+    public void setAudioLatency(int frames) {
+        audioLatency = () -> frames;
+    }
+
+    /**
+     * Announces whatever {@code frames} returns at each RECORD, for a latency that is
+     * measured while the server runs.
+     */
+    public void setAudioLatency(IntSupplier frames) {
+        audioLatency = frames;
+    }
+
+    public long getAcceptedConnections() {
+        return acceptedConnections.get();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * Connections dropped because a request or a listener callback threw.
+     */
+    public long getFailedConnections() {
+        return failedConnections.get();
+    }
+
+    /**
+     * Completed handshakes, from TCP accept to the RECORD response.
+     */
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    public long getLastHandshakeNanos() {
+        return lastHandshakeNanos;
+    }
+
+    public double getMeanHandshakeMs() {
+        long count = handshakes.get();
+        return count == 0 ? 0 : totalHandshakeNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * Buffer memory held by one connection on average; the buffers only grow for
+     * unusually large requests.
+     */
+    public long getBytesPerConnection() {
+        int active = activeConnections;
+        return active == 0 ? 2L * INITIAL_BUFFER_BYTES : connectionBufferBytes / active;
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException e) {
+                            // A malformed request or a failing listener costs only its own connection
+                            failedConnections.incrementAndGet();
+                            try {
+                                connection.close();
+                            } catch (RuntimeException ignored) {
+                                // Listener failed again in onTeardown; the channel is closed anyway
+                            }
+                        }
+                    }
+                }
+                updateConnectionStats();
+            }
+        } catch (IOException e) {
+            running = false;
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            InetSocketAddress client = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+            Listener listener;
+            try {
+                listener = sessionFactory.newSession(client);
+            } catch (RuntimeException e) {
+                failedConnections.incrementAndGet();
+                channel.close();
+                continue;
+            }
+            Connection connection = new Connection(channel, System.nanoTime(), listener);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            acceptedConnections.incrementAndGet();
+        }
+    }
+
+    private void updateConnectionStats() {
+        int active = 0;
+        long bytes = 0;
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (key.isValid() && attachment instanceof Connection) {
+                active++;
+                bytes += ((Connection) attachment).bufferBytes();
+            }
+        }
+        activeConnections = active;
+        connectionBufferBytes = bytes;
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close();
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException ignored) {
+            // Shutting down anyway
+        }
+        activeConnections = 0;
+        connectionBufferBytes = 0;
+    }
+
+    /**
+     * One RTSP client. Only touched by the selector thread.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final long acceptNanos;
+        private final Listener listener;
+        private SelectionKey key;
+        private boolean tornDown;
+
+        private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        private ByteBuffer out = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        private final StringBuilder response = new StringBuilder(256);
+        private final Map<String, String> headers = new HashMap<>();
+        private int scanned;
+        private boolean closeAfterWrite;
+        private boolean handshakeDone;
+        private String session;
+        private double volume = -15;
+
+        // Current request
+        private String method;
+        private int bodyOffset;
+        private int bodyLength;
+
+        Connection(SocketChannel channel, long acceptNanos, Listener listener) {
+            this.channel = channel;
+            this.acceptNanos = acceptNanos;
+            this.listener = listener;
+        }
+
+        long bufferBytes() {
+            return in.capacity() + out.capacity();
+        }
+
+        void onReadable() throws IOException {
+            if (channel.read(in) < 0) {
+                close();
+                return;
+            }
+            int consumed = 0;
+            while (channel.isOpen() && (consumed = parse()) > 0) {
+                handle();
+                // Drop the handled request, keep any pipelined bytes
+                in.flip();
+                in.position(consumed);
+                in.compact();
+                scanned = 0;
+            }
+            if (consumed < 0) {
+                close();
+            } else if (in.position() == 0 && in.capacity() > MAX_REQUEST_BYTES) {
+                // Done with a large body such as cover art; do not hold on to its buffer
+                in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+            }
+        }
+
+        void onWritable() throws IOException {
+            out.flip();
+            channel.write(out);
+            boolean done = !out.hasRemaining();
+            out.compact();
+            if (done) {
+                key.interestOps(SelectionKey.OP_READ);
+                if (closeAfterWrite) {
+                    close();
+                }
+            }
+        }
+
+        void close() {
+            try {
+                teardown();
+            } finally {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Already gone
+                }
+            }
+        }
+
+        /**
+         * Tries to parse one complete request from the bytes received so far.
+         *
+         * @return bytes the request occupies, 0 if more are needed, -1 if it is too large
+         */
+        private int parse() {
+            byte[] data = in.array();
+            int limit = in.position();
+            int headerEnd = -1;
+            for (int i = Math.max(0, scanned - 3); i + 3 < limit; i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r'
+                        && data[i + 3] == '\n') {
+                    headerEnd = i;
+                    break;
+                }
+            }
+            if (headerEnd < 0) {
+                scanned = limit;
+                return ensureRoom(limit + 1, MAX_REQUEST_BYTES);
+            }
+
+            parseHeaders(data, headerEnd);
+            int contentLength = parseInt(headers.get("content-length"), 0);
+            if (contentLength < 0 || contentLength > MAX_CONTENT_BYTES) {
+                return -1;
+            }
+            int total = headerEnd + 4 + contentLength;
+            if (total > limit) {
+                // Headers are complete; resume the scan right at their end
+                scanned = headerEnd;
+                return ensureRoom(total, headerEnd + 4 + MAX_CONTENT_BYTES);
+            }
+            bodyOffset = headerEnd + 4;
+            bodyLength = contentLength;
+            return total;
+        }
+
+        private int ensureRoom(int needed, int max) {
+            if (needed <= in.capacity()) {
+                return 0;
+            }
+            if (needed > max) {
+                return -1;
+            }
+            int capacity = in.capacity();
+            while (capacity < needed) {
+                capacity *= 2;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.min(capacity, max));
+            in.flip();
+            grown.put(in);
+            in = grown;
+            return 0;
+        }
+
+        private void parseHeaders(byte[] data, int end) {
+            headers.clear();
+            method = null;
+            int lineStart = 0;
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && data[lineEnd] != '\r') {
+                    lineEnd++;
+                }
+                if (method == null) {
+                    int space = indexOf(data, lineStart, lineEnd, (byte) ' ');
+                    method = ascii(data, lineStart, (space < 0 ? lineEnd : space) - lineStart);
+                } else {
+                    int colon = indexOf(data, lineStart, lineEnd, (byte) ':');
+                    if (colon > lineStart) {
+                        String name = ascii(data, lineStart, colon - lineStart)
+                                .trim().toLowerCase(Locale.US);
+                        String value = ascii(data, colon + 1, lineEnd - colon - 1).trim();
+                        headers.put(name, value);
+                    }
+                }
+                lineStart = lineEnd + 2;
+            }
+        }
+
+        private void handle() throws IOException {
+            String cseq = headers.get("cseq");
+            if (method == null || method.isEmpty()) {
+                // Blank or garbled request line
+                begin(400, "Bad Request", cseq);
+                send(null);
+                return;
+            }
+            switch (method) {
+                case "OPTIONS":
+                    begin(200, "OK", cseq).append("Public: ").append(PUBLIC_METHODS).append("\r\n");
+                    break;
+                case "ANNOUNCE":
+                    if (listener.onAnnounce(Announcement.parse(body()))) {
+                        begin(200, "OK", cseq);
+                    } else {
+                        begin(415, "Unsupported Media Type", cseq);
+                    }
+                    break;
+                case "SETUP":
+                    handleSetup(cseq);
+                    break;
+                case "RECORD":
+                    listener.onRecord(rtpInfo("seq"), rtpInfoTime());
+                    begin(200, "OK", cseq).append("Audio-Latency: ").append(audioLatency.getAsInt())
+                            .append("\r\n");
+                    if (!handshakeDone) {
+                        handshakeDone = true;
+                        long elapsed = System.nanoTime() - acceptNanos;
+                        lastHandshakeNanos = elapsed;
+                        totalHandshakeNanos.addAndGet(elapsed);
+                        handshakes.incrementAndGet();
+                    }
+                    break;
+                case "SET_PARAMETER":
+                    handleSetParameter();
+                    begin(200, "OK", cseq);
+                    break;
+                case "GET_PARAMETER": {
+                    begin(200, "OK", cseq).append("Content-Type: text/parameters\r\n");
+                    send(String.format(Locale.US, "volume: %.6f\r\n", volume));
+                    return;
+                }
+                case "FLUSH":
+                    listener.onFlush(rtpInfo("seq"), rtpInfoTime());
+                    begin(200, "OK", cseq);
+                    break;
+                case "TEARDOWN":
+                    teardown();
+                    begin(200, "OK", cseq).append("Connection: close\r\n");
+                    closeAfterWrite = true;
+                    break;
+                default:
+                    begin(501, "Not Implemented", cseq);
+                    break;
+            }
+            send(null);
+        }
+
+        private void teardown() {
+            if (!tornDown) {
+                tornDown = true;
+                listener.onTeardown();
+            }
+        }
+
+        private void handleSetup(String cseq) {
+            String transport = headers.get("transport");
+            int controlPort = parseInt(parameter(transport, "control_port"), 0);
+            int timingPort = parseInt(parameter(transport, "timing_port"), 0);
+            InetSocketAddress client = (InetSocketAddress) channel.socket().getRemoteSocketAddress();
+            Ports ports = listener.onSetup(client, controlPort, timingPort);
+            if (ports == null) {
+                begin(453, "Not Enough Bandwidth", cseq);
+                return;
+            }
+            if (session == null) {
+                session = Long.toString(nextSessionId++);
+            }
+            begin(200, "OK", cseq)
+                    .append("Transport: RTP/AVP/UDP;unicast;mode=record;server_port=")
+                    .append(ports.server).append(";control_port=").append(ports.control)
+                    .append(";timing_port=").append(ports.timing).append("\r\n")
+                    .append("Session: ").append(session).append("\r\n");
+        }
+
+        private void handleSetParameter() {
+            String type = headers.get("content-type");
+            if (type == null) {
+                return;
+            }
+            if (type.startsWith("application/x-dmap-tagged") || type.startsWith("image/")) {
+                listener.onMetadata(type, Arrays.copyOfRange(in.array(), bodyOffset,
+                        bodyOffset + bodyLength));
+                return;
+            }
+            if (!type.startsWith("text/parameters")) {
+                return;
+            }
+            for (String line : body().split("\r?\n")) {
+                if (line.startsWith("volume:")) {
+                    try {
+                        volume = Double.parseDouble(line.substring(7).trim());
+                        listener.onVolume(volume);
+                    } catch (NumberFormatException ignored) {
+                        // Malformed volume, keep the previous one
+                    }
+                } else if (line.startsWith("progress:")) {
+                    String[] parts = line.substring(9).trim().split("/");
+                    if (parts.length == 3) {
+                        try {
+                            listener.onProgress(Long.parseLong(parts[0]),
+                                    Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                        } catch (NumberFormatException ignored) {
+                            // Malformed progress, wait for the next
+                        }
+                    }
+                }
+            }
+        }
+
+        private StringBuilder begin(int status, String reason, String cseq) {
+            response.setLength(0);
+            response.append("RTSP/1.0 ").append(status).append(' ').append(reason).append("\r\n");
+            if (cseq != null) {
+                response.append("CSeq: ").append(cseq).append("\r\n");
+            }
+            response.append("Server: ").append(SERVER).append("\r\n");
+            return response;
+        }
+
+        /**
+         * Finishes the response started by {@link #begin} and queues it for writing.
+         */
+        private void send(String body) throws IOException {
+            if (body != null) {
+                response.append("Content-Length: ").append(body.length()).append("\r\n\r\n")
+                        .append(body);
+            } else {
+                response.append("\r\n");
+            }
+
+            int length = response.length();
+            if (out.remaining() < length) {
+                ByteBuffer grown = ByteBuffer.allocate(out.position() + length);
+                out.flip();
+                grown.put(out);
+                out = grown;
+            }
+            for (int i = 0; i < length; i++) {
+                out.put((byte) response.charAt(i));
+            }
+
+            // Try to write straight away; only wait for OP_WRITE on a full socket
+            out.flip();
+            channel.write(out);
+            boolean done = !out.hasRemaining();
+            out.compact();
+            if (!done) {
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            } else if (closeAfterWrite) {
+                close();
+            }
+        }
+
+        private String body() {
+            return new String(in.array(), bodyOffset, bodyLength, StandardCharsets.UTF_8);
+        }
+
+        private int rtpInfo(String name) {
+            return parseInt(parameter(headers.get("rtp-info"), name), -1);
+        }
+
+        private long rtpInfoTime() {
+            String value = parameter(headers.get("rtp-info"), "rtptime");
+            try {
+                return value != null ? Long.parseLong(value) : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Value of {@code name=value} in a {@code ;}-separated header, or null.
+     */
+    private static String parameter(String header, String name) {
+        if (header == null) {
+            return null;
+        }
+        for (String part : header.split(";")) {
+            int eq = part.indexOf('=');
+            if (eq > 0 && part.substring(0, eq).trim().equals(name)) {
+                return part.substring(eq + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private static int parseInt(String value, int fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String ascii(byte[] data, int offset, int length) {
+        return new String(data, offset, Math.max(0, length), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,159 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * RAOP timing for one sender.
+ *
+ * Runs the NTP-like exchange with the sender's timing port and feeds the results to a
+ * {@link TimingEstimator}, answers the sender's own timing requests, and keeps the
+ * anchor from the sender's sync packets: the RTP timestamp that is due at the DAC at
+ * a given sender clock reading. Together they give the local time any RTP timestamp
+ * should be heard, which is what lets several receivers play in step.
+ *
+ * Packets are handled on the session's receive thread; {@link #localTimeOf} may be
+ * called from the playback thread.
+ */
+public class SenderClock {
+    public static final int TIMING_REQUEST_TYPE = 0x52;
+    public static final int TIMING_REPLY_TYPE = 0x53;
+    public static final int SYNC_TYPE = 0x54;
+    public static final int TIMING_PACKET_BYTES = 32;
+
+    private static final int SYNC_PACKET_BYTES = 20;
+    private static final long FAST_INTERVAL_NANOS = 100_000_000L; // until locked
+    private static final long SLOW_INTERVAL_NANOS = 2_000_000_000L;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * Sync packet contents, replaced as a whole so readers never see half of one.
+     */
+    private static final class Anchor {
+        final long rtpTimestamp;
+        final long senderNanos;
+
+        Anchor(long rtpTimestamp, long senderNanos) {
+            this.rtpTimestamp = rtpTimestamp;
+            this.senderNanos = senderNanos;
+        }
+    }
+
+    private final int sampleRate;
+    private final TimingEstimator estimator = new TimingEstimator();
+    // Local times on the wire count from here, so they are never negative
+    private final long localBase = System.nanoTime();
+    private long nextRequestNanos;
+    private volatile Anchor anchor;
+
+    public SenderClock(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public TimingEstimator getEstimator() {
+        return estimator;
+    }
+
+    /**
+     * True once both the clock offset and a sync anchor are known.
+     */
+    public boolean isLocked() {
+        return estimator.isLocked() && anchor != null;
+    }
+
+    public boolean isRequestDue(long nowNanos) {
+        return nowNanos - nextRequestNanos >= 0;
+    }
+
+    /**
+     * Writes a timing request stamped with the current time, ready to send, and
+     * schedules the next one: quickly until the offset locks, then every few seconds.
+     */
+    public void writeRequest(ByteBuffer out, long nowNanos) {
+        out.clear();
+        out.put((byte) 0x80).put((byte) (0x80 | TIMING_REQUEST_TYPE)).putShort((short) 7)
+                .putInt(0).putLong(0).putLong(0);
+        putLocalTime(out, nowNanos);
+        out.flip();
+        nextRequestNanos = nowNanos
+                + (estimator.isLocked() ? SLOW_INTERVAL_NANOS : FAST_INTERVAL_NANOS);
+    }
+
+    /**
+     * Handles a datagram from the timing port.
+     *
+     * @param reply filled with the answer if the sender asked for our time
+     * @return true if {@code reply} should be sent back
+     */
+    public boolean onTimingPacket(byte[] data, int offset, int length, long nowNanos,
+                                  ByteBuffer reply) {
+        if (length < TIMING_PACKET_BYTES) {
+            return false;
+        }
+        int type = data[offset + 1] & 0x7f;
+        if (type == TIMING_REPLY_TYPE) {
+            long request = localTime(data, offset + 8);
+            long received = ntpToNanos(data, offset + 16);
+            long transmitted = ntpToNanos(data, offset + 24);
+            estimator.addSample(request, received, transmitted, nowNanos);
+            return false;
+        }
+        if (type != TIMING_REQUEST_TYPE) {
+            return false;
+        }
+
+        // Echo their send time as our origin, then stamp our own receive and send
+        reply.clear();
+        reply.put((byte) 0x80).put((byte) (0x80 | TIMING_REPLY_TYPE)).putShort((short) 7)
+                .putInt(0).put(data, offset + 24, 8);
+        putLocalTime(reply, nowNanos);
+        putLocalTime(reply, System.nanoTime());
+        reply.flip();
+        return true;
+    }
+
+    /**
+     * Handles a sync packet from the control port.
+     */
+    public void onSync(byte[] data, int offset, int length) {
+        if (length < SYNC_PACKET_BYTES) {
+            return;
+        }
+        long rtpTimestamp = RtpPacket.readUnsignedInt(data, offset + 16);
+        anchor = new Anchor(rtpTimestamp, ntpToNanos(data, offset + 8));
+    }
+
+    /**
+     * Local monotonic time at which the frame with this RTP timestamp is due at the
+     * DAC, or {@link Long#MIN_VALUE} until the clock is locked.
+     */
+    public long localTimeOf(long rtpTimestamp) {
+        Anchor current = anchor;
+        if (current == null || !estimator.isLocked()) {
+            return Long.MIN_VALUE;
+        }
+        long frames = (int) (rtpTimestamp - current.rtpTimestamp);
+        // RTP time runs on the sender's clock, so convert after adding it
+        return estimator.toLocalNanos(current.senderNanos
+                + frames * NANOS_PER_SECOND / sampleRate);
+    }
+
+    private void putLocalTime(ByteBuffer out, long nanos) {
+        long relative = nanos - localBase;
+        long seconds = relative / NANOS_PER_SECOND;
+        long fraction = ((relative % NANOS_PER_SECOND) << 32) / NANOS_PER_SECOND;
+        out.putInt((int) seconds).putInt((int) fraction);
+    }
+
+    private long localTime(byte[] data, int offset) {
+        return ntpToNanos(data, offset) + localBase;
+    }
+
+    /**
+     * NTP timestamp (32-bit seconds, 32-bit fraction) in nanoseconds.
+     */
+    private static long ntpToNanos(byte[] data, int offset) {
+        long seconds = RtpPacket.readUnsignedInt(data, offset);
+        long fraction = RtpPacket.readUnsignedInt(data, offset + 4);
+        return seconds * NANOS_PER_SECOND + ((fraction * NANOS_PER_SECOND) >>> 32);
+    }
+}
@@ -0,0 +1,128 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the senders playing at once on the Java backend and decides whether another
+ * one fits.
+ *
+ * Admission is based on measured cost: each session's receive work (decrypt, decode,
+ * buffering) and its share of the mixer are timed, and a new sender is only admitted
+ * while the measured load plus the expected cost of one more session stays within
+ * the CPU budget, given in cores.
+ */
+public class SessionManager {
+    public static final int DEFAULT_MAX_SESSIONS = 4;
+    public static final double DEFAULT_CPU_BUDGET = 0.5;
+    // Assumed cost of a session until one has run long enough to be measured
+    private static final double ASSUMED_SESSION_LOAD = 0.05;
+
+    private final AudioMixer mixer;
+    private final List<ReceiverSession> sessions = new CopyOnWriteArrayList<>();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile int maxSessions = DEFAULT_MAX_SESSIONS;
+    private volatile double cpuBudget = DEFAULT_CPU_BUDGET;
+
+    public SessionManager(AudioMixer mixer) {
+        this.mixer = mixer;
+    }
+
+    public AudioMixer getMixer() {
+        return mixer;
+    }
+
+    public void setMaxSessions(int maxSessions) {
+        this.maxSessions = maxSessions;
+    }
+
+    /**
+     * @param cores CPU time the receive and mix work may use, e.g. 0.5 for half a core
+     */
+    public void setCpuBudget(double cores) {
+        this.cpuBudget = cores;
+    }
+
+    /**
+     * Registers a session that is about to start streaming, if it fits.
+     *
+     * @return false if the session limit or the CPU budget would be exceeded
+     */
+    public synchronized boolean admit(ReceiverSession session) {
+        if (sessions.contains(session)) {
+            return true;
+        }
+        boolean fits = sessions.size() < maxSessions
+                && (sessions.isEmpty()
+                || getMeasuredLoad() + estimateSessionLoad() <= cpuBudget);
+        if (!fits) {
+            rejected.incrementAndGet();
+            return false;
+        }
+        sessions.add(session);
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    public synchronized void remove(ReceiverSession session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Ends every session, e.g. when the receiver shuts down.
+     */
+    public void closeAll() {
+        for (ReceiverSession session : sessions) {
+            session.close();
+        }
+    }
+
+    public List<ReceiverSession> getSessions() {
+        return sessions;
+    }
+
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Cores currently used by all sessions, counting unmeasured ones at the assumed
+     * cost.
+     */
+    public double getMeasuredLoad() {
+        long now = System.nanoTime();
+        double total = 0;
+        for (ReceiverSession session : sessions) {
+            double load = session.getCpuLoad(now);
+            total += load >= 0 ? load : ASSUMED_SESSION_LOAD;
+        }
+        return total;
+    }
+
+    /**
+     * Expected cost of one more session: the mean of the measured ones.
+     */
+    public double estimateSessionLoad() {
+        long now = System.nanoTime();
+        double total = 0;
+        int measured = 0;
+        for (ReceiverSession session : sessions) {
+            double load = session.getCpuLoad(now);
+            if (load >= 0) {
+                total += load;
+                measured++;
+            }
+        }
+        return measured > 0 ? total / measured : ASSUMED_SESSION_LOAD;
+    }
+
+    public long getAdmittedSessions() {
+        return admitted.get();
+    }
+
+    public long getRejectedSessions() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,57 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Plain-JVM stand-in for the native RAOP library's PCM producer.
+ *
+ * Follows the same handoff protocol as {@code raop_bridge.cpp}: PCM is written in
+ * place into the ring's shared direct region at a producer-owned cursor, then
+ * published with a single "bytes available" call. Lets the zero-copy path be
+ * exercised without a device or the native library.
+ */
+public class SimulatedPcmProducer {
+    private final PcmRingBuffer ringBuffer;
+    private final ByteBuffer region;
+    private final int capacity;
+
+    private int cursor;
+    private int writable;
+
+    public SimulatedPcmProducer(PcmRingBuffer ringBuffer) {
+        this.ringBuffer = ringBuffer;
+        this.region = ringBuffer.getStorage().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.capacity = ringBuffer.capacity();
+        this.cursor = ringBuffer.getWriteOffset();
+        this.writable = capacity - ringBuffer.available();
+    }
+
+    /**
+     * Writes one decoded frame into the shared region and notifies the ring, exactly
+     * as the native callback does.
+     *
+     * @return bytes handed over, 0 if the frame had to be dropped
+     */
+    public int produce(byte[] pcm, int offset, int length) {
+        // commitWrite only publishes whole frames; the cursor must follow what it took
+        length -= length % ringBuffer.getFrameSize();
+        if (length > writable) {
+            // No room: like the native side, drop it and report the loss
+            writable = ringBuffer.commitWrite(0, length);
+            return 0;
+        }
+
+        int first = Math.min(length, capacity - cursor);
+        region.limit(capacity).position(cursor);
+        region.put(pcm, offset, first);
+        if (first < length) {
+            region.position(0);
+            region.put(pcm, offset + first, length - first);
+        }
+        cursor = (cursor + length) % capacity;
+
+        writable = ringBuffer.commitWrite(length, 0);
+        return length;
+    }
+}
@@ -0,0 +1,274 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Levels and spectrum of the audio being played, computed on a low-priority thread
+ * from an {@link AudioTap} so the playback thread only pays for the copy.
+ *
+ * Every hop (half an FFT window) the thread takes the frames tapped since the last one,
+ * measures their peak and RMS, and runs a Hann-windowed FFT over the latest window,
+ * folded into log-spaced bands. The result is published as an immutable
+ * {@link Snapshot}; readers such as the UI sample it at their own rate. Once the tap
+ * has been idle for a whole window and the meters have fallen to silence, the thread
+ * stops computing until audio returns.
+ */
+public class SpectrumAnalyzer {
+    public static final int DEFAULT_FFT_SIZE = 2048;
+    public static final int DEFAULT_BANDS = 24;
+
+    private static final double MIN_BAND_HZ = 40;
+    private static final double MAX_BAND_HZ = 16000;
+    private static final double FULL_SCALE = 32768.0;
+
+    /**
+     * One analysis hop's result.
+     */
+    public static final class Snapshot {
+        /** Increases by one with every hop analysed */
+        public final long sequence;
+        private final double[] peakDb;
+        private final double[] rmsDb;
+        private final float[] bandsDb;
+
+        Snapshot(long sequence, double[] peakDb, double[] rmsDb, float[] bandsDb) {
+            this.sequence = sequence;
+            this.peakDb = peakDb;
+            this.rmsDb = rmsDb;
+            this.bandsDb = bandsDb;
+        }
+
+        public int getChannels() {
+            return peakDb.length;
+        }
+
+        public double getPeakDb(int channel) {
+            return peakDb[channel];
+        }
+
+        public double getRmsDb(int channel) {
+            return rmsDb[channel];
+        }
+
+        public int getBandCount() {
+            return bandsDb.length;
+        }
+
+        /**
+         * Strongest bin in the band relative to a full-scale sine, in dB.
+         */
+        public float getBandDb(int band) {
+            return bandsDb[band];
+        }
+
+        /**
+         * Whether every channel's peak is below {@code thresholdDb}.
+         */
+        public boolean isSilent(double thresholdDb) {
+            for (double peak : peakDb) {
+                if (peak >= thresholdDb) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final AudioTap tap;
+    private final int channels;
+    private final int fftSize;
+    private final int hopFrames;
+    private final long hopNanos;
+    private final RealFft fft;
+    private final LevelMeter meter;
+    private final float[] window;
+    private final int[] bandEdges;
+    private final double fullScalePower;
+
+    // Analysis thread only, reused every hop
+    private final short[] scratch;
+    private final float[] history;
+    private final float[] fftInput;
+    private final float[] power;
+    private long readFrames;
+    private int idleFrames;
+    private long sequence;
+
+    private volatile Snapshot latest;
+    private volatile long skippedFrames;
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    public SpectrumAnalyzer(AudioTap tap, int sampleRate, int fftSize, int bands) {
+        this.tap = tap;
+        this.channels = tap.getChannels();
+        this.fftSize = fftSize;
+        this.hopFrames = fftSize / 2;
+        this.hopNanos = TimeUnit.SECONDS.toNanos(hopFrames) / sampleRate;
+        this.fft = new RealFft(fftSize);
+        this.meter = new LevelMeter(channels, sampleRate);
+
+        this.window = new float[fftSize];
+        for (int i = 0; i < fftSize; i++) {
+            window[i] = (float) (0.5 - 0.5 * Math.cos(2 * Math.PI * i / (fftSize - 1)));
+        }
+        // A full-scale sine peaks at a quarter of the window length after Hann
+        double reference = FULL_SCALE * fftSize / 4;
+        this.fullScalePower = reference * reference;
+
+        this.bandEdges = new int[bands + 1];
+        double lowHz = MIN_BAND_HZ;
+        double highHz = Math.min(MAX_BAND_HZ, sampleRate / 2.0);
+        int bins = fft.getBinCount();
+        for (int b = 0; b <= bands; b++) {
+            double hz = lowHz * Math.pow(highHz / lowHz, (double) b / bands);
+            int bin = (int) Math.round(hz * fftSize / sampleRate);
+            // Low bands narrower than a bin still get one
+            bandEdges[b] = b == 0 ? Math.max(1, bin)
+                    : Math.min(bins, Math.max(bandEdges[b - 1] + 1, bin));
+        }
+
+        this.scratch = new short[tap.getMaxReadFrames() * channels];
+        this.history = new float[fftSize];
+        this.fftInput = new float[fftSize];
+        this.power = new float[bins];
+        float[] silentBands = new float[bands];
+        Arrays.fill(silentBands, (float) LevelMeter.SILENCE_DB);
+        this.latest = snapshot(silentBands);
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        Thread analysis = new Thread(this::run, "SpectrumAnalyzer");
+        // Display only; playback and network threads come first
+        analysis.setPriority(Thread.MIN_PRIORITY);
+        thread = analysis;
+        analysis.start();
+    }
+
+    public void stop() {
+        running = false;
+        Thread analysis = thread;
+        thread = null;
+        if (analysis != null) {
+            analysis.interrupt();
+            try {
+                analysis.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public Snapshot latest() {
+        return latest;
+    }
+
+    /**
+     * Tapped frames never analysed because the thread fell too far behind.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    private void run() {
+        readFrames = tap.getWrittenFrames();
+        while (running) {
+            analyze();
+            LockSupport.parkNanos(hopNanos);
+        }
+    }
+
+    /**
+     * One hop of the analysis thread; call directly only while not started.
+     *
+     * @return whether a new snapshot was published
+     */
+    public boolean analyze() {
+        long available = tap.getWrittenFrames();
+        long from = Math.max(readFrames, available - tap.getMaxReadFrames());
+        int frames = (int) (available - from);
+        long skipped = from - readFrames;
+        readFrames = available;
+        if (frames > 0 && !tap.read(from, scratch, frames)) {
+            // Lapped while copying; the next hop starts from what is there then
+            skippedFrames += skipped + frames;
+            return false;
+        }
+        if (skipped > 0) {
+            skippedFrames += skipped;
+        }
+
+        if (frames > 0) {
+            idleFrames = 0;
+            meter.process(scratch, 0, frames);
+            appendHistory(frames);
+        } else {
+            if (idleFrames >= fftSize && latest.isSilent(LevelMeter.SILENCE_DB + 1)) {
+                return false;
+            }
+            idleFrames += hopFrames;
+            meter.silence(hopFrames);
+            appendSilence(hopFrames);
+        }
+
+        for (int i = 0; i < fftSize; i++) {
+            fftInput[i] = history[i] * window[i];
+        }
+        fft.powerSpectrum(fftInput, power);
+        float[] bandsDb = new float[bandEdges.length - 1];
+        for (int b = 0; b < bandsDb.length; b++) {
+            float strongest = 0;
+            for (int bin = bandEdges[b]; bin < bandEdges[b + 1]; bin++) {
+                strongest = Math.max(strongest, power[bin]);
+            }
+            bandsDb[b] = strongest <= 0 ? (float) LevelMeter.SILENCE_DB
+                    : (float) Math.max(LevelMeter.SILENCE_DB,
+                    10 * Math.log10(strongest / fullScalePower));
+        }
+        latest = snapshot(bandsDb);
+        return true;
+    }
+
+    private Snapshot snapshot(float[] bandsDb) {
+        double[] peakDb = new double[channels];
+        double[] rmsDb = new double[channels];
+        for (int c = 0; c < channels; c++) {
+            peakDb[c] = meter.getPeakDb(c);
+            rmsDb[c] = meter.getRmsDb(c);
+        }
+        return new Snapshot(sequence++, peakDb, rmsDb, bandsDb);
+    }
+
+    /**
+     * Shifts the newest {@code frames} frames of {@link #scratch}, mixed to mono, into
+     * the FFT window.
+     */
+    private void appendHistory(int frames) {
+        int kept = Math.max(0, fftSize - frames);
+        System.arraycopy(history, fftSize - kept, history, 0, kept);
+        int first = frames - (fftSize - kept);
+        for (int i = kept, f = first; i < fftSize; i++, f++) {
+            int sum = 0;
+            for (int c = 0, s = f * channels; c < channels; c++, s++) {
+                sum += scratch[s];
+            }
+            history[i] = (float) sum / channels;
+        }
+    }
+
+    private void appendSilence(int frames) {
+        int kept = Math.max(0, fftSize - frames);
+        System.arraycopy(history, fftSize - kept, history, 0, kept);
+        Arrays.fill(history, kept, fftSize, 0f);
+    }
+}
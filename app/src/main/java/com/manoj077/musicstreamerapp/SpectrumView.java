@@ -0,0 +1,58 @@
+package com.manoj077.musicstreamerapp;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Bar graph of a {@link SpectrumAnalyzer.Snapshot}, one bar per band. Redraws only
+ * when handed a snapshot it has not shown yet.
+ */
+public class SpectrumView extends View {
+    private static final float FLOOR_DB = -72f;
+    private static final float GAP_FRACTION = 0.2f;
+
+    private final Paint barPaint = new Paint();
+    private SpectrumAnalyzer.Snapshot spectrum;
+
+    public SpectrumView(Context context) {
+        super(context);
+        barPaint.setColor(Color.rgb(0x4c, 0xaf, 0x50));
+    }
+
+    public SpectrumView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        barPaint.setColor(Color.rgb(0x4c, 0xaf, 0x50));
+    }
+
+    public void setSpectrum(SpectrumAnalyzer.Snapshot spectrum) {
+        if (this.spectrum != null && spectrum != null
+                && this.spectrum.sequence == spectrum.sequence) {
+            return;
+        }
+        this.spectrum = spectrum;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        SpectrumAnalyzer.Snapshot current = spectrum;
+        if (current == null || current.getBandCount() == 0) {
+            return;
+        }
+        int bands = current.getBandCount();
+        float height = getHeight();
+        float slot = (float) getWidth() / bands;
+        float gap = slot * GAP_FRACTION;
+        for (int b = 0; b < bands; b++) {
+            float level = (current.getBandDb(b) - FLOOR_DB) / -FLOOR_DB;
+            level = Math.max(0f, Math.min(1f, level));
+            float left = b * slot + gap / 2;
+            canvas.drawRect(left, height * (1 - level), left + slot - gap, height, barPaint);
+        }
+    }
+}
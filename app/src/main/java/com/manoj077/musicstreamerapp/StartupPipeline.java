@@ -0,0 +1,293 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Receiver startup as a dependency graph. Each step starts on the executor as soon as
+ * the steps it depends on are done, so independent ones (AudioTrack warm-up, RTSP
+ * listener, JmDNS) overlap instead of queueing behind each other. External steps,
+ * such as the hotspot coming up, are finished by a callback instead of a task.
+ *
+ * Every step is timed, both how long it ran and when it finished relative to the
+ * start of the pipeline. If one fails or the pipeline is cancelled, the steps that
+ * depend on it are skipped.
+ */
+public class StartupPipeline {
+
+    public interface Step {
+        void run() throws Exception;
+    }
+
+    public interface Listener {
+        /**
+         * The last step is done; called on the thread that finished it.
+         */
+        void onFinished(Report report);
+
+        /**
+         * A step threw or an external step failed; its dependents will not run.
+         */
+        void onFailed(String step, Throwable error);
+    }
+
+    private final Executor executor;
+    private final Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    private final Map<String, Long> beginNanos = new LinkedHashMap<>();
+    private final Map<String, Long> endNanos = new LinkedHashMap<>();
+    private final CompletableFuture<Void> started = new CompletableFuture<>();
+    private final Map<String, Step> beginners = new LinkedHashMap<>();
+    private boolean cancelled;
+    private long startNanos;
+    // Tasks between begin and end, and what to run once none are left after a cancel
+    private int running;
+    private Runnable settledAction;
+    private boolean failureReported;
+
+    public StartupPipeline(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a step that runs once all of {@code after} are done. Steps must be added
+     * after the ones they depend on, and before {@link #start}.
+     */
+    public StartupPipeline step(String name, Step step, String... after) {
+        CompletableFuture<Void> future = dependencies(after).thenRunAsync(() -> {
+            synchronized (this) {
+                if (cancelled) {
+                    throw new CancellationException(name);
+                }
+                running++;
+                beginNanos.put(name, System.nanoTime());
+            }
+            try {
+                step.run();
+                markEnd(name);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                taskDone();
+            }
+        }, executor);
+        futures.put(name, future);
+        return this;
+    }
+
+    /**
+     * Adds a step that is finished from outside with {@link #complete} or
+     * {@link #fail}.
+     */
+    public StartupPipeline external(String name) {
+        futures.put(name, new CompletableFuture<>());
+        return this;
+    }
+
+    /**
+     * An external step that is kicked off by {@code begin} on the executor when the
+     * pipeline starts, e.g. a request whose callback later calls {@link #complete}.
+     * If {@code begin} throws, the step fails.
+     */
+    public StartupPipeline external(String name, Step begin) {
+        external(name);
+        beginners.put(name, begin);
+        return this;
+    }
+
+    public void complete(String name) {
+        synchronized (this) {
+            beginNanos.put(name, startNanos);
+        }
+        markEnd(name);
+        futures.get(name).complete(null);
+    }
+
+    public void fail(String name, Throwable error) {
+        futures.get(name).completeExceptionally(error);
+    }
+
+    /**
+     * Starts every step whose dependencies are met. {@code listener} hears about the
+     * first failure and, if all goes well, the end of the last step.
+     */
+    public void start(Listener listener) {
+        synchronized (this) {
+            startNanos = System.nanoTime();
+        }
+        for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+            String name = entry.getKey();
+            entry.getValue().whenComplete((ignored, error) -> {
+                Throwable cause = unwrap(error);
+                if (cause != null && !(cause instanceof CancellationException)
+                        && firstFailure()) {
+                    listener.onFailed(name, cause);
+                }
+            });
+        }
+        CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> listener.onFinished(report()));
+        started.complete(null);
+        for (Map.Entry<String, Step> entry : beginners.entrySet()) {
+            String name = entry.getKey();
+            Step begin = entry.getValue();
+            executor.execute(() -> {
+                synchronized (this) {
+                    if (cancelled) {
+                        return;
+                    }
+                    running++;
+                }
+                try {
+                    begin.run();
+                } catch (Exception e) {
+                    fail(name, e);
+                } finally {
+                    taskDone();
+                }
+            });
+        }
+    }
+
+    /**
+     * Skips every step that has not begun. Steps already running are not interrupted;
+     * {@code onSettled} runs once they have returned, so whatever they started can be
+     * torn down safely.
+     */
+    public void cancel(Runnable onSettled) {
+        Runnable now = null;
+        synchronized (this) {
+            cancelled = true;
+            if (running == 0) {
+                now = onSettled;
+            } else {
+                settledAction = onSettled;
+            }
+        }
+        for (CompletableFuture<Void> future : futures.values()) {
+            future.completeExceptionally(new CancellationException());
+        }
+        started.complete(null);
+        if (now != null) {
+            now.run();
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized Report report() {
+        Map<String, long[]> phases = new LinkedHashMap<>();
+        long total = 0;
+        for (Map.Entry<String, Long> entry : endNanos.entrySet()) {
+            long begin = beginNanos.get(entry.getKey());
+            long end = entry.getValue();
+            phases.put(entry.getKey(), new long[] {end - begin, end - startNanos});
+            total = Math.max(total, end - startNanos);
+        }
+        return new Report(phases, total);
+    }
+
+    private void taskDone() {
+        Runnable action = null;
+        synchronized (this) {
+            running--;
+            if (running == 0 && settledAction != null) {
+                action = settledAction;
+                settledAction = null;
+            }
+        }
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    private synchronized boolean firstFailure() {
+        boolean first = !failureReported;
+        failureReported = true;
+        return first;
+    }
+
+    private synchronized void markEnd(String name) {
+        endNanos.put(name, System.nanoTime());
+    }
+
+    private CompletableFuture<Void> dependencies(String[] after) {
+        if (after.length == 0) {
+            return started;
+        }
+        CompletableFuture<?>[] deps = new CompletableFuture<?>[after.length + 1];
+        deps[0] = started;
+        for (int i = 0; i < after.length; i++) {
+            CompletableFuture<Void> dep = futures.get(after[i]);
+            if (dep == null) {
+                throw new IllegalArgumentException("Unknown step: " + after[i]);
+            }
+            deps[i + 1] = dep;
+        }
+        return CompletableFuture.allOf(deps);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * How long each step took and when it finished, measured from the start of the
+     * pipeline, in the order they finished.
+     */
+    public static final class Report {
+        // Per step: duration, then finish time
+        private final Map<String, long[]> phases;
+        private final long totalNanos;
+
+        Report(Map<String, long[]> phases, long totalNanos) {
+            this.phases = phases;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * Start of the pipeline until its last step finished.
+         */
+        public long getTotalMillis() {
+            return totalNanos / 1_000_000;
+        }
+
+        public long getDurationMillis(String step) {
+            long[] phase = phases.get(step);
+            return phase == null ? -1 : phase[0] / 1_000_000;
+        }
+
+        public long getFinishMillis(String step) {
+            long[] phase = phases.get(step);
+            return phase == null ? -1 : phase[1] / 1_000_000;
+        }
+
+        /**
+         * E.g. {@code "rtsp 3 ms, audio 42 ms, hotspot 1210 ms, mdns 430 ms"}, each
+         * step's own duration.
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+                if (text.length() > 0) {
+                    text.append(", ");
+                }
+                text.append(String.format(Locale.US, "%s %d ms", entry.getKey(),
+                        entry.getValue()[0] / 1_000_000));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the latest {@link TelemetrySnapshot} from the service to its UI without locks
+ * or intents. Publishing swaps one reference; readers either poll {@link #latest} or
+ * subscribe at a bounded frame rate.
+ *
+ * A subscriber never has more than one delivery queued and is never called more often
+ * than its frame rate allows; snapshots published in between are skipped, and the
+ * one delivered is the newest at the time it runs. A publisher with nothing else to do
+ * can stop producing snapshots while nobody subscribes; see {@link #setDemandListener}.
+ */
+public class TelemetryChannel {
+
+    public interface Listener {
+        void onTelemetry(TelemetrySnapshot snapshot);
+    }
+
+    /**
+     * Told when the first subscriber arrives and when the last one leaves, on the
+     * thread that subscribed or cancelled.
+     */
+    public interface DemandListener {
+        void onDemandChanged(boolean subscribed);
+    }
+
+    private final AtomicReference<TelemetrySnapshot> latest = new AtomicReference<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong published = new AtomicLong();
+    private volatile DemandListener demandListener;
+
+    public final class Subscription {
+        private final Listener listener;
+        private final Executor executor;
+        private final long intervalNanos;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private final AtomicLong delivered = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final Runnable deliver = this::deliver;
+        private volatile long lastDeliveryNanos;
+        private volatile boolean cancelled;
+
+        Subscription(Listener listener, Executor executor, int maxFps) {
+            this.listener = listener;
+            this.executor = executor;
+            this.intervalNanos = maxFps > 0 ? 1_000_000_000L / maxFps : 0;
+            this.lastDeliveryNanos = System.nanoTime() - intervalNanos;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (subscriptions.remove(this) && subscriptions.isEmpty()) {
+                demandChanged(false);
+            }
+        }
+
+        public long getDelivered() {
+            return delivered.get();
+        }
+
+        /**
+         * Snapshots not delivered because of the frame rate or a delivery still queued.
+         */
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        void offer(long nowNanos) {
+            if (nowNanos - lastDeliveryNanos < intervalNanos || !queued.compareAndSet(false, true)) {
+                skipped.incrementAndGet();
+                return;
+            }
+            executor.execute(deliver);
+        }
+
+        private void deliver() {
+            queued.set(false);
+            if (cancelled) {
+                return;
+            }
+            lastDeliveryNanos = System.nanoTime();
+            delivered.incrementAndGet();
+            listener.onTelemetry(latest.get());
+        }
+    }
+
+    /**
+     * Makes {@code snapshot} the latest and offers it to every subscriber.
+     */
+    public void publish(TelemetrySnapshot snapshot) {
+        latest.set(snapshot);
+        published.incrementAndGet();
+        long now = System.nanoTime();
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(now);
+        }
+    }
+
+    /**
+     * Newest snapshot, or null before the first publish.
+     */
+    public TelemetrySnapshot latest() {
+        return latest.get();
+    }
+
+    /**
+     * @param executor where {@code listener} runs, e.g. the main thread
+     * @param maxFps   most deliveries per second, 0 for every snapshot
+     */
+    public Subscription subscribe(Listener listener, Executor executor, int maxFps) {
+        Subscription subscription = new Subscription(listener, executor, maxFps);
+        subscriptions.add(subscription);
+        if (latest.get() != null) {
+            subscription.offer(System.nanoTime());
+        }
+        if (subscriptions.size() == 1) {
+            demandChanged(true);
+        }
+        return subscription;
+    }
+
+    public void setDemandListener(DemandListener listener) {
+        demandListener = listener;
+    }
+
+    private void demandChanged(boolean subscribed) {
+        DemandListener listener = demandListener;
+        if (listener != null) {
+            listener.onDemandChanged(subscribed);
+        }
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+}
@@ -0,0 +1,111 @@
+package com.manoj077.musicstreamerapp;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Measures on the device what one live status update costs over a broadcast, as the
+ * UI used to get it, against the {@link TelemetryChannel} it uses now. Each path sends
+ * updates one at a time, the next when the previous has arrived on the main thread,
+ * and the averages are logged.
+ */
+public class TelemetryProbe {
+    private static final String TAG = "TelemetryProbe";
+    private static final String ACTION_PROBE = "com.manoj077.musicstreamerapp.ACTION_TELEMETRY_PROBE";
+    private static final String EXTRA_SENT_NANOS = "sent_nanos";
+    private static final String EXTRA_METRICS = "metrics";
+
+    private final Context context;
+    private final Handler handler;
+    private final PlaybackMetrics metrics;
+    private final SpectrumAnalyzer analyzer;
+    private final int updates;
+
+    private int remaining;
+    private long sendNanos;
+    private long broadcastLatencyNanos;
+    private long publishNanos;
+    private long channelLatencyNanos;
+    private TelemetryChannel channel;
+    private TelemetryChannel.Subscription subscription;
+
+    private final BroadcastReceiver receiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            broadcastLatencyNanos += System.nanoTime() - intent.getLongExtra(EXTRA_SENT_NANOS, 0);
+            if (--remaining > 0) {
+                handler.post(TelemetryProbe.this::sendBroadcast);
+            } else {
+                TelemetryProbe.this.context.unregisterReceiver(this);
+                startChannel();
+            }
+        }
+    };
+
+    /**
+     * @param handler main-thread handler, where the UI would receive updates
+     */
+    public TelemetryProbe(Context context, Handler handler, AudioEngine engine, int updates) {
+        this.context = context;
+        this.handler = handler;
+        this.metrics = engine.getMetrics();
+        this.analyzer = engine.getAnalyzer();
+        this.updates = Math.max(1, updates);
+    }
+
+    public void run() {
+        IntentFilter filter = new IntentFilter(ACTION_PROBE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            context.registerReceiver(receiver, filter, Context.RECEIVER_NOT_EXPORTED);
+        } else {
+            context.registerReceiver(receiver, filter);
+        }
+        remaining = updates;
+        sendBroadcast();
+    }
+
+    private void sendBroadcast() {
+        long start = System.nanoTime();
+        Intent intent = new Intent(ACTION_PROBE);
+        intent.setPackage(context.getPackageName());
+        intent.putExtra(EXTRA_METRICS, metrics.snapshot().toDisplayString());
+        intent.putExtra(EXTRA_SENT_NANOS, start);
+        context.sendBroadcast(intent);
+        sendNanos += System.nanoTime() - start;
+    }
+
+    private void startChannel() {
+        channel = new TelemetryChannel();
+        subscription = channel.subscribe(this::onTelemetry, handler::post, 0);
+        remaining = updates;
+        publish();
+    }
+
+    private void publish() {
+        long start = System.nanoTime();
+        channel.publish(new TelemetrySnapshot(start, updates - remaining, "PROBE", 0,
+                0, 0, analyzer.latest(), 0, 0, metrics.snapshot()));
+        publishNanos += System.nanoTime() - start;
+    }
+
+    private void onTelemetry(TelemetrySnapshot snapshot) {
+        channelLatencyNanos += System.nanoTime() - snapshot.timeNanos;
+        if (--remaining > 0) {
+            handler.post(this::publish);
+        } else {
+            subscription.cancel();
+            Log.i(TAG, String.format(Locale.US,
+                    "Per update over %d: broadcast %.1f us to send, %.1f us to arrive;"
+                            + " channel %.1f us to publish, %.1f us to arrive",
+                    updates, sendNanos / 1e3 / updates, broadcastLatencyNanos / 1e3 / updates,
+                    publishNanos / 1e3 / updates, channelLatencyNanos / 1e3 / updates));
+        }
+    }
+}
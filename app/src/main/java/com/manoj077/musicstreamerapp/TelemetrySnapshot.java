@@ -0,0 +1,57 @@
+package com.manoj077.musicstreamerapp;
+
+import java.util.Locale;
+
+/**
+ * Live receiver state as the UI shows it, published several times a second through
+ * a {@link TelemetryChannel}. Immutable, so a reader on any thread sees a consistent
+ * set of values without locking.
+ */
+public final class TelemetrySnapshot {
+    /** {@link System#nanoTime()} at which it was taken */
+    public final long timeNanos;
+    /** Increases by one with every snapshot published */
+    public final long sequence;
+    /** Lifecycle state, or "STANDBY" */
+    public final String state;
+    public final int sessions;
+    /** Audio buffered ahead of the AudioTrack */
+    public final double queuedMs;
+    /** Incoming audio payload rate since the previous snapshot */
+    public final double bitrateKbps;
+    /** Output levels and spectrum at the latest analysis hop */
+    public final SpectrumAnalyzer.Snapshot analysis;
+    /** Latest distance from the sender's schedule, positive when late */
+    public final double syncErrorMs;
+    public final double driftPpm;
+    /** Full counters for the detailed view */
+    public final PlaybackMetrics.Snapshot metrics;
+
+    public TelemetrySnapshot(long timeNanos, long sequence, String state, int sessions,
+                             double queuedMs, double bitrateKbps,
+                             SpectrumAnalyzer.Snapshot analysis, double syncErrorMs,
+                             double driftPpm, PlaybackMetrics.Snapshot metrics) {
+        this.timeNanos = timeNanos;
+        this.sequence = sequence;
+        this.state = state;
+        this.sessions = sessions;
+        this.queuedMs = queuedMs;
+        this.bitrateKbps = bitrateKbps;
+        this.analysis = analysis;
+        this.syncErrorMs = syncErrorMs;
+        this.driftPpm = driftPpm;
+        this.metrics = metrics;
+    }
+
+    /**
+     * One line for the live status display.
+     */
+    public String toDisplayString() {
+        return String.format(Locale.US,
+                "%s, %d sender(s) | buffer %.0f ms | %.0f kbps | L %.0f / R %.0f dB"
+                        + " | sync %+.1f ms | drift %+.0f ppm",
+                state, sessions, queuedMs, bitrateKbps,
+                analysis.getPeakDb(0), analysis.getPeakDb(analysis.getChannels() - 1),
+                syncErrorMs, driftPpm);
+    }
+}
@@ -0,0 +1,233 @@
+package com.manoj077.musicstreamerapp;
+
+/**
+ * Estimates the offset between a sender's clock and the local monotonic clock from
+ * NTP-style four-timestamp exchanges.
+ *
+ * Each exchange gives an offset and a round-trip time; queueing delay only ever adds
+ * to the round trip and skews the offset by up to half of it, so the offset is taken
+ * from the exchange with the smallest round trip among the recent ones (the NTP clock
+ * filter). Exchanges whose round trip is far above the best one are discarded
+ * outright.
+ *
+ * The two clocks also run at slightly different rates. Each time the window has been
+ * refilled, its filtered offset is kept as a point on a longer history, and the drift
+ * is the least-squares slope through those points; it carries the offset forward from
+ * the exchange it was measured in to any later local time. All timestamps are passed in,
+ * so the estimator can be driven by a simulated clock.
+ */
+public class TimingEstimator {
+    private static final int WINDOW = 8;
+    private static final int MIN_SAMPLES = 3;
+    private static final long MAX_RTT_NANOS = 500_000_000L;
+    private static final int OUTLIER_FACTOR = 4;
+    private static final int DRIFT_POINTS = 16;
+    private static final long MIN_DRIFT_BASELINE_NANOS = 10_000_000_000L;
+
+    /**
+     * Offset measured at a local time, and the drift to carry it forward with; replaced
+     * as a whole so readers never see half of one.
+     */
+    private static final class Estimate {
+        final long offsetNanos;
+        final long localNanos;
+        final double drift;
+
+        Estimate(long offsetNanos, long localNanos, double drift) {
+            this.offsetNanos = offsetNanos;
+            this.localNanos = localNanos;
+            this.drift = drift;
+        }
+    }
+
+    private final long[] offsets = new long[WINDOW];
+    private final long[] rtts = new long[WINDOW];
+    private final long[] times = new long[WINDOW];
+    private int count;
+    private int next;
+
+    // Filtered offsets, one per refilled window, and when they were measured
+    private final long[] pointOffsets = new long[DRIFT_POINTS];
+    private final long[] pointTimes = new long[DRIFT_POINTS];
+    private int points;
+    private int nextPoint;
+    private int sincePoint;
+    private double drift;
+    private boolean hasDrift;
+
+    private volatile Estimate estimate = new Estimate(0, 0, 0);
+    private volatile long rttNanos;
+    private volatile long dispersionNanos;
+    private volatile boolean locked;
+    private long rejected;
+    private int outliersInRow;
+
+    /**
+     * Adds one exchange.
+     *
+     * @param requestNanos  local time the request left (T1)
+     * @param receiveNanos  sender time it arrived (T2)
+     * @param transmitNanos sender time the reply left (T3)
+     * @param replyNanos    local time the reply arrived (T4)
+     * @return false if the exchange was discarded
+     */
+    public synchronized boolean addSample(long requestNanos, long receiveNanos,
+                                          long transmitNanos, long replyNanos) {
+        long rtt = (replyNanos - requestNanos) - (transmitNanos - receiveNanos);
+        if (rtt < 0 || rtt > MAX_RTT_NANOS) {
+            rejected++;
+            return false;
+        }
+        if (locked && rtt > OUTLIER_FACTOR * Math.max(rttNanos, 1_000_000L)) {
+            rejected++;
+            // A whole window of slow exchanges means the path changed; start over
+            if (++outliersInRow < WINDOW) {
+                return false;
+            }
+            count = 0;
+            next = 0;
+            // Offsets over the new path carry a different asymmetry
+            points = 0;
+            sincePoint = 0;
+        }
+        outliersInRow = 0;
+        long offset = ((receiveNanos - requestNanos) + (transmitNanos - replyNanos)) / 2;
+
+        offsets[next] = offset;
+        rtts[next] = rtt;
+        times[next] = requestNanos + (replyNanos - requestNanos) / 2;
+        next = (next + 1) % WINDOW;
+        count = Math.min(WINDOW, count + 1);
+
+        int best = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (rtts[i] < rtts[best]) {
+                best = i;
+            }
+            min = Math.min(min, offsets[i]);
+            max = Math.max(max, offsets[i]);
+        }
+        rttNanos = rtts[best];
+        dispersionNanos = max - min;
+        locked = count >= MIN_SAMPLES;
+        if (++sincePoint >= WINDOW) {
+            sincePoint = 0;
+            updateDrift(offsets[best], times[best]);
+        }
+        estimate = new Estimate(offsets[best], times[best], hasDrift ? drift : 0);
+        return true;
+    }
+
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+        outliersInRow = 0;
+        locked = false;
+        points = 0;
+        nextPoint = 0;
+        sincePoint = 0;
+        hasDrift = false;
+        estimate = new Estimate(0, 0, 0);
+    }
+
+    /**
+     * True once enough exchanges have been seen to trust the offset.
+     */
+    public boolean isLocked() {
+        return locked;
+    }
+
+    /**
+     * Sender clock minus local clock, as measured by the exchange it comes from.
+     */
+    public long getOffsetNanos() {
+        return estimate.offsetNanos;
+    }
+
+    /**
+     * Sender clock minus local clock at a local time, carried forward by the drift.
+     */
+    public long getOffsetNanos(long localNanos) {
+        Estimate current = estimate;
+        return current.offsetNanos
+                + Math.round(current.drift * (localNanos - current.localNanos));
+    }
+
+    /**
+     * How much faster the sender's clock runs than the local one, in parts per million;
+     * zero until a long enough baseline has been seen.
+     */
+    public double getDriftPpm() {
+        return estimate.drift * 1_000_000.0;
+    }
+
+    /**
+     * Round trip of the exchange the offset comes from.
+     */
+    public long getRttNanos() {
+        return rttNanos;
+    }
+
+    /**
+     * Spread of the offsets in the window; an upper bound on how far off the estimate
+     * may be.
+     */
+    public long getDispersionNanos() {
+        return dispersionNanos;
+    }
+
+    public synchronized long getRejectedSamples() {
+        return rejected;
+    }
+
+    /**
+     * Converts a sender clock reading to local monotonic time.
+     */
+    public long toLocalNanos(long senderNanos) {
+        Estimate current = estimate;
+        // Solves sender = local + offset(local) for local
+        long local = senderNanos - current.offsetNanos;
+        return local - Math.round(current.drift * (local - current.localNanos)
+                / (1 + current.drift));
+    }
+
+    /**
+     * Adds a point to the history and refits the drift once it spans
+     * {@link #MIN_DRIFT_BASELINE_NANOS}. Points come from windows with no exchange in
+     * common, so their queueing errors are independent and average out in the fit.
+     */
+    private void updateDrift(long offset, long time) {
+        pointOffsets[nextPoint] = offset;
+        pointTimes[nextPoint] = time;
+        nextPoint = (nextPoint + 1) % DRIFT_POINTS;
+        points = Math.min(DRIFT_POINTS, points + 1);
+
+        int oldest = points < DRIFT_POINTS ? 0 : nextPoint;
+        long baseTime = pointTimes[oldest];
+        long baseOffset = pointOffsets[oldest];
+        long newest = pointTimes[(nextPoint + DRIFT_POINTS - 1) % DRIFT_POINTS];
+        if (newest - baseTime < MIN_DRIFT_BASELINE_NANOS) {
+            return;
+        }
+
+        double meanT = 0;
+        double meanO = 0;
+        for (int i = 0; i < points; i++) {
+            meanT += pointTimes[i] - baseTime;
+            meanO += pointOffsets[i] - baseOffset;
+        }
+        meanT /= points;
+        meanO /= points;
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < points; i++) {
+            double t = pointTimes[i] - baseTime - meanT;
+            covariance += t * (pointOffsets[i] - baseOffset - meanO);
+            variance += t * t;
+        }
+        drift = covariance / variance;
+        hasDrift = true;
+    }
+}
@@ -0,0 +1,126 @@
+package com.manoj077.musicstreamerapp;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Track information a sender announces as a DMAP ({@code application/x-dmap-tagged})
+ * SET_PARAMETER body. Immutable; fields the sender left out are null, or 0 for the
+ * duration.
+ */
+public final class TrackMetadata {
+    // Each DMAP item is a 4-byte tag and a 4-byte big-endian length before its content
+    private static final int ITEM_HEADER_BYTES = 8;
+    // Nesting the parser follows; real payloads use one level of mlit
+    private static final int MAX_DEPTH = 4;
+
+    public final String title;
+    public final String artist;
+    public final String album;
+    public final String genre;
+    /** Track length in ms, 0 if not given */
+    public final long durationMs;
+
+    public TrackMetadata(String title, String artist, String album, String genre,
+                         long durationMs) {
+        this.title = title;
+        this.artist = artist;
+        this.album = album;
+        this.genre = genre;
+        this.durationMs = durationMs;
+    }
+
+    /**
+     * Reads the track fields from a DMAP listing item ({@code mlit}) or a bare run of
+     * items. Unknown tags are skipped; parsing stops at the first item that overruns
+     * the payload, keeping what was read before it.
+     */
+    public static TrackMetadata parseDmap(byte[] data, int offset, int length) {
+        Builder builder = new Builder();
+        builder.read(data, offset, offset + length, 0);
+        return builder.build();
+    }
+
+    /**
+     * Whether the sender told us nothing worth showing.
+     */
+    public boolean isEmpty() {
+        return title == null && artist == null && album == null;
+    }
+
+    /**
+     * "Artist - Album", either part alone if the other is missing, or null.
+     */
+    public String getSubtitle() {
+        if (artist != null && album != null) {
+            return artist + " - " + album;
+        }
+        return artist != null ? artist : album;
+    }
+
+    @Override
+    public String toString() {
+        String name = title != null ? title : "untitled";
+        String subtitle = getSubtitle();
+        return subtitle != null ? name + " (" + subtitle + ")" : name;
+    }
+
+    private static final class Builder {
+        String title;
+        String artist;
+        String album;
+        String genre;
+        long durationMs;
+
+        void read(byte[] data, int from, int to, int depth) {
+            int pos = from;
+            while (pos + ITEM_HEADER_BYTES <= to) {
+                int tag = readInt(data, pos);
+                int length = readInt(data, pos + 4);
+                int content = pos + ITEM_HEADER_BYTES;
+                if (length < 0 || length > to - content) {
+                    return;
+                }
+                switch (tag) {
+                    case 0x6d6c6974: // mlit, the listing item holding the fields
+                        if (depth < MAX_DEPTH) {
+                            read(data, content, content + length, depth + 1);
+                        }
+                        break;
+                    case 0x6d696e6d: // minm, item name
+                        title = text(data, content, length);
+                        break;
+                    case 0x61736172: // asar, song artist
+                        artist = text(data, content, length);
+                        break;
+                    case 0x6173616c: // asal, song album
+                        album = text(data, content, length);
+                        break;
+                    case 0x6173676e: // asgn, song genre
+                        genre = text(data, content, length);
+                        break;
+                    case 0x6173746d: // astm, song time in ms
+                        if (length == 4) {
+                            durationMs = readInt(data, content) & 0xffffffffL;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+                pos = content + length;
+            }
+        }
+
+        TrackMetadata build() {
+            return new TrackMetadata(title, artist, album, genre, durationMs);
+        }
+
+        private static String text(byte[] data, int offset, int length) {
+            return length > 0 ? new String(data, offset, length, StandardCharsets.UTF_8) : null;
+        }
+
+        private static int readInt(byte[] data, int offset) {
+            return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16
+                    | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * The ALAC codec as a session uses it: decoders made from the ANNOUNCE fmtp, fed the
+ * reference packets of {@link AlacDecoderTest}.
+ */
+public class AlacCodecTest {
+    private final AlacCodec codec = new AlacCodec();
+
+    @Test
+    public void decodesThroughTheOutputWithItsRtpFields() throws IOException {
+        AudioDecoder decoder = codec.newDecoder("96 AppleLossless", AlacDecoder.DEFAULT_FMTP,
+                44100, 2);
+        PcmCodecTest.Frames frames = new PcmCodecTest.Frames();
+        decoder.setOutput(frames);
+        byte[] packet = resource("/alac/stereo_fir.alac");
+
+        decoder.decode(0x1234, 352, packet, 0, packet.length, 0);
+
+        assertEquals(1, frames.pcm.size());
+        assertArrayEquals(resource("/alac/stereo_fir.pcm"), frames.pcm.get(0));
+        assertEquals(Integer.valueOf(0x1234), frames.seqs.get(0));
+    }
+
+    @Test
+    public void monoStreamPlaysOnBothChannels() throws IOException {
+        String monoFmtp = "96 352 0 16 40 10 14 1 255 0 0 44100";
+        AudioDecoder decoder = codec.newDecoder("96 AppleLossless", monoFmtp, 44100, 2);
+        PcmCodecTest.Frames frames = new PcmCodecTest.Frames();
+        decoder.setOutput(frames);
+        byte[] packet = resource("/alac/mono_fir.alac");
+
+        decoder.decode(1, 0, packet, 0, packet.length, 0);
+
+        assertArrayEquals(resource("/alac/mono_fir.pcm"), frames.pcm.get(0));
+    }
+
+    @Test
+    public void undecodablePacketIsReportedBySequence() {
+        AudioDecoder decoder = codec.newDecoder(null, null, 44100, 2);
+        PcmCodecTest.Frames frames = new PcmCodecTest.Frames();
+        decoder.setOutput(frames);
+
+        decoder.decode(9, 0, new byte[] {(byte) 0xff, (byte) 0xff}, 0, 2, 0);
+
+        assertEquals(0, frames.pcm.size());
+        assertEquals(Integer.valueOf(9), frames.errors.get(0));
+        assertEquals(1, decoder.getErrors());
+    }
+
+    @Test
+    public void malformedOrMismatchedFmtpIsRefused() {
+        assertRefused("96 352 0 16");
+        assertRefused("96 352 0 sixteen 40 10 14 2 255 0 0 44100");
+        assertRefused("96 352 0 16 40 10 14 2 255 0 0 48000");
+        assertRefused("96 352 0 16 40 10 14 6 255 0 0 44100");
+    }
+
+    private void assertRefused(String fmtp) {
+        try {
+            codec.newDecoder("96 AppleLossless", fmtp, 44100, 2);
+            fail("accepted " + fmtp);
+        } catch (IllegalArgumentException expected) {
+            // Refused at creation
+        }
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        InputStream in = AlacCodecTest.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
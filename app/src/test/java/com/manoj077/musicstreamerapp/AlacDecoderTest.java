@@ -0,0 +1,287 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes reference packets and compares the PCM sample by sample.
+ *
+ * The packets in {@code resources/alac} were made outside this codebase by an encoder
+ * written from Apple's open-source ALAC reference (mid/side mixing, adaptive FIR
+ * prediction, adaptive Rice coding with zero runs), from the PCM stored beside each
+ * one. ALAC is lossless, so that input is the exact expected output:
+ * <ul>
+ * <li>{@code stereo_fir}: full 352-sample frame, interlacing weight 2/4, 8- and
+ * 4-tap predictors, escape-coded residuals around a click and zero runs in a dropout
+ * <li>{@code stereo_partial_delta}: 100-sample frame, no interlacing, no prediction on
+ * one channel and first-order delta (31 taps) on the other
+ * <li>{@code mono_fir}: single-channel element with a 4-tap predictor, duplicated to
+ * both outputs
+ * <li>{@code stereo_verbatim}: escape (uncompressed) frame
+ * <li>{@code stereo_quiet}: near silence, coded almost entirely as zero runs,
+ * including empty ones
+ * </ul>
+ * That encoder shares its reading of the format with this decoder, so streams from
+ * independent encoders are decoded as well: ffmpeg's and Apple's {@code afconvert},
+ * as CAF files in {@code resources/alac/reference} made by {@code make_reference.sh}
+ * there. That test is skipped where none have been generated.
+ */
+public class AlacDecoderTest {
+    private static final String[] FIXTURES = {
+            "stereo_fir", "stereo_partial_delta", "mono_fir", "stereo_verbatim", "stereo_quiet",
+    };
+    private static final String[] REFERENCE_STREAMS = {"ffmpeg_stereo", "afconvert_stereo"};
+
+    @Test
+    public void referencePacketsDecodeToTheirPcm() throws IOException {
+        for (String name : FIXTURES) {
+            AlacDecoder decoder = AlacDecoder.fromFmtp(AlacDecoder.DEFAULT_FMTP);
+            assertDecodes(decoder, name);
+        }
+    }
+
+    /**
+     * One decoder across packets of different shapes, as a stream would use it.
+     */
+    @Test
+    public void decoderStateDoesNotLeakBetweenPackets() throws IOException {
+        AlacDecoder decoder = AlacDecoder.fromFmtp(AlacDecoder.DEFAULT_FMTP);
+        for (int pass = 0; pass < 2; pass++) {
+            for (String name : FIXTURES) {
+                assertDecodes(decoder, name);
+            }
+        }
+        assertEquals(2 * FIXTURES.length, decoder.getDecodedFrames());
+        assertEquals(0, decoder.getErrors());
+    }
+
+    /**
+     * Hand-assembled mono frame of six samples, 1 2 0 0 0 0, checking the Rice code
+     * arithmetic bit by bit with the default parameters (pb 40, mb 10, kb 14).
+     */
+    @Test
+    public void riceCodesAndZeroRunsKnownAnswer() {
+        byte[] packet = bits(
+                "000", "0000", "000000000000", // mono element, instance tag, unused
+                "1", "00", "0", // sample count follows, no wasted bytes, compressed
+                "00000000000000000000000000000110", // 6 samples
+                "00000000", "00000000", // no interlacing
+                "0000", "1001", "100", "00000", // FIR, quantization 9, rice modifier 4, no taps
+                "110", // history 10, k 1: unary 2, i.e. +1
+                "0", "0", // history 90 < 128, k 2, m 3: empty run in k - 1 bits
+                "1110", // history 0, k 1: 3, plus 1 after a run, i.e. +2
+                "0", "0", "0", // history 160, 148, 137, k 1: zeros
+                "0", "010", // history 127 < 128, k 3, m 7: run of 2 - 1 = 1 zero
+                "111"); // end element
+
+        AlacDecoder decoder = AlacDecoder.fromFmtp(AlacDecoder.DEFAULT_FMTP);
+        byte[] pcm = new byte[decoder.getMaxOutputBytes()];
+        assertEquals(24, decoder.decode(packet, 0, packet.length, pcm, 0));
+        short[] expected = {1, 1, 2, 2, 0, 0, 0, 0, 0, 0, 0, 0};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], sample(pcm, i));
+        }
+    }
+
+    /**
+     * Whole streams from third-party encoders, configured from the CAF magic cookie as
+     * a sender's fmtp would configure the decoder.
+     */
+    @Test
+    public void referenceEncoderStreamsDecodeToTheirSource() throws IOException {
+        int streams = 0;
+        for (String name : REFERENCE_STREAMS) {
+            InputStream in = AlacDecoderTest.class.getResourceAsStream(
+                    "/alac/reference/" + name + ".caf");
+            if (in == null) {
+                continue;
+            }
+            in.close();
+            assertStreamDecodes(name, resource("reference/" + name + ".caf"),
+                    resource("reference/" + name + ".pcm"));
+            streams++;
+        }
+        Assume.assumeTrue("no reference streams; run alac/reference/make_reference.sh",
+                streams > 0);
+    }
+
+    @Test
+    public void truncatedPacketIsRejected() throws IOException {
+        byte[] packet = resource(FIXTURES[0] + ".alac");
+        AlacDecoder decoder = AlacDecoder.fromFmtp(AlacDecoder.DEFAULT_FMTP);
+        byte[] pcm = new byte[decoder.getMaxOutputBytes()];
+        assertEquals(-1, decoder.decode(packet, 0, packet.length / 2, pcm, 0));
+        assertEquals(1, decoder.getErrors());
+
+        // The decoder recovers with the next whole packet
+        assertDecodes(decoder, FIXTURES[0]);
+    }
+
+    private static void assertDecodes(AlacDecoder decoder, String name) throws IOException {
+        byte[] packet = resource(name + ".alac");
+        byte[] expected = resource(name + ".pcm");
+        byte[] pcm = new byte[decoder.getMaxOutputBytes()];
+        int length = decoder.decode(packet, 0, packet.length, pcm, 0);
+        assertEquals(name + " length", expected.length, length);
+        for (int i = 0; i < length / 2; i++) {
+            if (sample(pcm, i) != sample(expected, i)) {
+                assertEquals(name + " frame " + i / 2 + " channel " + i % 2,
+                        sample(expected, i), sample(pcm, i));
+            }
+        }
+    }
+
+    private static void assertStreamDecodes(String name, byte[] caf, byte[] expected) {
+        List<byte[]> packets = new ArrayList<>();
+        String fmtp = readCaf(caf, packets);
+        AlacDecoder decoder = AlacDecoder.fromFmtp(fmtp);
+        byte[] pcm = new byte[decoder.getMaxOutputBytes()];
+        int offset = 0;
+        for (int p = 0; p < packets.size(); p++) {
+            byte[] packet = packets.get(p);
+            int length = decoder.decode(packet, 0, packet.length, pcm, 0);
+            assertTrue(name + " packet " + p, length > 0);
+            assertTrue(name + " overruns its source", offset + length <= expected.length);
+            for (int i = 0; i < length / 2; i++) {
+                if (sample(pcm, i) != sample(expected, offset / 2 + i)) {
+                    assertEquals(name + " packet " + p + " sample " + i,
+                            sample(expected, offset / 2 + i), sample(pcm, i));
+                }
+            }
+            offset += length;
+        }
+        assertEquals(name + " length", expected.length, offset);
+        assertEquals(0, decoder.getErrors());
+    }
+
+    /**
+     * Splits a CAF file into its ALAC packets and returns the fmtp its magic cookie
+     * describes.
+     */
+    private static String readCaf(byte[] caf, List<byte[]> packets) {
+        ByteBuffer file = ByteBuffer.wrap(caf);
+        assertEquals("caff", fourCc(file, 0));
+        int pos = 8;
+        String fmtp = null;
+        List<Integer> sizes = new ArrayList<>();
+        int dataStart = -1;
+        while (pos + 12 <= caf.length) {
+            String type = fourCc(file, pos);
+            long size = file.getLong(pos + 4);
+            int body = pos + 12;
+            int end = size < 0 ? caf.length : (int) (body + size);
+            if (type.equals("kuki")) {
+                fmtp = cookieFmtp(file, body, end);
+            } else if (type.equals("pakt")) {
+                long count = file.getLong(body);
+                int at = body + 24;
+                for (long i = 0; i < count; i++) {
+                    int value = 0;
+                    int b;
+                    do {
+                        b = caf[at++] & 0xff;
+                        value = value << 7 | b & 0x7f;
+                    } while ((b & 0x80) != 0);
+                    sizes.add(value);
+                }
+            } else if (type.equals("data")) {
+                // Edit count first
+                dataStart = body + 4;
+            }
+            pos = end;
+        }
+        assertNotNull("no magic cookie", fmtp);
+        assertTrue("no audio data", dataStart >= 0);
+        int at = dataStart;
+        for (int size : sizes) {
+            byte[] packet = new byte[size];
+            System.arraycopy(caf, at, packet, 0, size);
+            packets.add(packet);
+            at += size;
+        }
+        return fmtp;
+    }
+
+    /**
+     * The 24-byte ALACSpecificConfig as fmtp fields. It is the whole cookie, or inside
+     * an {@code alac} atom after a {@code frma} one.
+     */
+    private static String cookieFmtp(ByteBuffer file, int start, int end) {
+        int config = end - start == 24 ? start : -1;
+        for (int atom = start; config < 0 && atom + 8 <= end; atom += file.getInt(atom)) {
+            if (fourCc(file, atom + 4).equals("alac") && file.getInt(atom) >= 36) {
+                config = atom + 12;
+            } else if (file.getInt(atom) < 8) {
+                break;
+            }
+        }
+        assertTrue("no ALACSpecificConfig in the cookie", config >= 0);
+        return "96 " + (file.getInt(config) & 0xffffffffL)
+                + " " + (file.get(config + 4) & 0xff)
+                + " " + (file.get(config + 5) & 0xff)
+                + " " + (file.get(config + 6) & 0xff)
+                + " " + (file.get(config + 7) & 0xff)
+                + " " + (file.get(config + 8) & 0xff)
+                + " " + (file.get(config + 9) & 0xff)
+                + " " + (file.getShort(config + 10) & 0xffff)
+                + " " + (file.getInt(config + 12) & 0xffffffffL)
+                + " " + (file.getInt(config + 16) & 0xffffffffL)
+                + " " + (file.getInt(config + 20) & 0xffffffffL);
+    }
+
+    private static String fourCc(ByteBuffer file, int at) {
+        char[] chars = new char[4];
+        for (int i = 0; i < 4; i++) {
+            chars[i] = (char) (file.get(at + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    private static short sample(byte[] pcm, int index) {
+        return (short) ((pcm[2 * index] & 0xff) | pcm[2 * index + 1] << 8);
+    }
+
+    /**
+     * Packs groups of '0' and '1' MSB first, as ALAC reads them.
+     */
+    private static byte[] bits(String... groups) {
+        StringBuilder all = new StringBuilder();
+        for (String group : groups) {
+            all.append(group);
+        }
+        byte[] packed = new byte[(all.length() + 7) / 8];
+        for (int i = 0; i < all.length(); i++) {
+            if (all.charAt(i) == '1') {
+                packed[i >> 3] |= (byte) (0x80 >>> (i & 7));
+            }
+        }
+        return packed;
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        InputStream in = AlacDecoderTest.class.getResourceAsStream("/alac/" + name);
+        assertNotNull("missing fixture " + name, in);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Mixing ring buffers fed with known samples, checking what comes out of the limiter.
+ */
+public class AudioMixerTest {
+    private static final int CHANNELS = 2;
+    private static final int FRAME_SIZE = CHANNELS * 2;
+    private static final int CHUNK = 1024;
+
+    @Test
+    public void singleSenderAtUnityIsBitExact() {
+        AudioMixer mixer = new AudioMixer(CHANNELS, CHUNK);
+        short[] loud = {32767, -32768, 30000, -30000, 26001, -26001, 100, 0};
+        mixer.addInput(source(loud), new GainStage(CHANNELS, 64));
+
+        assertSamples(loud, mix(mixer, loud.length));
+        assertEquals(0, mixer.getLimitedSamples());
+    }
+
+    @Test
+    public void sumThatFitsIsNotLimited() {
+        AudioMixer mixer = new AudioMixer(CHANNELS, CHUNK);
+        short[] a = {20000, -20000, 16000, -16384};
+        short[] b = {12000, -12000, 16767, -16384};
+        mixer.addInput(source(a), new GainStage(CHANNELS, 64));
+        mixer.addInput(source(b), new GainStage(CHANNELS, 64));
+
+        assertSamples(new short[] {32000, -32000, 32767, -32768}, mix(mixer, 4));
+        assertEquals(0, mixer.getLimitedSamples());
+    }
+
+    @Test
+    public void overflowingSumIsLimitedIntoRange() {
+        AudioMixer mixer = new AudioMixer(CHANNELS, CHUNK);
+        short[] a = {30000, -30000, 1000, 27000};
+        short[] b = {30000, -30000, 1000, 0};
+        mixer.addInput(source(a), new GainStage(CHANNELS, 64));
+        mixer.addInput(source(b), new GainStage(CHANNELS, 64));
+
+        short[] out = mix(mixer, 4);
+        assertTrue(out[0] > 27000 && out[0] < Short.MAX_VALUE);
+        assertEquals(-out[0], out[1]);
+        // Quiet samples below the knee pass unchanged; loud ones keep their order
+        assertEquals(2000, out[2]);
+        assertTrue(out[3] > 26000 && out[3] < out[0]);
+        assertEquals(3, mixer.getLimitedSamples());
+    }
+
+    @Test
+    public void headroomKeepsALoudSumOutOfTheLimiter() {
+        AudioMixer mixer = new AudioMixer(CHANNELS, CHUNK);
+        mixer.setHeadroomDb(20 * Math.log10(0.5));
+        short[] a = {30000, -30000};
+        mixer.addInput(source(a), new GainStage(CHANNELS, 64));
+        mixer.addInput(source(a), new GainStage(CHANNELS, 64));
+
+        short[] out = mix(mixer, a.length);
+        assertEquals(30000, out[0]);
+        assertEquals(-30000, out[1]);
+        assertEquals(0, mixer.getLimitedSamples());
+    }
+
+    private static PcmRingBuffer source(short[] samples) {
+        PcmRingBuffer ring = new PcmRingBuffer(4096, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        ByteBuffer bytes = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples) {
+            bytes.putShort(sample);
+        }
+        assertEquals(bytes.capacity(), ring.write(bytes.array(), 0, bytes.capacity()));
+        return ring;
+    }
+
+    private static short[] mix(AudioMixer mixer, int samples) {
+        ByteBuffer chunk = mixer.acquireRead(samples * 2, 0);
+        assertNotNull("nothing mixed", chunk);
+        short[] out = new short[chunk.remaining() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = chunk.getShort(chunk.position() + i * 2);
+        }
+        mixer.releaseRead(chunk.remaining());
+        return out;
+    }
+
+    private static void assertSamples(short[] expected, short[] actual) {
+        assertEquals("samples", expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("sample " + i, expected[i], actual[i]);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays {@code resources/replay/two_senders.rcap} and checks what comes out.
+ *
+ * The capture holds two senders playing at once, 40 packets of 352 frames each, one
+ * packet every frame duration:
+ * <ul>
+ * <li>stream 1: {@code AppleLossless} with the default fmtp, every packet the
+ * {@code alac/stereo_fir} frame
+ * <li>stream 2: {@code L16/44100/2}, big-endian, a quiet sawtooth on each channel
+ * (see {@link #sawtooth}), with packets 10 and 11 arriving swapped
+ * </ul>
+ * Their sum stays inside 16 bits, so the mix is exact and can be checked sample by
+ * sample. The checksum pins the rest of the output, concealment included; it only
+ * changes when playout behaviour is meant to.
+ */
+public class CaptureReplayerTest {
+    private static final int PACKETS = 40;
+    private static final int FRAME_SAMPLES = 352;
+    private static final int CHUNK_FRAMES = 441;
+    private static final long CHECKSUM = 0xda698743L;
+
+    @Test
+    public void checkedInCaptureReplaysToTheMixOfBothSenders() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CaptureReplayer replayer = new CaptureReplayer(data -> {
+            int length = data.remaining();
+            byte[] bytes = new byte[length];
+            data.get(bytes);
+            out.write(bytes, 0, length);
+            return length;
+        }, 44100, 2);
+        replayer.setSpeed(CaptureReplayer.FLAT_OUT);
+
+        CaptureReplayer.Result result;
+        try (PacketCapture.Reader reader = new PacketCapture.Reader(capture())) {
+            assertEquals(PacketCapture.VERSION, reader.version);
+            result = replayer.replay(reader);
+        }
+
+        assertEquals(2 + 2 * PACKETS, result.records);
+        assertEquals(2 * PACKETS, result.audioPackets);
+        assertEquals(0, result.decodeErrors);
+        assertEquals(0, result.lateDrops);
+
+        // Each sender joins the mix once its own jitter buffer has primed; the one whose
+        // packets arrived out of order primes deeper, so it may join a chunk or two later
+        short[] played = samples(out.toByteArray());
+        short[] alac = samples(resource("/alac/stereo_fir.pcm"));
+        boolean found = false;
+        for (int start = 0; !found && (start + PACKETS * FRAME_SAMPLES) * 2 <= played.length;
+             start++) {
+            for (int lag = 0; !found && lag <= 4 * CHUNK_FRAMES; lag += CHUNK_FRAMES) {
+                found = matchesAt(played, start, lag, alac);
+            }
+        }
+        assertTrue("mix of both senders not found in the output", found);
+        assertEquals(CHECKSUM, result.checksum);
+    }
+
+    /**
+     * Whether the output from frame {@code start} on is stream 1's packets, with stream
+     * 2's sawtooth added from {@code lag} frames later, for as long as stream 1 plays.
+     */
+    private static boolean matchesAt(short[] played, int start, int lag, short[] alac) {
+        for (int k = 0; k < PACKETS * FRAME_SAMPLES; k++) {
+            int i = k % FRAME_SAMPLES;
+            int left = alac[2 * i];
+            int right = alac[2 * i + 1];
+            if (k >= lag) {
+                left += sawtooth(k - lag, 0);
+                right += sawtooth(k - lag, 1);
+            }
+            int at = (start + k) * 2;
+            if (played[at] != left || played[at + 1] != right) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stream 2's sample {@code k} on one channel.
+     */
+    private static int sawtooth(int k, int channel) {
+        return channel == 0 ? (k % 200) * 10 - 1000 : 250 - (k % 100) * 5;
+    }
+
+    private static File capture() throws URISyntaxException {
+        return new File(CaptureReplayerTest.class.getResource("/replay/two_senders.rcap")
+                .toURI());
+    }
+
+    private static short[] samples(byte[] pcm) {
+        short[] samples = new short[pcm.length / 2];
+        ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+        return samples;
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        InputStream in = CaptureReplayerTest.class.getResourceAsStream(name);
+        assertNotNull(name, in);
+        try (InputStream stream = in) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Which codec an ANNOUNCE gets, and what the {@code cn} TXT record advertises.
+ */
+public class CodecRegistryTest {
+
+    @Test
+    public void streamWithoutRtpmapGetsTheDefault() {
+        CodecRegistry registry = CodecRegistry.javaCodecs();
+        assertSame(registry.getDefault(), registry.find(null, null));
+        assertEquals("ALAC", registry.getDefault().getName());
+    }
+
+    @Test
+    public void rtpmapPicksTheCodecByEncoding() {
+        CodecRegistry registry = CodecRegistry.javaCodecs();
+        assertEquals("ALAC", registry.find("96 AppleLossless", AlacDecoder.DEFAULT_FMTP)
+                .getName());
+        assertEquals("PCM", registry.find("96 L16/44100/2", null).getName());
+        assertNull(registry.find("96 mpeg4-generic/44100/2", "96 mode=AAC-hbr"));
+    }
+
+    @Test
+    public void firstCodecToAcceptWins() {
+        AudioCodec first = new PcmCodec();
+        AudioCodec second = new PcmCodec();
+        CodecRegistry registry = new CodecRegistry(new AlacCodec(), first, second);
+        assertSame(first, registry.find("96 L16", null));
+    }
+
+    @Test
+    public void txtCodesAreSortedAndUnique() {
+        CodecRegistry registry = new CodecRegistry(new PcmCodec(), new AlacCodec(),
+                new PcmCodec());
+        assertEquals("0,1", registry.getTxtCodes());
+        assertEquals(3, registry.getCodecs().size());
+    }
+}
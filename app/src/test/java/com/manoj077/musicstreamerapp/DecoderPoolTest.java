@@ -0,0 +1,164 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Leasing decoders from a codec that counts what is done to each one.
+ */
+public class DecoderPoolTest {
+    private static final String RTPMAP = "96 L16/44100/2";
+
+    private final CountingCodec codec = new CountingCodec();
+
+    @Test
+    public void returnedDecoderIsResetAndReusedForTheSameFormat() {
+        DecoderPool pool = new DecoderPool(2);
+        CountingDecoder first = (CountingDecoder) pool.acquire(codec, RTPMAP, null, 44100, 2);
+        first.setOutput(new PcmCodecTest.Frames());
+        pool.release(first);
+
+        assertNull(first.output);
+        assertEquals(1, first.resets);
+        assertEquals(1, pool.getIdleCount());
+        assertSame(first, pool.acquire(codec, RTPMAP, null, 44100, 2));
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void otherFormatGetsItsOwnDecoder() {
+        DecoderPool pool = new DecoderPool(2);
+        AudioDecoder stereo = pool.acquire(codec, RTPMAP, null, 44100, 2);
+        pool.release(stereo);
+
+        assertNotSame(stereo, pool.acquire(codec, "96 L16/48000/2", null, 48000, 2));
+        assertNotSame(stereo, pool.acquire(codec, RTPMAP, "96 other", 44100, 2));
+        assertEquals(3, pool.getCreatedCount());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void decodersBeyondMaxIdleAreReleased() {
+        DecoderPool pool = new DecoderPool(1);
+        CountingDecoder a = (CountingDecoder) pool.acquire(codec, RTPMAP, null, 44100, 2);
+        CountingDecoder b = (CountingDecoder) pool.acquire(codec, RTPMAP, null, 44100, 2);
+        pool.release(a);
+        pool.release(b);
+
+        assertEquals(1, pool.getIdleCount());
+        assertFalse(a.released);
+        assertTrue(b.released);
+    }
+
+    @Test
+    public void decoderThatCannotResetIsReleased() {
+        DecoderPool pool = new DecoderPool(2);
+        CountingDecoder decoder = (CountingDecoder) pool.acquire(codec, RTPMAP, null, 44100,
+                2);
+        decoder.failReset = true;
+        pool.release(decoder);
+
+        assertTrue(decoder.released);
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void clearReleasesIdleDecodersAndLeasedOnesOnReturn() {
+        DecoderPool pool = new DecoderPool(2);
+        CountingDecoder idle = (CountingDecoder) pool.acquire(codec, RTPMAP, null, 44100, 2);
+        CountingDecoder leased = (CountingDecoder) pool.acquire(codec, RTPMAP, null, 44100,
+                2);
+        pool.release(idle);
+
+        pool.clear();
+        assertTrue(idle.released);
+        assertEquals(0, pool.getIdleCount());
+        pool.release(leased);
+        assertTrue(leased.released);
+        assertEquals(0, leased.resets);
+    }
+
+    @Test
+    public void refusedFormatLeavesThePoolUntouched() {
+        DecoderPool pool = new DecoderPool(2);
+        try {
+            pool.acquire(new PcmCodec(), "96 L16/48000/2", null, 44100, 2);
+            fail("mismatched rate accepted");
+        } catch (IllegalArgumentException expected) {
+            // From the codec
+        }
+        assertEquals(0, pool.getCreatedCount());
+    }
+
+    private static final class CountingCodec extends AudioCodec {
+        CountingCodec() {
+            super(PcmCodec.TXT_CODE, "Counting", "L16");
+        }
+
+        @Override
+        public String getDefaultFmtp() {
+            return null;
+        }
+
+        @Override
+        public AudioDecoder newDecoder(String rtpmap, String fmtp, int sampleRate,
+                                       int channels) {
+            return new CountingDecoder(this);
+        }
+    }
+
+    private static final class CountingDecoder implements AudioDecoder {
+        private final AudioCodec codec;
+        Output output;
+        int resets;
+        boolean failReset;
+        boolean released;
+
+        CountingDecoder(AudioCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public AudioCodec getCodec() {
+            return codec;
+        }
+
+        @Override
+        public void setOutput(Output output) {
+            this.output = output;
+        }
+
+        @Override
+        public void decode(int seq, long rtpTimestamp, byte[] in, int offset, int length,
+                           long arrivalNanos) {
+            // Never fed
+        }
+
+        @Override
+        public void reset() {
+            if (failReset) {
+                throw new IllegalStateException("reset failed");
+            }
+            resets++;
+        }
+
+        @Override
+        public long getErrors() {
+            return 0;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+}
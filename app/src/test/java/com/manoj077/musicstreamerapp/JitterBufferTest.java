@@ -0,0 +1,256 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scripted arrival sequences through {@code put(..., arrivalNanos)}, drained the way
+ * the playback thread does. Every sample of a frame holds its sequence number (plus
+ * {@link #LEVEL}), so the output order can be read straight off the audio.
+ */
+public class JitterBufferTest {
+    private static final int FRAME_SIZE = 4; // 16-bit stereo
+    private static final int SAMPLE_RATE = 1000; // one sample per ms keeps transit exact
+    private static final int FRAME_SAMPLES = 8;
+    private static final int FRAME_BYTES = FRAME_SAMPLES * FRAME_SIZE;
+    private static final long BASE_NANOS = 1_000_000_000L;
+    private static final int CONCEALED = -1;
+    private static final int SILENCE = -2;
+    // Keeps samples loud enough to survive the concealment fades
+    private static final int LEVEL = 1000;
+
+    /** Frames arriving on time: no jitter, so the target stays at {@code minDepth}. */
+    private static JitterBuffer newBuffer(int minDepth) {
+        return new JitterBuffer(16, FRAME_BYTES, FRAME_SIZE, SAMPLE_RATE, minDepth, 8, 0);
+    }
+
+    @Test
+    public void primesToTargetDepthThenPlaysInOrder() {
+        JitterBuffer jb = newBuffer(2);
+        assertTrue(put(jb, 100));
+        assertNull("played before reaching the target depth", jb.acquireRead(FRAME_BYTES, 0));
+        assertTrue(put(jb, 101));
+        assertTrue(put(jb, 102));
+
+        assertEquals(100, play(jb));
+        assertEquals(101, play(jb));
+        assertEquals(102, play(jb));
+        assertEquals(3, jb.getPlayedFrames());
+        assertEquals(0, jb.getConcealedFrames());
+    }
+
+    @Test
+    public void reorderedFramesPlayInSequence() {
+        JitterBuffer jb = newBuffer(2);
+        put(jb, 0);
+        put(jb, 2);
+        put(jb, 1);
+        put(jb, 4);
+        put(jb, 3);
+
+        for (int seq = 0; seq <= 4; seq++) {
+            assertEquals(seq, play(jb));
+        }
+        assertEquals(0, jb.getConcealedFrames());
+        assertEquals(0, jb.getLateDrops());
+    }
+
+    @Test
+    public void duplicatesAreDropped() {
+        JitterBuffer jb = newBuffer(2);
+        assertTrue(put(jb, 7));
+        assertFalse(put(jb, 7));
+        assertTrue(put(jb, 8));
+        assertFalse(put(jb, 8));
+
+        assertEquals(7, play(jb));
+        assertEquals(8, play(jb));
+        assertEquals(2, jb.getDuplicates());
+        assertEquals(2, jb.getReceivedFrames());
+    }
+
+    @Test
+    public void framesBehindPlayoutAreDroppedAsLate() {
+        JitterBuffer jb = newBuffer(2);
+        put(jb, 0);
+        put(jb, 1);
+        put(jb, 3);
+        assertEquals(0, play(jb));
+        assertEquals(1, play(jb));
+        assertEquals(CONCEALED, play(jb));
+
+        // The missing frame turns up after its slot was concealed
+        assertFalse(put(jb, 2));
+        assertEquals(1, jb.getLateDrops());
+        assertEquals(3, play(jb));
+    }
+
+    @Test
+    public void reorderedFrameGetsAChanceBeforeConcealment() {
+        JitterBuffer jb = newBuffer(4);
+        for (int seq = 0; seq < 4; seq++) {
+            put(jb, seq);
+        }
+        put(jb, 5);
+        for (int seq = 0; seq < 4; seq++) {
+            assertEquals(seq, play(jb));
+        }
+        // Only one newer frame: too early to give up on 4
+        assertNull(jb.acquireRead(FRAME_BYTES, 0));
+        assertEquals(0, jb.getConcealedFrames());
+
+        put(jb, 4);
+        assertEquals(4, play(jb));
+        assertEquals(5, play(jb));
+        assertEquals(0, jb.getConcealedFrames());
+    }
+
+    @Test
+    public void lossIsConcealedWithFadedRepeatThenSilence() {
+        JitterBuffer jb = newBuffer(2);
+        put(jb, 0);
+        put(jb, 1);
+        put(jb, 8); // 2..7 lost
+
+        assertEquals(0, play(jb));
+
+        ByteBuffer original = jb.acquireRead(FRAME_BYTES, 0);
+        short[] played = samples(original);
+        jb.releaseRead(original.remaining());
+
+        // First repeat fades from the original to half level across the frame
+        ByteBuffer view = jb.acquireRead(FRAME_BYTES, 0);
+        assertNotNull(view);
+        short[] repeat = samples(view);
+        jb.releaseRead(view.remaining());
+        assertEquals(played[0], repeat[0]);
+        short last = repeat[repeat.length - 1];
+        assertTrue("repeat not faded: " + last, last < played[played.length - 1]);
+        assertTrue("repeat faded too far: " + last, last >= played[played.length - 1] / 2);
+
+        // Three more faded repeats, then silence
+        for (int i = 0; i < 3; i++) {
+            assertEquals(CONCEALED, play(jb));
+        }
+        assertEquals(SILENCE, play(jb));
+        assertEquals(SILENCE, play(jb));
+        assertEquals(8, play(jb));
+        assertEquals(6, jb.getConcealedFrames());
+        assertEquals(3, jb.getPlayedFrames());
+    }
+
+    @Test
+    public void underrunReprimesBeforePlayingAgain() {
+        JitterBuffer jb = newBuffer(2);
+        put(jb, 0);
+        put(jb, 1);
+        assertEquals(0, play(jb));
+        assertEquals(1, play(jb));
+
+        assertNull(jb.acquireRead(FRAME_BYTES, 0));
+        assertEquals(1, jb.getUnderruns());
+
+        // One frame is not enough after an underrun; playout waits for the target again
+        put(jb, 2);
+        assertNull(jb.acquireRead(FRAME_BYTES, 0));
+        assertEquals(1, jb.getUnderruns());
+        put(jb, 3);
+        assertEquals(2, play(jb));
+        assertEquals(3, play(jb));
+        assertEquals(0, jb.getConcealedFrames());
+    }
+
+    @Test
+    public void flushRestartsAtTheNextSequence() {
+        JitterBuffer jb = newBuffer(2);
+        put(jb, 10);
+        put(jb, 11);
+        put(jb, 12);
+
+        // Consumer is part way through frame 10 when the sender flushes
+        ByteBuffer partial = jb.acquireRead(FRAME_SIZE, 0);
+        assertEquals(10 + LEVEL, partial.duplicate().order(ByteOrder.LITTLE_ENDIAN).getShort());
+        assertTrue(jb.releaseRead(partial.remaining()));
+
+        jb.flush();
+        assertFalse(jb.isStarted());
+        assertNull(jb.acquireRead(FRAME_BYTES, 0));
+        assertEquals(-1, jb.peekPlayoutTimestamp());
+
+        // The new stream starts far from the old one; nothing of the old one plays
+        assertTrue(put(jb, 5000));
+        assertTrue(jb.isStarted());
+        assertNull(jb.acquireRead(FRAME_BYTES, 0));
+        assertTrue(put(jb, 5001));
+        assertEquals(5000L * FRAME_SAMPLES, jb.peekPlayoutTimestamp());
+        assertEquals(5000, play(jb));
+        assertEquals(5001, play(jb));
+        assertFalse("old frame accepted after restart", put(jb, 12));
+        assertEquals(0, jb.getConcealedFrames());
+    }
+
+    @Test
+    public void frameFarAheadOfPlayoutOverflows() {
+        JitterBuffer jb = newBuffer(2);
+        put(jb, 0);
+        assertFalse(put(jb, 15));
+        assertEquals(1, jb.getOverflowDrops());
+        assertTrue(put(jb, 14));
+    }
+
+    /**
+     * Puts frame {@code seq}, arriving exactly when its timestamp says.
+     */
+    private static boolean put(JitterBuffer jb, int seq) {
+        ByteBuffer pcm = ByteBuffer.allocate(FRAME_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        while (pcm.hasRemaining()) {
+            pcm.putShort((short) (seq + LEVEL));
+        }
+        long timestamp = (long) seq * FRAME_SAMPLES;
+        long arrival = BASE_NANOS + timestamp * 1_000_000_000L / SAMPLE_RATE;
+        return jb.put(seq, timestamp, pcm.array(), 0, FRAME_BYTES, arrival);
+    }
+
+    /**
+     * Plays one whole frame.
+     *
+     * @return its sequence number, {@link #CONCEALED} for a repeat or {@link #SILENCE}
+     */
+    private static int play(JitterBuffer jb) {
+        ByteBuffer view = jb.acquireRead(FRAME_BYTES, 0);
+        assertNotNull("nothing to play", view);
+        assertEquals(FRAME_BYTES, view.remaining());
+        short[] samples = samples(view);
+        boolean concealed = jb.getPlayingArrivalNanos() == 0;
+        assertTrue(jb.releaseRead(view.remaining()));
+        if (!concealed) {
+            for (short sample : samples) {
+                assertEquals("frame mixes sequence numbers", samples[0], sample);
+            }
+            return samples[0] - LEVEL;
+        }
+        for (short sample : samples) {
+            if (sample != 0) {
+                return CONCEALED;
+            }
+        }
+        return SILENCE;
+    }
+
+    private static short[] samples(ByteBuffer view) {
+        ByteBuffer in = view.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[in.remaining() / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = in.getShort();
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,83 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Latency samples from a simulated AudioTrack whose output path takes 60 ms: the
+ * latest timestamp is 5 ms old and 65 ms of audio has been written past it.
+ */
+public class LatencyCalibratorTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME_SIZE = 4;
+    private static final int PACKET_FRAMES = 352;
+    private static final long MS = 1_000_000L;
+    private static final long OUTPUT_NANOS = 60 * MS;
+
+    private long now = 1_000 * MS;
+    private long presentedFrame = 10 * SAMPLE_RATE;
+
+    @Test
+    public void scheduledPlayoutAddsTheJitterTargetNotTheSendersLead() {
+        // The sender runs two seconds ahead; all of it waits in the jitter buffer
+        JitterBuffer jitterBuffer = JitterBuffer.forAirplay(FRAME_SIZE, SAMPLE_RATE);
+        byte[] packet = new byte[PACKET_FRAMES * FRAME_SIZE];
+        for (int i = 0; i < 2 * SAMPLE_RATE / PACKET_FRAMES; i++) {
+            jitterBuffer.put(i, (long) i * PACKET_FRAMES, packet, 0, packet.length, now);
+        }
+        long target = jitterBuffer.getTargetDelayNanos();
+        assertTrue(target > 0);
+        assertTrue(jitterBuffer.available() / FRAME_SIZE > SAMPLE_RATE);
+
+        LatencyCalibrator calibrator = new LatencyCalibrator(SAMPLE_RATE, 250 * MS);
+        for (int i = 0; i < LatencyCalibrator.MIN_SAMPLES; i++) {
+            sample(calibrator, target);
+        }
+
+        assertTrue(calibrator.isCalibrated());
+        assertEquals(OUTPUT_NANOS + target, calibrator.getLatencyNanos(), MS / 10);
+        assertEquals((OUTPUT_NANOS + target) * SAMPLE_RATE / 1_000_000_000L,
+                calibrator.getLatencyFrames(), 5);
+    }
+
+    @Test
+    public void freeRunningPlayoutReportsTheOutputPathAlone() {
+        LatencyCalibrator calibrator = new LatencyCalibrator(SAMPLE_RATE, 250 * MS);
+        for (int i = 0; i < LatencyCalibrator.MIN_SAMPLES; i++) {
+            sample(calibrator, 0);
+        }
+        assertEquals(OUTPUT_NANOS, calibrator.getLatencyNanos(), MS / 10);
+    }
+
+    @Test
+    public void seedHoldsUntilEnoughSamplesAndGlitchesAreRejected() {
+        LatencyCalibrator calibrator = new LatencyCalibrator(SAMPLE_RATE, 250 * MS);
+        for (int i = 0; i < LatencyCalibrator.MIN_SAMPLES - 1; i++) {
+            sample(calibrator, 0);
+        }
+        assertFalse(calibrator.isCalibrated());
+        assertEquals(250 * MS, calibrator.getLatencyNanos());
+
+        // A track that has played everything written, then a stalled timestamp
+        calibrator.addSample(now, presentedFrame, presentedFrame, now, 0);
+        calibrator.addSample(now, presentedFrame + 1, presentedFrame, now - 3_000 * MS, 0);
+        assertEquals(2, calibrator.getRejectedSamples());
+
+        sample(calibrator, 0);
+        assertTrue(calibrator.isCalibrated());
+        assertEquals(OUTPUT_NANOS, calibrator.getLatencyNanos(), MS / 10);
+    }
+
+    /**
+     * One measurement 100 ms after the last, the output path unchanged.
+     */
+    private void sample(LatencyCalibrator calibrator, long bufferNanos) {
+        now += 100 * MS;
+        presentedFrame += SAMPLE_RATE / 10;
+        long written = presentedFrame + 65 * SAMPLE_RATE / 1000;
+        calibrator.addSample(now, written, presentedFrame, now - 5 * MS, bufferNanos);
+    }
+}
@@ -0,0 +1,107 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * L16 payloads swapped from network to native order, and the formats it refuses.
+ */
+public class PcmCodecTest {
+    private final PcmCodec codec = new PcmCodec();
+
+    @Test
+    public void payloadIsByteSwappedToLittleEndian() {
+        AudioDecoder decoder = codec.newDecoder("96 L16/44100/2", null, 44100, 2);
+        Frames frames = new Frames();
+        decoder.setOutput(frames);
+        byte[] in = {9, 9, 0x12, 0x34, (byte) 0x80, 0x00, 0x00, 0x01, (byte) 0xff, (byte) 0xfe};
+
+        decoder.decode(7, 3000, in, 2, 8, 55);
+
+        assertEquals(1, frames.pcm.size());
+        assertArrayEquals(new byte[] {0x34, 0x12, 0x00, (byte) 0x80, 0x01, 0x00, (byte) 0xfe,
+                (byte) 0xff}, frames.pcm.get(0));
+        assertEquals(Integer.valueOf(7), frames.seqs.get(0));
+        assertEquals(0, decoder.getErrors());
+    }
+
+    @Test
+    public void partialFrameAtTheEndIsDropped() {
+        AudioDecoder decoder = codec.newDecoder("96 L16/44100/2", null, 44100, 2);
+        Frames frames = new Frames();
+        decoder.setOutput(frames);
+
+        decoder.decode(1, 0, new byte[6], 0, 6, 0);
+        decoder.decode(2, 0, new byte[3], 0, 3, 0);
+
+        assertEquals(4, frames.pcm.get(0).length);
+        assertEquals(Integer.valueOf(2), frames.errors.get(0));
+        assertEquals(1, decoder.getErrors());
+    }
+
+    @Test
+    public void payloadLargerThanAPacketIsAnError() {
+        AudioDecoder decoder = codec.newDecoder(null, null, 44100, 2);
+        Frames frames = new Frames();
+        decoder.setOutput(frames);
+
+        decoder.decode(4, 0, new byte[4096], 0, 4096, 0);
+
+        assertEquals(0, frames.pcm.size());
+        assertEquals(Integer.valueOf(4), frames.errors.get(0));
+    }
+
+    @Test
+    public void otherRatesAndLayoutsAreRefused() {
+        assertRefused("96 L16/48000/2");
+        assertRefused("96 L16/44100/1");
+        assertRefused("96 L16/fast/2");
+    }
+
+    @Test
+    public void acceptsL16OnlyWhateverTheCase() {
+        assertTrue(codec.accepts("96 l16/44100/2", null));
+        assertFalse(codec.accepts("96 AppleLossless", null));
+        assertFalse(codec.accepts(null, null));
+    }
+
+    private void assertRefused(String rtpmap) {
+        try {
+            codec.newDecoder(rtpmap, null, 44100, 2);
+            fail("accepted " + rtpmap);
+        } catch (IllegalArgumentException expected) {
+            // Refused at creation
+        }
+    }
+
+    /**
+     * Copies of every frame delivered, and the sequence numbers reported as errors.
+     */
+    static final class Frames implements AudioDecoder.Output {
+        final List<byte[]> pcm = new ArrayList<>();
+        final List<Integer> seqs = new ArrayList<>();
+        final List<Integer> errors = new ArrayList<>();
+
+        @Override
+        public void onFrame(int seq, long rtpTimestamp, ByteBuffer frame, long arrivalNanos) {
+            byte[] copy = new byte[frame.remaining()];
+            frame.get(copy);
+            pcm.add(copy);
+            seqs.add(seq);
+        }
+
+        @Override
+        public void onError(int seq) {
+            errors.add(seq);
+        }
+    }
+}
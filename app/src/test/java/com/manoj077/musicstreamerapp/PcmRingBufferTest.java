@@ -0,0 +1,217 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The zero-copy handoff under overflow: whatever the producer does, a slice the
+ * consumer holds from {@code acquireRead} stays intact until it is released.
+ */
+public class PcmRingBufferTest {
+    private static final int FRAME_SIZE = 4;
+    private static final int CAPACITY = 4096;
+    private static final int CHUNK = 256;
+
+    @Test
+    public void heldSliceSurvivesProducerOverrun() {
+        PcmRingBuffer ring = new PcmRingBuffer(CAPACITY, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        SimulatedPcmProducer producer = new SimulatedPcmProducer(ring);
+        int next = 0;
+        for (int i = 0; i < CAPACITY / CHUNK; i++) {
+            next = produce(producer, next, CHUNK / FRAME_SIZE);
+        }
+        // The producer reserves room for its next write ahead of time
+        assertTrue(ring.available() >= CAPACITY - CHUNK);
+
+        ByteBuffer slice = ring.acquireRead(1024, 0);
+        assertNotNull(slice);
+        byte[] before = copy(slice);
+        long droppedOldest = ring.getDroppedOldestBytes();
+
+        // Several times the ring's size while the slice is "in AudioTrack.write"
+        for (int i = 0; i < 4 * CAPACITY / CHUNK; i++) {
+            next = produce(producer, next, CHUNK / FRAME_SIZE);
+        }
+
+        assertArrayEquals("held slice was overwritten", before, copy(slice));
+        assertEquals(droppedOldest, ring.getDroppedOldestBytes());
+        assertTrue(ring.getDroppedNewestBytes() > 0);
+        assertTrue(ring.releaseRead(slice.remaining()));
+
+        // Released, the oldest audio is fair game again
+        for (int i = 0; i < 2 * CAPACITY / CHUNK; i++) {
+            next = produce(producer, next, CHUNK / FRAME_SIZE);
+        }
+        assertTrue(ring.getDroppedOldestBytes() > droppedOldest);
+    }
+
+    @Test
+    public void copyingWriteDropsOldestWhenNothingIsHeld() {
+        PcmRingBuffer ring = new PcmRingBuffer(CAPACITY, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        byte[] data = new byte[CHUNK];
+        for (int i = 0; i < CAPACITY / CHUNK + 2; i++) {
+            assertEquals(CHUNK, ring.write(data, 0, CHUNK));
+        }
+        assertEquals(2 * CHUNK, ring.getDroppedOldestBytes());
+        assertEquals(CAPACITY, ring.available());
+    }
+
+    @Test
+    public void clearWhileHeldSkipsOnRelease() {
+        PcmRingBuffer ring = new PcmRingBuffer(CAPACITY, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        SimulatedPcmProducer producer = new SimulatedPcmProducer(ring);
+        int next = produce(producer, 0, 64);
+        ByteBuffer slice = ring.acquireRead(16 * FRAME_SIZE, 0);
+        byte[] before = copy(slice);
+
+        ring.clear();
+        next = produce(producer, next, 8);
+        assertArrayEquals("clear touched the held slice", before, copy(slice));
+        assertTrue(ring.releaseRead(slice.remaining()));
+
+        // Only what was committed after the clear is left
+        assertEquals(8 * FRAME_SIZE, ring.available());
+        slice = ring.acquireRead(CAPACITY, 0);
+        assertEquals(64, slice.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt());
+        assertTrue(ring.releaseRead(slice.remaining()));
+        assertEquals(72, next);
+    }
+
+    /**
+     * The consumer clears while a producer keeps committing: afterwards it still reads
+     * consecutive frames, as it would if clear had raced the producer's drops.
+     */
+    @Test(timeout = 10_000)
+    public void clearRacingTheProducerKeepsFramesConsecutive() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(CAPACITY, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        SimulatedPcmProducer producer = new SimulatedPcmProducer(ring);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int next = 0;
+            while (running.get()) {
+                next = produce(producer, next, 16);
+            }
+        }, "producer");
+        writer.start();
+        try {
+            for (int i = 0; i < 2000; i++) {
+                ring.clear();
+                ByteBuffer slice = ring.acquireRead(512, TimeUnit.MILLISECONDS.toNanos(10));
+                if (slice != null) {
+                    assertConsecutive(copy(slice));
+                    ring.clear();
+                    assertTrue(ring.releaseRead(slice.remaining()));
+                }
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertTrue(ring.available() <= CAPACITY);
+    }
+
+    @Test
+    public void partialFrameKeepsProducerCursorInStep() {
+        PcmRingBuffer ring = new PcmRingBuffer(CAPACITY, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        SimulatedPcmProducer producer = new SimulatedPcmProducer(ring);
+        ByteBuffer pcm = ByteBuffer.allocate(3 * FRAME_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        pcm.putInt(0).putInt(1).putInt(2);
+
+        // Two whole frames and half of the third
+        assertEquals(2 * FRAME_SIZE, producer.produce(pcm.array(), 0, 2 * FRAME_SIZE + 2));
+        assertEquals(2 * FRAME_SIZE, ring.getWriteOffset());
+        produce(producer, 2, 4);
+
+        byte[] frames = new byte[ring.available()];
+        assertEquals(frames.length, ring.read(frames, 0, frames.length));
+        assertEquals(6 * FRAME_SIZE, frames.length);
+        assertConsecutive(frames);
+    }
+
+    /**
+     * A producer thread overrunning a slow consumer: every slice must hold consecutive
+     * frames, unchanged between acquire and release.
+     */
+    @Test(timeout = 10_000)
+    public void concurrentOverrunNeverTearsAcquiredSlices() throws Exception {
+        PcmRingBuffer ring = new PcmRingBuffer(CAPACITY, FRAME_SIZE,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        SimulatedPcmProducer producer = new SimulatedPcmProducer(ring);
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            int next = 0;
+            while (running.get()) {
+                next = produce(producer, next, 16);
+            }
+        }, "producer");
+        writer.start();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+        int slices = 0;
+        try {
+            while (System.nanoTime() < deadline) {
+                ByteBuffer slice = ring.acquireRead(512, TimeUnit.MILLISECONDS.toNanos(10));
+                if (slice == null) {
+                    continue;
+                }
+                byte[] before = copy(slice);
+                assertConsecutive(before);
+                // Stand-in for a blocking AudioTrack.write
+                LockSupport.parkNanos(200_000);
+                assertArrayEquals("slice " + slices + " was overwritten", before, copy(slice));
+                assertTrue(ring.releaseRead(slice.remaining()));
+                slices++;
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertTrue("consumer never got audio", slices > 0);
+        assertTrue("producer never overran", ring.getDroppedNewestBytes() > 0);
+    }
+
+    /**
+     * Writes {@code frames} frames numbered from {@code first}; a dropped write does
+     * not use up numbers, so queued frames are always consecutive.
+     *
+     * @return the number of the next frame
+     */
+    private static int produce(SimulatedPcmProducer producer, int first, int frames) {
+        ByteBuffer pcm = ByteBuffer.allocate(frames * FRAME_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            pcm.putInt(first + i);
+        }
+        return producer.produce(pcm.array(), 0, pcm.capacity()) > 0 ? first + frames : first;
+    }
+
+    private static byte[] copy(ByteBuffer slice) {
+        byte[] bytes = new byte[slice.remaining()];
+        slice.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static void assertConsecutive(byte[] frames) {
+        ByteBuffer in = ByteBuffer.wrap(frames).order(ByteOrder.LITTLE_ENDIAN);
+        int previous = in.getInt();
+        while (in.hasRemaining()) {
+            int frame = in.getInt();
+            assertEquals("frames out of order within a slice", previous + 1, frame);
+            previous = frame;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Recording and snapshot arithmetic, without the playback loop around it.
+ */
+public class PlaybackMetricsTest {
+    /**
+     * One long write at 100 ms, then four short writes at a full
+     * second: per frame played, almost everything went out at 100 ms.
+     */
+    @Test
+    public void latencyIsWeightedByFramesPlayed() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.recordLatency(100_000_000L, 1000);
+        for (int i = 0; i < 4; i++) {
+            metrics.recordLatency(1_000_000_000L, 10);
+        }
+
+        PlaybackMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1040, snapshot.latencySamples);
+        assertEquals(128, snapshot.getLatencyPercentileMs(0.5));
+        assertEquals(1024, snapshot.getLatencyPercentileMs(0.99));
+        assertEquals((100.0 * 1000 + 1000.0 * 40) / 1040, snapshot.getMeanLatencyMs(), 1e-6);
+    }
+
+    @Test
+    public void emptyWriteRecordsNothing() {
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        metrics.recordLatency(5_000_000L, 0);
+        assertEquals(0, metrics.snapshot().latencySamples);
+    }
+}
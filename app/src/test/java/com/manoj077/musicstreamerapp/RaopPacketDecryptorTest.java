@@ -0,0 +1,173 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Known answers from NIST SP 800-38A, F.2.2 (CBC-AES128.Decrypt), laid out the way
+ * RAOP sends them: every packet chained from the session IV, with any trailing
+ * partial block in the clear.
+ */
+public class RaopPacketDecryptorTest {
+    private static final byte[] KEY = hex("2b7e151628aed2a6abf7158809cf4f3c");
+    private static final byte[] IV = hex("000102030405060708090a0b0c0d0e0f");
+    private static final byte[] CIPHERTEXT = hex(
+            "7649abac8119b246cee98e9b12e9197d"
+            + "5086cb9b507219ee95db113a917678b2"
+            + "73bed6b8e3c1743b7116e69e22229516"
+            + "3ff1caa1681fac09120eca307586e1a7");
+    private static final byte[] PLAINTEXT = hex(
+            "6bc1bee22e409f96e93d7e117393172a"
+            + "ae2d8a571e03ac9c9eb76fac45af8e51"
+            + "30c81c46a35ce411e5fbc1191a0a52ef"
+            + "f69f2445df4f9b17ad2b417be66c3710");
+
+    @Test
+    public void singlePacketMatchesNistVector() throws Exception {
+        RaopPacketDecryptor decryptor = new RaopPacketDecryptor(KEY, IV, 4096);
+        byte[] packet = CIPHERTEXT.clone();
+        assertTrue(decryptor.decrypt(packet, 0, packet.length));
+        assertArrayEquals(PLAINTEXT, packet);
+        assertEquals(1, decryptor.getDecryptedPackets());
+    }
+
+    @Test
+    public void trailingPartialBlockStaysInClear() throws Exception {
+        RaopPacketDecryptor decryptor = new RaopPacketDecryptor(KEY, IV, 4096);
+        byte[] tail = {1, 2, 3, 4, 5, 6, 7};
+        // RTP header before the payload, left alone as well
+        byte[] packet = concat(new byte[12], CIPHERTEXT, tail);
+        assertTrue(decryptor.decrypt(packet, 12, CIPHERTEXT.length + tail.length));
+        assertArrayEquals(concat(new byte[12], PLAINTEXT, tail), packet);
+
+        byte[] tiny = tail.clone();
+        assertTrue(decryptor.decrypt(tiny, 0, tiny.length));
+        assertArrayEquals(tail, tiny);
+    }
+
+    @Test
+    public void batchChainsEveryPacketFromTheSessionIv() throws Exception {
+        RaopPacketDecryptor decryptor = new RaopPacketDecryptor(KEY, IV, 4096);
+        byte[] tail = {9, 8, 7};
+        byte[][] packets = {
+                CIPHERTEXT.clone(),
+                concat(new byte[12], CIPHERTEXT, tail),
+                Arrays.copyOf(CIPHERTEXT, 32),
+                tail.clone(),
+        };
+        int[] offsets = {0, 12, 0, 0};
+        int[] lengths = {64, 64 + tail.length, 32, tail.length};
+
+        assertEquals(4, decryptor.decrypt(packets, offsets, lengths, 4));
+        assertArrayEquals(PLAINTEXT, packets[0]);
+        assertArrayEquals(concat(new byte[12], PLAINTEXT, tail), packets[1]);
+        assertArrayEquals(Arrays.copyOf(PLAINTEXT, 32), packets[2]);
+        assertArrayEquals(tail, packets[3]);
+        assertEquals(4, decryptor.getDecryptedPackets());
+    }
+
+    @Test
+    public void burstLargerThanScratchIsSplit() throws Exception {
+        // Room for two packets per cipher call
+        RaopPacketDecryptor decryptor = new RaopPacketDecryptor(KEY, IV, 2 * CIPHERTEXT.length);
+        int count = 5;
+        byte[][] packets = new byte[count][];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            packets[i] = concat(CIPHERTEXT, new byte[] {(byte) i});
+            lengths[i] = packets[i].length;
+        }
+
+        assertEquals(count, decryptor.decrypt(packets, offsets, lengths, count));
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals("packet " + i, concat(PLAINTEXT, new byte[] {(byte) i}), packets[i]);
+        }
+        assertEquals(0, decryptor.getErrors());
+    }
+
+    @Test
+    public void packetLargerThanScratchIsRefused() throws Exception {
+        RaopPacketDecryptor decryptor = new RaopPacketDecryptor(KEY, IV, 32);
+        byte[] packet = CIPHERTEXT.clone();
+        assertFalse(decryptor.decrypt(packet, 0, packet.length));
+        assertArrayEquals(CIPHERTEXT, packet);
+
+        // A batch stops in front of it, with the packets before it done
+        byte[][] packets = {Arrays.copyOf(CIPHERTEXT, 32), CIPHERTEXT.clone()};
+        assertEquals(1, decryptor.decrypt(packets, new int[2], new int[] {32, 64}, 2));
+        assertArrayEquals(Arrays.copyOf(PLAINTEXT, 32), packets[0]);
+        assertArrayEquals(CIPHERTEXT, packets[1]);
+        assertEquals(2, decryptor.getErrors());
+    }
+
+    /**
+     * Random burst of mixed sizes against the platform's own AES/CBC, one packet at a
+     * time from the session IV.
+     */
+    @Test
+    public void randomBurstMatchesPlatformCbc() throws Exception {
+        Random random = new Random(42);
+        byte[] key = new byte[16];
+        byte[] iv = new byte[16];
+        random.nextBytes(key);
+        random.nextBytes(iv);
+        Cipher cbc = Cipher.getInstance("AES/CBC/NoPadding");
+        cbc.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+
+        int count = 40;
+        byte[][] plain = new byte[count][];
+        byte[][] packets = new byte[count][];
+        int[] offsets = new int[count];
+        int[] lengths = new int[count];
+        for (int i = 0; i < count; i++) {
+            plain[i] = new byte[random.nextInt(1500)];
+            random.nextBytes(plain[i]);
+            int aligned = plain[i].length - plain[i].length % 16;
+            byte[] encrypted = cbc.doFinal(plain[i], 0, aligned);
+            packets[i] = concat(new byte[12], encrypted,
+                    Arrays.copyOfRange(plain[i], aligned, plain[i].length));
+            offsets[i] = 12;
+            lengths[i] = plain[i].length;
+        }
+
+        RaopPacketDecryptor decryptor = new RaopPacketDecryptor(key, iv, 4096);
+        assertEquals(count, decryptor.decrypt(packets, offsets, lengths, count));
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals("packet " + i, concat(new byte[12], plain[i]), packets[i]);
+        }
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] all = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, all, position, part.length);
+            position += part.length;
+        }
+        return all;
+    }
+
+    private static byte[] hex(String text) {
+        byte[] bytes = new byte[text.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(text.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
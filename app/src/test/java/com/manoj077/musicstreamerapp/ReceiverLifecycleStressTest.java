@@ -0,0 +1,224 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Start/stop storm against {@link ReceiverLifecycle} with stand-in components that
+ * hold the same kinds of resources as the real ones: a playback thread, a listening
+ * socket, a multicast lock and an mDNS registration, plus a hotspot that comes up
+ * asynchronously. The test toggles thousands of times, mostly faster than a start can
+ * finish, then shuts the lifecycle down; it fails if any thread, socket or lock
+ * outlives it, or if a lock or registration was ever taken twice.
+ */
+public class ReceiverLifecycleStressTest {
+    private static final int TOGGLES = 5000;
+    // Every this many toggles, let the start reach RUNNING before stopping
+    private static final int FULL_START_EVERY = 100;
+    private static final long FULL_START_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final AtomicInteger playbackThreads = new AtomicInteger();
+    private final AtomicInteger openSockets = new AtomicInteger();
+    private final AtomicInteger locksHeld = new AtomicInteger();
+    private final AtomicInteger registrations = new AtomicInteger();
+    private final AtomicInteger violations = new AtomicInteger();
+    private final AtomicInteger failedStarts = new AtomicInteger();
+
+    private ScheduledExecutorService radio;
+    private ReceiverLifecycle lifecycle;
+    private Random random;
+
+    /**
+     * Resources of one start, torn down together.
+     */
+    private final class FakeReceiver implements ReceiverLifecycle.Components {
+        // Written by step threads, read by teardown after the pipeline settles
+        private volatile Thread playback;
+        private volatile ServerSocketChannel rtsp;
+        private volatile boolean lockHeld;
+        private volatile boolean registered;
+
+        @Override
+        public void addStartupSteps(StartupPipeline pipeline) {
+            long hotspotMicros = 200 + random.nextInt(800);
+            pipeline.external("hotspot", () -> radio.schedule(
+                            () -> pipeline.complete("hotspot"), hotspotMicros, TimeUnit.MICROSECONDS))
+                    .step("audio", this::startPlayback)
+                    .step("rtsp", this::openRtsp)
+                    .step("mdns", this::acquireLock, "hotspot")
+                    .step("advertise", this::register, "audio", "rtsp", "mdns");
+        }
+
+        private void startPlayback() {
+            if (playback != null) {
+                violations.incrementAndGet();
+            }
+            Thread thread = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    LockSupport.park();
+                }
+                playbackThreads.decrementAndGet();
+            }, "FakePlayback");
+            // A leak fails the trial instead of keeping the JVM alive
+            thread.setDaemon(true);
+            playbackThreads.incrementAndGet();
+            thread.start();
+            playback = thread;
+        }
+
+        private void openRtsp() throws IOException {
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            openSockets.incrementAndGet();
+            channel.bind(new InetSocketAddress("127.0.0.1", 0));
+            rtsp = channel;
+        }
+
+        private void acquireLock() {
+            if (locksHeld.incrementAndGet() > 1) {
+                violations.incrementAndGet();
+            }
+            lockHeld = true;
+        }
+
+        private void register() {
+            if (registrations.incrementAndGet() > 1) {
+                violations.incrementAndGet();
+            }
+            registered = true;
+        }
+
+        @Override
+        public void teardown() {
+            if (registered) {
+                registrations.decrementAndGet();
+                registered = false;
+            }
+            if (lockHeld) {
+                locksHeld.decrementAndGet();
+                lockHeld = false;
+            }
+            ServerSocketChannel channel = rtsp;
+            rtsp = null;
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    violations.incrementAndGet();
+                }
+                openSockets.decrementAndGet();
+            }
+            Thread thread = playback;
+            playback = null;
+            if (thread != null) {
+                thread.interrupt();
+                try {
+                    thread.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // None of the fake steps should ever fail
+    private final ReceiverLifecycle.Listener listener = new ReceiverLifecycle.Listener() {
+        @Override
+        public void onStateChanged(ReceiverLifecycle.State state) {
+        }
+
+        @Override
+        public void onStarted(StartupPipeline.Report report) {
+        }
+
+        @Override
+        public void onStartFailed(String step, Throwable error) {
+            failedStarts.incrementAndGet();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        radio = Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                    Thread thread = new Thread(runnable, "FakeHotspot");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        random = new Random(42);
+        lifecycle = new ReceiverLifecycle(new FakeReceiver(), listener);
+    }
+
+    @After
+    public void tearDown() {
+        radio.shutdownNow();
+    }
+
+    @Test(timeout = 60_000)
+    public void startStopStormLeavesNothingBehind() throws InterruptedException {
+        int fullStarts = 0;
+        for (int i = 0; i < TOGGLES; i++) {
+            lifecycle.requestStart();
+            if (random.nextInt(4) == 0) {
+                // Impatient user: a repeated request must not start twice
+                lifecycle.requestStart();
+            }
+            if (i % FULL_START_EVERY == 0) {
+                long deadline = System.nanoTime() + FULL_START_TIMEOUT_NANOS;
+                while (lifecycle.getState() != ReceiverLifecycle.State.RUNNING
+                        && System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(50_000);
+                }
+                assertEquals("start " + fullStarts + " never finished",
+                        ReceiverLifecycle.State.RUNNING, lifecycle.getState());
+                fullStarts++;
+            } else if (random.nextBoolean()) {
+                // Let the start get part way
+                LockSupport.parkNanos(random.nextInt(200_000));
+            }
+            lifecycle.requestStop();
+        }
+        lifecycle.shutdown(null);
+        assertTrue("lifecycle did not shut down", lifecycle.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue("no start was ever cancelled", lifecycle.getCancelledStarts() > 0);
+
+        assertEquals(ReceiverLifecycle.State.STOPPED, lifecycle.getState());
+        assertEquals("playback threads", 0, playbackThreads.get());
+        assertEquals("sockets", 0, openSockets.get());
+        assertEquals("multicast locks", 0, locksHeld.get());
+        assertEquals("registrations", 0, registrations.get());
+        assertEquals("double acquisitions", 0, violations.get());
+        assertEquals("failed starts", 0, failedStarts.get());
+
+        List<String> leaks = new ArrayList<>();
+        // A pool counts a worker as gone slightly before its thread exits
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            String name = thread.getName();
+            if (name.startsWith("ReceiverLifecycle") || name.startsWith("ReceiverStartup")
+                    || name.startsWith("FakePlayback")) {
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                thread.join(Math.max(1, remaining));
+                if (thread.isAlive()) {
+                    leaks.add("thread " + name);
+                }
+            }
+        }
+        assertTrue("threads left after shutdown: " + leaks, leaks.isEmpty());
+    }
+}
@@ -0,0 +1,216 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A simulated sender on a virtual clock: frame {@code n} leaves at {@code n} frame
+ * durations, frames in the loss set never arrive, and every resend request the
+ * scheduler sends is decoded and kept for inspection.
+ */
+public class RetransmitSchedulerTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME_SAMPLES = 352;
+    private static final long FRAME_NANOS = FRAME_SAMPLES * 1_000_000_000L / SAMPLE_RATE;
+    private static final long PLAYOUT_DELAY_NANOS = 200_000_000L;
+    private static final long MS = 1_000_000L;
+
+    private final List<int[]> requests = new ArrayList<>();
+    private RetransmitScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new RetransmitScheduler(SAMPLE_RATE, datagram -> {
+            assertEquals(0x80, datagram.get(0) & 0xff);
+            assertEquals(0x80 | RetransmitScheduler.RESEND_REQUEST_TYPE, datagram.get(1) & 0xff);
+            requests.add(new int[] {datagram.getShort(4) & 0xffff, datagram.getShort(6) & 0xffff});
+            return true;
+        });
+        scheduler.setPlayoutDelayNanos(PLAYOUT_DELAY_NANOS);
+    }
+
+    @Test
+    public void gapIsRequestedAsOneRange() {
+        send(0, 10, lost(3, 4, 5));
+        scheduler.poll(at(10));
+
+        assertRequests(new int[] {3, 3});
+        assertEquals(3, scheduler.getPendingPackets());
+        assertEquals(3, scheduler.getRequestedPackets());
+    }
+
+    @Test
+    public void separateGapsAreBatchedWithACapPerPoll() {
+        // Every other frame lost: ten single-packet gaps
+        Set<Integer> lost = new HashSet<>();
+        for (int seq = 1; seq < 20; seq += 2) {
+            lost.add(seq);
+        }
+        send(0, 21, lost);
+
+        scheduler.poll(at(21));
+        assertEquals("one request per range, at most eight a poll", 8, requests.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(1 + 2 * i, requests.get(i)[0]);
+            assertEquals(1, requests.get(i)[1]);
+        }
+
+        // The rest go out next time; the first eight are not due for a retry yet
+        requests.clear();
+        scheduler.poll(at(21) + MS);
+        assertRequests(new int[] {17, 1}, new int[] {19, 1});
+        assertEquals(10, scheduler.getRequestedPackets());
+    }
+
+    @Test
+    public void unansweredRequestIsRetriedThenLeftAlone() {
+        send(0, 4, lost(2));
+        long t = at(4);
+        scheduler.poll(t);
+        assertEquals(1, requests.size());
+
+        // Retries wait twice the round trip (20 ms assumed until one is measured)
+        scheduler.poll(t + 30 * MS);
+        assertEquals(1, requests.size());
+        scheduler.poll(t + 40 * MS);
+        assertEquals(2, requests.size());
+        scheduler.poll(t + 80 * MS);
+        assertEquals(3, requests.size());
+
+        // Three attempts in all; the packet stays pending until its deadline
+        scheduler.poll(t + 120 * MS);
+        scheduler.poll(t + 160 * MS);
+        assertEquals(3, requests.size());
+        assertEquals(1, scheduler.getPendingPackets());
+        assertEquals(1, scheduler.getRequestedPackets());
+    }
+
+    @Test
+    public void packetThatCannotMakeItsDeadlineIsGivenUp() {
+        send(0, 4, lost(2));
+        scheduler.poll(at(4));
+        assertEquals(1, requests.size());
+
+        // Frame 2 was due at the DAC about 200 ms after it should have arrived; a
+        // resend asked for within one round trip of that cannot arrive in time
+        long deadline = at(2) + PLAYOUT_DELAY_NANOS;
+        scheduler.poll(deadline - 25 * MS);
+        assertEquals(1, scheduler.getPendingPackets());
+        scheduler.poll(deadline - 15 * MS);
+        assertEquals(0, scheduler.getPendingPackets());
+        assertEquals(1, scheduler.getTooLatePackets());
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void resentPacketIsRecoveredAndMeasuresTheRoundTrip() {
+        send(0, 6, lost(3));
+        long t = at(6);
+        scheduler.poll(t);
+        assertRequests(new int[] {3, 1});
+
+        scheduler.onPacket(3, 3L * FRAME_SAMPLES, t + 4 * MS);
+        assertEquals(0, scheduler.getPendingPackets());
+        assertEquals(1, scheduler.getRecoveredPackets());
+        // Moves an eighth of the way from the assumed 20 ms towards the 4 ms sample
+        assertEquals(18.0, scheduler.getRoundTripMs(), 0.01);
+
+        requests.clear();
+        scheduler.poll(t + 100 * MS);
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    public void reorderedPacketIsNotRequested() {
+        send(0, 5, lost(3));
+        // Frame 3 turns up late, before the scheduler polled
+        scheduler.onPacket(3, 3L * FRAME_SAMPLES, at(5));
+        scheduler.poll(at(5));
+
+        assertTrue(requests.isEmpty());
+        assertEquals(0, scheduler.getPendingPackets());
+        assertEquals(0, scheduler.getRecoveredPackets());
+    }
+
+    @Test
+    public void sequenceNumbersWrapAround() {
+        // Frames numbered from 65533, so 0 and 1 are the ones lost after the wrap
+        for (int n = 0; n < 6; n++) {
+            int seq = (65533 + n) & 0xffff;
+            if (seq != 0 && seq != 1) {
+                scheduler.onPacket(seq, (long) n * FRAME_SAMPLES, at(n));
+            }
+        }
+        scheduler.poll(at(6));
+        assertRequests(new int[] {0, 2});
+
+        scheduler.onPacket(0, 3L * FRAME_SAMPLES, at(6) + 2 * MS);
+        scheduler.onPacket(1, 4L * FRAME_SAMPLES, at(6) + 2 * MS);
+        assertEquals(2, scheduler.getRecoveredPackets());
+        assertEquals(0, scheduler.getPendingPackets());
+    }
+
+    @Test
+    public void resetForgetsGapsAndStartsOverAtTheNextPacket() {
+        send(0, 8, lost(4, 5));
+        scheduler.reset();
+        scheduler.poll(at(8));
+        assertTrue("requested after reset", requests.isEmpty());
+
+        // After a FLUSH the sender carries on from an unrelated sequence number
+        scheduler.onPacket(30000, 0, at(9));
+        scheduler.onPacket(30001, FRAME_SAMPLES, at(10));
+        scheduler.poll(at(10));
+        assertTrue(requests.isEmpty());
+        assertEquals(0, scheduler.getPendingPackets());
+    }
+
+    @Test
+    public void jumpTooBigToBeALossBurstIsNotRequested() {
+        send(0, 3, lost());
+        scheduler.onPacket(1000, 1000L * FRAME_SAMPLES, at(3));
+        scheduler.poll(at(3));
+        assertTrue(requests.isEmpty());
+        assertEquals(0, scheduler.getPendingPackets());
+    }
+
+    /**
+     * Sender emits frames {@code from} up to {@code to} (exclusive), each arriving
+     * on time unless it is lost.
+     */
+    private void send(int from, int to, Set<Integer> lost) {
+        for (int n = from; n < to; n++) {
+            if (!lost.contains(n)) {
+                scheduler.onPacket(n, (long) n * FRAME_SAMPLES, at(n));
+            }
+        }
+    }
+
+    private static long at(int frame) {
+        return frame * FRAME_NANOS;
+    }
+
+    private static Set<Integer> lost(int... seqs) {
+        Set<Integer> set = new HashSet<>();
+        for (int seq : seqs) {
+            set.add(seq);
+        }
+        return set;
+    }
+
+    private void assertRequests(int[]... expected) {
+        assertEquals("requests", expected.length, requests.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("first seq of request " + i, expected[i][0], requests.get(i)[0]);
+            assertEquals("count of request " + i, expected[i][1], requests.get(i)[1]);
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Real datagrams to a receiver on ephemeral loopback ports. The handler copies what
+ * it is given, since descriptors and their bytes are reused once it returns.
+ */
+public class RtpReceiverTest {
+    private final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Integer> burstSizes = new LinkedBlockingQueue<>();
+    private final BlockingQueue<RuntimeException> errors = new LinkedBlockingQueue<>();
+    private final AtomicInteger ticks = new AtomicInteger();
+    // Set by a test to hold up or break the next audio callback
+    private volatile CountDownLatch gate;
+    private volatile int failSequence = -1;
+    private volatile boolean failReporting;
+
+    private RtpReceiver receiver;
+    private DatagramSocket sender;
+
+    @Before
+    public void setUp() throws IOException {
+        receiver = new RtpReceiver(new RtpReceiver.Handler() {
+            @Override
+            public void onAudioPackets(RtpPacket[] packets, int count) {
+                CountDownLatch wait = gate;
+                if (wait != null) {
+                    gate = null;
+                    await(wait);
+                }
+                burstSizes.add(count);
+                for (int i = 0; i < count; i++) {
+                    if (packets[i].sequence == failSequence) {
+                        throw new IllegalStateException("scripted failure");
+                    }
+                    received.add(new Received(packets[i]));
+                }
+            }
+
+            @Override
+            public void onControlPacket(RtpPacket packet) {
+            }
+
+            @Override
+            public void onTimingPacket(RtpPacket packet) {
+            }
+
+            @Override
+            public void onTick(long nowNanos) {
+                ticks.incrementAndGet();
+            }
+
+            @Override
+            public void onHandlerError(RuntimeException error) {
+                errors.add(error);
+                if (failReporting) {
+                    throw new IllegalStateException("reporting failed too");
+                }
+            }
+
+            @Override
+            public void onReceiveFailed(IOException error) {
+            }
+        });
+        receiver.start();
+        sender = new DatagramSocket();
+        sender.connect(new InetSocketAddress("127.0.0.1", receiver.getAudioPort()));
+    }
+
+    @After
+    public void tearDown() {
+        sender.close();
+        receiver.stop();
+    }
+
+    @Test(timeout = 10_000)
+    public void parsesCsrcsExtensionAndPadding() throws Exception {
+        byte[] payload = {1, 2, 3, 4, 5};
+        byte[] packet = concat(
+                // V=2, padding, extension, 2 CSRCs; marker, PT 96; seq; timestamp; SSRC
+                bytes(0xb2, 0xe0, 0x12, 0x34, 0xfe, 0xdc, 0xba, 0x98, 0x01, 0x02, 0x03, 0x04),
+                bytes(0, 0, 0, 1, 0, 0, 0, 2),
+                bytes(0xbe, 0xde, 0, 1, 9, 9, 9, 9), // one-word extension
+                payload,
+                bytes(0, 0, 3)); // three padding bytes, count last
+        send(packet);
+
+        Received r = next();
+        assertTrue(r.marker);
+        assertEquals(96, r.payloadType);
+        assertEquals(0x1234, r.sequence);
+        assertEquals(0xfedcba98L, r.timestamp);
+        assertEquals(0x01020304L, r.ssrc);
+        assertArrayEquals(payload, r.payload);
+        assertEquals(0, receiver.getInvalidPackets());
+    }
+
+    @Test(timeout = 10_000)
+    public void malformedAndShortPacketsAreRejected() throws Exception {
+        send(new byte[11]); // shorter than the fixed header
+        send(concat(bytes(0x40, 0x60), new byte[14])); // version 1
+        send(concat(bytes(0x82, 0x60), new byte[14])); // CSRCs run past the end
+        send(concat(bytes(0x90, 0x60), new byte[10], bytes(0, 0, 0, 4), new byte[4])); // extension too
+        send(concat(bytes(0xa0, 0x60), new byte[12], bytes(40))); // more padding than packet
+        send(audio(7, 20));
+
+        Received r = next();
+        assertEquals("only the valid packet is delivered", 7, r.sequence);
+        assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(5, receiver.getInvalidPackets());
+        assertEquals(1, receiver.getReceivedPackets());
+    }
+
+    @Test(timeout = 10_000)
+    public void queuedBurstIsDrainedInPoolSizedBatches() throws Exception {
+        gate = new CountDownLatch(1);
+        CountDownLatch release = gate;
+        send(audio(0, 100));
+        // The receiver thread is now held in the handler; queue up a late burst
+        while (burstSizes.isEmpty() && gate != null) {
+            Thread.sleep(1);
+        }
+        int queued = RtpReceiver.MAX_BURST + 36;
+        for (int seq = 1; seq <= queued; seq++) {
+            send(audio(seq, 100));
+        }
+        release.countDown();
+
+        for (int seq = 0; seq <= queued; seq++) {
+            assertEquals(seq, next().sequence);
+        }
+        assertEquals(1 + queued, receiver.getReceivedPackets());
+        assertEquals(RtpReceiver.MAX_BURST, receiver.getLargestBurst());
+        assertTrue("burst not batched: " + burstSizes,
+                receiver.getBursts() <= 1 + queued / RtpReceiver.MAX_BURST + 2);
+    }
+
+    @Test(timeout = 10_000)
+    public void handlerFailureIsCountedAndReceivingContinues() throws Exception {
+        failSequence = 3;
+        send(audio(3, 20));
+        RuntimeException error = errors.poll(5, TimeUnit.SECONDS);
+        assertNotNull("failure not reported", error);
+        assertEquals("scripted failure", error.getMessage());
+        assertEquals(1, receiver.getHandlerErrors());
+
+        send(audio(4, 20));
+        assertEquals(4, next().sequence);
+        assertTrue(receiver.isRunning());
+    }
+
+    @Test(timeout = 10_000)
+    public void failureWhileReportingAFailureIsContained() throws Exception {
+        failSequence = 3;
+        failReporting = true;
+        send(audio(3, 20));
+        assertNotNull("failure not reported", errors.poll(5, TimeUnit.SECONDS));
+
+        send(audio(4, 20));
+        assertEquals(4, next().sequence);
+        assertTrue(receiver.isRunning());
+        assertNull(receiver.getFailure());
+    }
+
+    @Test(timeout = 10_000)
+    public void stopWithCallbackDoesNotWaitForTheReceiverThread() throws InterruptedException {
+        CountDownLatch stopped = new CountDownLatch(1);
+        String[] stoppedOn = new String[1];
+        int[] ticksAtStop = new int[1];
+        receiver.stop(() -> {
+            stoppedOn[0] = Thread.currentThread().getName();
+            ticksAtStop[0] = ticks.get();
+            stopped.countDown();
+        });
+        assertFalse(receiver.isRunning());
+
+        assertTrue(stopped.await(5, TimeUnit.SECONDS));
+        assertEquals("RtpReceiver", stoppedOn[0]);
+        assertEquals(-1, receiver.getAudioPort());
+        Thread.sleep(50);
+        assertEquals("handler called after stop", ticksAtStop[0], ticks.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void stopWithCallbackOnAStoppedReceiverRunsItRightAway() {
+        receiver.stop();
+        boolean[] ran = new boolean[1];
+        receiver.stop(() -> ran[0] = true);
+        assertTrue(ran[0]);
+    }
+
+    private Received next() throws InterruptedException {
+        Received r = received.poll(5, TimeUnit.SECONDS);
+        assertNotNull("nothing received", r);
+        return r;
+    }
+
+    private void send(byte[] datagram) throws IOException {
+        sender.send(new DatagramPacket(datagram, datagram.length));
+    }
+
+    /**
+     * Plain RTP audio packet: 12-byte header, payload type 96.
+     */
+    private static byte[] audio(int seq, int payloadBytes) {
+        byte[] packet = new byte[12 + payloadBytes];
+        packet[0] = (byte) 0x80;
+        packet[1] = 0x60;
+        packet[2] = (byte) (seq >> 8);
+        packet[3] = (byte) seq;
+        return packet;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] b = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            b[i] = (byte) values[i];
+        }
+        return b;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] all = new byte[length];
+        int position = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, all, position, part.length);
+            position += part.length;
+        }
+        return all;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Received {
+        final boolean marker;
+        final int payloadType;
+        final int sequence;
+        final long timestamp;
+        final long ssrc;
+        final byte[] payload;
+
+        Received(RtpPacket packet) {
+            marker = packet.marker;
+            payloadType = packet.payloadType;
+            sequence = packet.sequence;
+            timestamp = packet.timestamp;
+            ssrc = packet.ssrc;
+            payload = Arrays.copyOfRange(packet.buffer, packet.payloadOffset,
+                    packet.payloadOffset + packet.payloadLength);
+        }
+    }
+}
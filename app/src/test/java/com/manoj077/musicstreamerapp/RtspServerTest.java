@@ -0,0 +1,165 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scripted RTSP clients against a server on an ephemeral loopback port.
+ */
+public class RtspServerTest {
+    private RtspServer server;
+    private volatile boolean failSetup;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new RtspServer(0, client -> new StubListener());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Test(timeout = 10_000)
+    public void blankRequestLineGetsBadRequest() throws IOException {
+        try (Socket socket = connect()) {
+            send(socket, "\r\n\r\n");
+            assertTrue(readResponse(socket).startsWith("RTSP/1.0 400 Bad Request\r\n"));
+
+            // The connection stays usable
+            send(socket, "OPTIONS * RTSP/1.0\r\nCSeq: 2\r\n\r\n");
+            String response = readResponse(socket);
+            assertTrue(response, response.startsWith("RTSP/1.0 200 OK\r\n"));
+            assertTrue(response, response.contains("CSeq: 2\r\n"));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failingListenerClosesOnlyItsConnection() throws IOException {
+        try (Socket bystander = connect(); Socket victim = connect()) {
+            send(bystander, "OPTIONS * RTSP/1.0\r\nCSeq: 1\r\n\r\n");
+            assertTrue(readResponse(bystander).startsWith("RTSP/1.0 200 OK\r\n"));
+
+            failSetup = true;
+            send(victim, setup(2));
+            assertEquals("victim not closed", -1, victim.getInputStream().read());
+            failSetup = false;
+
+            send(bystander, setup(2));
+            assertTrue(readResponse(bystander).startsWith("RTSP/1.0 200 OK\r\n"));
+            assertTrue(server.isRunning());
+            assertEquals(1, server.getFailedConnections());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void everySessionGetsItsOwnId() throws IOException {
+        try (Socket first = connect(); Socket second = connect()) {
+            send(first, setup(1));
+            String a = header(readResponse(first), "Session");
+            send(second, setup(1));
+            String b = header(readResponse(second), "Session");
+            assertNotEquals(a, b);
+
+            // A repeated SETUP on the same connection keeps its session
+            send(first, setup(2));
+            assertEquals(a, header(readResponse(first), "Session"));
+        }
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        return socket;
+    }
+
+    private static String setup(int cseq) {
+        return "SETUP rtsp://127.0.0.1/1 RTSP/1.0\r\nCSeq: " + cseq + "\r\n"
+                + "Transport: RTP/AVP/UDP;unicast;mode=record;control_port=6001;timing_port=6002"
+                + "\r\n\r\n";
+    }
+
+    private static void send(Socket socket, String request) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        out.write(request.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    /**
+     * Reads one body-less response, up to its blank line.
+     */
+    private static String readResponse(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        StringBuilder response = new StringBuilder();
+        while (!response.toString().endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("closed after " + response);
+            }
+            response.append((char) b);
+        }
+        return response.toString();
+    }
+
+    private static String header(String response, String name) {
+        for (String line : response.split("\r\n")) {
+            if (line.startsWith(name + ": ")) {
+                return line.substring(name.length() + 2);
+            }
+        }
+        throw new AssertionError("no " + name + " in " + response);
+    }
+
+    private final class StubListener implements RtspServer.Listener {
+        @Override
+        public boolean onAnnounce(RtspServer.Announcement announcement) {
+            return true;
+        }
+
+        @Override
+        public RtspServer.Ports onSetup(InetSocketAddress client, int clientControlPort,
+                int clientTimingPort) {
+            if (failSetup) {
+                throw new IllegalStateException("scripted failure");
+            }
+            return new RtspServer.Ports(7000, 7001, 7002);
+        }
+
+        @Override
+        public void onRecord(int seq, long rtpTime) {
+        }
+
+        @Override
+        public void onFlush(int seq, long rtpTime) {
+        }
+
+        @Override
+        public void onVolume(double volume) {
+        }
+
+        @Override
+        public void onTeardown() {
+        }
+
+        @Override
+        public void onMetadata(String contentType, byte[] content) {
+        }
+
+        @Override
+        public void onProgress(long start, long current, long end) {
+        }
+    }
+}
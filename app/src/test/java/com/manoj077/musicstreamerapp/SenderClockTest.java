@@ -0,0 +1,179 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The timing and sync packets of a simulated sender, on the wire, through to the local
+ * time each RTP timestamp is due and what the playout scheduler makes of it.
+ */
+public class SenderClockTest {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int FRAME_SIZE = 4;
+    private static final long MS = 1_000_000L;
+    private static final long SECOND = 1_000 * MS;
+    private static final long LEG_NANOS = 3 * MS;
+    private static final long TOLERANCE_NANOS = 25 * MS;
+
+    private final ByteBuffer out = ByteBuffer.allocate(SenderClock.TIMING_PACKET_BYTES);
+    private final ByteBuffer reply = ByteBuffer.allocate(SenderClock.TIMING_PACKET_BYTES);
+    private SenderClock clock;
+    private long start;
+    private long now;
+    private double driftPpm;
+
+    @Before
+    public void setUp() {
+        clock = new SenderClock(SAMPLE_RATE);
+        // Local times on the wire are relative to when the clock was made
+        start = System.nanoTime() + SECOND;
+        now = start;
+    }
+
+    @Test
+    public void notLockedUntilOffsetAndAnchorAreBothKnown() {
+        assertEquals(Long.MIN_VALUE, clock.localTimeOf(0));
+        exchange(3);
+        assertTrue(clock.getEstimator().isLocked());
+        assertFalse(clock.isLocked());
+        assertEquals(Long.MIN_VALUE, clock.localTimeOf(0));
+
+        sync(1000, senderTime(now));
+        assertTrue(clock.isLocked());
+    }
+
+    @Test
+    public void rtpTimestampsMapToTheSenderSchedule() {
+        exchange(5);
+        long anchorSender = senderTime(now + 200 * MS);
+        sync(88200, anchorSender);
+
+        long anchorLocal = localTime(anchorSender);
+        assertEquals(anchorLocal, clock.localTimeOf(88200), MS / 100);
+        assertEquals(anchorLocal + SECOND, clock.localTimeOf(88200 + SAMPLE_RATE), MS / 100);
+        assertEquals(anchorLocal - SECOND / 2, clock.localTimeOf(88200 - SAMPLE_RATE / 2),
+                MS / 100);
+    }
+
+    @Test
+    public void timestampsAcrossTheRtpWrapStayInOrder() {
+        exchange(5);
+        long anchorSender = senderTime(now);
+        sync(0xffffff00L, anchorSender);
+
+        long due = clock.localTimeOf(0x100);
+        assertEquals(localTime(anchorSender) + 0x200 * SECOND / SAMPLE_RATE, due, MS / 100);
+    }
+
+    @Test
+    public void deadlineFollowsADriftingSender() {
+        driftPpm = 100;
+        exchange(60);
+        long anchorSender = senderTime(now);
+        sync(0, anchorSender);
+
+        // Forty seconds on, a 100 ppm sender is 4 ms ahead of a naive mapping
+        long rtp = 40L * SAMPLE_RATE;
+        long due = clock.localTimeOf(rtp);
+        long truth = localTime(anchorSender + 40 * SECOND);
+        assertEquals(truth, due, MS / 2);
+    }
+
+    @Test
+    public void schedulerPicksTheDeadlineFromTheClock() {
+        exchange(5);
+        long anchorSender = senderTime(now + SECOND);
+        sync(0, anchorSender);
+        PlayoutScheduler scheduler = new PlayoutScheduler(SAMPLE_RATE, FRAME_SIZE,
+                TOLERANCE_NANOS);
+        long due = clock.localTimeOf(SAMPLE_RATE / 10);
+        long dacNanos = localTime(anchorSender);
+
+        // 100 ms of audio queued at the DAC lands the next frame right on time
+        assertEquals(PlayoutScheduler.Action.PLAY,
+                scheduler.schedule(due, dacNanos, SAMPLE_RATE / 10, 16384));
+        assertEquals(0, scheduler.getSyncErrorNanos(), MS / 10);
+
+        // 40 ms queued: 60 ms early, padded with exactly that much silence
+        assertEquals(PlayoutScheduler.Action.PAD,
+                scheduler.schedule(due, dacNanos, SAMPLE_RATE / 25, 16384));
+        assertEquals(-60 * MS, scheduler.getSyncErrorNanos(), MS / 10);
+        assertEquals(SAMPLE_RATE * 6 / 100 * FRAME_SIZE, scheduler.getPaddingBytes(),
+                FRAME_SIZE);
+        assertEquals(0, scheduler.getPaddingBytes() % FRAME_SIZE);
+
+        // 200 ms queued: the next frame would be 100 ms late
+        assertEquals(PlayoutScheduler.Action.SKIP,
+                scheduler.schedule(due, dacNanos, SAMPLE_RATE / 5, 16384));
+        assertEquals(100 * MS, scheduler.getSyncErrorNanos(), MS / 10);
+    }
+
+    @Test
+    public void senderRequestIsAnsweredWithItsTimeAsOrigin() {
+        byte[] request = new byte[SenderClock.TIMING_PACKET_BYTES];
+        request[0] = (byte) 0x80;
+        request[1] = (byte) (0x80 | SenderClock.TIMING_REQUEST_TYPE);
+        ByteBuffer.wrap(request).putLong(24, 0x0123456789abcdefL);
+
+        assertTrue(clock.onTimingPacket(request, 0, request.length, now, reply));
+        assertEquals(SenderClock.TIMING_PACKET_BYTES, reply.remaining());
+        assertEquals(0x80 | SenderClock.TIMING_REPLY_TYPE, reply.get(1) & 0xff);
+        assertEquals(0x0123456789abcdefL, reply.getLong(8));
+        assertFalse(clock.onTimingPacket(request, 0, 31, now, reply));
+    }
+
+    /**
+     * Runs {@code count} of our timing exchanges, a second apart, over a path with a
+     * fixed delay each way.
+     */
+    private void exchange(int count) {
+        for (int i = 0; i < count; i++) {
+            now += SECOND;
+            clock.writeRequest(out, now);
+            long received = senderTime(now + LEG_NANOS);
+            long transmitted = received + MS / 10;
+            long replyAt = localTime(transmitted) + LEG_NANOS;
+
+            ByteBuffer packet = ByteBuffer.allocate(SenderClock.TIMING_PACKET_BYTES);
+            packet.put((byte) 0x80).put((byte) (0x80 | SenderClock.TIMING_REPLY_TYPE))
+                    .putShort((short) 7).putInt(0).putLong(out.getLong(24));
+            putNtp(packet, received);
+            putNtp(packet, transmitted);
+            assertFalse(clock.onTimingPacket(packet.array(), 0, packet.capacity(), replyAt,
+                    reply));
+            now = replyAt;
+        }
+    }
+
+    private void sync(long rtpTimestamp, long senderNanos) {
+        ByteBuffer packet = ByteBuffer.allocate(20);
+        packet.put((byte) 0x90).put((byte) (0x80 | SenderClock.SYNC_TYPE))
+                .putShort((short) 7).putInt(0);
+        putNtp(packet, senderNanos);
+        packet.putInt((int) rtpTimestamp);
+        clock.onSync(packet.array(), 0, packet.capacity());
+    }
+
+    /**
+     * Sender clock: NTP time from an arbitrary epoch, running {@link #driftPpm} fast.
+     */
+    private long senderTime(long local) {
+        long elapsed = local - start;
+        return 5000 * SECOND + elapsed + Math.round(elapsed * driftPpm / 1e6);
+    }
+
+    private long localTime(long sender) {
+        return start + Math.round((sender - 5000 * SECOND) / (1 + driftPpm / 1e6));
+    }
+
+    private static void putNtp(ByteBuffer buffer, long nanos) {
+        buffer.putInt((int) (nanos / SECOND));
+        buffer.putInt((int) (((nanos % SECOND) << 32) / SECOND));
+    }
+}
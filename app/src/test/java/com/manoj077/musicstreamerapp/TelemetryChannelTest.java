@@ -0,0 +1,33 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * What a publisher is told about demand as subscribers come and go.
+ */
+public class TelemetryChannelTest {
+
+    @Test
+    public void demandFollowsTheFirstAndLastSubscriber() {
+        TelemetryChannel channel = new TelemetryChannel();
+        List<Boolean> changes = new ArrayList<>();
+        channel.setDemandListener(changes::add);
+
+        TelemetryChannel.Subscription first = channel.subscribe(snapshot -> { }, Runnable::run, 0);
+        TelemetryChannel.Subscription second = channel.subscribe(snapshot -> { }, Runnable::run, 0);
+        first.cancel();
+        assertEquals(1, channel.getSubscriberCount());
+        second.cancel();
+        second.cancel();
+
+        assertEquals(2, changes.size());
+        assertEquals(Boolean.TRUE, changes.get(0));
+        assertEquals(Boolean.FALSE, changes.get(1));
+        assertEquals(0, channel.getSubscriberCount());
+    }
+}
@@ -0,0 +1,167 @@
+package com.manoj077.musicstreamerapp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Exchanges with a simulated sender whose clock is offset from ours and may run fast.
+ * Each leg takes a fixed path delay plus exponential queueing; a spike is added to one
+ * leg only, which is what skews an NTP offset.
+ */
+public class TimingEstimatorTest {
+    private static final long MS = 1_000_000L;
+    private static final long SECOND = 1_000 * MS;
+    private static final long OFFSET_NANOS = 3600 * SECOND;
+    private static final long PATH_NANOS = MS / 2;
+    private static final long TURNAROUND_NANOS = MS / 20;
+    private static final long INTERVAL_NANOS = 2 * SECOND;
+    private static final double QUEUEING_MS = 0.5;
+
+    private TimingEstimator estimator;
+    private Random random;
+    private double driftPpm;
+    private long now;
+
+    @Before
+    public void setUp() {
+        estimator = new TimingEstimator();
+        random = new Random(7);
+        now = SECOND;
+    }
+
+    @Test
+    public void offsetConvergesUnderJitter() {
+        assertTrue(exchange(0, 0));
+        assertTrue(exchange(0, 0));
+        assertFalse("locked on two exchanges", estimator.isLocked());
+        for (int i = 0; i < 30; i++) {
+            exchange(0, 0);
+        }
+
+        assertTrue(estimator.isLocked());
+        assertEquals(0, offsetError(now), MS / 2);
+        assertEquals(0, estimator.getRejectedSamples());
+        assertTrue(estimator.getRttNanos() >= 2 * PATH_NANOS);
+    }
+
+    @Test
+    public void driftConvergesAndCarriesTheOffsetForward() {
+        driftPpm = 80;
+        for (int i = 0; i < 90; i++) {
+            exchange(0, 0);
+        }
+
+        assertEquals(80, estimator.getDriftPpm(), 2);
+        // The best exchange in the window may be seconds old; 80 ppm over that span is
+        // more than the jitter, so the offset has to be carried forward
+        assertEquals(0, offsetError(now), MS / 2);
+        assertEquals(0, offsetError(now + 20 * SECOND), MS / 2);
+        long sender = trueSenderTime(now + 20 * SECOND);
+        assertEquals(now + 20 * SECOND, estimator.toLocalNanos(sender), MS / 2);
+    }
+
+    @Test
+    public void oneSidedSpikesAreRejectedOnceLocked() {
+        for (int i = 0; i < 10; i++) {
+            exchange(0, 0);
+        }
+        long offset = estimator.getOffsetNanos();
+
+        // A 60 ms stall on either leg alone would move the offset by 30 ms
+        assertFalse(exchange(60 * MS, 0));
+        assertFalse(exchange(0, 60 * MS));
+        assertFalse(exchange(0, 200 * MS));
+        assertEquals(3, estimator.getRejectedSamples());
+        assertEquals(offset, estimator.getOffsetNanos());
+
+        assertTrue(exchange(0, 0));
+        assertEquals(0, offsetError(now), MS / 2);
+    }
+
+    @Test
+    public void spikesBeforeLockAreFilteredByTheirRoundTrip() {
+        exchange(0, 80 * MS);
+        exchange(0, 0);
+        exchange(40 * MS, 0);
+        exchange(0, 0);
+
+        // Only queueing on the chosen exchange can skew the offset, by at most half
+        // its round trip; either spike would have cost 20 ms or more
+        assertTrue(estimator.isLocked());
+        assertTrue(estimator.getRttNanos() < 10 * MS);
+        assertTrue(Math.abs(offsetError(now)) <= estimator.getRttNanos() / 2);
+    }
+
+    @Test
+    public void persistentlySlowerPathIsRelearned() {
+        for (int i = 0; i < 10; i++) {
+            exchange(0, 0);
+        }
+        // The route changes for good; a window of rejects restarts the filter
+        for (int i = 0; i < 20; i++) {
+            exchange(30 * MS, 30 * MS);
+        }
+
+        assertTrue(estimator.isLocked());
+        assertTrue(estimator.getRttNanos() > 60 * MS);
+        assertEquals(0, offsetError(now), MS);
+        assertEquals(8, estimator.getRejectedSamples());
+    }
+
+    @Test
+    public void impossibleRoundTripsAreDiscarded() {
+        // Reply before the request, or an answer that took longer than any path could
+        assertFalse(estimator.addSample(10 * SECOND, 0, 0, 9 * SECOND));
+        assertFalse(estimator.addSample(SECOND, 0, 0, 3 * SECOND));
+        assertEquals(2, estimator.getRejectedSamples());
+        assertFalse(estimator.isLocked());
+    }
+
+    @Test
+    public void resetForgetsTheDrift() {
+        driftPpm = -50;
+        for (int i = 0; i < 60; i++) {
+            exchange(0, 0);
+        }
+        assertEquals(-50, estimator.getDriftPpm(), 5);
+
+        estimator.reset();
+        assertFalse(estimator.isLocked());
+        assertEquals(0, estimator.getDriftPpm(), 0);
+    }
+
+    /**
+     * One exchange, {@link #INTERVAL_NANOS} after the last, with extra delay on the
+     * request and reply legs.
+     */
+    private boolean exchange(long requestSpike, long replySpike) {
+        now += INTERVAL_NANOS;
+        long request = now;
+        long received = trueSenderTime(request + legDelay() + requestSpike);
+        long transmitted = received + TURNAROUND_NANOS;
+        long reply = trueLocalTime(transmitted) + legDelay() + replySpike;
+        return estimator.addSample(request, received, transmitted, reply);
+    }
+
+    private long legDelay() {
+        return PATH_NANOS + (long) (-Math.log(1 - random.nextDouble()) * QUEUEING_MS * MS);
+    }
+
+    private long offsetError(long local) {
+        return estimator.getOffsetNanos(local) - (trueSenderTime(local) - local);
+    }
+
+    private long trueSenderTime(long local) {
+        return local + OFFSET_NANOS + Math.round(local * driftPpm / 1e6);
+    }
+
+    private long trueLocalTime(long sender) {
+        return Math.round((sender - OFFSET_NANOS) / (1 + driftPpm / 1e6));
+    }
+}
@@ -0,0 +1,24 @@
+#!/bin/sh
+# Makes the reference-encoder streams AlacDecoderTest decodes from this directory:
+# <name>.caf, ALAC from a third-party encoder, and <name>.pcm, the 16-bit little-endian
+# stereo it was encoded from. Needs ffmpeg; on macOS, Apple's afconvert adds a second
+# stream. Check the results in; the test skips streams that are not there.
+set -e
+cd "$(dirname "$0")"
+
+# Two seconds with different material per channel: a rising chirp on the left, a low
+# tone under seeded noise on the right
+ffmpeg -v error -y -f lavfi \
+    -i "aevalsrc=exprs='0.6*sin(2*PI*(200+400*t)*t)|0.3*sin(2*PI*110*t)+0.1*(random(0)-0.5)':s=44100:d=2" \
+    -ac 2 -ar 44100 -f s16le -c:a pcm_s16le source.pcm
+
+ffmpeg -v error -y -f s16le -ar 44100 -ac 2 -i source.pcm -c:a alac -f caf ffmpeg_stereo.caf
+cp source.pcm ffmpeg_stereo.pcm
+
+if command -v afconvert >/dev/null 2>&1; then
+    ffmpeg -v error -y -f s16le -ar 44100 -ac 2 -i source.pcm source.wav
+    afconvert -f caff -d alac source.wav afconvert_stereo.caf
+    cp source.pcm afconvert_stereo.pcm
+    rm source.wav
+fi
+rm source.pcm
@@ -0,0 +1,58 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.AlacDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode cost of one 352-frame AirPlay ALAC packet; a packet arrives every 8 ms.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AlacDecoderBenchmark {
+    private static final String FMTP = "96 352 0 16 40 10 14 2 255 0 0 44100";
+    private static final int PACKETS = 64;
+
+    private AlacDecoder decoder;
+    private byte[][] packets;
+    private int[] lengths;
+    private byte[] pcm;
+    private int next;
+
+    @Setup
+    public void setup() {
+        decoder = AlacDecoder.fromFmtp(FMTP);
+        pcm = new byte[decoder.getMaxOutputBytes()];
+
+        AlacFixture encoder = new AlacFixture(352, 40, 10, 14);
+        short[] signal = AlacFixture.testSignal(352 * PACKETS, 1);
+        short[] frame = new short[352 * 2];
+        packets = new byte[PACKETS][];
+        lengths = new int[PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            System.arraycopy(signal, i * frame.length, frame, 0, frame.length);
+            byte[] encoded = new byte[8192];
+            lengths[i] = encoder.encode(frame, 352, encoded);
+            packets[i] = encoded;
+            if (decoder.decode(encoded, 0, lengths[i], pcm, 0) != 352 * 4) {
+                throw new IllegalStateException("Fixture packet " + i + " does not decode");
+            }
+        }
+    }
+
+    @Benchmark
+    public int decodePacket() {
+        int i = next;
+        next = (i + 1) % PACKETS;
+        return decoder.decode(packets[i], 0, lengths[i], pcm, 0);
+    }
+}
@@ -0,0 +1,215 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import java.util.Arrays;
+
+/**
+ * Minimal 16-bit stereo ALAC encoder producing frames in the layout AirPlay senders
+ * use: mid/side, one adaptive FIR predictor per channel and escape-coded zero runs.
+ * Only used to build realistic input for the decoder benchmark.
+ */
+final class AlacFixture {
+    private static final int RICE_THRESHOLD = 8;
+    private static final int RICE_MODIFIER = 4;
+    private static final int QUANTIZATION = 9;
+    private static final int READ_SIZE = 17; // 16 bits plus one for the side channel
+    private static final short[] COEFS = {160, -190, 170, -130, 80, -10, -50, 30};
+
+    private final int frameLength;
+    private final int historyMult;
+    private final int initialHistory;
+    private final int kModifier;
+
+    private byte[] out;
+    private int bitPos;
+
+    AlacFixture(int frameLength, int historyMult, int initialHistory, int kModifier) {
+        this.frameLength = frameLength;
+        this.historyMult = historyMult;
+        this.initialHistory = initialHistory;
+        this.kModifier = kModifier;
+    }
+
+    /**
+     * A music-like test frame: two detuned tones plus a little noise.
+     */
+    static short[] testSignal(int frames, long seed) {
+        java.util.Random random = new java.util.Random(seed);
+        short[] pcm = new short[frames * 2];
+        for (int i = 0; i < frames; i++) {
+            double t = i / 44100.0;
+            double left = 9000 * Math.sin(2 * Math.PI * 440 * t)
+                    + 3000 * Math.sin(2 * Math.PI * 1320 * t) + random.nextGaussian() * 200;
+            double right = 9000 * Math.sin(2 * Math.PI * 443 * t)
+                    + 2000 * Math.sin(2 * Math.PI * 990 * t) + random.nextGaussian() * 200;
+            pcm[2 * i] = (short) left;
+            pcm[2 * i + 1] = (short) right;
+        }
+        return pcm;
+    }
+
+    /**
+     * Encodes {@code samples} interleaved stereo frames into {@code dst}.
+     *
+     * @return encoded length in bytes
+     */
+    int encode(short[] pcm, int samples, byte[] dst) {
+        out = dst;
+        bitPos = 0;
+        Arrays.fill(dst, (byte) 0);
+
+        int[] mid = new int[samples];
+        int[] side = new int[samples];
+        for (int i = 0; i < samples; i++) {
+            int left = pcm[2 * i];
+            int right = pcm[2 * i + 1];
+            side[i] = left - right;
+            mid[i] = right + (side[i] >> 1);
+        }
+
+        write(1, 3); // stereo element
+        write(0, 4);
+        write(0, 12);
+        boolean hasSize = samples != frameLength;
+        write(hasSize ? 1 : 0, 1);
+        write(0, 2); // no uncompressed bytes
+        write(0, 1); // compressed
+        if (hasSize) {
+            write(samples >>> 16, 16);
+            write(samples & 0xffff, 16);
+        }
+        write(1, 8); // mix shift
+        write(1, 8); // mix weight
+        for (int c = 0; c < 2; c++) {
+            write(0, 4);
+            write(QUANTIZATION, 4);
+            write(RICE_MODIFIER, 3);
+            write(COEFS.length, 5);
+            for (short coef : COEFS) {
+                write(coef & 0xffff, 16);
+            }
+        }
+        rice(residuals(mid, samples), samples);
+        rice(residuals(side, samples), samples);
+        write(7, 3); // end tag
+        return (bitPos + 7) / 8;
+    }
+
+    /**
+     * Mirrors the decoder's adaptive predictor so the residuals reconstruct exactly.
+     */
+    private int[] residuals(int[] x, int samples) {
+        short[] coefs = COEFS.clone();
+        int n = coefs.length;
+        int[] err = new int[samples];
+        err[0] = x[0];
+        for (int i = 0; i < n && i + 1 < samples; i++) {
+            err[i + 1] = wrap(x[i + 1] - x[i]);
+        }
+
+        int base = 0;
+        for (int i = n + 1; i < samples; i++) {
+            int origin = x[base];
+            int sum = 0;
+            for (int j = 0; j < n; j++) {
+                sum += (x[base + n - j] - origin) * coefs[j];
+            }
+            int predicted = ((1 << (QUANTIZATION - 1)) + sum) >> QUANTIZATION;
+            int e = wrap(x[i] - predicted - origin);
+            err[i] = e;
+
+            int remaining = e;
+            if (remaining > 0) {
+                for (int p = n - 1; p >= 0 && remaining > 0; p--) {
+                    int d = origin - x[base + n - p];
+                    int sign = Integer.signum(d);
+                    coefs[p] -= sign;
+                    remaining -= ((d * sign) >> QUANTIZATION) * (n - p);
+                }
+            } else if (remaining < 0) {
+                for (int p = 0; p < n && remaining < 0; p++) {
+                    int d = origin - x[base + n - p];
+                    int sign = -Integer.signum(d);
+                    coefs[p] -= sign;
+                    remaining -= ((d * sign) >> QUANTIZATION) * (n - p);
+                }
+            }
+            base++;
+        }
+        return err;
+    }
+
+    private void rice(int[] err, int samples) {
+        int history = initialHistory;
+        int signModifier = 0;
+        int mult = RICE_MODIFIER * historyMult / 4;
+        for (int i = 0; i < samples; i++) {
+            int v = err[i];
+            int xmod = v >= 0 ? 2 * v : -2 * v - 1;
+            int x = xmod - signModifier;
+            int k = Math.min(31 - Integer.numberOfLeadingZeros((history >>> 9) + 3), kModifier);
+
+            boolean coded = false;
+            if (k == 1) {
+                if (x <= RICE_THRESHOLD) {
+                    unary(x);
+                    coded = true;
+                }
+            } else {
+                int m = x / ((1 << k) - 1);
+                int r = x % ((1 << k) - 1);
+                if (m <= RICE_THRESHOLD) {
+                    unary(m);
+                    if (r == 0) {
+                        write(0, k - 1);
+                    } else {
+                        write(r + 1, k);
+                    }
+                    coded = true;
+                }
+            }
+            if (!coded) {
+                unary(RICE_THRESHOLD + 1);
+                write(x & ((1 << READ_SIZE) - 1), READ_SIZE);
+            }
+
+            signModifier = 0;
+            history += xmod * mult - ((history * mult) >> 9);
+            if (xmod > 0xffff) {
+                history = 0xffff;
+            }
+            if (history < 128 && i + 1 < samples) {
+                int run = 0;
+                while (i + 1 + run < samples && err[i + 1 + run] == 0 && run < 0xffff) {
+                    run++;
+                }
+                unary(RICE_THRESHOLD + 1);
+                write(run, 16);
+                signModifier = 1;
+                i += run;
+                history = 0;
+            }
+        }
+    }
+
+    private void unary(int count) {
+        for (int i = 0; i < count; i++) {
+            write(1, 1);
+        }
+        if (count <= RICE_THRESHOLD) {
+            write(0, 1);
+        }
+    }
+
+    private static int wrap(int v) {
+        return (v << (32 - READ_SIZE)) >> (32 - READ_SIZE);
+    }
+
+    private void write(int value, int bits) {
+        for (int b = bits - 1; b >= 0; b--) {
+            if (((value >>> b) & 1) != 0) {
+                out[bitPos >> 3] |= (byte) (0x80 >>> (bitPos & 7));
+            }
+            bitPos++;
+        }
+    }
+}
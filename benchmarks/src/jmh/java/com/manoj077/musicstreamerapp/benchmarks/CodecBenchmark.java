@@ -0,0 +1,112 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.AudioCodec;
+import com.manoj077.musicstreamerapp.AudioDecoder;
+import com.manoj077.musicstreamerapp.CodecRegistry;
+import com.manoj077.musicstreamerapp.DecoderPool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JVM codecs behind the decoder interface: one 352-frame packet per op, compared
+ * with {@link AlacDecoderBenchmark} for the cost of the indirection, and the price of a
+ * session's decoder from the pool versus a fresh one. MediaCodec decoders need a
+ * device and are not covered here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class CodecBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+    private static final int FRAMES = 352;
+    private static final int PACKETS = 64;
+
+    @Param({"AppleLossless", "L16/44100/2"})
+    public String encoding;
+
+    private final CodecRegistry registry = CodecRegistry.javaCodecs();
+    private AudioCodec codec;
+    private String rtpmap;
+    private String fmtp;
+    private AudioDecoder decoder;
+    private DecoderPool pool;
+    private byte[][] packets;
+    private int[] lengths;
+    private int next;
+    private long decodedBytes;
+
+    @Setup
+    public void setup() {
+        rtpmap = "96 " + encoding;
+        codec = registry.find(rtpmap, null);
+        fmtp = codec.getDefaultFmtp();
+        decoder = codec.newDecoder(rtpmap, fmtp, SAMPLE_RATE, CHANNELS);
+        decoder.setOutput(new AudioDecoder.Output() {
+            @Override
+            public void onFrame(int seq, long rtpTimestamp, ByteBuffer pcm, long arrivalNanos) {
+                decodedBytes += pcm.remaining();
+            }
+
+            @Override
+            public void onError(int seq) {
+                throw new IllegalStateException("Fixture packet " + seq + " does not decode");
+            }
+        });
+        pool = new DecoderPool(DecoderPool.DEFAULT_MAX_IDLE);
+
+        AlacFixture encoder = new AlacFixture(FRAMES, 40, 10, 14);
+        short[] signal = AlacFixture.testSignal(FRAMES * PACKETS, 1);
+        short[] frame = new short[FRAMES * CHANNELS];
+        packets = new byte[PACKETS][];
+        lengths = new int[PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            System.arraycopy(signal, i * frame.length, frame, 0, frame.length);
+            byte[] encoded = new byte[8192];
+            if (codec.getTxtCode() == 0) {
+                for (int s = 0; s < frame.length; s++) {
+                    encoded[2 * s] = (byte) (frame[s] >> 8);
+                    encoded[2 * s + 1] = (byte) frame[s];
+                }
+                lengths[i] = frame.length * 2;
+            } else {
+                lengths[i] = encoder.encode(frame, FRAMES, encoded);
+            }
+            packets[i] = encoded;
+            decoder.decode(i, (long) i * FRAMES, encoded, 0, lengths[i], 0);
+        }
+    }
+
+    @Benchmark
+    public long decodePacket() {
+        int i = next;
+        next = (i + 1) % PACKETS;
+        decoder.decode(i, (long) i * FRAMES, packets[i], 0, lengths[i], 0);
+        return decodedBytes;
+    }
+
+    /**
+     * What a connecting session pays for its decoder once the pool is warm.
+     */
+    @Benchmark
+    public AudioDecoder pooledDecoder() {
+        AudioDecoder leased = pool.acquire(codec, rtpmap, fmtp, SAMPLE_RATE, CHANNELS);
+        pool.release(leased);
+        return leased;
+    }
+
+    @Benchmark
+    public AudioDecoder newDecoder() {
+        return codec.newDecoder(rtpmap, fmtp, SAMPLE_RATE, CHANNELS);
+    }
+}
@@ -0,0 +1,24 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+/**
+ * Minimal frame handoff between the receive and playback threads, so the original
+ * queue and the ring can be driven by the same benchmark code.
+ */
+interface FrameQueue {
+
+    /**
+     * Hands one frame to the consumer.
+     *
+     * @return false if the frame was dropped
+     */
+    boolean offer(byte[] frame, int offset, int length);
+
+    /**
+     * Takes up to {@code dst.length} bytes, waiting at most {@code timeoutNanos}.
+     *
+     * @return bytes taken, 0 on timeout
+     */
+    int poll(byte[] dst, long timeoutNanos) throws InterruptedException;
+
+    void clear();
+}
@@ -0,0 +1,51 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.PcmRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded enqueue/dequeue throughput of one decoded frame, comparing the
+ * original copy-per-frame queue with the preallocated ring.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class FrameQueueBenchmark {
+
+    @Param({"legacy", "ring"})
+    public String queue;
+
+    // 352 stereo frames (one ALAC packet) and a 10 ms AudioTrack chunk
+    @Param({"1408", "1764"})
+    public int frameBytes;
+
+    private FrameQueue frames;
+    private byte[] frame;
+    private byte[] sink;
+
+    @Setup
+    public void setup() {
+        frames = "ring".equals(queue)
+                ? new RingFrameQueue(PcmRingBuffer.forDuration(250, 44100, 4,
+                        PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 20))
+                : new LegacyFrameQueue();
+        frame = new byte[frameBytes];
+        sink = new byte[frameBytes];
+    }
+
+    @Benchmark
+    public int enqueueDequeue() throws InterruptedException {
+        frames.offer(frame, 0, frameBytes);
+        return frames.poll(sink, 0);
+    }
+}
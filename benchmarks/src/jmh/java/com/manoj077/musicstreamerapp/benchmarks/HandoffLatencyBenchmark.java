@@ -0,0 +1,86 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.PcmRingBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receive thread and playback thread hammering the same handoff at once. Sampled per
+ * operation, so the percentiles show how long each side waits on the other under
+ * contention, not just the average.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Group)
+public class HandoffLatencyBenchmark {
+    private static final int FRAME_BYTES = 1408;
+    private static final long POLL_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private LegacyFrameQueue legacyQueue;
+    private PcmRingBuffer ring;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        legacyQueue = new LegacyFrameQueue();
+        ring = PcmRingBuffer.forDuration(250, 44100, 4,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 20);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        legacyQueue.clear();
+    }
+
+    @State(Scope.Thread)
+    public static class Frames {
+        final byte[] frame = new byte[FRAME_BYTES];
+        final byte[] sink = new byte[FRAME_BYTES];
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(1)
+    public boolean legacyProduce(Frames frames) {
+        return legacyQueue.offer(frames.frame, 0, FRAME_BYTES);
+    }
+
+    @Benchmark
+    @Group("legacy")
+    @GroupThreads(1)
+    public int legacyConsume(Frames frames) throws InterruptedException {
+        return legacyQueue.poll(frames.sink, POLL_TIMEOUT_NANOS);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public int ringProduce(Frames frames) {
+        return ring.write(frames.frame, 0, FRAME_BYTES);
+    }
+
+    @Benchmark
+    @Group("ring")
+    @GroupThreads(1)
+    public int ringConsume() {
+        ByteBuffer slice = ring.acquireRead(FRAME_BYTES, POLL_TIMEOUT_NANOS);
+        if (slice == null) {
+            return 0;
+        }
+        int length = slice.remaining();
+        ring.releaseRead(length);
+        return length;
+    }
+}
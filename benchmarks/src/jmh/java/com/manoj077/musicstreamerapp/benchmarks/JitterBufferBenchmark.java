@@ -0,0 +1,61 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.JitterBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady-state cost of queueing one RTP frame and playing it back out of the
+ * jitter buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class JitterBufferBenchmark {
+    private static final int FRAME_SAMPLES = 352;
+    private static final int FRAME_BYTES = FRAME_SAMPLES * 4;
+    private static final long FRAME_NANOS = FRAME_SAMPLES * 1_000_000_000L / 44100;
+    private static final int PRIME_FRAMES = 64;
+
+    private JitterBuffer buffer;
+    private byte[] frame;
+    private int seq;
+    private long arrivalNanos;
+
+    @Setup
+    public void setup() {
+        buffer = new JitterBuffer(512, 4096, 4, 44100, 4, 256, 100);
+        frame = new byte[FRAME_BYTES];
+        // Prime past the target depth so playback is running
+        while (seq < PRIME_FRAMES) {
+            putNext();
+        }
+    }
+
+    @Benchmark
+    public int putAndPlay() {
+        putNext();
+        ByteBuffer chunk = buffer.acquireRead(FRAME_BYTES, 0);
+        if (chunk == null) {
+            return 0;
+        }
+        int length = chunk.remaining();
+        buffer.releaseRead(length);
+        return length;
+    }
+
+    private void putNext() {
+        arrivalNanos += FRAME_NANOS;
+        buffer.put(seq & 0xffff, (long) seq * FRAME_SAMPLES, frame, 0, FRAME_BYTES, arrivalNanos);
+        seq++;
+    }
+}
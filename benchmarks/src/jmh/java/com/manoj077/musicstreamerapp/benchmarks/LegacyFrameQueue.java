@@ -0,0 +1,39 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The handoff AudioEngine used before the PCM ring: a copy of every frame from
+ * {@code RaopBridge.onPcmFrame} pushed onto a bounded LinkedBlockingQueue, newest
+ * frame dropped when full. Kept as the baseline the ring is measured against.
+ */
+class LegacyFrameQueue implements FrameQueue {
+    private static final int CAPACITY = 10;
+
+    private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>(CAPACITY);
+
+    @Override
+    public boolean offer(byte[] frame, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(frame, offset, copy, 0, length);
+        return queue.offer(copy);
+    }
+
+    @Override
+    public int poll(byte[] dst, long timeoutNanos) throws InterruptedException {
+        byte[] frame = queue.poll(timeoutNanos, TimeUnit.NANOSECONDS);
+        if (frame == null) {
+            return 0;
+        }
+        int length = Math.min(frame.length, dst.length);
+        System.arraycopy(frame, 0, dst, 0, length);
+        return length;
+    }
+
+    @Override
+    public void clear() {
+        queue.clear();
+    }
+}
@@ -0,0 +1,133 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.AudioMixer;
+import com.manoj077.musicstreamerapp.GainStage;
+import com.manoj077.musicstreamerapp.PcmSource;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mixing concurrent 44.1 kHz stereo streams into one 10 ms playback chunk, each at
+ * its own gain. One chunk is due every 10 ms, so a score of 100 us per op is 1% of
+ * a core. The mixer's own per-input timing, the figure session admission works from,
+ * is reported beside the score as streams per core.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class MixerBenchmark {
+    private static final int CHUNK_FRAMES = 441;
+    private static final int CHUNK_BYTES = CHUNK_FRAMES * 4;
+    private static final long CHUNK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // One RTP frame per acquire, like a jitter buffer hands them out
+    private static final int PACKET_FRAMES = 352;
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int streams;
+
+    private AudioMixer mixer;
+    private long chunks;
+
+    @Setup
+    public void setup() {
+        mixer = new AudioMixer(2, CHUNK_BYTES);
+        short[] signal = AlacFixture.testSignal(PACKET_FRAMES, 2);
+        for (int i = 0; i < streams; i++) {
+            GainStage gain = new GainStage(2, 882);
+            gain.setAirplayVolume(-6 - i);
+            mixer.addInput(new PacketSource(signal), gain);
+        }
+    }
+
+    @Benchmark
+    public int mixChunk(MixCost cost) {
+        ByteBuffer chunk = mixer.acquireRead(CHUNK_BYTES, 0);
+        mixer.releaseRead(chunk.remaining());
+        chunks++;
+        cost.benchmark = this;
+        return chunk.remaining();
+    }
+
+    /**
+     * Secondary metrics, read from the mixer's own timing when each iteration ends.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class MixCost {
+        MixerBenchmark benchmark;
+
+        public double nsPerStreamPerChunk() {
+            if (benchmark == null || benchmark.chunks == 0) {
+                return 0;
+            }
+            long mixNanos = 0;
+            for (AudioMixer.Input input : benchmark.mixer.getInputs()) {
+                mixNanos += input.getMixNanos();
+            }
+            return (double) mixNanos / benchmark.streams / benchmark.chunks;
+        }
+
+        public double streamsPerCore() {
+            double perStream = nsPerStreamPerChunk();
+            return perStream == 0 ? 0 : CHUNK_NANOS / perStream;
+        }
+    }
+
+    /**
+     * Endless stream of one packet-sized frame. The frame is restored before each
+     * read, since the mixer applies gain in place.
+     */
+    private static final class PacketSource implements PcmSource {
+        private final ByteBuffer original;
+        private final ByteBuffer frame;
+        private int offset;
+
+        PacketSource(short[] signal) {
+            original = ByteBuffer.allocateDirect(signal.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < signal.length; i++) {
+                original.putShort(i * 2, signal[i]);
+            }
+            frame = ByteBuffer.allocateDirect(signal.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public ByteBuffer acquireRead(int maxLength, long timeoutNanos) {
+            if (offset == 0) {
+                original.clear();
+                frame.clear();
+                frame.put(original);
+            }
+            int length = Math.min(maxLength, frame.capacity() - offset);
+            frame.limit(offset + length).position(offset);
+            return frame;
+        }
+
+        @Override
+        public boolean releaseRead(int length) {
+            offset = (offset + length) % frame.capacity();
+            return true;
+        }
+
+        @Override
+        public int available() {
+            return frame.capacity();
+        }
+
+        @Override
+        public int targetAvailable() {
+            return frame.capacity();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.PcmRingBuffer;
+import com.manoj077.musicstreamerapp.SimulatedPcmProducer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one PCM frame's round trip through {@code RaopBridge} from the decoder to the
+ * AudioTrack write: the original path copied every frame into a new array, queued it
+ * and copied it out again; the current one publishes in place into the shared direct
+ * buffer and hands AudioTrack a slice of it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PcmHandoffBenchmark {
+
+    @Param({"1408", "4096"})
+    public int frameBytes;
+
+    private byte[] decoded;
+    private LegacyFrameQueue legacyQueue;
+    private byte[] legacyWriteBuffer;
+    private PcmRingBuffer ring;
+    private SimulatedPcmProducer producer;
+
+    @Setup
+    public void setup() {
+        // The native side hands over oversized decode buffers, forcing the old copy
+        decoded = new byte[frameBytes + 64];
+        legacyQueue = new LegacyFrameQueue();
+        legacyWriteBuffer = new byte[frameBytes];
+        ring = PcmRingBuffer.forDuration(250, 44100, 4,
+                PcmRingBuffer.OverflowPolicy.DROP_OLDEST, 20);
+        producer = new SimulatedPcmProducer(ring);
+    }
+
+    @Benchmark
+    public void copyPerFrame(Blackhole bh) throws InterruptedException {
+        legacyQueue.offer(decoded, 0, frameBytes);
+        int length = legacyQueue.poll(legacyWriteBuffer, 0);
+        bh.consume(legacyWriteBuffer);
+        bh.consume(length);
+    }
+
+    @Benchmark
+    public void sharedSlice(Blackhole bh) {
+        producer.produce(decoded, 0, frameBytes);
+        ByteBuffer slice = ring.acquireRead(frameBytes, 0);
+        if (slice != null) {
+            bh.consume(slice);
+            ring.releaseRead(slice.remaining());
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.AudioTap;
+import com.manoj077.musicstreamerapp.DriftResampler;
+import com.manoj077.musicstreamerapp.GainStage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-place DSP stages run on every 10 ms playback chunk. One chunk is due every
+ * 10 ms, so a score of 100 us per op is 1% of a core.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class PlaybackStageBenchmark {
+    private static final int CHUNK_FRAMES = 441;
+    private static final int CHUNK_BYTES = CHUNK_FRAMES * 4;
+
+    private ByteBuffer chunk;
+    private DriftResampler resampler;
+    private GainStage steadyGain;
+    private GainStage rampingGain;
+    private GainStage boostedGain;
+    private AudioTap tap;
+    private boolean rampUp;
+
+    @Setup
+    public void setup() {
+        chunk = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        short[] signal = AlacFixture.testSignal(CHUNK_FRAMES, 2);
+        for (int i = 0; i < signal.length; i++) {
+            chunk.putShort(i * 2, signal[i]);
+        }
+
+        resampler = new DriftResampler(2, 32);
+        // Far beyond real drift so nearly every chunk splices a frame
+        resampler.setCorrectionPpm(5000);
+
+        steadyGain = new GainStage(2, 882);
+        steadyGain.setAirplayVolume(-12);
+        rampingGain = new GainStage(2, 882);
+        boostedGain = new GainStage(2, 882);
+        boostedGain.setGainDb(GainStage.MAX_GAIN_DB);
+        tap = new AudioTap(2, 11025);
+    }
+
+    @Benchmark
+    public int resample() {
+        return resampler.process(chunk, 0, CHUNK_BYTES);
+    }
+
+    @Benchmark
+    public ByteBuffer gainSteady() {
+        steadyGain.process(chunk, 0, CHUNK_BYTES);
+        return chunk;
+    }
+
+    @Benchmark
+    public ByteBuffer gainRamping() {
+        // A new volume every chunk keeps the stage permanently ramping
+        rampUp = !rampUp;
+        rampingGain.setAirplayVolume(rampUp ? -5 : -25);
+        rampingGain.process(chunk, 0, CHUNK_BYTES);
+        return chunk;
+    }
+
+    @Benchmark
+    public ByteBuffer gainLimiting() {
+        boostedGain.process(chunk, 0, CHUNK_BYTES);
+        return chunk;
+    }
+
+    @Benchmark
+    public AudioTap tapWrite() {
+        // All the playback thread pays for levels and spectrum
+        tap.write(chunk, 0, CHUNK_BYTES);
+        return tap;
+    }
+}
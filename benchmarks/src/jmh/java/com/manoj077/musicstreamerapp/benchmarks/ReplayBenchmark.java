@@ -0,0 +1,164 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.CaptureReplayer;
+import com.manoj077.musicstreamerapp.PacketCapture;
+import com.manoj077.musicstreamerapp.PcmSink;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replaying a capture flat out into a null sink: decode, jitter buffering and mixing
+ * of every packet with no AudioTrack or sockets involved. By default the capture is
+ * synthetic, 30 s of one sender with jitter, reordering and loss; pass a field
+ * capture with {@code -Dreplay.capture=<file>} to measure real traffic. Each op is a
+ * whole replay. What the replay counted is reported beside the score, and a replay
+ * whose checksum differs from the first one's fails the trial.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ReplayBenchmark {
+    private static final int FRAME_SAMPLES = 352;
+    private static final long FRAME_NANOS = FRAME_SAMPLES * 1_000_000_000L / 44100;
+    private static final int SECONDS = 30;
+
+    @Param({"0.01"})
+    public double lossRate;
+
+    private File file;
+    private boolean synthetic;
+    private PacketCapture.Reader reader;
+    private CaptureReplayer replayer;
+    private long referenceChecksum;
+
+    @Setup
+    public void setup() throws IOException {
+        String path = System.getProperty("replay.capture");
+        synthetic = path == null;
+        file = synthetic ? File.createTempFile("replay", ".rcap") : new File(path);
+        if (synthetic) {
+            writeSyntheticCapture(file);
+        }
+        reader = new PacketCapture.Reader(file);
+        replayer = new CaptureReplayer(PcmSink.NULL, 44100, 2);
+        replayer.setSpeed(CaptureReplayer.FLAT_OUT);
+        referenceChecksum = replayer.replay(reader).checksum;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        reader.close();
+        if (synthetic) {
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public long replay(Outcome outcome) throws IOException {
+        CaptureReplayer.Result result = replayer.replay(reader);
+        if (result.checksum != referenceChecksum) {
+            throw new IllegalStateException("Replay not deterministic: " + result);
+        }
+        outcome.result = result;
+        return result.checksum;
+    }
+
+    /**
+     * Secondary metrics: what the last replay of each iteration counted.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcome {
+        CaptureReplayer.Result result;
+
+        public long framesOut() {
+            return result == null ? 0 : result.framesOut;
+        }
+
+        public long concealedFrames() {
+            return result == null ? 0 : result.concealedFrames;
+        }
+
+        public long lateDrops() {
+            return result == null ? 0 : result.lateDrops;
+        }
+
+        public long underruns() {
+            return result == null ? 0 : result.underruns;
+        }
+
+        public long decodeErrors() {
+            return result == null ? 0 : result.decodeErrors;
+        }
+
+        public double speedup() {
+            return result == null ? 0 : result.getSpeedup();
+        }
+    }
+
+    /**
+     * One sender's RTP stream as the session would record it: packets arrive with
+     * random delay, so some overtake others, and a few never arrive.
+     */
+    private void writeSyntheticCapture(File file) throws IOException {
+        AlacFixture encoder = new AlacFixture(FRAME_SAMPLES, 40, 10, 14);
+        short[] signal = AlacFixture.testSignal(FRAME_SAMPLES, 7);
+        byte[] datagram = new byte[2048];
+        byte[] payload = new byte[datagram.length - 12];
+        int payloadLength = encoder.encode(signal, FRAME_SAMPLES, payload);
+        Random random = new Random(42);
+
+        int packets = (int) (TimeUnit.SECONDS.toNanos(SECONDS) / FRAME_NANOS);
+        long[] arrival = new long[packets];
+        int[] order = new int[packets];
+        for (int i = 0; i < packets; i++) {
+            arrival[i] = i * FRAME_NANOS + (long) (random.nextDouble() * 3 * FRAME_NANOS);
+            order[i] = i;
+        }
+        // Arrival order; an insertion sort is fine since packets move only a few places
+        for (int i = 1; i < packets; i++) {
+            int seq = order[i];
+            int j = i - 1;
+            while (j >= 0 && arrival[order[j]] > arrival[seq]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = seq;
+        }
+
+        try (PacketCapture capture = new PacketCapture(file)) {
+            long base = System.nanoTime();
+            for (int i = 0; i < packets; i++) {
+                int seq = order[i];
+                if (random.nextDouble() < lossRate) {
+                    continue;
+                }
+                datagram[0] = (byte) 0x80;
+                datagram[1] = (byte) 0x60;
+                datagram[2] = (byte) (seq >> 8);
+                datagram[3] = (byte) seq;
+                long timestamp = (long) seq * FRAME_SAMPLES;
+                for (int b = 0; b < 4; b++) {
+                    datagram[4 + b] = (byte) (timestamp >> (24 - 8 * b));
+                }
+                System.arraycopy(payload, 0, datagram, 12, payloadLength);
+                capture.record(PacketCapture.KIND_AUDIO, 1, base + arrival[seq], datagram, 0,
+                        12 + payloadLength);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.RetransmitScheduler;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loss detection and resend scheduling against a simulated lossy sender on a virtual
+ * clock: each op is one packet interval. Packets and resent packets are dropped at
+ * random, and bursts of loss model a Wi-Fi stall. Requested, recovered and too-late
+ * totals are reported beside the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class RetransmitBenchmark {
+    private static final int FRAME_SAMPLES = 352;
+    private static final long FRAME_NANOS = FRAME_SAMPLES * 1_000_000_000L / 44100;
+    private static final long PLAYOUT_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(15);
+    private static final int STALL_PACKETS = 20;
+    private static final int MAX_IN_FLIGHT = 1024;
+
+    @Param({"0.01", "0.05"})
+    public double lossRate;
+
+    private RetransmitScheduler scheduler;
+    private Random random;
+    private long now;
+    private int seq;
+
+    // Resent packets on their way back: sequence and arrival time
+    private final int[] replySeq = new int[MAX_IN_FLIGHT];
+    private final long[] replyAt = new long[MAX_IN_FLIGHT];
+    private int replyHead;
+    private int replyTail;
+    private int stallLeft;
+
+    @Setup
+    public void setup() {
+        random = new Random(42);
+        scheduler = new RetransmitScheduler(44100, this::answer);
+        scheduler.setPlayoutDelayNanos(PLAYOUT_DELAY_NANOS);
+    }
+
+    @Benchmark
+    public int packetInterval(Recovery recovery) {
+        recovery.scheduler = scheduler;
+        now += FRAME_NANOS;
+        while (replyHead != replyTail && replyAt[replyHead] <= now) {
+            int resent = replySeq[replyHead];
+            replyHead = (replyHead + 1) % MAX_IN_FLIGHT;
+            scheduler.onPacket(resent, (long) resent * FRAME_SAMPLES, now);
+        }
+
+        if (stallLeft == 0 && random.nextDouble() < lossRate / STALL_PACKETS) {
+            stallLeft = STALL_PACKETS;
+        }
+        if (stallLeft > 0) {
+            stallLeft--;
+        } else if (random.nextDouble() >= lossRate) {
+            scheduler.onPacket(seq, (long) seq * FRAME_SAMPLES, now);
+        }
+        seq = (seq + 1) & 0xffff;
+
+        scheduler.poll(now);
+        return scheduler.getPendingPackets();
+    }
+
+    /**
+     * Secondary metrics: the scheduler's totals since the trial began, read when each
+     * iteration ends.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Recovery {
+        RetransmitScheduler scheduler;
+
+        public long requested() {
+            return scheduler == null ? 0 : scheduler.getRequestedPackets();
+        }
+
+        public long recovered() {
+            return scheduler == null ? 0 : scheduler.getRecoveredPackets();
+        }
+
+        public long tooLate() {
+            return scheduler == null ? 0 : scheduler.getTooLatePackets();
+        }
+
+        public double rttMs() {
+            return scheduler == null ? 0 : scheduler.getRoundTripMs();
+        }
+    }
+
+    /**
+     * The simulated sender: answers every requested packet after one round trip,
+     * unless the resend is lost too.
+     */
+    private boolean answer(ByteBuffer request) {
+        int first = request.getShort(4) & 0xffff;
+        int count = request.getShort(6) & 0xffff;
+        for (int i = 0; i < count; i++) {
+            int next = (replyTail + 1) % MAX_IN_FLIGHT;
+            if (next == replyHead || random.nextDouble() < lossRate) {
+                continue;
+            }
+            replySeq[replyTail] = (first + i) & 0xffff;
+            replyAt[replyTail] = now + RTT_NANOS;
+            replyTail = next;
+        }
+        return true;
+    }
+}
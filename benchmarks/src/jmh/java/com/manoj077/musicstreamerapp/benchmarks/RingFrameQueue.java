@@ -0,0 +1,29 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.PcmRingBuffer;
+
+/**
+ * {@link FrameQueue} over the preallocated PCM ring AudioEngine uses today.
+ */
+class RingFrameQueue implements FrameQueue {
+    private final PcmRingBuffer ring;
+
+    RingFrameQueue(PcmRingBuffer ring) {
+        this.ring = ring;
+    }
+
+    @Override
+    public boolean offer(byte[] frame, int offset, int length) {
+        return ring.write(frame, offset, length) == length;
+    }
+
+    @Override
+    public int poll(byte[] dst, long timeoutNanos) {
+        return ring.read(dst, 0, dst.length, timeoutNanos);
+    }
+
+    @Override
+    public void clear() {
+        ring.clear();
+    }
+}
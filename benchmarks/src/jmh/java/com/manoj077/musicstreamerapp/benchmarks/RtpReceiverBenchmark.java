@@ -0,0 +1,130 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.RtpPacket;
+import com.manoj077.musicstreamerapp.RtpReceiver;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained RTP receive rate over loopback: each invocation sends a burst of
+ * ALAC-sized audio datagrams and waits until {@link RtpReceiver} has handed all of
+ * them to its handler. Scores are packets per second; the gc profiler's
+ * allocation rate covers the sender too, so the receiver's share is what remains
+ * above the send-only baseline. Loopback losses and the receiver's burst sizes are
+ * reported beside the score.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+public class RtpReceiverBenchmark {
+    private static final int BURST = 32;
+    private static final int PAYLOAD_BYTES = 1408;
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private RtpReceiver receiver;
+    private DatagramChannel sender;
+    private final ByteBuffer datagram = ByteBuffer.allocateDirect(12 + PAYLOAD_BYTES);
+    private volatile long handled;
+    private long sent;
+    private int sequence;
+
+    @Setup
+    public void setup() throws IOException {
+        receiver = new RtpReceiver(new RtpReceiver.Handler() {
+            @Override
+            public void onAudioPackets(RtpPacket[] packets, int count) {
+                handled += count;
+            }
+
+            @Override
+            public void onControlPacket(RtpPacket packet) {
+            }
+
+            @Override
+            public void onTimingPacket(RtpPacket packet) {
+            }
+
+            @Override
+            public void onTick(long nowNanos) {
+            }
+
+            @Override
+            public void onHandlerError(RuntimeException error) {
+            }
+
+            @Override
+            public void onReceiveFailed(IOException error) {
+            }
+        });
+        receiver.start();
+        sender = DatagramChannel.open();
+        sender.connect(new InetSocketAddress("127.0.0.1", receiver.getAudioPort()));
+
+        datagram.put(0, (byte) 0x80).put(1, (byte) 0x60);
+        datagram.putInt(8, 0x12345678);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        sender.close();
+        receiver.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public long receiveBurst(Delivery delivery) throws IOException {
+        delivery.benchmark = this;
+        long target = handled + BURST;
+        for (int i = 0; i < BURST; i++) {
+            datagram.putShort(2, (short) sequence);
+            datagram.putInt(4, sequence * 352);
+            sequence++;
+            datagram.clear();
+            sender.write(datagram);
+        }
+        sent += BURST;
+
+        // Loopback may still drop under pressure; count it rather than hang
+        long deadline = System.nanoTime() + WAIT_NANOS;
+        while (handled < target && System.nanoTime() < deadline) {
+            Thread.yield();
+        }
+        return handled;
+    }
+
+    /**
+     * Secondary metrics: totals since the trial began, read when each iteration ends.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Delivery {
+        RtpReceiverBenchmark benchmark;
+
+        public long lost() {
+            return benchmark == null ? 0 : benchmark.sent - benchmark.handled;
+        }
+
+        public long bursts() {
+            return benchmark == null ? 0 : benchmark.receiver.getBursts();
+        }
+
+        public long largestBurst() {
+            return benchmark == null ? 0 : benchmark.receiver.getLargestBurst();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.RtspServer;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full RAOP session setup against {@link RtspServer} over loopback, driven by a
+ * scripted client: connect, OPTIONS, ANNOUNCE, SETUP, RECORD, TEARDOWN. The
+ * server's own handshake timing and per-connection buffer memory are reported
+ * beside the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class RtspHandshakeBenchmark {
+    private static final String SDP = "v=0\r\n"
+            + "o=iTunes 3413821438 0 IN IP4 127.0.0.1\r\n"
+            + "s=iTunes\r\n"
+            + "c=IN IP4 127.0.0.1\r\n"
+            + "t=0 0\r\n"
+            + "m=audio 0 RTP/AVP 96\r\n"
+            + "a=rtpmap:96 AppleLossless\r\n"
+            + "a=fmtp:96 352 0 16 40 10 14 2 255 0 0 44100\r\n";
+
+    private static final byte[][] SCRIPT = {
+            request("OPTIONS * RTSP/1.0\r\nCSeq: 1\r\n\r\n"),
+            request("ANNOUNCE rtsp://127.0.0.1/1 RTSP/1.0\r\nCSeq: 2\r\n"
+                    + "Content-Type: application/sdp\r\nContent-Length: " + SDP.length()
+                    + "\r\n\r\n" + SDP),
+            request("SETUP rtsp://127.0.0.1/1 RTSP/1.0\r\nCSeq: 3\r\n"
+                    + "Transport: RTP/AVP/UDP;unicast;interleaved=0-1;mode=record;"
+                    + "control_port=6001;timing_port=6002\r\n\r\n"),
+            request("RECORD rtsp://127.0.0.1/1 RTSP/1.0\r\nCSeq: 4\r\n"
+                    + "RTP-Info: seq=1;rtptime=0\r\n\r\n"),
+            request("TEARDOWN rtsp://127.0.0.1/1 RTSP/1.0\r\nCSeq: 5\r\n\r\n"),
+    };
+
+    private RtspServer server;
+    private int port;
+    private final byte[] response = new byte[4096];
+
+    @Setup
+    public void setup() throws IOException {
+        server = new RtspServer(0, new RtspServer.Listener() {
+            @Override
+            public boolean onAnnounce(RtspServer.Announcement announcement) {
+                return true;
+            }
+
+            @Override
+            public RtspServer.Ports onSetup(InetSocketAddress client, int controlPort,
+                                            int timingPort) {
+                return new RtspServer.Ports(6000, 6001, 6002);
+            }
+
+            @Override
+            public void onRecord(int seq, long rtpTime) {
+            }
+
+            @Override
+            public void onFlush(int seq, long rtpTime) {
+            }
+
+            @Override
+            public void onVolume(double volume) {
+            }
+
+            @Override
+            public void onTeardown() {
+            }
+
+            @Override
+            public void onMetadata(String contentType, byte[] content) {
+            }
+
+            @Override
+            public void onProgress(long start, long current, long end) {
+            }
+        });
+        server.start();
+        port = server.getLocalPort();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public int handshake(ServerSide serverSide) throws IOException {
+        serverSide.server = server;
+        int total = 0;
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            for (byte[] request : SCRIPT) {
+                out.write(request);
+                total += readResponse(in);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Secondary metrics from the server's own accounting, read when each iteration
+     * ends.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class ServerSide {
+        RtspServer server;
+
+        public double handshakeMs() {
+            return server == null ? 0 : server.getMeanHandshakeMs();
+        }
+
+        public long bytesPerConnection() {
+            return server == null ? 0 : server.getBytesPerConnection();
+        }
+    }
+
+    /**
+     * Reads one response head; none of the scripted requests get a body back.
+     */
+    private int readResponse(InputStream in) throws IOException {
+        int length = 0;
+        while (length < 4 || response[length - 4] != '\r' || response[length - 3] != '\n'
+                || response[length - 2] != '\r' || response[length - 1] != '\n') {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed mid-response");
+            }
+            response[length++] = (byte) b;
+        }
+        return length;
+    }
+
+    private static byte[] request(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
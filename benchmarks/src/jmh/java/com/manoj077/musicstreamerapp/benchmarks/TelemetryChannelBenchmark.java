@@ -0,0 +1,90 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.AudioTap;
+import com.manoj077.musicstreamerapp.PlaybackMetrics;
+import com.manoj077.musicstreamerapp.SpectrumAnalyzer;
+import com.manoj077.musicstreamerapp.TelemetryChannel;
+import com.manoj077.musicstreamerapp.TelemetrySnapshot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service-side cost of one live status update. {@code formatForBroadcast} is what each
+ * update paid before the intent was even sent; the rest is the telemetry channel that
+ * replaced it. The binder IPC a broadcast adds on top is only visible on a device; run
+ * {@code ReceiverService.ACTION_MEASURE_TELEMETRY} there to compare both end to end.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TelemetryChannelBenchmark {
+    // The UI's frame rate, far below the benchmark's publish rate
+    private static final int UI_FPS = 15;
+
+    @Param({"0", "1", "4"})
+    public int subscribers;
+
+    private final PlaybackMetrics metrics = new PlaybackMetrics();
+    private final SpectrumAnalyzer.Snapshot analysis = new SpectrumAnalyzer(new AudioTap(2, 4096),
+            44100, SpectrumAnalyzer.DEFAULT_FFT_SIZE, SpectrumAnalyzer.DEFAULT_BANDS).latest();
+    private TelemetryChannel throttled;
+    private TelemetryChannel unthrottled;
+    private TelemetrySnapshot snapshot;
+    private long sequence;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordFramesIn(352);
+            metrics.recordBytesIn(1100);
+            metrics.recordQueueDepth(i % 200);
+            metrics.recordLatency(i * 100_000L, 352);
+            metrics.recordSyncError(i * 10_000L - 5_000_000L);
+        }
+        snapshot = takeSnapshot();
+
+        // Delivered inline so the listener's cost is part of the score
+        Executor inline = Runnable::run;
+        TelemetryChannel.Listener listener = blackhole::consume;
+        throttled = new TelemetryChannel();
+        unthrottled = new TelemetryChannel();
+        for (int i = 0; i < subscribers; i++) {
+            throttled.subscribe(listener, inline, UI_FPS);
+            unthrottled.subscribe(listener, inline, 0);
+        }
+    }
+
+    @Benchmark
+    public String formatForBroadcast() {
+        return metrics.snapshot().toDisplayString();
+    }
+
+    @Benchmark
+    public TelemetrySnapshot takeSnapshot() {
+        return new TelemetrySnapshot(System.nanoTime(), ++sequence, "RUNNING", 1, 120, 900,
+                analysis, 1.5, 12, metrics.snapshot());
+    }
+
+    @Benchmark
+    public TelemetryChannel publishThrottled() {
+        throttled.publish(snapshot);
+        return throttled;
+    }
+
+    @Benchmark
+    public TelemetryChannel publishEveryUpdate() {
+        unthrottled.publish(snapshot);
+        return unthrottled;
+    }
+}
@@ -0,0 +1,115 @@
+package com.manoj077.musicstreamerapp.benchmarks;
+
+import com.manoj077.musicstreamerapp.TimingEstimator;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock offset estimation against a simulated sender on a virtual clock: each op is
+ * one timing exchange, two seconds apart. The sender's clock runs at a fixed offset
+ * and skew from ours, and each leg of the exchange queues for an independent random
+ * time, with occasional Wi-Fi stalls on one leg only. The mean and worst error of the
+ * locked estimate against the true offset are reported beside the score.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class TimingEstimatorBenchmark {
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final long BASE_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+    private static final long OFFSET_NANOS = TimeUnit.SECONDS.toNanos(3600);
+    private static final double SKEW_PPM = 80;
+    private static final double STALL_RATE = 0.05;
+    private static final long STALL_NANOS = TimeUnit.MILLISECONDS.toNanos(80);
+
+    @Param({"1", "10"})
+    public int jitterMs;
+
+    private TimingEstimator estimator;
+    private Random random;
+    private long now;
+
+    @Setup
+    public void setup() {
+        estimator = new TimingEstimator();
+        random = new Random(42);
+        now = TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Benchmark
+    public long exchange(OffsetError offsetError) {
+        now += INTERVAL_NANOS;
+        long request = now;
+        long received = senderTime(request + legDelay());
+        long transmitted = received + TimeUnit.MICROSECONDS.toNanos(50);
+        long reply = localTime(transmitted) + legDelay();
+        estimator.addSample(request, received, transmitted, reply);
+
+        if (estimator.isLocked()) {
+            long error = Math.abs(estimator.getOffsetNanos(reply) - (senderTime(reply) - reply));
+            offsetError.add(error);
+        }
+        offsetError.rejected = estimator.getRejectedSamples();
+        return estimator.getOffsetNanos();
+    }
+
+    /**
+     * Secondary metrics: error of the locked estimate against the true offset, over
+     * each iteration.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class OffsetError {
+        public long lockedExchanges;
+        public long rejected;
+        private long errorTotal;
+        private long errorMax;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lockedExchanges = 0;
+            errorTotal = 0;
+            errorMax = 0;
+        }
+
+        void add(long error) {
+            errorTotal += error;
+            errorMax = Math.max(errorMax, error);
+            lockedExchanges++;
+        }
+
+        public double meanErrorMs() {
+            return errorTotal / 1e6 / Math.max(1, lockedExchanges);
+        }
+
+        public double maxErrorMs() {
+            return errorMax / 1e6;
+        }
+    }
+
+    private long legDelay() {
+        long queueing = (long) (-Math.log(1 - random.nextDouble()) * jitterMs * 1_000_000L / 4);
+        long stall = random.nextDouble() < STALL_RATE ? STALL_NANOS : 0;
+        return BASE_DELAY_NANOS + queueing + stall;
+    }
+
+    private static long senderTime(long local) {
+        return local + OFFSET_NANOS + (long) (local * SKEW_PPM / 1e6);
+    }
+
+    private static long localTime(long sender) {
+        return (long) ((sender - OFFSET_NANOS) / (1 + SKEW_PPM / 1e6));
+    }
+}